@@ -0,0 +1,115 @@
+package es.serviciosrest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+
+/**
+ * Latencia de {@link DaoVideojuego#autocompletar(String, int)} con catalogos
+ * grandes. Los nombres se forman con 2 a 4 palabras de un vocabulario
+ * inventado de unas 3000 (y a veces un numero), y las consultas imitan a
+ * alguien escribiendo en la caja de busqueda: el principio de un nombre con
+ * la ultima palabra a medias, la mitad de ellas con una falta (una letra de
+ * menos) o en mayusculas. En modo {@code SampleTime} JMH da los percentiles,
+ * por ejemplo el p99:
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="Autocompletado"}
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AutocompletadoBenchmark {
+
+	private static final String[] SILABAS = { "ka", "zel", "da", "po", "ke", "mon", "mar", "io", "so", "nic", "dra",
+			"gon", "fi", "nal", "fan", "ta", "sia", "war", "craft", "star", "me", "tro", "id", "hal", "lo", "cas",
+			"tle", "va", "ni", "a", "re", "si", "dent", "e", "vil", "ti", "tan", "fall", "out", "por", "tal",
+			"sky", "rim", "ban", "jo", "kir", "by", "yo", "shi", "lu", "gi", "pik", "min", "ark" };
+
+	@Param({ "1000000" })
+	public int tamano;
+
+	private DaoVideojuego dao;
+	private String[] consultas;
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		Random aleatorio = new Random(23);
+		Set<String> vocabulario = new HashSet<>();
+		while(vocabulario.size() < 3000) {
+			StringBuilder palabra = new StringBuilder();
+			int silabas = 2 + aleatorio.nextInt(3);
+			for(int i = 0; i < silabas; i++) {
+				palabra.append(SILABAS[aleatorio.nextInt(SILABAS.length)]);
+			}
+			palabra.setCharAt(0, Character.toUpperCase(palabra.charAt(0)));
+			vocabulario.add(palabra.toString());
+		}
+		String[] palabras = vocabulario.toArray(new String[0]);
+
+		dao = new DaoVideojuego();
+		List<String> nombres = new ArrayList<>(tamano);
+		while(nombres.size() < tamano) {
+			StringBuilder nombre = new StringBuilder();
+			int n = 2 + aleatorio.nextInt(3);
+			for(int i = 0; i < n; i++) {
+				nombre.append(i == 0 ? "" : " ").append(palabras[aleatorio.nextInt(palabras.length)]);
+			}
+			if(aleatorio.nextInt(4) == 0) {
+				nombre.append(' ').append(1 + aleatorio.nextInt(20));
+			}
+			int i = nombres.size();
+			if(dao.add(new Videojuego(0, nombre.toString(), "Compania " + (i % 100), 1980 + i % 45, i % 101)) != null) {
+				nombres.add(nombre.toString());
+			}
+		}
+
+		consultas = new String[4096];
+		for(int i = 0; i < consultas.length; i++) {
+			String nombre = nombres.get(aleatorio.nextInt(nombres.size()));
+			//Lo escrito hasta ahora: alguna palabra entera y la siguiente a medias
+			int espacio = nombre.indexOf(' ', nombre.indexOf(' ') + 1);
+			int corte = (espacio < 0 ? nombre.length() : espacio) - aleatorio.nextInt(3);
+			String consulta = nombre.substring(0, Math.max(corte, 3));
+			switch(i % 4) {
+			case 1:
+				//Una letra de menos en la primera palabra
+				int letra = 1 + aleatorio.nextInt(Math.max(1, consulta.indexOf(' ') - 1));
+				consulta = consulta.substring(0, letra) + consulta.substring(letra + 1);
+				break;
+			case 2:
+				consulta = consulta.toUpperCase();
+				break;
+			default:
+				break;
+			}
+			consultas[i] = consulta;
+		}
+	}
+
+	@Benchmark
+	public List<Videojuego> autocompletar() {
+		return dao.autocompletar(consultas[ThreadLocalRandom.current().nextInt(consultas.length)], 10);
+	}
+}
@@ -0,0 +1,44 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collection;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Ejecuta {@link ConsultaPorIdBenchmark} con el perfilador de memoria de JMH
+ * ({@code -prof gc}) y comprueba que GET /videojuegos/{id} con la cache
+ * caliente no crea objetos: menos de 1 byte por operacion de media.
+ *
+ * Solo se ejecuta bajo demanda, con el perfil de JMH:
+ * {@code mvn -Pjmh test -Dtest=ConsultaPorIdAsignacionTests -Dbenchmark=true}
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ConsultaPorIdAsignacionTests {
+
+	private static final double MAXIMO_BYTES = 1.0;
+
+	@Test
+	void laConsultaPorIdNoCreaObjetos() throws Exception {
+		Collection<RunResult> resultados = new Runner(new OptionsBuilder()
+			.include(ConsultaPorIdBenchmark.class.getSimpleName())
+			.addProfiler(GCProfiler.class)
+			.threads(1)
+			.build()).run();
+		assertFalse(resultados.isEmpty());
+		for(RunResult resultado : resultados) {
+			Result<?> asignado = resultado.getSecondaryResults().get("gc.alloc.rate.norm");
+			String caso = resultado.getParams().getParam("condicional");
+			assertTrue(asignado.getScore() < MAXIMO_BYTES,
+					"condicional=" + caso + ": " + asignado.getScore() + " bytes por operacion");
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package es.serviciosrest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import ch.qos.logback.classic.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import serviciosrest.controlador.CacheRespuestas;
+import serviciosrest.controlador.ControladorVideojuego;
+import serviciosrest.controlador.EtagsVideojuego;
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+
+/**
+ * {@link ControladorVideojuego#getVideojuego} sin el resto de Spring ni de
+ * Tomcat: el controlador con sus dependencias puestas a mano y una respuesta
+ * que, como la de Tomcat, se reutiliza entre peticiones. Con la cache
+ * caliente no deberia crear ningun objeto; con el perfilador de memoria se
+ * ve en {@code gc.alloc.rate.norm} (bytes por operacion):
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="ConsultaPorId -prof gc -t 1"}<br>
+ * {@link ConsultaPorIdAsignacionTests} lo comprueba.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class ConsultaPorIdBenchmark {
+
+	@Param({ "100000" })
+	public int tamano;
+
+	//Peticiones normales (200 con el JSON) o con If-None-Match de la version actual (304)
+	@Param({ "no", "si" })
+	public String condicional;
+
+	private ControladorVideojuego controlador;
+	private int[] ids;
+	private String[] etags;
+
+	@State(Scope.Thread)
+	public static class Respuesta extends HttpServletResponseWrapper {
+		final byte[] buffer = new byte[8192];
+		int escritos;
+		int estado;
+		String etag;
+
+		private final ServletOutputStream salida = new ServletOutputStream() {
+			@Override
+			public void write(int b) {
+				buffer[escritos++ % buffer.length] = (byte) b;
+			}
+
+			@Override
+			public void write(byte[] b, int desde, int longitud) {
+				System.arraycopy(b, desde, buffer, 0, Math.min(longitud, buffer.length));
+				escritos += longitud;
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(WriteListener oyente) {
+			}
+		};
+
+		public Respuesta() {
+			super(new MockHttpServletResponse());
+		}
+
+		@Override
+		public void setStatus(int estado) {
+			this.estado = estado;
+		}
+
+		@Override
+		public void setHeader(String nombre, String valor) {
+			etag = valor;
+		}
+
+		@Override
+		public void setContentType(String tipo) {
+		}
+
+		@Override
+		public void setContentLength(int longitud) {
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			return salida;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		//Sin Spring, Logback empieza en DEBUG: el mismo nivel que en application.properties
+		((Logger) LoggerFactory.getLogger("serviciosrest")).setLevel(ch.qos.logback.classic.Level.INFO);
+		DaoVideojuego dao = new DaoVideojuego();
+		EtagsVideojuego generador = new EtagsVideojuego();
+		CacheRespuestas cache = new CacheRespuestas(dao, new ObjectMapper(), generador, new SimpleMeterRegistry(),
+				DataSize.ofMegabytes(64));
+		controlador = new ControladorVideojuego();
+		ReflectionTestUtils.setField(controlador, "daoVideojuego", dao);
+		ReflectionTestUtils.setField(controlador, "cache", cache);
+		ReflectionTestUtils.setField(controlador, "etags", generador);
+
+		ids = new int[tamano];
+		etags = new String[tamano];
+		for(int i = 0; i < tamano; i++) {
+			Videojuego v = dao.add(new Videojuego(0, "Videojuego " + i, "Compania " + (i % 100), 1980 + i % 45, i % 101));
+			ids[i] = v.getId();
+			etags[i] = condicional.equals("si") ? generador.etag(v.getVersion()) : null;
+			//La cache caliente, como despues de las primeras peticiones
+			cache.codificado(v);
+		}
+	}
+
+	@Benchmark
+	public int getVideojuego(Respuesta respuesta) throws Exception {
+		int i = ThreadLocalRandom.current().nextInt(tamano);
+		controlador.getVideojuego(ids[i], etags[i], respuesta);
+		return respuesta.estado;
+	}
+}
@@ -0,0 +1,146 @@
+package es.serviciosrest;
+
+import java.util.HashMap;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import serviciosrest.modelo.entidad.EstadisticasGrupo;
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.AlmacenMemoria;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+
+/**
+ * Operaciones del DAO con catalogos de distintos tamaños. El numero de hilos
+ * lo fija {@link EjecutarBenchmarks}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class DaoVideojuegoBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	public int tamano;
+
+	//Sin metricas o con las mismas que en produccion, para medir lo que cuestan
+	@Param({ "no", "prometheus" })
+	public String metricas;
+
+	private DaoVideojuego dao;
+	private int[] ids;
+	private String[] nombres;
+	private String[] busquedas;
+
+	//Cada hilo da de alta videojuegos con nombres distintos
+	private static final AtomicInteger HILOS = new AtomicInteger();
+
+	@State(Scope.Thread)
+	public static class Hilo {
+		final String prefijo = "Alta " + HILOS.getAndIncrement() + " ";
+		int siguiente;
+	}
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		if(metricas.equals("prometheus")) {
+			PrometheusMeterRegistry registro = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+			//Igual que en application.properties
+			registro.config().meterFilter(new MeterFilter() {
+				@Override
+				public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+					return DistributionStatisticConfig.builder().percentilesHistogram(true)
+							.minimumExpectedValue(100.0).maximumExpectedValue(1e9).build().merge(config);
+				}
+			});
+			dao = new DaoVideojuego(new AlmacenMemoria(), registro);
+		}else {
+			dao = new DaoVideojuego();
+		}
+		ids = new int[tamano];
+		nombres = new String[tamano];
+		for(int i = 0; i < tamano; i++) {
+			nombres[i] = "Videojuego " + i;
+			ids[i] = dao.add(videojuego(0, nombres[i], i)).getId();
+		}
+		//Busquedas con pocas coincidencias ("Videojuego 4321" tambien encuentra 43210..43219)
+		busquedas = new String[1024];
+		for(int i = 0; i < busquedas.length; i++) {
+			busquedas[i] = nombres[ThreadLocalRandom.current().nextInt(tamano)];
+		}
+	}
+
+	@Benchmark
+	public Videojuego getById() {
+		return dao.getById(ids[ThreadLocalRandom.current().nextInt(tamano)]);
+	}
+
+	@Benchmark
+	public int update() {
+		ThreadLocalRandom r = ThreadLocalRandom.current();
+		int i = r.nextInt(tamano);
+		//Mismo nombre y distinta nota: se actualizan los indices ordenados
+		return dao.update(new Videojuego(ids[i], nombres[i], "Compania " + (i % 100), 1980 + i % 45, r.nextInt(101)));
+	}
+
+	//Alta y baja en la misma operacion, para que el catalogo no crezca
+	@Benchmark
+	public boolean addDelete(Hilo hilo) {
+		Videojuego v = dao.add(videojuego(0, hilo.prefijo + hilo.siguiente++, hilo.siguiente));
+		return dao.delete(v.getId());
+	}
+
+	@Benchmark
+	public List<Videojuego> listByNombre() {
+		return dao.listByNombre(busquedas[ThreadLocalRandom.current().nextInt(busquedas.length)]);
+	}
+
+	@Benchmark
+	public List<Videojuego> top() {
+		return dao.top(10, "Compania " + ThreadLocalRandom.current().nextInt(100));
+	}
+
+	@Benchmark
+	public List<EstadisticasGrupo> estadisticas() {
+		return dao.estadisticasPorAnno();
+	}
+
+	//Lo mismo que estadisticas() recorriendo todo el catalogo, como tenian que
+	//hacer los clientes antes de /videojuegos/stats
+	@Benchmark
+	public Map<Integer, IntSummaryStatistics> estadisticasRecorriendo() {
+		Map<Integer, IntSummaryStatistics> porAnno = new HashMap<>();
+		for(Videojuego v : dao.list()) {
+			porAnno.computeIfAbsent(v.getAnno(), a -> new IntSummaryStatistics()).accept(v.getNota());
+		}
+		return porAnno;
+	}
+
+	private static Videojuego videojuego(int id, String nombre, int i) {
+		return new Videojuego(id, nombre, "Compania " + (i % 100), 1980 + i % 45, i % 101);
+	}
+}
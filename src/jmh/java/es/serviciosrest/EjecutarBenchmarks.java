@@ -0,0 +1,24 @@
+package es.serviciosrest;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Lanza los benchmarks JMH con 1, 4 y 16 hilos (o solo con los que se pidan
+ * con {@code -t}). Acepta el resto de opciones de JMH, por ejemplo:
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="DaoVideojuego -p tamano=1000 -t 4"}
+ */
+public class EjecutarBenchmarks {
+
+	private static final int[] HILOS = { 1, 4, 16 };
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions opciones = new CommandLineOptions(args);
+		int[] hilos = opciones.getThreads().hasValue() ? new int[] { opciones.getThreads().get() } : HILOS;
+		for(int n : hilos) {
+			System.out.println("EjecutarBenchmarks -> " + n + " hilo(s)");
+			new Runner(new OptionsBuilder().parent(opciones).threads(n).build()).run();
+		}
+	}
+}
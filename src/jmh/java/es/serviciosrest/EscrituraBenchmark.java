@@ -0,0 +1,92 @@
+package es.serviciosrest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+
+/**
+ * Escrituras individuales del DAO aplicadas en el hilo de cada cliente
+ * (concurrente) o encoladas para el escritor unico (unico). Cada operacion
+ * espera a su resultado, como un cliente que espera la respuesta. Para
+ * comparar de 1 a 64 clientes:
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="Escritura -t 64"}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class EscrituraBenchmark {
+
+	@Param({ "100000" })
+	public int tamano;
+
+	@Param({ "concurrente", "unico" })
+	public String modo;
+
+	private DaoVideojuego dao;
+	private int[] ids;
+
+	//Cada hilo da de alta videojuegos con nombres distintos
+	private static final AtomicInteger HILOS = new AtomicInteger();
+
+	@State(Scope.Thread)
+	public static class Hilo {
+		final String prefijo = "Alta " + HILOS.getAndIncrement() + " ";
+		int siguiente;
+	}
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		dao = new DaoVideojuego();
+		ids = new int[tamano];
+		for(int i = 0; i < tamano; i++) {
+			ids[i] = dao.add(videojuego(0, "Videojuego " + i, i)).getId();
+		}
+		if(modo.equals("unico")) {
+			dao.iniciarEscritorUnico(1024);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void terminar() {
+		dao.pararEscritorUnico();
+	}
+
+	//Cambio de nombre: pasa por la unicidad de nombres y todos los indices
+	@Benchmark
+	public int update() {
+		ThreadLocalRandom r = ThreadLocalRandom.current();
+		int i = r.nextInt(tamano);
+		return dao.update(videojuego(ids[i], "Videojuego " + i + (r.nextBoolean() ? "" : " bis"), r.nextInt(101)));
+	}
+
+	//Alta y baja en la misma operacion, para que el catalogo no crezca
+	@Benchmark
+	public boolean addDelete(Hilo hilo) {
+		Videojuego v = dao.add(videojuego(0, hilo.prefijo + hilo.siguiente++, hilo.siguiente));
+		return dao.delete(v.getId());
+	}
+
+	private static Videojuego videojuego(int id, String nombre, int i) {
+		return new Videojuego(id, nombre, "Compania " + (i % 100), 1980 + i % 45, i % 101);
+	}
+}
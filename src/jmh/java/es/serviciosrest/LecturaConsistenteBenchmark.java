@@ -0,0 +1,87 @@
+package es.serviciosrest;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+
+/**
+ * Lecturas del catalogo (listado completo y paginas por cursor) con un 5% de
+ * modificaciones mezcladas: cada operacion es una modificacion con
+ * probabilidad {@link #ESCRITURAS}, y si no, una lectura. El numero de hilos
+ * lo fija {@link EjecutarBenchmarks}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class LecturaConsistenteBenchmark {
+
+	private static final double ESCRITURAS = 0.05;
+
+	@Param({ "1000", "100000" })
+	public int tamano;
+
+	private DaoVideojuego dao;
+	private int[] ids;
+	private String[] nombres;
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		dao = new DaoVideojuego();
+		ids = new int[tamano];
+		nombres = new String[tamano];
+		for(int i = 0; i < tamano; i++) {
+			nombres[i] = "Videojuego " + i;
+			ids[i] = dao.add(new Videojuego(0, nombres[i], "Compania " + (i % 100), 1980 + i % 45, i % 101)).getId();
+		}
+	}
+
+	@Benchmark
+	public long listado() {
+		if(escribir()) {
+			return 0;
+		}
+		long suma = 0;
+		for(Videojuego v : dao.list()) {
+			suma += v.getNota();
+		}
+		return suma;
+	}
+
+	@Benchmark
+	public List<Videojuego> pagina() {
+		if(escribir()) {
+			return null;
+		}
+		return dao.listPage(ids[ThreadLocalRandom.current().nextInt(tamano)], 100);
+	}
+
+	//Con probabilidad ESCRITURAS modifica un videojuego al azar
+	private boolean escribir() {
+		ThreadLocalRandom r = ThreadLocalRandom.current();
+		if(r.nextDouble() >= ESCRITURAS) {
+			return false;
+		}
+		int i = r.nextInt(tamano);
+		dao.update(new Videojuego(ids[i], nombres[i], "Compania " + (i % 100), 1980 + i % 45, r.nextInt(101)));
+		return true;
+	}
+}
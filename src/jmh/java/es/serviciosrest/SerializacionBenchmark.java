@@ -0,0 +1,99 @@
+package es.serviciosrest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * Serializacion con Jackson de un videojuego (GET por ID), de la lista
+ * (GET /videojuegos) y lectura de un videojuego y de una lista (cuerpos de
+ * POST, PUT y de los lotes), en JSON y en Smile. Los ObjectMapper se
+ * configuran igual que los de Spring. Al preparar cada lista se escribe el
+ * tamaño en bytes de un videojuego y de la lista en cada formato.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializacionBenchmark {
+
+	@Param({ "json", "smile" })
+	public String formato;
+
+	private final Videojuego videojuego = new Videojuego(3, "World of Warcraft", "Blizzard Entertainment", 2004, 93);
+	private ObjectWriter escritor;
+	private ObjectReader lector;
+	private ObjectReader lectorLista;
+	private byte[] codificado;
+
+	@Setup
+	public void preparar() throws Exception {
+		ObjectMapper mapper = formato.equals("smile") ? Jackson2ObjectMapperBuilder.smile().build()
+				: Jackson2ObjectMapperBuilder.json().build();
+		escritor = mapper.writer();
+		lector = mapper.readerFor(Videojuego.class);
+		lectorLista = mapper.readerFor(Videojuego[].class);
+		codificado = escritor.writeValueAsBytes(videojuego);
+	}
+
+	@State(Scope.Benchmark)
+	public static class Lista {
+		@Param({ "10", "1000", "100000" })
+		public int tamano;
+
+		List<Videojuego> videojuegos;
+		byte[] codificada;
+
+		@Setup
+		public void preparar(SerializacionBenchmark benchmark) throws Exception {
+			videojuegos = new ArrayList<>(tamano);
+			for(int i = 0; i < tamano; i++) {
+				videojuegos.add(new Videojuego(i, "Videojuego " + i, "Compania " + (i % 100), 1980 + i % 45, i % 101));
+			}
+			codificada = benchmark.escritor.writeValueAsBytes(videojuegos);
+			System.out.printf("%n%s: videojuego %d bytes, lista de %d videojuegos %d bytes%n", benchmark.formato,
+					benchmark.codificado.length, tamano, codificada.length);
+		}
+	}
+
+	@Benchmark
+	public byte[] escribirVideojuego() throws Exception {
+		return escritor.writeValueAsBytes(videojuego);
+	}
+
+	@Benchmark
+	public Videojuego leerVideojuego() throws Exception {
+		return lector.readValue(codificado);
+	}
+
+	@Benchmark
+	public byte[] escribirLista(Lista lista) throws Exception {
+		return escritor.writeValueAsBytes(lista.videojuegos);
+	}
+
+	@Benchmark
+	public Videojuego[] leerLista(Lista lista) throws Exception {
+		return lectorLista.readValue(lista.codificada);
+	}
+}
@@ -1,7 +1,11 @@
 package serviciosrest;
 
+import java.io.InputStream;
+import java.net.URL;
+
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 
 //Esta clase sera el punto de arranque de nuestra aplicacion. 
 //Mediante la anotacion @SpringBootApplication le decimos a Spring que:
@@ -9,7 +13,8 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 //dependencias. Estas clases anotadas deben de estar en este paquete
 //o en un paquete hijo
 //2. Se autoconfigure la aplicacion, en este caso al ser una aplicacion
-//web configurara un Tomcat para desplegarla
+//web configurara un Tomcat para desplegarla (o un Netty si se arranca
+//con spring.main.web-application-type=reactive)
 //3. Buscara metodos dentro de esta clase anotados con @Bean para
 //dar de alta objetos en el contexto de Spring. En este ejemplo
 //no daremos ninguno, pero en el cliente si que daremos de alta
@@ -17,13 +22,23 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 @SpringBootApplication
 public class PspA3RestApplication {	
 	
-	public static void main(String[] args) {
+	public static void main(String[] args) throws Exception {
 		System.out.println("Servicio Rest -> Cargando el contexto de Spring...");
 		//Mediante el metodo "run" arrancaremos el contexto de Spring
 		//y daremos de alta todos los objetos que hayamos configurado
 		//en nuestra aplicacion así como sus dependecias con otros 
 		//objetos.
-		SpringApplication.run(PspA3RestApplication.class, args);
+		ConfigurableApplicationContext contexto = SpringApplication.run(PspA3RestApplication.class, args);
 		System.out.println("Servicio Rest -> Contexto de Spring cargado!");
+		//Ejecucion de entrenamiento del archivo CDS (perfil cds de Maven): se
+		//atiende una peticion, para que tambien entren en el archivo las clases
+		//que hacen falta para ello, y se para la aplicacion
+		if(contexto.getEnvironment().getProperty("videojuegos.cds.entrenamiento", Boolean.class, false)) {
+			String puerto = contexto.getEnvironment().getProperty("local.server.port");
+			try(InputStream in = new URL("http://localhost:" + puerto + "/videojuegos/0").openStream()) {
+				in.readAllBytes();
+			}
+			System.exit(SpringApplication.exit(contexto));
+		}
 	}
 }
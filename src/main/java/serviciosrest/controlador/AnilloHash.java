@@ -0,0 +1,87 @@
+package serviciosrest.controlador;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Anillo de hash consistente para repartir los videojuegos por ID entre los
+ * nodos de un cluster. Cada nodo ocupa {@code virtuales} posiciones del
+ * anillo (nodos virtuales) y cada ID es del primer nodo que aparece a partir
+ * de la posicion de su hash. Con suficientes nodos virtuales cada nodo se
+ * queda con una parte parecida del catalogo, y al añadir o quitar un nodo
+ * solo cambian de dueño los IDs de ese nodo. Con el mismo anillo se reparten
+ * tambien claves de texto, como los nombres.
+ */
+public class AnilloHash {
+
+	private final TreeMap<Integer, String> anillo = new TreeMap<>();
+	private final List<String> nodos;
+
+	/**
+	 * @param nodos los nodos (todos los nodos del cluster tienen que usar la
+	 * misma lista para estar de acuerdo en el dueño de cada ID)
+	 * @param virtuales las posiciones que ocupa cada nodo en el anillo
+	 */
+	public AnilloHash(List<String> nodos, int virtuales) {
+		if(nodos.isEmpty() || virtuales <= 0) {
+			throw new IllegalArgumentException("El anillo necesita al menos un nodo y una posicion por nodo");
+		}
+		this.nodos = List.copyOf(nodos);
+		for(String nodo : this.nodos) {
+			for(int i = 0; i < virtuales; i++) {
+				//Si dos posiciones coinciden (muy raro) se queda la primera
+				anillo.putIfAbsent(hash(nodo + "#" + i), nodo);
+			}
+		}
+	}
+
+	/**
+	 * @param id el ID de un videojuego
+	 * @return el nodo dueño de ese ID
+	 */
+	public String nodo(int id) {
+		return nodoEn(mezclar(id));
+	}
+
+	/**
+	 * @param clave una clave cualquiera (por ejemplo, el nombre de un videojuego)
+	 * @return el nodo dueño de esa clave
+	 */
+	public String nodo(String clave) {
+		return nodoEn(hash(clave));
+	}
+
+	/**
+	 * @return todos los nodos, en el orden en el que se configuraron
+	 */
+	public List<String> getNodos() {
+		return nodos;
+	}
+
+	//El primer nodo a partir de una posicion del anillo
+	private String nodoEn(int posicion) {
+		Map.Entry<Integer, String> entrada = anillo.ceilingEntry(posicion);
+		return (entrada != null ? entrada : anillo.firstEntry()).getValue();
+	}
+
+	//FNV-1a de los bytes, mezclado al final para repartirlo por todo el anillo
+	private static int hash(String clave) {
+		int h = 0x811C9DC5;
+		for(byte b : clave.getBytes(StandardCharsets.UTF_8)) {
+			h = (h ^ (b & 0xFF)) * 0x01000193;
+		}
+		return mezclar(h);
+	}
+
+	//Paso final de MurmurHash3: IDs consecutivos acaban en posiciones lejanas
+	private static int mezclar(int h) {
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
@@ -0,0 +1,399 @@
+package serviciosrest.controlador;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+import serviciosrest.modelo.persistencia.OyenteCambios;
+
+/**
+ * <p>Cache de respuestas ya serializadas a JSON (UTF-8), para no repetir el
+ * trabajo de Jackson en cada lectura:</p>
+ * <ul>
+ * <li>Cada videojuego, junto con su ETag, en una tabla indexada por ID de
+ * dos vias: cada ID puede ir a uno de los dos huecos de su conjunto (su ID
+ * modulo el numero de conjuntos), asi que buscarlo no necesita objetos
+ * intermedios ni cerrojos. La entrada guarda tambien la version, y una vieja
+ * nunca se confunde con la actual, aunque una lectura lenta la guarde
+ * despues de la modificacion. Ademas, los cambios del DAO borran la entrada
+ * de la version anterior para que no ocupe sitio.</li>
+ * <li>El listado completo, con la version del catalogo con la que se
+ * genero. Se monta juntando los JSON de cada videojuego, asi que despues de
+ * un cambio solo hay que volver a serializar el videojuego cambiado.</li>
+ * <li>El listado completo comprimido con gzip, para los clientes que lo
+ * aceptan. Se comprime la primera vez que se pide cada version del
+ * catalogo, y no en cada peticion.</li>
+ * </ul>
+ * <p>La memoria esta acotada (propiedad {@code videojuegos.cache.maximo}): la
+ * tabla tiene un hueco por cada 256 bytes del limite y el listado solo se
+ * guarda si cabe en ese mismo limite. Para elegir que videojuegos se quedan
+ * se usa una marca de uso por entrada (segunda oportunidad, como el
+ * algoritmo del reloj): la llevan los videojuegos que entran por
+ * GET /videojuegos/{id} y la pone cada acierto de esa peticion.</p>
+ * <ul>
+ * <li>Un fallo por ID va a un hueco libre o sin marca de su conjunto. Si los
+ * dos tienen marca, se les quita (segunda oportunidad) y se sustituye uno.</li>
+ * <li>Los JSON que se serializan al montar un listado entran sin marca y solo
+ * en un hueco libre o sin marca, asi que recorrer todo el catalogo no echa a
+ * los videojuegos que se piden por ID.</li>
+ * <li>Si con una entrada nueva se pasa del limite, un reloj recorre la tabla
+ * quitando las entradas sin marca hasta volver a caber. Por ID, tambien les
+ * quita la marca a las que la tienen. Al montar un listado no quita marcas
+ * y mira como mucho {@value #PASOS_RELOJ} entradas; si no basta, la que no
+ * se guarda es la nueva.</li>
+ * </ul>
+ * <p>Los aciertos y fallos se publican en la metrica
+ * {@code videojuegos.cache}.</p>
+ */
+@Component
+public class CacheRespuestas implements OyenteCambios {
+
+	private static final int VIAS = 2;
+	private static final int PASOS_RELOJ = 32;
+
+	private final ObjectWriter escritor;
+	private final EtagsVideojuego etags;
+	private final AtomicReferenceArray<VideojuegoCodificado> huecos;
+	//Numero de conjuntos menos uno: el conjunto de un ID es ID & mascara
+	private final int mascara;
+	private final AtomicInteger reloj = new AtomicInteger();
+	//Bytes de JSON y entradas de la tabla de videojuegos
+	private final AtomicLong ocupados = new AtomicLong();
+	private final AtomicInteger entradas = new AtomicInteger();
+	private final AtomicReference<ListaCacheada> lista = new AtomicReference<>();
+	private final long maximo;
+	private final Counter aciertosVideojuego;
+	private final Counter fallosVideojuego;
+	private final Counter aciertosLista;
+	private final Counter fallosLista;
+	private final Counter aciertosListaComprimida;
+	private final Counter fallosListaComprimida;
+
+	//El listado completo y la version del catalogo a la que corresponde. La
+	//version comprimida se calcula la primera vez que se pide
+	private static final class ListaCacheada {
+		final long version;
+		final byte[] json;
+		volatile byte[] gzip;
+
+		ListaCacheada(long version, byte[] json) {
+			this.version = version;
+			this.json = json;
+		}
+	}
+
+	/**
+	 * Un videojuego ya codificado: su JSON y su ETag. No cambia
+	 */
+	public static final class VideojuegoCodificado {
+		private final int id;
+		private final int version;
+		private final byte[] json;
+		private final String etag;
+		//Marca de uso: la pone cada acierto por ID y la quita el reloj
+		private volatile boolean usado;
+
+		VideojuegoCodificado(int id, int version, byte[] json, String etag) {
+			this.id = id;
+			this.version = version;
+			this.json = json;
+			this.etag = etag;
+		}
+
+		/**
+		 * @return el JSON en UTF-8. No hay que modificarlo
+		 */
+		public byte[] getJson() {
+			return json;
+		}
+
+		public String getEtag() {
+			return etag;
+		}
+	}
+
+	public CacheRespuestas(DaoVideojuego dao, ObjectMapper objectMapper, EtagsVideojuego etags, 
+			MeterRegistry metricas, @Value("${videojuegos.cache.maximo:64MB}") DataSize maximo) {
+		this.escritor = objectMapper.writerFor(Videojuego.class);
+		this.etags = etags;
+		this.maximo = maximo.toBytes();
+		int tamano = (int) Math.min(1 << 20, Math.max(1024, Long.highestOneBit(this.maximo / 256)));
+		this.huecos = new AtomicReferenceArray<>(tamano);
+		this.mascara = tamano / VIAS - 1;
+		aciertosVideojuego = contador(metricas, "videojuego", "acierto");
+		fallosVideojuego = contador(metricas, "videojuego", "fallo");
+		aciertosLista = contador(metricas, "lista", "acierto");
+		fallosLista = contador(metricas, "lista", "fallo");
+		aciertosListaComprimida = contador(metricas, "lista_gzip", "acierto");
+		fallosListaComprimida = contador(metricas, "lista_gzip", "fallo");
+		Gauge.builder("videojuegos.cache.entradas", entradas, AtomicInteger::get)
+			.description("Videojuegos serializados en la cache")
+			.register(metricas);
+		dao.addOyente(this);
+	}
+
+	/**
+	 * @param v el videojuego
+	 * @return su JSON, de la cache o recien serializado
+	 */
+	public byte[] videojuego(Videojuego v) {
+		return codificado(v).json;
+	}
+
+	/**
+	 * Si el videojuego esta en la cache, no crea ningun objeto: es el camino
+	 * de GET /videojuegos/{id}
+	 * @param v el videojuego
+	 * @return su JSON y su ETag, de la cache o recien serializado
+	 */
+	public VideojuegoCodificado codificado(Videojuego v) {
+		return codificado(v, true);
+	}
+
+	//porId es false al montar un listado: ni marca los aciertos ni echa a
+	//ningun videojuego marcado
+	private VideojuegoCodificado codificado(Videojuego v, boolean porId) {
+		int conjunto = (v.getId() & mascara) * VIAS;
+		for(int via = 0; via < VIAS; via++) {
+			VideojuegoCodificado actual = huecos.get(conjunto + via);
+			if(actual != null && actual.id == v.getId() && actual.version == v.getVersion()) {
+				aciertosVideojuego.increment();
+				if(porId && !actual.usado) {
+					actual.usado = true;
+				}
+				return actual;
+			}
+		}
+		fallosVideojuego.increment();
+		VideojuegoCodificado nuevo = new VideojuegoCodificado(v.getId(), v.getVersion(), serializar(v),
+				etags.etag(v.getVersion()));
+		nuevo.usado = porId;
+		if(nuevo.json.length <= maximo) {
+			guardar(conjunto, nuevo, porId);
+		}
+		return nuevo;
+	}
+
+	//Elige el hueco del conjunto: el de otra version del mismo ID (si no es
+	//mas nueva), uno libre o uno sin marca. Por ID, si los dos tienen marca se
+	//les quita y se sustituye el segundo
+	private void guardar(int conjunto, VideojuegoCodificado nuevo, boolean porId) {
+		int hueco = -1;
+		VideojuegoCodificado victima = null;
+		for(int via = 0; via < VIAS; via++) {
+			VideojuegoCodificado actual = huecos.get(conjunto + via);
+			if(actual != null && actual.id == nuevo.id) {
+				if(actual.version > nuevo.version) {
+					return;//Una lectura lenta: ya esta la version nueva
+				}
+				hueco = conjunto + via;
+				victima = actual;
+				break;
+			}
+			if(hueco < 0 && (actual == null || !actual.usado)) {
+				hueco = conjunto + via;
+				victima = actual;
+			}
+		}
+		if(hueco < 0) {
+			if(!porId) {
+				return;
+			}
+			for(int via = 0; via < VIAS; via++) {
+				VideojuegoCodificado actual = huecos.get(conjunto + via);
+				if(actual != null) {
+					actual.usado = false;
+				}
+			}
+			hueco = conjunto + VIAS - 1;
+			victima = huecos.get(hueco);
+		}
+		//Si otra peticion ha cambiado el hueco mientras tanto, no lo guardamos
+		if(!huecos.compareAndSet(hueco, victima, nuevo)) {
+			return;
+		}
+		ocupados.addAndGet(nuevo.json.length - (victima == null ? 0 : victima.json.length));
+		if(victima == null) {
+			entradas.incrementAndGet();
+		}
+		if(ocupados.get() > maximo && !hacerSitio(nuevo, porId)) {
+			quitar(hueco, nuevo);
+		}
+	}
+
+	//Avanza el reloj hasta que la cache vuelva a caber en el limite. Por ID
+	//puede dar dos vueltas (en la segunda ya no queda ninguna marca de la
+	//primera); al montar un listado solo mira PASOS_RELOJ entradas. Devuelve
+	//false si no lo consigue
+	private boolean hacerSitio(VideojuegoCodificado nuevo, boolean porId) {
+		int vistas = 0;
+		for(int paso = 0; paso < VIAS * huecos.length() && (porId || vistas < PASOS_RELOJ); paso++) {
+			int hueco = reloj.getAndIncrement() & (huecos.length() - 1);
+			VideojuegoCodificado actual = huecos.get(hueco);
+			if(actual == null || actual == nuevo) {
+				continue;
+			}
+			vistas++;
+			if(!actual.usado) {
+				quitar(hueco, actual);
+				if(ocupados.get() <= maximo) {
+					return true;
+				}
+			}else if(porId) {
+				actual.usado = false;
+			}
+		}
+		return ocupados.get() <= maximo;
+	}
+
+	/**
+	 * @param version la version del catalogo, leida antes de obtener la lista
+	 * @param contenido los videojuegos del catalogo
+	 * @return el JSON del listado completo, de la cache o recien montado
+	 */
+	public byte[] lista(long version, Collection<Videojuego> contenido) {
+		ListaCacheada cacheada = lista.get();
+		if(cacheada != null && cacheada.version == version) {
+			aciertosLista.increment();
+			return cacheada.json;
+		}
+		fallosLista.increment();
+		byte[] resultado = montar(contenido, cacheada != null ? cacheada.json.length + 256 : 1024);
+		if(resultado.length <= maximo) {
+			//Solo sustituimos una lista mas antigua, nunca una mas nueva
+			lista.accumulateAndGet(new ListaCacheada(version, resultado),
+					(actual, nueva) -> actual == null || actual.version < nueva.version ? nueva : actual);
+		}
+		return resultado;
+	}
+
+	/**
+	 * @param version la version del catalogo con la que se obtuvo el listado
+	 * @param json el JSON del listado completo, devuelto por
+	 * {@link #lista(long, Collection)}
+	 * @return el JSON comprimido con gzip, de la cache o recien comprimido si
+	 * el listado no estaba en la cache
+	 */
+	public byte[] listaComprimida(long version, byte[] json) {
+		ListaCacheada cacheada = lista.get();
+		if(cacheada == null || cacheada.version != version || cacheada.json != json) {
+			fallosListaComprimida.increment();
+			return comprimir(json);
+		}
+		byte[] gzip = cacheada.gzip;
+		if(gzip != null) {
+			aciertosListaComprimida.increment();
+			return gzip;
+		}
+		//Si llegan varias a la vez puede que comprimamos mas de una, pero 
+		//todas dan el mismo resultado
+		fallosListaComprimida.increment();
+		gzip = comprimir(json);
+		cacheada.gzip = gzip;
+		return gzip;
+	}
+
+	/**
+	 * Monta el JSON de una lista de videojuegos (por ejemplo, el resultado de
+	 * una consulta) a partir del de cada videojuego, sin guardar la lista
+	 * @param contenido los videojuegos
+	 * @return el JSON de la lista
+	 */
+	public byte[] lista(Collection<Videojuego> contenido) {
+		return montar(contenido, 1024);
+	}
+
+	@Override
+	public void cambio(long version, Videojuego anterior, Videojuego nuevo) {
+		if(anterior != null) {
+			int conjunto = (anterior.getId() & mascara) * VIAS;
+			for(int via = 0; via < VIAS; via++) {
+				VideojuegoCodificado actual = huecos.get(conjunto + via);
+				if(actual != null && actual.id == anterior.getId() && actual.version == anterior.getVersion()) {
+					quitar(conjunto + via, actual);
+				}
+			}
+		}
+		lista.set(null);
+	}
+
+	@Override
+	public void recarga(long version) {
+		//Las versiones de los videojuegos recuperados vuelven a empezar
+		for(int hueco = 0; hueco < huecos.length(); hueco++) {
+			VideojuegoCodificado actual = huecos.get(hueco);
+			if(actual != null) {
+				quitar(hueco, actual);
+			}
+		}
+		lista.set(null);
+	}
+
+	private void quitar(int hueco, VideojuegoCodificado actual) {
+		if(huecos.compareAndSet(hueco, actual, null)) {
+			ocupados.addAndGet(-actual.json.length);
+			entradas.decrementAndGet();
+		}
+	}
+
+	private byte[] montar(Collection<Videojuego> contenido, int tamanoInicial) {
+		ByteArrayOutputStream json = new ByteArrayOutputStream(tamanoInicial);
+		json.write('[');
+		boolean primero = true;
+		for(Videojuego v : contenido) {
+			if(!primero) {
+				json.write(',');
+			}
+			json.writeBytes(codificado(v, false).json);
+			primero = false;
+		}
+		json.write(']');
+		return json.toByteArray();
+	}
+
+	private static byte[] comprimir(byte[] json) {
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream(json.length / 4 + 64);
+		try(GZIPOutputStream salida = new GZIPOutputStream(gzip, 64 * 1024)) {
+			salida.write(json);
+		}catch(IOException e) {
+			throw new UncheckedIOException(e);//No pasa con un ByteArrayOutputStream
+		}
+		return gzip.toByteArray();
+	}
+
+	private byte[] serializar(Videojuego v) {
+		try {
+			return escritor.writeValueAsBytes(v);
+		}catch(JsonProcessingException e) {
+			throw new IllegalStateException("No se ha podido serializar " + v, e);
+		}
+	}
+
+	private static Counter contador(MeterRegistry metricas, String tipo, String resultado) {
+		return Counter.builder("videojuegos.cache")
+			.tag("tipo", tipo)
+			.tag("resultado", resultado)
+			.description("Aciertos y fallos de la cache de respuestas JSON")
+			.register(metricas);
+	}
+}
@@ -0,0 +1,367 @@
+package serviciosrest.controlador;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+import serviciosrest.modelo.persistencia.ReservaNombres;
+
+/**
+ * <p>Modo cluster: varias instancias de la aplicacion se reparten el
+ * catalogo por ID con un {@link AnilloHash}. Se activa con la lista de
+ * nodos, que tiene que ser la misma en todos:</p>
+ * <pre>
+ * videojuegos.cluster.nodos=http://localhost:8881,http://localhost:8882
+ * </pre>
+ * <p>Cada instancia averigua cual es ella con
+ * {@code videojuegos.cluster.nodo} (por defecto
+ * {@code http://localhost:<server.port>}) y deja en su DAO solo su
+ * particion ({@link DaoVideojuego#particionar}). Las peticiones se reenvian
+ * al nodo dueño y los listados se piden a todos ({@link FiltroCluster}).</p>
+ * <p>Cada nombre tambien tiene un nodo dueño, el de su hash en el mismo
+ * anillo, que guarda a que ID pertenece ({@link ReservaNombres}). Antes de
+ * dar de alta o renombrar un videojuego, el nodo que lo guarda reserva el
+ * nombre en su dueño; si la escritura no se hace, o despues de una baja o
+ * de un cambio de nombre, lo libera. Asi dos nodos no pueden usar el mismo
+ * nombre a la vez, tampoco en las operaciones por lotes. El dueño rellena
+ * sus nombres con los de todos los nodos la primera vez que le piden uno, y
+ * una reserva antigua cuyo videojuego ya no tiene ese nombre (por un aviso
+ * de liberacion que se perdio) se puede volver a reservar.</p>
+ * <p>Los nodos del cluster se fijan al arrancar: si se cambian, los
+ * videojuegos no se mueven de nodo. Solo funciona en el modo servlet.</p>
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty("videojuegos.cluster.nodos")
+@ConditionalOnWebApplication(type=ConditionalOnWebApplication.Type.SERVLET)
+public class ClusterVideojuegos implements ReservaNombres {
+
+	/**
+	 * Cabecera de las peticiones entre nodos: el nodo que la recibe la
+	 * atiende el mismo, con su particion, sin reenviarla. Solo vale si la
+	 * envia un nodo del cluster ({@link #esReenvio})
+	 */
+	public static final String CABECERA_REENVIO = "X-Cluster-Reenvio";
+
+	/**
+	 * Ruta con la que un nodo reserva (POST) o libera (DELETE) un nombre en
+	 * su dueño, con los parametros "nombre" e "id". La atiende
+	 * {@link FiltroCluster}, solo si viene de otro nodo
+	 */
+	public static final String RUTA_NOMBRES = "/cluster/nombres";
+
+	private static final Logger log = LoggerFactory.getLogger(ClusterVideojuegos.class);
+
+	private final DaoVideojuego dao;
+	private final AnilloHash anillo;
+	private final String yo;
+	private final List<String> otros;
+	//Las direcciones de los nodos, para reconocer sus peticiones
+	private final Set<InetAddress> direcciones = new HashSet<InetAddress>();
+	private final Duration tiempoMaximo;
+	private final HttpClient cliente;
+	private final ObjectReader lectorLista;
+	private final ObjectReader lectorVideojuego;
+	//Los nombres de los que este nodo es dueño y el ID que los usa
+	private final ConcurrentHashMap<String, Reserva> reservas = new ConcurrentHashMap<String, Reserva>();
+	private volatile boolean reservasCargadas;
+
+	//El ID que usa un nombre y desde cuando
+	private static final class Reserva {
+		final int id;
+		final long desde = System.nanoTime();
+
+		Reserva(int id) {
+			this.id = id;
+		}
+	}
+
+	public ClusterVideojuegos(DaoVideojuego dao, ObjectMapper objectMapper,
+			@Value("${videojuegos.cluster.nodos}") List<String> nodos,
+			@Value("${videojuegos.cluster.nodo:http://localhost:${server.port:8080}}") String yo,
+			@Value("${videojuegos.cluster.nodos-virtuales:128}") int virtuales,
+			@Value("${videojuegos.cluster.tiempo-maximo:5s}") Duration tiempoMaximo) {
+		if(!nodos.contains(yo)) {
+			throw new IllegalStateException("Este nodo (" + yo + ") no esta en videojuegos.cluster.nodos " + nodos);
+		}
+		this.dao = dao;
+		this.anillo = new AnilloHash(nodos, virtuales);
+		this.yo = yo;
+		this.otros = new ArrayList<String>(nodos);
+		this.otros.remove(yo);
+		this.tiempoMaximo = tiempoMaximo;
+		this.cliente = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_1_1)
+			.connectTimeout(tiempoMaximo)
+			.build();
+		this.lectorLista = objectMapper.readerFor(Videojuego[].class);
+		this.lectorVideojuego = objectMapper.readerFor(Videojuego.class);
+		for(String nodo : nodos) {
+			try {
+				for(InetAddress direccion : InetAddress.getAllByName(URI.create(nodo).getHost())) {
+					direcciones.add(direccion);
+				}
+			}catch(UnknownHostException e) {
+				log.warn("evento=cluster error=nodo_desconocido nodo={}", nodo);
+			}
+		}
+		dao.particionar(this::esLocal);
+		dao.setReservaNombres(this);
+		log.info("evento=cluster nodo={} nodos={} virtuales={} videojuegos={}", yo, nodos, virtuales, dao.list().size());
+	}
+
+	/**
+	 * @param id el ID de un videojuego
+	 * @return true si el videojuego es de este nodo
+	 */
+	public boolean esLocal(int id) {
+		return anillo.nodo(id).equals(yo);
+	}
+
+	/**
+	 * @param id el ID de un videojuego
+	 * @return el nodo dueño del videojuego
+	 */
+	public String propietario(int id) {
+		return anillo.nodo(id);
+	}
+
+	/**
+	 * Comprueba si una peticion viene reenviada de otro nodo: lleva la
+	 * {@link #CABECERA_REENVIO} y llega desde la direccion de alguno de los
+	 * nodos (resuelta al arrancar). Si no, la cabecera no se tiene en cuenta
+	 * y la peticion se trata como la de cualquier cliente
+	 * @param peticion la peticion
+	 * @return true si la envia un nodo del cluster
+	 */
+	public boolean esReenvio(HttpServletRequest peticion) {
+		if(peticion.getHeader(CABECERA_REENVIO) == null) {
+			return false;
+		}
+		try {
+			//La direccion remota es siempre una IP: no hay consulta al DNS
+			return direcciones.contains(InetAddress.getByName(peticion.getRemoteAddr()));
+		}catch(UnknownHostException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return los demas nodos del cluster
+	 */
+	public List<String> getOtros() {
+		return otros;
+	}
+
+	/**
+	 * Envia una peticion a otro nodo, marcada para que la atienda el mismo
+	 * @param peticion la peticion, creada con {@link #peticion(String, String)}
+	 * @return la respuesta, cuando llegue
+	 */
+	public CompletableFuture<HttpResponse<byte[]>> enviar(HttpRequest.Builder peticion) {
+		return cliente.sendAsync(peticion.header(CABECERA_REENVIO, yo).timeout(tiempoMaximo).build(),
+				HttpResponse.BodyHandlers.ofByteArray());
+	}
+
+	/**
+	 * @param nodo el nodo
+	 * @param rutaYConsulta la ruta y la consulta, empezando por "/"
+	 * @return un constructor de peticiones para esa URL del nodo
+	 */
+	public HttpRequest.Builder peticion(String nodo, String rutaYConsulta) {
+		return HttpRequest.newBuilder(URI.create(nodo + rutaYConsulta));
+	}
+
+	/**
+	 * Pide a todos los demas nodos la misma consulta del listado, cada uno
+	 * sobre su particion, todos a la vez
+	 * @param consulta la consulta de la URL (sin "?"), o null
+	 * @return los videojuegos de todos los demas nodos, sin ordenar
+	 * @throws IOException si algun nodo no responde o responde con error
+	 */
+	public List<Videojuego> listarOtros(String consulta) throws IOException {
+		return listar(otros, consulta);
+	}
+
+	/**
+	 * Reserva un nombre en su nodo dueño (que puede ser este)
+	 * @throws NodoNoDisponibleException si el dueño no responde
+	 */
+	@Override
+	public boolean reservar(String nombre, int id) {
+		String dueno = anillo.nodo(nombre);
+		try {
+			if(dueno.equals(yo)) {
+				return reservarPropio(nombre, id);
+			}
+			HttpResponse<byte[]> r = esperar(enviar(peticion(dueno, rutaNombres(nombre, id))
+					.POST(HttpRequest.BodyPublishers.noBody())));
+			if(r.statusCode() != 200 && r.statusCode() != 409) {
+				throw new IOException("El nodo " + dueno + " ha respondido " + r.statusCode());
+			}
+			return r.statusCode() == 200;
+		}catch(IOException e) {
+			throw new NodoNoDisponibleException(dueno, e);
+		}
+	}
+
+	/**
+	 * Libera un nombre en su nodo dueño. Si no responde, la reserva se queda
+	 * hasta que otro videojuego pida el nombre y se vea que ya no se usa
+	 */
+	@Override
+	public void liberar(String nombre, int id) {
+		String dueno = anillo.nodo(nombre);
+		if(dueno.equals(yo)) {
+			liberarPropio(nombre, id);
+			return;
+		}
+		try {
+			esperar(enviar(peticion(dueno, rutaNombres(nombre, id)).DELETE()));
+		}catch(IOException e) {
+			log.warn("evento=cluster error=liberar_nombre nodo={} id={} causa=\"{}\"", dueno, id, e.toString());
+		}
+	}
+
+	/**
+	 * Reserva un nombre del que este nodo es dueño
+	 * @param nombre el nombre
+	 * @param id el ID del videojuego que lo va a usar
+	 * @return true si queda reservado para ese ID, false si lo usa otro
+	 * @throws IOException si hay que preguntar a otro nodo y no responde
+	 */
+	public boolean reservarPropio(String nombre, int id) throws IOException {
+		cargarReservas();
+		Reserva nueva = new Reserva(id);
+		while(true) {
+			Reserva actual = reservas.putIfAbsent(nombre, nueva);
+			if(actual == null || actual.id == id) {
+				return true;
+			}
+			//Una reserva reciente puede ser de una escritura que aun no se ha hecho
+			if(System.nanoTime() - actual.desde < tiempoMaximo.toNanos() || usaNombre(actual.id, nombre)) {
+				return false;
+			}
+			if(reservas.replace(nombre, actual, nueva)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Libera un nombre del que este nodo es dueño, si sigue reservado para
+	 * ese ID
+	 * @param nombre el nombre
+	 * @param id el ID del videojuego que lo tenia
+	 */
+	public void liberarPropio(String nombre, int id) {
+		reservas.computeIfPresent(nombre, (n, reserva) -> reserva.id == id ? null : reserva);
+	}
+
+	/**
+	 * @return este nodo
+	 */
+	public String getNodo() {
+		return yo;
+	}
+
+	//La primera vez, los nombres de los que este nodo es dueño salen de los
+	//videojuegos de todos los nodos. Mientras tanto no se reserva ninguno
+	private void cargarReservas() throws IOException {
+		if(reservasCargadas) {
+			return;
+		}
+		synchronized(reservas) {
+			if(!reservasCargadas) {
+				List<Videojuego> todos = listar(otros, null);
+				todos.addAll(dao.list());
+				for(Videojuego v : todos) {
+					if(anillo.nodo(v.getNombre()).equals(yo)) {
+						reservas.putIfAbsent(v.getNombre(), new Reserva(v.getId()));
+					}
+				}
+				reservasCargadas = true;
+				log.info("evento=cluster_nombres nodo={} nombres={}", yo, reservas.size());
+			}
+		}
+	}
+
+	//Pregunta al dueño de un ID si su videojuego sigue teniendo ese nombre
+	private boolean usaNombre(int id, String nombre) throws IOException {
+		String dueno = anillo.nodo(id);
+		Videojuego v;
+		if(dueno.equals(yo)) {
+			v = dao.getById(id);
+		}else {
+			HttpResponse<byte[]> r = esperar(enviar(peticion(dueno, "/videojuegos/" + id)
+					.header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE).GET()));
+			if(r.statusCode() != 200 && r.statusCode() != 404) {
+				throw new IOException("El nodo " + dueno + " ha respondido " + r.statusCode());
+			}
+			v = r.statusCode() == 200 ? lectorVideojuego.readValue(r.body()) : null;
+		}
+		return v != null && nombre.equals(v.getNombre());
+	}
+
+	private static String rutaNombres(String nombre, int id) {
+		return RUTA_NOMBRES + "?nombre=" + URLEncoder.encode(nombre, StandardCharsets.UTF_8) + "&id=" + id;
+	}
+
+	private List<Videojuego> listar(List<String> nodos, String consulta) throws IOException {
+		List<CompletableFuture<HttpResponse<byte[]>>> respuestas = new ArrayList<>();
+		for(String nodo : nodos) {
+			respuestas.add(enviar(peticion(nodo, "/videojuegos" + (consulta != null ? "?" + consulta : ""))
+					.header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE).GET()));
+		}
+		List<Videojuego> resultado = new ArrayList<Videojuego>();
+		for(CompletableFuture<HttpResponse<byte[]>> respuesta : respuestas) {
+			HttpResponse<byte[]> r = esperar(respuesta);
+			if(r.statusCode() != 200) {
+				throw new IOException("El nodo " + r.uri() + " ha respondido " + r.statusCode());
+			}
+			for(Videojuego v : lectorLista.<Videojuego[]>readValue(r.body())) {
+				resultado.add(v);
+			}
+		}
+		return resultado;
+	}
+
+	private static <T> T esperar(CompletableFuture<T> respuesta) throws IOException {
+		try {
+			return respuesta.join();
+		}catch(CompletionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+}
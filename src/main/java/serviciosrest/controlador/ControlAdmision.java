@@ -0,0 +1,290 @@
+package serviciosrest.controlador;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>Control de admision de las peticiones, para que en una rafaga las que
+ * no se van a poder atender se rechacen enseguida en lugar de esperar en la
+ * cola de Tomcat (o de Netty) y hacer crecer la latencia de todas. Cada
+ * peticion tiene un coste segun la operacion ({@link #coste}), y pasa por
+ * dos limites:</p>
+ * <ul>
+ * <li>Un cubo de tokens por cliente (su IP; una clave que enviara el
+ * cliente no esta autenticada, y cada clave inventada tendria un cubo
+ * lleno): se rellena a {@code videojuegos.admision.tasa}
+ * tokens por segundo hasta {@code videojuegos.admision.rafaga}, y cada
+ * peticion gasta su coste. Si no hay bastantes: 429 TOO MANY REQUESTS, con
+ * Retry-After el tiempo hasta que los haya.</li>
+ * <li>Un limite de concurrencia para todo el servidor, sumando los costes
+ * de las peticiones en curso, que se adapta a la latencia medida (AIMD):
+ * cada peticion que tarda menos que su objetivo (su coste por
+ * {@code videojuegos.admision.latencia-objetivo}) lo sube un poco, y si
+ * tarda mas o falla con 5xx lo baja un 10%, como mucho una vez por cada
+ * tiempo de respuesta. Si no cabe: 503 SERVICE UNAVAILABLE con
+ * Retry-After.</li>
+ * </ul>
+ * <p>Los resultados se publican en la metrica {@code videojuegos.admision}
+ * (etiqueta {@code resultado}), y el limite actual, el coste en curso y los
+ * clientes con cubo en {@code videojuegos.admision.limite},
+ * {@code videojuegos.admision.en_curso} y
+ * {@code videojuegos.admision.clientes}.</p>
+ */
+@Component
+@ConditionalOnProperty(name="videojuegos.admision.habilitada", havingValue="true")
+public class ControlAdmision {
+
+	//Costes de cada operacion, en tokens. El listado completo sale ya
+	//serializado de la cache; una consulta con filtros u orden hay que hacerla
+	private static final int COSTE_POR_ID = 1;
+	private static final int COSTE_ESCRITURA = 2;
+	private static final int COSTE_LISTADO = 3;
+	private static final int COSTE_CONSULTA = 5;
+	private static final int COSTE_LOTE = 20;
+
+	//Cuanto se baja el limite cuando una peticion va lenta
+	private static final double REDUCCION = 0.9;
+
+	/**
+	 * Resultado de pedir la admision de una peticion
+	 */
+	public enum Resultado {
+		ADMITIDA, LIMITE_CLIENTE, SOBRECARGA
+	}
+
+	/**
+	 * Una peticion que ha pedido entrar. Si se ha admitido, hay que llamar a
+	 * {@link ControlAdmision#terminar} cuando acabe
+	 */
+	public static final class Admision {
+		private final Resultado resultado;
+		private final int coste;
+		private final long inicio;
+		private final boolean concurrencia;
+		private final long reintentar;
+
+		private Admision(Resultado resultado, int coste, boolean concurrencia, long reintentar) {
+			this.resultado = resultado;
+			this.coste = coste;
+			this.inicio = System.nanoTime();
+			this.concurrencia = concurrencia;
+			this.reintentar = reintentar;
+		}
+
+		public Resultado getResultado() {
+			return resultado;
+		}
+
+		/**
+		 * @return el codigo HTTP con el que se rechaza, o 0 si se ha admitido
+		 */
+		public int getCodigo() {
+			return resultado == Resultado.LIMITE_CLIENTE ? 429 : resultado == Resultado.SOBRECARGA ? 503 : 0;
+		}
+
+		/**
+		 * @return los segundos que deberia esperar el cliente (cabecera Retry-After)
+		 */
+		public long getReintentar() {
+			return reintentar;
+		}
+	}
+
+	//Cubo de tokens de un cliente. Solo hay contencion si el mismo cliente
+	//envia varias peticiones a la vez
+	private static final class Cubo {
+		private double tokens;
+		private long ultimo;
+
+		Cubo(double tokens) {
+			this.tokens = tokens;
+			this.ultimo = System.nanoTime();
+		}
+
+		//Devuelve 0 si hay tokens, o los segundos que faltan para que los haya
+		synchronized double tomar(int coste, double tasa, double rafaga) {
+			long ahora = System.nanoTime();
+			tokens = Math.min(rafaga, tokens + (ahora - ultimo) * tasa / 1e9);
+			ultimo = ahora;
+			if(tokens >= coste) {
+				tokens -= coste;
+				return 0;
+			}
+			return (coste - tokens) / tasa;
+		}
+	}
+
+	private final double tasa;
+	private final double rafaga;
+	private final Cache<String, Cubo> cubos;
+	private final double minimo;
+	private final double maximo;
+	private final long objetivo;
+	private final AtomicLong limite;//double en bits, para cambiarlo con CAS
+	private final AtomicInteger enCurso = new AtomicInteger();
+	private final AtomicLong ultimaBajada = new AtomicLong(System.nanoTime());
+	private final Counter admitidas;
+	private final Counter limiteCliente;
+	private final Counter sobrecarga;
+
+	public ControlAdmision(MeterRegistry metricas,
+			@Value("${videojuegos.admision.tasa:200}") double tasa,
+			@Value("${videojuegos.admision.rafaga:400}") double rafaga,
+			@Value("${videojuegos.admision.concurrencia-inicial:50}") int inicial,
+			@Value("${videojuegos.admision.concurrencia-minima:4}") int minimo,
+			@Value("${videojuegos.admision.concurrencia-maxima:1000}") int maximo,
+			@Value("${videojuegos.admision.latencia-objetivo:50ms}") Duration objetivo) {
+		this.tasa = tasa;
+		this.rafaga = rafaga;
+		this.cubos = Caffeine.newBuilder()
+			.expireAfterAccess(10, TimeUnit.MINUTES)
+			.maximumSize(100_000)
+			.build();
+		this.minimo = minimo;
+		this.maximo = maximo;
+		this.objetivo = objetivo.toNanos();
+		this.limite = new AtomicLong(Double.doubleToLongBits(Math.max(minimo, Math.min(maximo, inicial))));
+		admitidas = contador(metricas, "admitida");
+		limiteCliente = contador(metricas, "limite_cliente");
+		sobrecarga = contador(metricas, "sobrecarga");
+		Gauge.builder("videojuegos.admision.limite", this, ControlAdmision::getLimite)
+			.description("Limite de concurrencia actual, en coste de las peticiones")
+			.register(metricas);
+		Gauge.builder("videojuegos.admision.en_curso", enCurso, AtomicInteger::get)
+			.description("Coste de las peticiones en curso")
+			.register(metricas);
+		Gauge.builder("videojuegos.admision.clientes", cubos, Cache::estimatedSize)
+			.description("Clientes con cubo de tokens")
+			.register(metricas);
+	}
+
+	/**
+	 * @param metodo el metodo HTTP
+	 * @param ruta la ruta de la peticion
+	 * @param conParametros si la peticion lleva parametros de consulta
+	 * @return el coste de la peticion, o 0 si no pasa por el control de
+	 * admision (las metricas de Actuator, para poder verlas en plena rafaga)
+	 */
+	public static int coste(String metodo, String ruta, boolean conParametros) {
+		if(ruta.startsWith("/actuator")) {
+			return 0;
+		}
+		if(ruta.equals("/videojuegos/batch")) {
+			return COSTE_LOTE;
+		}
+		if(ruta.equals("/videojuegos")) {
+			if(!"GET".equals(metodo)) {
+				return COSTE_ESCRITURA;
+			}
+			return conParametros ? COSTE_CONSULTA : COSTE_LISTADO;
+		}
+		return "GET".equals(metodo) || "HEAD".equals(metodo) ? COSTE_POR_ID : COSTE_ESCRITURA;
+	}
+
+	/**
+	 * @param ruta la ruta de la peticion
+	 * @return false para las peticiones que pueden durar mucho sin trabajar
+	 * (las suscripciones a cambios), que solo pasan por el limite de cliente
+	 */
+	public static boolean limitaConcurrencia(String ruta) {
+		return !ruta.equals("/videojuegos/changes");
+	}
+
+	/**
+	 * Pide la admision de una peticion
+	 * @param cliente la IP del cliente
+	 * @param coste el coste de la peticion
+	 * @param concurrencia si cuenta para el limite de concurrencia
+	 * @return si se admite, y si no, cuanto tiene que esperar el cliente
+	 */
+	public Admision admitir(String cliente, int coste, boolean concurrencia) {
+		double espera = cubos.get(cliente, c -> new Cubo(rafaga)).tomar(coste, tasa, rafaga);
+		if(espera > 0) {
+			limiteCliente.increment();
+			return new Admision(Resultado.LIMITE_CLIENTE, coste, false, (long) Math.ceil(espera));
+		}
+		if(concurrencia && !entrar(coste)) {
+			sobrecarga.increment();
+			return new Admision(Resultado.SOBRECARGA, coste, false, 1);
+		}
+		admitidas.increment();
+		return new Admision(Resultado.ADMITIDA, coste, concurrencia, 0);
+	}
+
+	/**
+	 * Avisa de que ha terminado una peticion admitida, para liberar su sitio
+	 * y ajustar el limite de concurrencia con su latencia
+	 * @param admision la admision de la peticion
+	 * @param error si ha terminado con un error del servidor (5xx)
+	 */
+	public void terminar(Admision admision, boolean error) {
+		if(!admision.concurrencia) {
+			return;
+		}
+		enCurso.addAndGet(-admision.coste);
+		long ahora = System.nanoTime();
+		long latencia = ahora - admision.inicio;
+		if(error || latencia > admision.coste * objetivo) {
+			//Bajamos como mucho una vez por cada tiempo de respuesta: las
+			//peticiones que ya estaban en curso no vieron el limite nuevo
+			long anterior = ultimaBajada.get();
+			if(ahora - anterior > latencia && ultimaBajada.compareAndSet(anterior, ahora)) {
+				ajustar(l -> Math.max(minimo, l * REDUCCION));
+			}
+		}else {
+			ajustar(l -> Math.min(maximo, l + admision.coste / l));
+		}
+	}
+
+	/**
+	 * @return el limite de concurrencia actual, en coste
+	 */
+	public double getLimite() {
+		return Double.longBitsToDouble(limite.get());
+	}
+
+	//Entra si cabe en el limite; una peticion sola entra siempre, aunque su
+	//coste sea mayor que el limite
+	private boolean entrar(int coste) {
+		double limiteActual = getLimite();
+		while(true) {
+			int actual = enCurso.get();
+			if(actual > 0 && actual + coste > limiteActual) {
+				return false;
+			}
+			if(enCurso.compareAndSet(actual, actual + coste)) {
+				return true;
+			}
+		}
+	}
+
+	private void ajustar(DoubleUnaryOperator cambio) {
+		long anterior;
+		long nuevo;
+		do {
+			anterior = limite.get();
+			nuevo = Double.doubleToLongBits(cambio.applyAsDouble(Double.longBitsToDouble(anterior)));
+		}while(!limite.compareAndSet(anterior, nuevo));
+	}
+
+	private static Counter contador(MeterRegistry metricas, String resultado) {
+		return Counter.builder("videojuegos.admision")
+			.tag("resultado", resultado)
+			.description("Peticiones admitidas y rechazadas por el control de admision")
+			.register(metricas);
+	}
+}
@@ -1,25 +1,61 @@
 package serviciosrest.controlador;
 
-import java.util.HashSet;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import serviciosrest.modelo.entidad.EstadisticasGrupo;
+import serviciosrest.modelo.entidad.ResultadoLote;
 import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.ConsultaVideojuegos;
 import serviciosrest.modelo.persistencia.DaoVideojuego;
+import serviciosrest.modelo.persistencia.FotoCatalogo;
 
 //Vamos a realizar un CRUD completo contra la entidad
 //Videojuego. La bbdd esta simulado en memoria.
+
+//Este controlador es el del modo servlet (Tomcat, un hilo por peticion), 
+//que es el que arranca por defecto. Con la propiedad
+//spring.main.web-application-type=reactive se arranca en su lugar 
+//ControladorVideojuegoReactivo sobre Netty
+@ConditionalOnWebApplication(type=ConditionalOnWebApplication.Type.SERVLET)
 @RestController
 public class ControladorVideojuego {
 	
@@ -39,6 +75,67 @@ public class ControladorVideojuego {
 	@Autowired
 	private DaoVideojuego daoVideojuego;
 	
+	//Log de las peticiones. En lugar de System.out usamos SLF4J: los mensajes
+	//se encolan y los escribe otro hilo (ver logback-spring.xml), asi que
+	//las peticiones no esperan a la consola. Los mensajes son pares
+	//clave=valor y el contenido de los videojuegos solo se escribe en DEBUG
+	private static final Logger log = LoggerFactory.getLogger(ControladorVideojuego.class);
+	
+	//Tambien inyectamos el ObjectMapper de Jackson que usa Spring, para 
+	//serializar nosotros mismos los videojuegos cuando hacemos streaming
+	@Autowired
+	private ObjectMapper objectMapper;
+	
+	//Cache con el JSON de los videojuegos y del listado ya serializado
+	@Autowired
+	private CacheRespuestas cache;
+	
+	//Generacion y comparacion de las ETag
+	@Autowired
+	private EtagsVideojuego etags;
+	
+	//Historial de los ultimos cambios, para las suscripciones
+	@Autowired
+	private HistorialCambios historial;
+	
+	//COMPRESION
+	//Si la compresion esta activada (server.compression.enabled), Tomcat 
+	//comprime con gzip las respuestas de mas de server.compression.min-response-size
+	//cuando el cliente lo acepta (cabecera Accept-Encoding). El listado
+	//completo es la respuesta mas grande y la que mas se repite, asi que en
+	//lugar de comprimirlo en cada peticion lo comprimimos una vez por version
+	//del catalogo (CacheRespuestas) y lo enviamos con Content-Encoding: gzip,
+	//que hace que Tomcat no lo vuelva a comprimir
+	@Value("${server.compression.enabled:false}")
+	private boolean compresion;
+	
+	@Value("${server.compression.min-response-size:2KB}")
+	private DataSize minimoCompresion;
+	
+	//Numero maximo de videojuegos por pagina y cabecera con el cursor de la siguiente
+	static final int LIMITE_MAXIMO = 10_000;
+	static final int LIMITE_AUTOCOMPLETAR = 100;
+	public static final String CABECERA_CURSOR = "X-Siguiente-Cursor";
+	
+	//Numero de elementos de una peticion por lotes que se aplican de una vez
+	private static final int TAMANO_LOTE = 1024;
+	
+	//FORMATO BINARIO (SMILE)
+	//Ademas de JSON, todos los endpoints aceptan y devuelven Smile, la version
+	//binaria de JSON de Jackson: mismo modelo de datos (los mismos campos del
+	//Videojuego, que es su esquema), pero sin texto, asi que ocupa menos y se
+	//lee y escribe mas deprisa. Es para los servicios que nos llaman: lo piden
+	//con "Accept: application/x-jackson-smile" y lo envian con 
+	//"Content-Type: application/x-jackson-smile". Si no dicen nada, JSON.
+	//Spring trae el conversor de Smile (lo usa en cuanto esta la libreria 
+	//jackson-dataformat-smile), asi que basta con devolver los objetos
+	public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+	public static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+	
+	//ObjectMapper de Smile para leer nosotros los cuerpos de los lotes,
+	//configurado igual que el del conversor de Spring
+	private final ObjectMapper objectMapperSmile = Jackson2ObjectMapperBuilder.smile().build();
+	
 	/***********
 	 * METODOS *
 	 ***********/
@@ -63,15 +160,65 @@ public class ControladorVideojuego {
 	//tanto el resultado en json como el codigo del mensaje. En este caso 
 	//el codigo 200 "OK" si existe o 404 NOT FOUND si no existe
 	
+	//Junto con el videojuego devolvemos su version en la cabecera ETag. Si el
+	//cliente ya lo tiene, nos manda esa ETag en la cabecera If-None-Match y,
+	//si no ha cambiado, le contestamos 304 NOT MODIFIED sin cuerpo, con lo
+	//que nos ahorramos serializarlo y enviarlo.
+	
+	//El JSON lo sacamos de la cache de respuestas (CacheRespuestas): solo se
+	//serializa la primera vez que se pide cada version del videojuego.
+	
+	//Es la peticion mas frecuente, asi que no crea objetos: el videojuego se
+	//busca por su int en la foto del catalogo, el JSON y la ETag vienen ya
+	//hechos de la cache y se escriben directamente en la respuesta, sin
+	//ResponseEntity, HttpHeaders ni conversores. Por eso el log de cada
+	//consulta es de nivel DEBUG.
+	
 	//La URL para acceder a este metodo sería: 
 	//"http://localhost:8888/videojuegos/ID" y el metodo a usar seria GET
 	//ID sería el identificador que queremos buscar
 	@GetMapping(path="videojuegos/{id}",produces = MediaType.APPLICATION_JSON_VALUE)	
-	public ResponseEntity<Videojuego> getVideojuego(@PathVariable("id") int id) {
-		System.out.println("Buscando Videojuego con id: " + id);
+	public void getVideojuego(@PathVariable("id") int id,
+			@RequestHeader(name=HttpHeaders.IF_NONE_MATCH,required=false) String ifNoneMatch,
+			HttpServletResponse respuesta) throws IOException {
+		Videojuego v = daoVideojuego.getById(id);
+		if(log.isDebugEnabled()) {
+			log.debug("evento=consulta id={} encontrado={}", id, v != null);
+		}
+		if(v != null) {
+			CacheRespuestas.VideojuegoCodificado codificado = cache.codificado(v);
+			respuesta.setHeader(HttpHeaders.ETAG, codificado.getEtag());
+			if(etags.coincide(ifNoneMatch, codificado.getEtag())) {
+				respuesta.setStatus(HttpServletResponse.SC_NOT_MODIFIED);//304 NOT MODIFIED
+				return;
+			}
+			respuesta.setStatus(HttpServletResponse.SC_OK);//200 OK
+			respuesta.setContentType(MediaType.APPLICATION_JSON_VALUE);
+			respuesta.setContentLength(codificado.getJson().length);
+			respuesta.getOutputStream().write(codificado.getJson());
+		}else {
+			respuesta.setStatus(HttpServletResponse.SC_NOT_FOUND);//404 NOT FOUND
+		}
+	}
+	
+	//GET VIDEOJUEGO POR ID EN SMILE
+	//Igual que el anterior, pero con "Accept: application/x-jackson-smile".
+	//Devolvemos el videojuego y el conversor de Smile de Spring lo serializa
+	@GetMapping(path="videojuegos/{id}",produces = APPLICATION_SMILE_VALUE)
+	public ResponseEntity<Videojuego> getVideojuegoSmile(@PathVariable("id") int id,
+			@RequestHeader(name=HttpHeaders.IF_NONE_MATCH,required=false) String ifNoneMatch) {
 		Videojuego v = daoVideojuego.getById(id);
+		if(log.isDebugEnabled()) {
+			log.debug("evento=consulta id={} encontrado={} formato=smile", id, v != null);
+		}
 		if(v != null) {
-			return new ResponseEntity<Videojuego>(v,HttpStatus.OK);//200 OK
+			HttpHeaders cabeceras = new HttpHeaders();
+			String etag = etags.etag(v.getVersion());
+			cabeceras.setETag(etag);
+			if(etags.coincide(ifNoneMatch, etag)) {
+				return new ResponseEntity<Videojuego>(cabeceras,HttpStatus.NOT_MODIFIED);//304 NOT MODIFIED
+			}
+			return new ResponseEntity<Videojuego>(v,cabeceras,HttpStatus.OK);//200 OK
 		}else {
 			return new ResponseEntity<Videojuego>(HttpStatus.NOT_FOUND);//404 NOT FOUND
 		}
@@ -94,21 +241,29 @@ public class ControladorVideojuego {
 	//Sin embargo, si el nombre del videojuego ya se encuentra dentro del set, 
 	//no se añadirá y se devolvera null y el codigo de respuesta 409 CONFLICT
 	
+	//Las escrituras devuelven un CompletableFuture: con el escritor unico
+	//(videojuegos.escritura=unico) el hilo de la peticion solo encola el
+	//cambio y queda libre, y la respuesta se envia cuando el hilo escritor lo
+	//ha aplicado. Sin el, el futuro ya viene completado
+	
 	//La URL para acceder a este metodo sería: 
 	//"http://localhost:8888/videojuegos" y el metodo a usar seria POST
 	//Pasandole el videojuego sin el ID dentro del body del HTTP request
-	@PostMapping(path="videojuegos",consumes=MediaType.APPLICATION_JSON_VALUE,
-			produces=MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<Videojuego> altaVideojuego(@RequestBody Videojuego v) {
-		System.out.println("altaVideojuego: objeto Videojuego: " + v);
-		Videojuego vRes = daoVideojuego.add(v); //El método para añadir un videojuego
-		if (vRes != null) {
-			return new ResponseEntity<Videojuego>(vRes,HttpStatus.CREATED);//201 CREATED
-		}
-		else {
-			return new ResponseEntity<Videojuego>(vRes,HttpStatus.CONFLICT);//409 CONFLICT
-		}
-		
+	@PostMapping(path="videojuegos",consumes={MediaType.APPLICATION_JSON_VALUE,APPLICATION_SMILE_VALUE},
+			produces={MediaType.APPLICATION_JSON_VALUE,APPLICATION_SMILE_VALUE})
+	public CompletableFuture<ResponseEntity<Videojuego>> altaVideojuego(@RequestBody Videojuego v) {
+		log.debug("evento=alta videojuego={}", v);//Solo con el nivel DEBUG activado
+		return daoVideojuego.addAsync(v).thenApply(vRes -> { //El método para añadir un videojuego
+			log.info("evento=alta id={} creado={}", vRes != null ? vRes.getId() : null, vRes != null);
+			if (vRes != null) {
+				HttpHeaders cabeceras = new HttpHeaders();
+				cabeceras.setETag(etags.etag(vRes.getVersion()));
+				return new ResponseEntity<Videojuego>(vRes,cabeceras,HttpStatus.CREATED);//201 CREATED
+			}
+			else {
+				return new ResponseEntity<Videojuego>(vRes,HttpStatus.CONFLICT);//409 CONFLICT
+			}
+		});
 	}
 	
 	//DAR DE BAJA UN VIDEOJUEGO POR ID (DELETE)
@@ -118,17 +273,25 @@ public class ControladorVideojuego {
 	//Si todo ha ido bien devolvemos el codigo de respuesta de 200 OK y
 	//Si no devolvemos 404 NOT FOUND
 	
+	//Si el cliente nos manda la cabecera If-Match con la ETag que leyo, solo
+	//borramos si el videojuego no ha cambiado desde entonces. Si ha cambiado
+	//devolvemos 412 PRECONDITION FAILED (concurrencia optimista)
+	
 	//La URL para acceder a este metodo sería: 
 	//"http://localhost:8888/videojuegos/ID" y el metodo a usar seria DELETE
 	@DeleteMapping(path="videojuegos/{id}")
-	public ResponseEntity<Videojuego> borrarVideojuego(@PathVariable("id") int id) {
-		System.out.println("ID a borrar: " + id);
-		boolean estado = daoVideojuego.delete(id);
-		if(estado) {
-			return new ResponseEntity<Videojuego>(HttpStatus.OK);//200 OK
-		}else {
-			return new ResponseEntity<Videojuego>(HttpStatus.NOT_FOUND);//404 NOT FOUND
-		}
+	public CompletableFuture<ResponseEntity<Videojuego>> borrarVideojuego(@PathVariable("id") int id,
+			@RequestHeader(name=HttpHeaders.IF_MATCH,required=false) String ifMatch) {
+		return daoVideojuego.deleteAsync(id, etags.versionEsperada(ifMatch)).thenApply(estado -> {
+			log.info("evento=baja id={} estado={}", id, estado);
+			if(estado==0) {
+				return new ResponseEntity<Videojuego>(HttpStatus.OK);//200 OK
+			}else if(estado==1) {
+				return new ResponseEntity<Videojuego>(HttpStatus.NOT_FOUND);//404 NOT FOUND
+			}else {
+				return new ResponseEntity<Videojuego>(HttpStatus.PRECONDITION_FAILED);//412 PRECONDITION FAILED
+			}
+		});
 	}
 	
 	//MODIFICAR UN VIDEOJUEGO POR ID (PUT)
@@ -139,27 +302,83 @@ public class ControladorVideojuego {
 	//Si todo ha ido bien devolvemos el codigo de respuesta de 200 OK,
 	//si el id del videojuego no existe devolvemos 404 NOT FOUND
 	//si el nombre ya existe en el set, devolvemos 409 CONFLICT
+	//si nos llega If-Match y el videojuego ha cambiado desde que el cliente
+	//lo leyo, devolvemos 412 PRECONDITION FAILED y no lo modificamos
+	//Si se modifica, devolvemos su nueva ETag
 	
 	//La URL para acceder a este metodo sería: 
 	//"http://localhost:8888/videojuegos/ID" y el metodo a usar seria PUT
 	//Pasandole el videojuego sin el ID dentro del body del HTTP request
-	@PutMapping(path="videojuegos/{id}",consumes = MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<Videojuego> modificarVideojuego(
+	@PutMapping(path="videojuegos/{id}",consumes = {MediaType.APPLICATION_JSON_VALUE,APPLICATION_SMILE_VALUE})
+	public CompletableFuture<ResponseEntity<Videojuego>> modificarVideojuego(
 			@PathVariable("id") int id, 
-			@RequestBody Videojuego v) {
-		System.out.println("ID a modificar: " + id);
-		System.out.println("Datos a modificar: " + v);
+			@RequestBody Videojuego v,
+			@RequestHeader(name=HttpHeaders.IF_MATCH,required=false) String ifMatch) {
+		log.debug("evento=modificacion id={} videojuego={}", id, v);
 		v.setId(id);
-		int estado = daoVideojuego.update(v);
-		if(estado==0) {
-			return new ResponseEntity<Videojuego>(HttpStatus.OK);//200 OK
-		}
-		if(estado==1){
-			return new ResponseEntity<Videojuego>(HttpStatus.NOT_FOUND);//404 NOT FOUND
-		}
-		else {
-			return new ResponseEntity<Videojuego>(HttpStatus.CONFLICT);//409 CONFLICT
-		}
+		return daoVideojuego.updateAsync(v, etags.versionEsperada(ifMatch)).thenApply(estado -> {
+			log.info("evento=modificacion id={} estado={}", id, estado);
+			if(estado==0) {
+				HttpHeaders cabeceras = new HttpHeaders();
+				cabeceras.setETag(etags.etag(v.getVersion()));
+				return new ResponseEntity<Videojuego>(cabeceras,HttpStatus.OK);//200 OK
+			}
+			if(estado==1){
+				return new ResponseEntity<Videojuego>(HttpStatus.NOT_FOUND);//404 NOT FOUND
+			}
+			if(estado==3){
+				return new ResponseEntity<Videojuego>(HttpStatus.PRECONDITION_FAILED);//412 PRECONDITION FAILED
+			}
+			else {
+				return new ResponseEntity<Videojuego>(HttpStatus.CONFLICT);//409 CONFLICT
+			}
+		});
+	}
+	
+	//OPERACIONES POR LOTES (POST, PUT y DELETE)
+	//Para sincronizar muchos videojuegos de golpe, en lugar de hacer una
+	//peticion por videojuego se pueden enviar todos en una sola peticion a
+	//"videojuegos/batch". El cuerpo puede ser un array JSON o NDJSON (un
+	//videojuego por linea) y lo vamos leyendo poco a poco con Jackson, de
+	//modo que no hace falta tener toda la peticion en memoria. Cada bloque de
+	//TAMANO_LOTE elementos se aplica en el DAO de una sola pasada.
+	
+	//La respuesta es 200 OK con un array con el resultado de cada elemento,
+	//en el mismo orden en el que nos llegaron: su ID, el estado ("creado",
+	//"modificado", "borrado", "conflicto" o "no encontrado") y el codigo HTTP
+	//que habria devuelto la peticion individual. Si el cuerpo no es JSON
+	//valido devolvemos 400 BAD REQUEST, pero los bloques anteriores al
+	//error ya se habran aplicado.
+	
+	//Las URL para acceder a estos metodos serían:
+	//POST "http://localhost:8888/videojuegos/batch" con los videojuegos sin ID
+	//PUT "http://localhost:8888/videojuegos/batch" con los videojuegos con su ID
+	//DELETE "http://localhost:8888/videojuegos/batch" con los IDs a borrar
+	@PostMapping(path="videojuegos/batch",
+			consumes={MediaType.APPLICATION_JSON_VALUE,MediaType.APPLICATION_NDJSON_VALUE,APPLICATION_SMILE_VALUE},
+			produces={MediaType.APPLICATION_JSON_VALUE,APPLICATION_SMILE_VALUE})
+	public ResponseEntity<List<ResultadoLote>> altaLote(InputStream cuerpo,
+			@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType tipo) {
+		return procesarLote("altaLote", cuerpo, tipo, Videojuego.class,
+				lote -> OperacionesLote.altas(daoVideojuego, lote));
+	}
+	
+	@PutMapping(path="videojuegos/batch",
+			consumes={MediaType.APPLICATION_JSON_VALUE,MediaType.APPLICATION_NDJSON_VALUE,APPLICATION_SMILE_VALUE},
+			produces={MediaType.APPLICATION_JSON_VALUE,APPLICATION_SMILE_VALUE})
+	public ResponseEntity<List<ResultadoLote>> modificarLote(InputStream cuerpo,
+			@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType tipo) {
+		return procesarLote("modificarLote", cuerpo, tipo, Videojuego.class,
+				lote -> OperacionesLote.modificaciones(daoVideojuego, lote));
+	}
+	
+	@DeleteMapping(path="videojuegos/batch",
+			consumes={MediaType.APPLICATION_JSON_VALUE,MediaType.APPLICATION_NDJSON_VALUE,APPLICATION_SMILE_VALUE},
+			produces={MediaType.APPLICATION_JSON_VALUE,APPLICATION_SMILE_VALUE})
+	public ResponseEntity<List<ResultadoLote>> borrarLote(InputStream cuerpo,
+			@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType tipo) {
+		return procesarLote("borrarLote", cuerpo, tipo, Integer.class,
+				lote -> OperacionesLote.bajas(daoVideojuego, lote));
 	}
 	
 	//LISTAR TODOS LOS VIDEOJUEGOS
@@ -173,25 +392,412 @@ public class ControladorVideojuego {
 	//toda la lista de videojuegos, en caso de que venga, haremos el filtrado
 	//por dicho nombre.
 	
+	//De la misma forma podemos filtrar por compañia ("compania"), por un rango
+	//de años ("annoMin" y "annoMax") o de notas ("notaMin" y "notaMax"), y 
+	//ordenar con "sort" (id, nombre, anno o nota; con un "-" delante para
+	//orden descendente). El DAO resuelve estas consultas con sus indices.
+	
+	//Con catalogos grandes conviene pedir la lista por paginas. Si nos llega
+	//el parametro "limit" devolvemos como mucho ese numero de videojuegos.
+	//Si ordenamos por ID y la pagina esta llena, en la cabecera 
+	//"X-Siguiente-Cursor" devolvemos el ID del ultimo videojuego, que el
+	//cliente nos pasara en el parametro "cursor" para pedir la siguiente pagina.
+	//Si algun parametro no es valido devolvemos 400 BAD REQUEST
+	
+	//La ETag del listado es la version de todo el catalogo: si el cliente nos
+	//manda en If-None-Match la ETag de su ultima peticion y el catalogo no ha
+	//cambiado desde entonces, contestamos 304 NOT MODIFIED sin hacer la consulta
+	//La respuesta se monta con el JSON de cada videojuego de la cache de
+	//respuestas, y el listado completo se guarda entero para cada version
+	//Si el cliente acepta gzip, el listado completo se envia ya comprimido
+	//(ver COMPRESION)
+	
 	//La URL para acceder a este metodo en caso de querer todas las videojuegos
 	//sería: 
 	//"http://localhost:8888/videojuegos" y el metodo a usar seria GET
 	//Si queremos filtrar por nombre entonces deberemos usar:
 	//"http://localhost:8888/videojuegos?nombre=NOMBRE_A_FILTRAR"
+	//Y si queremos paginar:
+	//"http://localhost:8888/videojuegos?limit=100&cursor=ULTIMO_ID"
+	//Por ejemplo, los 10 mejores juegos de Nintendo desde el año 2000:
+	//"http://localhost:8888/videojuegos?compania=Nintendo&annoMin=2000&sort=-nota&limit=10"
 	@GetMapping(path="videojuegos",produces = MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<HashSet<Videojuego>> listarVideojuegos(
-			@RequestParam(name="nombre",required=false) String nombre) {
-		HashSet<Videojuego> listaVideojuegos = null;
-		//Si no llega un nombre, devolvemos toda la lista
-		if(nombre == null) {
-			System.out.println("Listando los Videojuegos");
-			listaVideojuegos = daoVideojuego.list();			
-		}else {
-			System.out.println("Listando los videojuegos por nombre: " + nombre);
-			listaVideojuegos = daoVideojuego.listByNombre(nombre);
+	public ResponseEntity<byte[]> listarVideojuegos(
+			@RequestParam(name="nombre",required=false) String nombre,
+			@RequestParam(name="compania",required=false) String compania,
+			@RequestParam(name="annoMin",required=false) Integer annoMin,
+			@RequestParam(name="annoMax",required=false) Integer annoMax,
+			@RequestParam(name="notaMin",required=false) Integer notaMin,
+			@RequestParam(name="notaMax",required=false) Integer notaMax,
+			@RequestParam(name="sort",required=false) String orden,
+			@RequestParam(name="limit",required=false) Integer limite,
+			@RequestParam(name="cursor",required=false) Integer cursor,
+			@RequestHeader(name=HttpHeaders.IF_NONE_MATCH,required=false) String ifNoneMatch,
+			@RequestHeader(name=HttpHeaders.ACCEPT_ENCODING,required=false) String acceptEncoding) {
+		return listar(nombre, compania, annoMin, annoMax, notaMin, notaMax, orden, limite, cursor, ifNoneMatch,
+				(version, consulta, listaVideojuegos, cabeceras) -> consulta.isVacia() 
+						? listaCompleta(version, listaVideojuegos, acceptEncoding, cabeceras) 
+						: cache.lista(listaVideojuegos));
+	}
+	
+	//LISTAR TODOS LOS VIDEOJUEGOS EN SMILE
+	//Igual que el anterior, pero con "Accept: application/x-jackson-smile".
+	//Devolvemos la lista y el conversor de Smile de Spring la serializa
+	@GetMapping(path="videojuegos",produces = APPLICATION_SMILE_VALUE)
+	public ResponseEntity<Collection<Videojuego>> listarVideojuegosSmile(
+			@RequestParam(name="nombre",required=false) String nombre,
+			@RequestParam(name="compania",required=false) String compania,
+			@RequestParam(name="annoMin",required=false) Integer annoMin,
+			@RequestParam(name="annoMax",required=false) Integer annoMax,
+			@RequestParam(name="notaMin",required=false) Integer notaMin,
+			@RequestParam(name="notaMax",required=false) Integer notaMax,
+			@RequestParam(name="sort",required=false) String orden,
+			@RequestParam(name="limit",required=false) Integer limite,
+			@RequestParam(name="cursor",required=false) Integer cursor,
+			@RequestHeader(name=HttpHeaders.IF_NONE_MATCH,required=false) String ifNoneMatch) {
+		return listar(nombre, compania, annoMin, annoMax, notaMin, notaMax, orden, limite, cursor, ifNoneMatch,
+				(version, consulta, listaVideojuegos, cabeceras) -> listaVideojuegos);
+	}
+	
+	//LISTAR TODOS LOS VIDEOJUEGOS EN STREAMING (NDJSON)
+	//Si el cliente pide "application/x-ndjson" en la cabecera Accept, en lugar
+	//de construir todo el array JSON en memoria vamos escribiendo cada 
+	//videojuego en una linea segun recorremos el catalogo. Asi la memoria 
+	//usada no depende del tamaño de la respuesta (salvo si hay que ordenar
+	//por un campo sin indice) y el cliente empieza a recibir datos enseguida.
+	//Admite los mismos parametros que el listado normal.
+	
+	//La URL para acceder a este metodo es la misma que la del listado, pero
+	//con la cabecera "Accept: application/x-ndjson"
+	@GetMapping(path="videojuegos",produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> listarVideojuegosStreaming(
+			@RequestParam(name="nombre",required=false) String nombre,
+			@RequestParam(name="compania",required=false) String compania,
+			@RequestParam(name="annoMin",required=false) Integer annoMin,
+			@RequestParam(name="annoMax",required=false) Integer annoMax,
+			@RequestParam(name="notaMin",required=false) Integer notaMin,
+			@RequestParam(name="notaMax",required=false) Integer notaMax,
+			@RequestParam(name="sort",required=false) String orden,
+			@RequestParam(name="limit",required=false) Integer limite,
+			@RequestParam(name="cursor",required=false) Integer cursor,
+			@RequestHeader(name=HttpHeaders.IF_NONE_MATCH,required=false) String ifNoneMatch) {
+		if(limite != null && limite <= 0) {
+			return new ResponseEntity<StreamingResponseBody>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		HttpHeaders cabeceras = new HttpHeaders();
+		String etag = etags.etagCatalogo(daoVideojuego.getVersion());
+		cabeceras.setETag(etag);
+		if(etags.coincide(ifNoneMatch, etag)) {
+			return new ResponseEntity<StreamingResponseBody>(cabeceras,HttpStatus.NOT_MODIFIED);//304 NOT MODIFIED
+		}
+		log.info("evento=listado_streaming nombre={} compania={} orden={} limite={} cursor={}",
+				nombre, compania, orden, limite, cursor);
+		Stream<Videojuego> videojuegos;
+		try {
+			videojuegos = daoVideojuego.stream(
+					crearConsulta(nombre, compania, annoMin, annoMax, notaMin, notaMax, orden, limite, cursor));
+		}catch(IllegalArgumentException e) {
+			return new ResponseEntity<StreamingResponseBody>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		StreamingResponseBody cuerpo = salida -> {
+			try(SequenceWriter escritor = objectMapper.writer()
+					.withRootValueSeparator("\n").writeValues(salida)) {
+				Iterator<Videojuego> it = videojuegos.iterator();
+				for(long n = 0; it.hasNext(); n++) {
+					escritor.write(it.next());
+					if(n % 256 == 255) {
+						salida.flush();
+					}
+				}
+			}
+		};
+		cabeceras.setContentType(MediaType.APPLICATION_NDJSON);
+		return new ResponseEntity<StreamingResponseBody>(cuerpo,cabeceras,HttpStatus.OK);
+	}
+	
+	//AUTOCOMPLETAR
+	//Para la caja de busqueda de la tienda, que pregunta con cada tecla: 
+	//devuelve los videojuegos cuyo nombre mas se parece a lo escrito hasta
+	//ahora (10 si no se dice otro limite, como mucho 100). La ultima palabra
+	//puede estar a medias y se toleran faltas de ortografia y acentos, asi
+	//que "pokmon roj" encuentra "Pokémon Rojo". No lleva ETag: cada 
+	//consulta es distinta y la respuesta es pequeña. El log va en DEBUG
+	//porque llega una peticion por tecla
+	
+	//La URL para acceder a este metodo sería, por ejemplo:
+	//"http://localhost:8888/videojuegos/autocomplete?q=zeld&limit=5"
+	@GetMapping(path="videojuegos/autocomplete",produces={MediaType.APPLICATION_JSON_VALUE,APPLICATION_SMILE_VALUE})
+	public ResponseEntity<List<Videojuego>> autocompletar(
+			@RequestParam(name="q") String texto,
+			@RequestParam(name="limit",defaultValue="10") int limite) {
+		if(limite <= 0 || limite > LIMITE_AUTOCOMPLETAR) {
+			return new ResponseEntity<List<Videojuego>>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		List<Videojuego> sugerencias = daoVideojuego.autocompletar(texto, limite);
+		log.debug("evento=autocompletar q={} resultados={}", texto, sugerencias.size());
+		return new ResponseEntity<List<Videojuego>>(sugerencias,HttpStatus.OK);//200 OK
+	}
+	
+	//LOS MEJORES VIDEOJUEGOS (TOP-K)
+	//Los k mejores por nota (10 si no se dice), de todo el catalogo o de una
+	//compañia. El DAO los lee del final de un indice ordenado por nota, asi 
+	//que cuesta lo mismo con mil videojuegos que con millones. Como el 
+	//listado, lleva la version del catalogo como ETag
+	
+	//La URL para acceder a este metodo sería, por ejemplo:
+	//"http://localhost:8888/videojuegos/top?k=5&compania=Nintendo"
+	@GetMapping(path="videojuegos/top",produces={MediaType.APPLICATION_JSON_VALUE,APPLICATION_SMILE_VALUE})
+	public ResponseEntity<List<Videojuego>> mejoresVideojuegos(
+			@RequestParam(name="k",defaultValue="10") int k,
+			@RequestParam(name="compania",required=false) String compania,
+			@RequestHeader(name=HttpHeaders.IF_NONE_MATCH,required=false) String ifNoneMatch) {
+		if(k <= 0 || k > LIMITE_MAXIMO) {
+			return new ResponseEntity<List<Videojuego>>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		HttpHeaders cabeceras = new HttpHeaders();
+		String etag = etags.etagCatalogo(daoVideojuego.getVersion());
+		cabeceras.setETag(etag);
+		if(etags.coincide(ifNoneMatch, etag)) {
+			return new ResponseEntity<List<Videojuego>>(cabeceras,HttpStatus.NOT_MODIFIED);//304 NOT MODIFIED
+		}
+		List<Videojuego> mejores = daoVideojuego.top(k, compania);
+		log.info("evento=top k={} compania={} resultados={}", k, compania, mejores.size());
+		return new ResponseEntity<List<Videojuego>>(mejores,cabeceras,HttpStatus.OK);//200 OK
+	}
+	
+	//ESTADISTICAS POR COMPAÑIA O POR AÑO
+	//Para cada compañia (groupBy=compania) o año (groupBy=anno): cuantos 
+	//videojuegos tiene y la nota media, minima y maxima. El DAO mantiene
+	//estos agregados con cada cambio, asi que no se recorre el catalogo:
+	//el coste depende del numero de grupos
+	
+	//La URL para acceder a este metodo sería:
+	//"http://localhost:8888/videojuegos/stats?groupBy=anno"
+	@GetMapping(path="videojuegos/stats",produces={MediaType.APPLICATION_JSON_VALUE,APPLICATION_SMILE_VALUE})
+	public ResponseEntity<List<EstadisticasGrupo>> estadisticasVideojuegos(
+			@RequestParam(name="groupBy") String agrupacion,
+			@RequestHeader(name=HttpHeaders.IF_NONE_MATCH,required=false) String ifNoneMatch) {
+		HttpHeaders cabeceras = new HttpHeaders();
+		String etag = etags.etagCatalogo(daoVideojuego.getVersion());
+		cabeceras.setETag(etag);
+		if(etags.coincide(ifNoneMatch, etag)) {
+			return new ResponseEntity<List<EstadisticasGrupo>>(cabeceras,HttpStatus.NOT_MODIFIED);//304 NOT MODIFIED
+		}
+		List<EstadisticasGrupo> estadisticas = estadisticas(daoVideojuego, agrupacion);
+		if(estadisticas == null) {
+			return new ResponseEntity<List<EstadisticasGrupo>>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		log.info("evento=estadisticas agrupacion={} grupos={}", agrupacion, estadisticas.size());
+		return new ResponseEntity<List<EstadisticasGrupo>>(estadisticas,cabeceras,HttpStatus.OK);//200 OK
+	}
+	
+	//Las estadisticas de la agrupacion pedida, o null si no es valida
+	static List<EstadisticasGrupo> estadisticas(DaoVideojuego dao, String agrupacion) {
+		if("compania".equals(agrupacion)) {
+			return dao.estadisticasPorCompania();
+		}else if("anno".equals(agrupacion)) {
+			return dao.estadisticasPorAnno();
+		}
+		return null;
+	}
+	
+	//SUSCRIPCION A LOS CAMBIOS DEL CATALOGO (SERVER-SENT EVENTS)
+	//En lugar de volver a pedir el listado para ver si algo ha cambiado, el
+	//cliente se suscribe y recibe cada alta, modificacion y baja en cuanto
+	//ocurre, en orden. Cada evento lleva como id su secuencia, que es la 
+	//version del catalogo a la que da lugar, como nombre el tipo de cambio y
+	//como datos el CambioVideojuego en JSON (con el videojuego completo, asi
+	//que recibir dos veces el mismo cambio no estropea nada).
+	//Para no perderse nada, el cliente pide el listado, se queda con la 
+	//version de su ETag y se suscribe con "?since=<version>": recibe los
+	//cambios posteriores. Si se corta la conexion, el navegador reconecta 
+	//solo con la cabecera Last-Event-ID (el ultimo id recibido), que tiene
+	//preferencia sobre since. Sin ninguno de los dos, empieza por los cambios
+	//que ocurran a partir de ahora.
+	//Los cambios se guardan en un historial de tamaño fijo (HistorialCambios),
+	//asi que si la secuencia pedida es tan antigua que ya no esta, o es de 
+	//otra ejecucion del servidor, se devuelve 410 GONE y hay que volver a pedir
+	//el listado. Un cliente lento no hace esperar a nadie: si se queda tan 
+	//atras que sus cambios se sobrescriben, recibe un evento "resincronizar"
+	//y se cierra la suscripcion
+	
+	//La URL para acceder a este metodo seria:
+	//"http://localhost:8888/videojuegos/changes?since=N" y el metodo a usar seria GET
+	@GetMapping(path="videojuegos/changes",produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public ResponseEntity<SseEmitter> suscribirCambios(
+			@RequestParam(name="since",required=false) Long desde,
+			@RequestHeader(name="Last-Event-ID",required=false) Long ultimoEvento) {
+		HistorialCambios.Lector lector = historial.lector(secuenciaInicial(desde, ultimoEvento, historial.getSecuencia()));
+		if(lector == null) {
+			return new ResponseEntity<SseEmitter>(HttpStatus.GONE);//410 GONE
 		}
-		System.out.println(listaVideojuegos);
-		return new ResponseEntity<HashSet<Videojuego>>(listaVideojuegos,HttpStatus.OK);
-	}	
+		log.info("evento=suscripcion_cambios desde={} ultimoEvento={}", desde, ultimoEvento);
+		SseEmitter emisor = new SseEmitter();
+		new SuscripcionSse(historial, lector, emisor).iniciar();
+		return new ResponseEntity<SseEmitter>(emisor,HttpStatus.OK);
+	}
+	
+	//La secuencia a partir de la que se envian los cambios: la del ultimo
+	//evento recibido si el cliente esta reconectando, la que pide si no, y si
+	//tampoco pide ninguna, la actual
+	static long secuenciaInicial(Long desde, Long ultimoEvento, long actual) {
+		if(ultimoEvento != null) {
+			return ultimoEvento;
+		}
+		return desde != null ? desde : actual;
+	}
+	
+	//Lee el cuerpo de una peticion por lotes elemento a elemento (sirve igual
+	//para un array JSON que para NDJSON o una secuencia de valores Smile) y
+	//lo va aplicando en bloques
+	private <T> ResponseEntity<List<ResultadoLote>> procesarLote(String operacion, InputStream cuerpo,
+			MediaType formato, Class<T> tipo, Function<List<T>, List<ResultadoLote>> aplicar) {
+		List<ResultadoLote> resultados = new ArrayList<ResultadoLote>();
+		ObjectMapper lector = APPLICATION_SMILE.isCompatibleWith(formato) ? objectMapperSmile : objectMapper;
+		try(MappingIterator<T> it = lector.readerFor(tipo).readValues(cuerpo)) {
+			List<T> lote = new ArrayList<T>(TAMANO_LOTE);
+			while(it.hasNextValue()) {
+				lote.add(it.nextValue());
+				if(lote.size() == TAMANO_LOTE) {
+					resultados.addAll(aplicar.apply(lote));
+					lote.clear();
+				}
+			}
+			if(!lote.isEmpty()) {
+				resultados.addAll(aplicar.apply(lote));
+			}
+		}catch(IOException | RuntimeJsonMappingException e) {
+			log.warn("evento={} error=cuerpo_no_valido procesados={} causa=\"{}\"",
+					operacion, resultados.size(), e.getMessage());
+			return new ResponseEntity<List<ResultadoLote>>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		log.info("evento={} procesados={}", operacion, resultados.size());
+		return new ResponseEntity<List<ResultadoLote>>(resultados,HttpStatus.OK);//200 OK
+	}
+	
+	//El JSON del listado completo. Si es lo bastante grande para comprimirlo
+	//y el cliente acepta gzip, lo devolvemos ya comprimido de la cache
+	private byte[] listaCompleta(long version, Collection<Videojuego> listaVideojuegos, String acceptEncoding,
+			HttpHeaders cabeceras) {
+		byte[] json = cache.lista(version, listaVideojuegos);
+		if(compresion && json.length >= minimoCompresion.toBytes()) {
+			cabeceras.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+			if(aceptaGzip(acceptEncoding)) {
+				cabeceras.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+				return cache.listaComprimida(version, json);
+			}
+		}
+		return json;
+	}
+
+	//Parte comun del listado en JSON y en Smile: comprueba los parametros y la
+	//ETag, hace la consulta y calcula el cursor. Lo que va en el cuerpo de la
+	//respuesta lo decide cada formato
+	private <T> ResponseEntity<T> listar(String nombre, String compania, Integer annoMin, Integer annoMax,
+			Integer notaMin, Integer notaMax, String orden, Integer limite, Integer cursor, String ifNoneMatch,
+			CuerpoListado<T> cuerpo) {
+		if(limite != null && (limite <= 0 || limite > LIMITE_MAXIMO)) {
+			return new ResponseEntity<T>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		//La lista completa sale de una foto del catalogo y lleva exactamente su
+		//version. Las consultas leen la version antes: si cambia mientras tanto,
+		//el cliente vera una ETag antigua y volvera a pedir la lista
+		HttpHeaders cabeceras = new HttpHeaders();
+		FotoCatalogo foto = daoVideojuego.foto();
+		long version = foto.getVersion();
+		String etag = etags.etagCatalogo(version);
+		cabeceras.setETag(etag);
+		if(etags.coincide(ifNoneMatch, etag)) {
+			return new ResponseEntity<T>(cabeceras,HttpStatus.NOT_MODIFIED);//304 NOT MODIFIED
+		}
+		T respuesta;
+		Collection<Videojuego> listaVideojuegos = null;
+		ConsultaVideojuegos consulta;
+		try {
+			consulta = crearConsulta(nombre, compania, annoMin, annoMax, notaMin, notaMax, orden, limite, cursor);
+			//Si no llega ningun parametro, devolvemos toda la lista
+			if(consulta.isVacia()) {
+				listaVideojuegos = foto;
+			}else {
+				listaVideojuegos = daoVideojuego.list(consulta);
+			}
+			respuesta = cuerpo.crear(version, consulta, listaVideojuegos, cabeceras);
+		}catch(IllegalArgumentException e) {
+			return new ResponseEntity<T>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		//Nunca escribimos la lista entera: solo cuantos videojuegos devolvemos
+		log.info("evento=listado nombre={} compania={} orden={} limite={} cursor={} resultados={}",
+				nombre, compania, orden, limite, cursor, listaVideojuegos.size());
+		if(limite != null && listaVideojuegos.size() == limite 
+				&& consulta.getCampoOrden() == ConsultaVideojuegos.Campo.ID) {
+			List<Videojuego> pagina = (List<Videojuego>) listaVideojuegos;
+			cabeceras.set(CABECERA_CURSOR, String.valueOf(pagina.get(pagina.size() - 1).getId()));
+		}
+		return new ResponseEntity<T>(respuesta,cabeceras,HttpStatus.OK);
+	}
+	
+	//Convierte el resultado de la consulta del listado en el cuerpo de la
+	//respuesta, y puede añadir cabeceras
+	interface CuerpoListado<T> {
+		T crear(long version, ConsultaVideojuegos consulta, Collection<Videojuego> listaVideojuegos,
+				HttpHeaders cabeceras);
+	}
+	
+	//Comprueba si la cabecera Accept-Encoding admite gzip: con "gzip" o "*" y
+	//sin "q=0"
+	static boolean aceptaGzip(String acceptEncoding) {
+		if(acceptEncoding == null) {
+			return false;
+		}
+		Boolean comodin = null;
+		for(String codificacion : acceptEncoding.split(",")) {
+			String[] partes = codificacion.split(";");
+			String nombre = partes[0].trim();
+			boolean aceptada = true;
+			for(int i = 1; i < partes.length; i++) {
+				String parametro = partes[i].trim();
+				if(parametro.startsWith("q=")) {
+					try {
+						aceptada = Double.parseDouble(parametro.substring(2)) > 0;
+					}catch(NumberFormatException e) {
+						aceptada = false;
+					}
+				}
+			}
+			if(nombre.equalsIgnoreCase("gzip")) {
+				return aceptada;
+			}
+			if(nombre.equals("*")) {
+				comodin = aceptada;
+			}
+		}
+		return comodin != null && comodin;
+	}
+	
+	//En el modo cluster, las altas y los cambios de nombre reservan el nombre
+	//en el nodo que es su dueño (ver ClusterVideojuegos). Si ese nodo no
+	//responde, la escritura no se hace y devolvemos 502 BAD GATEWAY. En una
+	//peticion por lotes, los bloques anteriores ya se habran aplicado
+	@ExceptionHandler(NodoNoDisponibleException.class)
+	public ResponseEntity<Void> nodoNoDisponible(NodoNoDisponibleException e) {
+		log.warn("evento=nodo_no_disponible causa=\"{}\"", e.getMessage());
+		return new ResponseEntity<Void>(HttpStatus.BAD_GATEWAY);//502 BAD GATEWAY
+	}
+	
+	//Junta los parametros del listado en una consulta para el DAO
+	static ConsultaVideojuegos crearConsulta(String nombre, String compania, Integer annoMin,
+			Integer annoMax, Integer notaMin, Integer notaMax, String orden, Integer limite, Integer cursor) {
+		ConsultaVideojuegos consulta = new ConsultaVideojuegos();
+		consulta.setNombre(nombre);
+		consulta.setCompania(compania);
+		consulta.setAnnoMin(annoMin);
+		consulta.setAnnoMax(annoMax);
+		consulta.setNotaMin(notaMin);
+		consulta.setNotaMax(notaMax);
+		consulta.setOrden(orden);//Lanza IllegalArgumentException si no es valido
+		consulta.setLimite(limite);
+		consulta.setCursor(cursor);
+		return consulta;
+	}
 
 }
@@ -0,0 +1,483 @@
+package serviciosrest.controlador;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebInputException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import serviciosrest.modelo.entidad.CambioVideojuego;
+import serviciosrest.modelo.entidad.EstadisticasGrupo;
+import serviciosrest.modelo.entidad.ResultadoLote;
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.ConsultaVideojuegos;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+import serviciosrest.modelo.persistencia.FotoCatalogo;
+
+//Version reactiva del controlador (Spring WebFlux sobre Netty). Tiene los
+//mismos endpoints, con los mismos parametros, cabeceras y codigos de
+//respuesta que ControladorVideojuego, asi que los comentarios de alli sirven
+//tambien para este. Solo se arranca con la propiedad:
+//spring.main.web-application-type=reactive
+
+//En el modo servlet cada peticion ocupa un hilo de Tomcat mientras dura, y
+//cada conexion abierta cuenta contra su limite de conexiones. En el modo
+//reactivo unos pocos hilos (uno por nucleo) atienden todas las conexiones y
+//ninguna peticion puede bloquearlos, por lo que aguanta muchas mas
+//conexiones concurrentes con la misma memoria.
+
+//Las lecturas (consulta por ID y listados) van contra los indices en memoria
+//del DAO y no bloquean, asi que se hacen directamente en el hilo de Netty.
+//Las escrituras si pueden bloquear (esperan al fsync del registro de
+//escritura), por eso se ejecutan en Schedulers.boundedElastic() y el
+//controlador devuelve un Mono que se completa cuando han terminado.
+//Con el escritor unico (videojuegos.escritura=unico) las altas, bajas y
+//modificaciones individuales solo se encolan, asi que se piden desde el
+//hilo de Netty y el Mono se completa con el futuro del DAO.
+@ConditionalOnWebApplication(type=ConditionalOnWebApplication.Type.REACTIVE)
+@RestController
+public class ControladorVideojuegoReactivo {
+
+	@Autowired
+	private DaoVideojuego daoVideojuego;
+
+	private static final Logger log = LoggerFactory.getLogger(ControladorVideojuegoReactivo.class);
+
+	//Cache con el JSON de los videojuegos y del listado ya serializado
+	@Autowired
+	private CacheRespuestas cache;
+
+	//Generacion y comparacion de las ETag
+	@Autowired
+	private EtagsVideojuego etags;
+
+	//Historial de los ultimos cambios, para las suscripciones
+	@Autowired
+	private HistorialCambios historial;
+
+	//Compresion de las respuestas (ver ControladorVideojuego). Netty tampoco
+	//comprime las respuestas que ya llevan Content-Encoding
+	@Value("${server.compression.enabled:false}")
+	private boolean compresion;
+
+	@Value("${server.compression.min-response-size:2KB}")
+	private DataSize minimoCompresion;
+
+	//Numero maximo de videojuegos por pagina
+	private static final int LIMITE_MAXIMO = 10_000;
+
+	//Numero de elementos de una peticion por lotes que se aplican de una vez
+	private static final int TAMANO_LOTE = 1024;
+
+	/***********
+	 * METODOS *
+	 ***********/
+
+	//GET VIDEOJUEGO POR ID
+	//"http://localhost:8888/videojuegos/ID" con GET
+	@GetMapping(path="videojuegos/{id}",produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<byte[]> getVideojuego(@PathVariable("id") int id,
+			@RequestHeader(name=HttpHeaders.IF_NONE_MATCH,required=false) String ifNoneMatch) {
+		Videojuego v = daoVideojuego.getById(id);
+		if(log.isDebugEnabled()) {
+			log.debug("evento=consulta id={} encontrado={}", id, v != null);
+		}
+		if(v != null) {
+			//El JSON y la ETag, ya hechos, de la cache (como en el modo servlet)
+			CacheRespuestas.VideojuegoCodificado codificado = cache.codificado(v);
+			HttpHeaders cabeceras = new HttpHeaders();
+			cabeceras.setETag(codificado.getEtag());
+			if(etags.coincide(ifNoneMatch, codificado.getEtag())) {
+				return new ResponseEntity<byte[]>(cabeceras,HttpStatus.NOT_MODIFIED);//304 NOT MODIFIED
+			}
+			return new ResponseEntity<byte[]>(codificado.getJson(),cabeceras,HttpStatus.OK);//200 OK
+		}else {
+			return new ResponseEntity<byte[]>(HttpStatus.NOT_FOUND);//404 NOT FOUND
+		}
+	}
+
+	//GET VIDEOJUEGO POR ID EN SMILE
+	//Con "Accept: application/x-jackson-smile". El codificador de Smile de
+	//WebFlux serializa el videojuego
+	@GetMapping(path="videojuegos/{id}",produces = ControladorVideojuego.APPLICATION_SMILE_VALUE)
+	public ResponseEntity<Videojuego> getVideojuegoSmile(@PathVariable("id") int id,
+			@RequestHeader(name=HttpHeaders.IF_NONE_MATCH,required=false) String ifNoneMatch) {
+		Videojuego v = daoVideojuego.getById(id);
+		if(log.isDebugEnabled()) {
+			log.debug("evento=consulta id={} encontrado={} formato=smile", id, v != null);
+		}
+		if(v != null) {
+			HttpHeaders cabeceras = new HttpHeaders();
+			String etag = etags.etag(v.getVersion());
+			cabeceras.setETag(etag);
+			if(etags.coincide(ifNoneMatch, etag)) {
+				return new ResponseEntity<Videojuego>(cabeceras,HttpStatus.NOT_MODIFIED);//304 NOT MODIFIED
+			}
+			return new ResponseEntity<Videojuego>(v,cabeceras,HttpStatus.OK);//200 OK
+		}else {
+			return new ResponseEntity<Videojuego>(HttpStatus.NOT_FOUND);//404 NOT FOUND
+		}
+	}
+
+	//DAR DE ALTA UN VIDEOJUEGO (POST)
+	//"http://localhost:8888/videojuegos" con POST y el videojuego sin ID
+	@PostMapping(path="videojuegos",
+			consumes={MediaType.APPLICATION_JSON_VALUE,ControladorVideojuego.APPLICATION_SMILE_VALUE},
+			produces={MediaType.APPLICATION_JSON_VALUE,ControladorVideojuego.APPLICATION_SMILE_VALUE})
+	public Mono<ResponseEntity<Videojuego>> altaVideojuego(@RequestBody Videojuego v) {
+		log.debug("evento=alta videojuego={}", v);
+		return escrituraIndividual(() -> daoVideojuego.addAsync(v).thenApply(vRes -> {
+			log.info("evento=alta id={} creado={}", vRes != null ? vRes.getId() : null, vRes != null);
+			if(vRes != null) {
+				HttpHeaders cabeceras = new HttpHeaders();
+				cabeceras.setETag(etags.etag(vRes.getVersion()));
+				return new ResponseEntity<Videojuego>(vRes,cabeceras,HttpStatus.CREATED);//201 CREATED
+			}else {
+				return new ResponseEntity<Videojuego>(HttpStatus.CONFLICT);//409 CONFLICT
+			}
+		}));
+	}
+
+	//DAR DE BAJA UN VIDEOJUEGO POR ID (DELETE)
+	//"http://localhost:8888/videojuegos/ID" con DELETE
+	@DeleteMapping(path="videojuegos/{id}")
+	public Mono<ResponseEntity<Videojuego>> borrarVideojuego(@PathVariable("id") int id,
+			@RequestHeader(name=HttpHeaders.IF_MATCH,required=false) String ifMatch) {
+		int versionEsperada = etags.versionEsperada(ifMatch);
+		return escrituraIndividual(() -> daoVideojuego.deleteAsync(id, versionEsperada).thenApply(estado -> {
+			log.info("evento=baja id={} estado={}", id, estado);
+			if(estado==0) {
+				return new ResponseEntity<Videojuego>(HttpStatus.OK);//200 OK
+			}else if(estado==1) {
+				return new ResponseEntity<Videojuego>(HttpStatus.NOT_FOUND);//404 NOT FOUND
+			}else {
+				return new ResponseEntity<Videojuego>(HttpStatus.PRECONDITION_FAILED);//412 PRECONDITION FAILED
+			}
+		}));
+	}
+
+	//MODIFICAR UN VIDEOJUEGO POR ID (PUT)
+	//"http://localhost:8888/videojuegos/ID" con PUT y el videojuego sin ID
+	@PutMapping(path="videojuegos/{id}",
+			consumes = {MediaType.APPLICATION_JSON_VALUE,ControladorVideojuego.APPLICATION_SMILE_VALUE})
+	public Mono<ResponseEntity<Videojuego>> modificarVideojuego(
+			@PathVariable("id") int id,
+			@RequestBody Videojuego v,
+			@RequestHeader(name=HttpHeaders.IF_MATCH,required=false) String ifMatch) {
+		log.debug("evento=modificacion id={} videojuego={}", id, v);
+		v.setId(id);
+		int versionEsperada = etags.versionEsperada(ifMatch);
+		return escrituraIndividual(() -> daoVideojuego.updateAsync(v, versionEsperada).thenApply(estado -> {
+			log.info("evento=modificacion id={} estado={}", id, estado);
+			if(estado==0) {
+				HttpHeaders cabeceras = new HttpHeaders();
+				cabeceras.setETag(etags.etag(v.getVersion()));
+				return new ResponseEntity<Videojuego>(cabeceras,HttpStatus.OK);//200 OK
+			}else if(estado==1) {
+				return new ResponseEntity<Videojuego>(HttpStatus.NOT_FOUND);//404 NOT FOUND
+			}else if(estado==3) {
+				return new ResponseEntity<Videojuego>(HttpStatus.PRECONDITION_FAILED);//412 PRECONDITION FAILED
+			}else {
+				return new ResponseEntity<Videojuego>(HttpStatus.CONFLICT);//409 CONFLICT
+			}
+		}));
+	}
+
+	//OPERACIONES POR LOTES (POST, PUT y DELETE)
+	//"http://localhost:8888/videojuegos/batch" con un array JSON o NDJSON.
+	//WebFlux nos da el cuerpo como un Flux que va decodificando los elementos
+	//segun llegan, y los agrupamos en bloques de TAMANO_LOTE para el DAO
+	@PostMapping(path="videojuegos/batch",
+			consumes={MediaType.APPLICATION_JSON_VALUE,MediaType.APPLICATION_NDJSON_VALUE,
+					ControladorVideojuego.APPLICATION_SMILE_VALUE},
+			produces={MediaType.APPLICATION_JSON_VALUE,ControladorVideojuego.APPLICATION_SMILE_VALUE})
+	public Mono<ResponseEntity<List<ResultadoLote>>> altaLote(@RequestBody Flux<Videojuego> cuerpo) {
+		return procesarLote("altaLote", cuerpo, lote -> OperacionesLote.altas(daoVideojuego, lote));
+	}
+
+	@PutMapping(path="videojuegos/batch",
+			consumes={MediaType.APPLICATION_JSON_VALUE,MediaType.APPLICATION_NDJSON_VALUE,
+					ControladorVideojuego.APPLICATION_SMILE_VALUE},
+			produces={MediaType.APPLICATION_JSON_VALUE,ControladorVideojuego.APPLICATION_SMILE_VALUE})
+	public Mono<ResponseEntity<List<ResultadoLote>>> modificarLote(@RequestBody Flux<Videojuego> cuerpo) {
+		return procesarLote("modificarLote", cuerpo, lote -> OperacionesLote.modificaciones(daoVideojuego, lote));
+	}
+
+	@DeleteMapping(path="videojuegos/batch",
+			consumes={MediaType.APPLICATION_JSON_VALUE,MediaType.APPLICATION_NDJSON_VALUE,
+					ControladorVideojuego.APPLICATION_SMILE_VALUE},
+			produces={MediaType.APPLICATION_JSON_VALUE,ControladorVideojuego.APPLICATION_SMILE_VALUE})
+	public Mono<ResponseEntity<List<ResultadoLote>>> borrarLote(@RequestBody Flux<Integer> cuerpo) {
+		return procesarLote("borrarLote", cuerpo, lote -> OperacionesLote.bajas(daoVideojuego, lote));
+	}
+
+	//LISTAR TODOS LOS VIDEOJUEGOS
+	//"http://localhost:8888/videojuegos" con GET y los mismos parametros
+	//(nombre, compania, annoMin, annoMax, notaMin, notaMax, sort, limit y
+	//cursor) que en el modo servlet
+	@GetMapping(path="videojuegos",produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<byte[]> listarVideojuegos(
+			@RequestParam(name="nombre",required=false) String nombre,
+			@RequestParam(name="compania",required=false) String compania,
+			@RequestParam(name="annoMin",required=false) Integer annoMin,
+			@RequestParam(name="annoMax",required=false) Integer annoMax,
+			@RequestParam(name="notaMin",required=false) Integer notaMin,
+			@RequestParam(name="notaMax",required=false) Integer notaMax,
+			@RequestParam(name="sort",required=false) String orden,
+			@RequestParam(name="limit",required=false) Integer limite,
+			@RequestParam(name="cursor",required=false) Integer cursor,
+			@RequestHeader(name=HttpHeaders.IF_NONE_MATCH,required=false) String ifNoneMatch,
+			@RequestHeader(name=HttpHeaders.ACCEPT_ENCODING,required=false) String acceptEncoding) {
+		return listar(nombre, compania, annoMin, annoMax, notaMin, notaMax, orden, limite, cursor, ifNoneMatch,
+				(version, consulta, listaVideojuegos, cabeceras) -> consulta.isVacia()
+						? listaCompleta(version, listaVideojuegos, acceptEncoding, cabeceras) 
+						: cache.lista(listaVideojuegos));
+	}
+
+	//LISTAR TODOS LOS VIDEOJUEGOS EN SMILE
+	//Con "Accept: application/x-jackson-smile" y los mismos parametros
+	@GetMapping(path="videojuegos",produces = ControladorVideojuego.APPLICATION_SMILE_VALUE)
+	public ResponseEntity<Collection<Videojuego>> listarVideojuegosSmile(
+			@RequestParam(name="nombre",required=false) String nombre,
+			@RequestParam(name="compania",required=false) String compania,
+			@RequestParam(name="annoMin",required=false) Integer annoMin,
+			@RequestParam(name="annoMax",required=false) Integer annoMax,
+			@RequestParam(name="notaMin",required=false) Integer notaMin,
+			@RequestParam(name="notaMax",required=false) Integer notaMax,
+			@RequestParam(name="sort",required=false) String orden,
+			@RequestParam(name="limit",required=false) Integer limite,
+			@RequestParam(name="cursor",required=false) Integer cursor,
+			@RequestHeader(name=HttpHeaders.IF_NONE_MATCH,required=false) String ifNoneMatch) {
+		return listar(nombre, compania, annoMin, annoMax, notaMin, notaMax, orden, limite, cursor, ifNoneMatch,
+				(version, consulta, listaVideojuegos, cabeceras) -> listaVideojuegos);
+	}
+
+	//LISTAR TODOS LOS VIDEOJUEGOS EN STREAMING (NDJSON)
+	//Con "Accept: application/x-ndjson" devolvemos un Flux: WebFlux escribe
+	//cada videojuego en una linea segun lo va pidiendo la conexion, asi que
+	//un cliente lento no hace que carguemos todo el catalogo en memoria
+	@GetMapping(path="videojuegos",produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<Flux<Videojuego>> listarVideojuegosStreaming(
+			@RequestParam(name="nombre",required=false) String nombre,
+			@RequestParam(name="compania",required=false) String compania,
+			@RequestParam(name="annoMin",required=false) Integer annoMin,
+			@RequestParam(name="annoMax",required=false) Integer annoMax,
+			@RequestParam(name="notaMin",required=false) Integer notaMin,
+			@RequestParam(name="notaMax",required=false) Integer notaMax,
+			@RequestParam(name="sort",required=false) String orden,
+			@RequestParam(name="limit",required=false) Integer limite,
+			@RequestParam(name="cursor",required=false) Integer cursor,
+			@RequestHeader(name=HttpHeaders.IF_NONE_MATCH,required=false) String ifNoneMatch) {
+		if(limite != null && limite <= 0) {
+			return new ResponseEntity<Flux<Videojuego>>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		HttpHeaders cabeceras = new HttpHeaders();
+		String etag = etags.etagCatalogo(daoVideojuego.getVersion());
+		cabeceras.setETag(etag);
+		if(etags.coincide(ifNoneMatch, etag)) {
+			return new ResponseEntity<Flux<Videojuego>>(cabeceras,HttpStatus.NOT_MODIFIED);//304 NOT MODIFIED
+		}
+		log.info("evento=listado_streaming nombre={} compania={} orden={} limite={} cursor={}",
+				nombre, compania, orden, limite, cursor);
+		ConsultaVideojuegos consulta;
+		try {
+			consulta = ControladorVideojuego.crearConsulta(nombre, compania, annoMin, annoMax,
+					notaMin, notaMax, orden, limite, cursor);
+		}catch(IllegalArgumentException e) {
+			return new ResponseEntity<Flux<Videojuego>>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		cabeceras.setContentType(MediaType.APPLICATION_NDJSON);
+		return new ResponseEntity<Flux<Videojuego>>(
+				Flux.fromStream(() -> daoVideojuego.stream(consulta)),cabeceras,HttpStatus.OK);
+	}
+
+	//AUTOCOMPLETAR
+	//Como en ControladorVideojuego. El coste esta acotado y no depende del
+	//tamaño del catalogo, asi que se responde en el hilo de Netty
+	@GetMapping(path="videojuegos/autocomplete",produces={MediaType.APPLICATION_JSON_VALUE,ControladorVideojuego.APPLICATION_SMILE_VALUE})
+	public ResponseEntity<List<Videojuego>> autocompletar(
+			@RequestParam(name="q") String texto,
+			@RequestParam(name="limit",defaultValue="10") int limite) {
+		if(limite <= 0 || limite > ControladorVideojuego.LIMITE_AUTOCOMPLETAR) {
+			return new ResponseEntity<List<Videojuego>>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		List<Videojuego> sugerencias = daoVideojuego.autocompletar(texto, limite);
+		log.debug("evento=autocompletar q={} resultados={}", texto, sugerencias.size());
+		return new ResponseEntity<List<Videojuego>>(sugerencias,HttpStatus.OK);//200 OK
+	}
+
+	//LOS MEJORES VIDEOJUEGOS (TOP-K) Y ESTADISTICAS
+	//Como en ControladorVideojuego: salen de indices que el DAO mantiene con
+	//cada cambio y no recorren el catalogo, asi que no hace falta sacarlos
+	//del hilo de Netty
+	@GetMapping(path="videojuegos/top",
+			produces={MediaType.APPLICATION_JSON_VALUE,ControladorVideojuego.APPLICATION_SMILE_VALUE})
+	public ResponseEntity<List<Videojuego>> mejoresVideojuegos(
+			@RequestParam(name="k",defaultValue="10") int k,
+			@RequestParam(name="compania",required=false) String compania,
+			@RequestHeader(name=HttpHeaders.IF_NONE_MATCH,required=false) String ifNoneMatch) {
+		if(k <= 0 || k > LIMITE_MAXIMO) {
+			return new ResponseEntity<List<Videojuego>>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		HttpHeaders cabeceras = new HttpHeaders();
+		String etag = etags.etagCatalogo(daoVideojuego.getVersion());
+		cabeceras.setETag(etag);
+		if(etags.coincide(ifNoneMatch, etag)) {
+			return new ResponseEntity<List<Videojuego>>(cabeceras,HttpStatus.NOT_MODIFIED);//304 NOT MODIFIED
+		}
+		List<Videojuego> mejores = daoVideojuego.top(k, compania);
+		log.info("evento=top k={} compania={} resultados={}", k, compania, mejores.size());
+		return new ResponseEntity<List<Videojuego>>(mejores,cabeceras,HttpStatus.OK);//200 OK
+	}
+
+	@GetMapping(path="videojuegos/stats",
+			produces={MediaType.APPLICATION_JSON_VALUE,ControladorVideojuego.APPLICATION_SMILE_VALUE})
+	public ResponseEntity<List<EstadisticasGrupo>> estadisticasVideojuegos(
+			@RequestParam(name="groupBy") String agrupacion,
+			@RequestHeader(name=HttpHeaders.IF_NONE_MATCH,required=false) String ifNoneMatch) {
+		HttpHeaders cabeceras = new HttpHeaders();
+		String etag = etags.etagCatalogo(daoVideojuego.getVersion());
+		cabeceras.setETag(etag);
+		if(etags.coincide(ifNoneMatch, etag)) {
+			return new ResponseEntity<List<EstadisticasGrupo>>(cabeceras,HttpStatus.NOT_MODIFIED);//304 NOT MODIFIED
+		}
+		List<EstadisticasGrupo> estadisticas = ControladorVideojuego.estadisticas(daoVideojuego, agrupacion);
+		if(estadisticas == null) {
+			return new ResponseEntity<List<EstadisticasGrupo>>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		log.info("evento=estadisticas agrupacion={} grupos={}", agrupacion, estadisticas.size());
+		return new ResponseEntity<List<EstadisticasGrupo>>(estadisticas,cabeceras,HttpStatus.OK);//200 OK
+	}
+
+	//SUSCRIPCION A LOS CAMBIOS DEL CATALOGO (SERVER-SENT EVENTS)
+	//Los eventos se emiten segun los va pidiendo la conexion
+	//(SuscripcionReactiva), asi que un cliente lento no ocupa ningun hilo
+	@GetMapping(path="videojuegos/changes",produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public ResponseEntity<Flux<ServerSentEvent<CambioVideojuego>>> suscribirCambios(
+			@RequestParam(name="since",required=false) Long desde,
+			@RequestHeader(name="Last-Event-ID",required=false) Long ultimoEvento) {
+		HistorialCambios.Lector lector = historial.lector(
+				ControladorVideojuego.secuenciaInicial(desde, ultimoEvento, historial.getSecuencia()));
+		if(lector == null) {
+			return new ResponseEntity<Flux<ServerSentEvent<CambioVideojuego>>>(HttpStatus.GONE);//410 GONE
+		}
+		log.info("evento=suscripcion_cambios desde={} ultimoEvento={}", desde, ultimoEvento);
+		return new ResponseEntity<Flux<ServerSentEvent<CambioVideojuego>>>(
+				SuscripcionReactiva.flujo(historial, lector),HttpStatus.OK);
+	}
+
+	//El JSON del listado completo. Si es lo bastante grande para comprimirlo
+	//y el cliente acepta gzip, lo devolvemos ya comprimido de la cache
+	private byte[] listaCompleta(long version, Collection<Videojuego> listaVideojuegos, String acceptEncoding,
+			HttpHeaders cabeceras) {
+		byte[] json = cache.lista(version, listaVideojuegos);
+		if(compresion && json.length >= minimoCompresion.toBytes()) {
+			cabeceras.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+			if(ControladorVideojuego.aceptaGzip(acceptEncoding)) {
+				cabeceras.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+				return cache.listaComprimida(version, json);
+			}
+		}
+		return json;
+	}
+
+	//Parte comun del listado en JSON y en Smile (ver ControladorVideojuego)
+	private <T> ResponseEntity<T> listar(String nombre, String compania, Integer annoMin, Integer annoMax,
+			Integer notaMin, Integer notaMax, String orden, Integer limite, Integer cursor, String ifNoneMatch,
+			ControladorVideojuego.CuerpoListado<T> cuerpo) {
+		if(limite != null && (limite <= 0 || limite > LIMITE_MAXIMO)) {
+			return new ResponseEntity<T>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		HttpHeaders cabeceras = new HttpHeaders();
+		FotoCatalogo foto = daoVideojuego.foto();
+		long version = foto.getVersion();
+		String etag = etags.etagCatalogo(version);
+		cabeceras.setETag(etag);
+		if(etags.coincide(ifNoneMatch, etag)) {
+			return new ResponseEntity<T>(cabeceras,HttpStatus.NOT_MODIFIED);//304 NOT MODIFIED
+		}
+		T respuesta;
+		Collection<Videojuego> listaVideojuegos;
+		ConsultaVideojuegos consulta;
+		try {
+			consulta = ControladorVideojuego.crearConsulta(nombre, compania, annoMin, annoMax,
+					notaMin, notaMax, orden, limite, cursor);
+			if(consulta.isVacia()) {
+				listaVideojuegos = foto;
+			}else {
+				listaVideojuegos = daoVideojuego.list(consulta);
+			}
+			respuesta = cuerpo.crear(version, consulta, listaVideojuegos, cabeceras);
+		}catch(IllegalArgumentException e) {
+			return new ResponseEntity<T>(HttpStatus.BAD_REQUEST);//400 BAD REQUEST
+		}
+		log.info("evento=listado nombre={} compania={} orden={} limite={} cursor={} resultados={}",
+				nombre, compania, orden, limite, cursor, listaVideojuegos.size());
+		if(limite != null && listaVideojuegos.size() == limite
+				&& consulta.getCampoOrden() == ConsultaVideojuegos.Campo.ID) {
+			List<Videojuego> pagina = (List<Videojuego>) listaVideojuegos;
+			cabeceras.set(ControladorVideojuego.CABECERA_CURSOR,
+					String.valueOf(pagina.get(pagina.size() - 1).getId()));
+		}
+		return new ResponseEntity<T>(respuesta,cabeceras,HttpStatus.OK);
+	}
+
+	//Ejecuta una escritura en el DAO fuera de los hilos de Netty
+	private static <T> Mono<T> escritura(Callable<T> operacion) {
+		return Mono.fromCallable(operacion).subscribeOn(Schedulers.boundedElastic());
+	}
+
+	//Una escritura individual en el DAO: con el escritor unico solo se encola,
+	//y si no se hace (bloqueando) fuera de los hilos de Netty
+	private <T> Mono<T> escrituraIndividual(Supplier<CompletableFuture<T>> operacion) {
+		Mono<T> resultado = Mono.fromFuture(operacion);
+		return daoVideojuego.isEscritorUnico() ? resultado : resultado.subscribeOn(Schedulers.boundedElastic());
+	}
+
+	//Aplica el cuerpo de una peticion por lotes en bloques de TAMANO_LOTE, uno
+	//detras de otro y en el orden en que llegan. Si el cuerpo no es JSON
+	//valido devolvemos 400 BAD REQUEST (los bloques anteriores ya se han aplicado)
+	private <T> Mono<ResponseEntity<List<ResultadoLote>>> procesarLote(String operacion, Flux<T> cuerpo,
+			Function<List<T>, List<ResultadoLote>> aplicar) {
+		return cuerpo.buffer(TAMANO_LOTE)
+				.concatMap(lote -> escritura(() -> aplicar.apply(lote)))
+				.flatMapIterable(resultados -> resultados)
+				.collectList()
+				.map(resultados -> {
+					log.info("evento={} procesados={}", operacion, resultados.size());
+					return new ResponseEntity<List<ResultadoLote>>(resultados,HttpStatus.OK);//200 OK
+				})
+				.onErrorResume(e -> e instanceof ServerWebInputException || e instanceof DecodingException, e -> {
+					log.warn("evento={} error=cuerpo_no_valido causa=\"{}\"", operacion, e.getMessage());
+					return Mono.just(new ResponseEntity<List<ResultadoLote>>(HttpStatus.BAD_REQUEST));//400 BAD REQUEST
+				});
+	}
+
+}
@@ -0,0 +1,107 @@
+package serviciosrest.controlador;
+
+import org.springframework.stereotype.Component;
+
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+
+/**
+ * Genera y compara las ETag de las respuestas a partir de las versiones del
+ * {@link DaoVideojuego}. La usan los dos controladores (servlet y reactivo).
+ * 
+ * Las ETag son "INSTANCIA-VERSION". Las versiones vuelven a empezar al
+ * reiniciar la aplicacion, asi que la instancia evita que una ETag de antes
+ * del reinicio coincida con otra de despues para un contenido distinto.
+ * 
+ * Las de un videojuego son fuertes (sirven para If-Match). Las del catalogo
+ * (listados, top, estadisticas) son debiles: la misma version se sirve en
+ * JSON, comprimida con gzip o sin comprimir, y los bytes no son los mismos.
+ */
+@Component
+public class EtagsVideojuego {
+
+	//Identificador de esta ejecucion de la aplicacion
+	private final String instancia = Long.toString(System.currentTimeMillis(), 36);
+
+	/**
+	 * @param version la version de un videojuego o del catalogo
+	 * @return la ETag (fuerte, con comillas)
+	 */
+	public String etag(long version) {
+		return "\"" + instancia + "-" + version + "\"";
+	}
+
+	/**
+	 * @param version la version del catalogo
+	 * @return la ETag debil (W/ y comillas) de las respuestas del catalogo
+	 */
+	public String etagCatalogo(long version) {
+		return "W/\"" + instancia + "-" + version + "\"";
+	}
+
+	/**
+	 * Comprueba si alguna de las ETag de If-None-Match coincide (comparacion
+	 * debil: se ignora el prefijo W/ en las dos)
+	 * @param ifNoneMatch la cabecera, o null si no ha llegado
+	 * @param etag la ETag actual
+	 * @return true si el cliente ya tiene la version actual
+	 */
+	public boolean coincide(String ifNoneMatch, String etag) {
+		if(ifNoneMatch == null) {
+			return false;
+		}
+		//Se recorre la cabecera sin trocearla, para no crear cadenas en cada
+		//peticion condicional
+		int longitud = ifNoneMatch.length();
+		int desdeEtag = etag.startsWith("W/") ? 2 : 0;
+		int longitudEtag = etag.length() - desdeEtag;
+		for(int inicio = 0; inicio <= longitud; ) {
+			int fin = ifNoneMatch.indexOf(',', inicio);
+			if(fin < 0) {
+				fin = longitud;
+			}
+			int desde = inicio;
+			int hasta = fin;
+			while(desde < hasta && ifNoneMatch.charAt(desde) <= ' ') {
+				desde++;
+			}
+			while(hasta > desde && ifNoneMatch.charAt(hasta - 1) <= ' ') {
+				hasta--;
+			}
+			if(ifNoneMatch.startsWith("W/", desde)) {
+				desde += 2;
+			}
+			int n = hasta - desde;
+			if((n == 1 && ifNoneMatch.charAt(desde) == '*')
+					|| (n == longitudEtag && ifNoneMatch.regionMatches(desde, etag, desdeEtag, n))) {
+				return true;
+			}
+			inicio = fin + 1;
+		}
+		return false;
+	}
+
+	/**
+	 * Convierte la cabecera If-Match en la version que el DAO tiene que
+	 * comprobar. Sin cabecera o con "*" vale cualquiera; una ETag debil, de
+	 * otra instancia o mal formada no coincide con ninguna version (la 0)
+	 * @param ifMatch la cabecera, o null si no ha llegado
+	 * @return la version esperada
+	 */
+	public int versionEsperada(String ifMatch) {
+		if(ifMatch == null || ifMatch.trim().equals("*")) {
+			return DaoVideojuego.CUALQUIER_VERSION;
+		}
+		String prefijo = "\"" + instancia + "-";
+		for(String candidata : ifMatch.split(",")) {
+			candidata = candidata.trim();
+			if(candidata.startsWith(prefijo) && candidata.endsWith("\"")) {
+				try {
+					return Integer.parseInt(candidata.substring(prefijo.length(), candidata.length() - 1));
+				}catch(NumberFormatException e) {
+					//No es una ETag nuestra, probamos con la siguiente
+				}
+			}
+		}
+		return 0;
+	}
+}
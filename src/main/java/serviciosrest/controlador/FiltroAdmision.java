@@ -0,0 +1,94 @@
+package serviciosrest.controlador;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Aplica el {@link ControlAdmision} en el modo servlet, antes que el resto
+ * de filtros de la aplicacion pero despues del de las metricas, para que las
+ * peticiones rechazadas tambien cuenten en http.server.requests. Las
+ * peticiones asincronas (streaming) liberan su sitio cuando terminan de
+ * verdad, no cuando el controlador devuelve la respuesta. Las que llegan de
+ * otro nodo del cluster ({@link ClusterVideojuegos#esReenvio}) ya se
+ * admitieron en el nodo que las recibio; sin cluster, la cabecera de
+ * reenvio no cambia nada.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@ConditionalOnProperty(name="videojuegos.admision.habilitada", havingValue="true")
+@ConditionalOnWebApplication(type=ConditionalOnWebApplication.Type.SERVLET)
+public class FiltroAdmision extends OncePerRequestFilter {
+
+	private final ControlAdmision control;
+	//Solo en el modo cluster
+	private final ClusterVideojuegos cluster;
+
+	public FiltroAdmision(ControlAdmision control, Optional<ClusterVideojuegos> cluster) {
+		this.control = control;
+		this.cluster = cluster.orElse(null);
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest peticion, HttpServletResponse respuesta, FilterChain cadena)
+			throws ServletException, IOException {
+		String ruta = peticion.getRequestURI().substring(peticion.getContextPath().length());
+		int coste = ControlAdmision.coste(peticion.getMethod(), ruta, peticion.getQueryString() != null);
+		if(coste == 0 || (cluster != null && cluster.esReenvio(peticion))) {
+			cadena.doFilter(peticion, respuesta);
+			return;
+		}
+		ControlAdmision.Admision admision = control.admitir(peticion.getRemoteAddr(), coste,
+				ControlAdmision.limitaConcurrencia(ruta));
+		if(admision.getResultado() != ControlAdmision.Resultado.ADMITIDA) {
+			respuesta.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(admision.getReintentar()));
+			respuesta.setStatus(admision.getCodigo());//429 TOO MANY REQUESTS o 503 SERVICE UNAVAILABLE
+			return;
+		}
+		boolean asincrona = false;
+		try {
+			cadena.doFilter(peticion, respuesta);
+			if(peticion.isAsyncStarted()) {
+				asincrona = true;
+				peticion.getAsyncContext().addListener(new AsyncListener() {
+					@Override
+					public void onComplete(AsyncEvent evento) {
+						control.terminar(admision, respuesta.getStatus() >= 500);
+					}
+
+					@Override
+					public void onTimeout(AsyncEvent evento) {
+						//Despues del timeout llega onComplete
+					}
+
+					@Override
+					public void onError(AsyncEvent evento) {
+						//Despues del error llega onComplete
+					}
+
+					@Override
+					public void onStartAsync(AsyncEvent evento) {
+					}
+				});
+			}
+		}finally {
+			if(!asincrona) {
+				control.terminar(admision, respuesta.getStatus() >= 500);
+			}
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package serviciosrest.controlador;
+
+import java.net.InetSocketAddress;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Aplica el {@link ControlAdmision} en el modo reactivo. La peticion libera
+ * su sitio cuando termina de escribirse la respuesta (o se cancela), asi que
+ * el streaming cuenta mientras dura.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@ConditionalOnProperty(name="videojuegos.admision.habilitada", havingValue="true")
+@ConditionalOnWebApplication(type=ConditionalOnWebApplication.Type.REACTIVE)
+public class FiltroAdmisionReactivo implements WebFilter {
+
+	private final ControlAdmision control;
+
+	public FiltroAdmisionReactivo(ControlAdmision control) {
+		this.control = control;
+	}
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange intercambio, WebFilterChain cadena) {
+		ServerHttpRequest peticion = intercambio.getRequest();
+		String ruta = peticion.getPath().pathWithinApplication().value();
+		int coste = ControlAdmision.coste(peticion.getMethodValue(), ruta, !peticion.getQueryParams().isEmpty());
+		if(coste == 0) {
+			return cadena.filter(intercambio);
+		}
+		InetSocketAddress direccion = peticion.getRemoteAddress();
+		String cliente = direccion != null ? direccion.getAddress().getHostAddress() : "desconocido";
+		ControlAdmision.Admision admision = control.admitir(cliente, coste, ControlAdmision.limitaConcurrencia(ruta));
+		ServerHttpResponse respuesta = intercambio.getResponse();
+		if(admision.getResultado() != ControlAdmision.Resultado.ADMITIDA) {
+			respuesta.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(admision.getReintentar()));
+			respuesta.setStatusCode(HttpStatus.valueOf(admision.getCodigo()));//429 o 503
+			return respuesta.setComplete();
+		}
+		return cadena.filter(intercambio).doFinally(senal -> control.terminar(admision,
+				respuesta.getStatusCode() != null && respuesta.getStatusCode().is5xxServerError()));
+	}
+}
@@ -0,0 +1,257 @@
+package serviciosrest.controlador;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.ConsultaVideojuegos;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+
+/**
+ * <p>Filtro del modo cluster ({@link ClusterVideojuegos}), delante de
+ * {@link ControladorVideojuego}:</p>
+ * <ul>
+ * <li>GET, PUT y DELETE de /videojuegos/{id}: si el ID es de otro nodo, se
+ * reenvia la peticion tal cual a ese nodo y se devuelve su respuesta (con su
+ * ETag, que solo vale en ese nodo).</li>
+ * <li>GET /videojuegos: se hace la consulta en este nodo y en todos los
+ * demas a la vez, y se juntan los resultados con el mismo orden y limite
+ * (scatter-gather). El cursor sigue funcionando porque es un ID. El listado
+ * del cluster no lleva ETag.</li>
+ * <li>POST y DELETE /cluster/nombres (solo entre nodos): reserva y libera
+ * un nombre en este nodo, si es su dueño en el anillo. Las altas y los
+ * cambios de nombre, sueltos o por lotes, reservan el nombre en su dueño
+ * antes de escribir (ver {@link ClusterVideojuegos}).</li>
+ * </ul>
+ * <p>Las peticiones que llegan de otro nodo (con la cabecera
+ * {@link ClusterVideojuegos#CABECERA_REENVIO}, desde la direccion de un
+ * nodo) no se tocan. Las operaciones
+ * por lotes, la suscripcion a cambios, los mejores (/videojuegos/top) y las
+ * estadisticas (/videojuegos/stats) actuan solo sobre la particion del
+ * nodo que las recibe. Si otro nodo no responde se devuelve 502 BAD
+ * GATEWAY.</p>
+ */
+@Component
+@ConditionalOnProperty("videojuegos.cluster.nodos")
+@ConditionalOnWebApplication(type=ConditionalOnWebApplication.Type.SERVLET)
+public class FiltroCluster extends OncePerRequestFilter {
+
+	private static final Logger log = LoggerFactory.getLogger(FiltroCluster.class);
+
+	private static final Pattern POR_ID = Pattern.compile("/videojuegos/(\\d{1,9})");
+
+	//Cabeceras que se copian al reenviar una peticion y su respuesta. El
+	//resto (Host, Content-Length, Connection...) son de cada conexion
+	private static final List<String> CABECERAS_PETICION = List.of(HttpHeaders.ACCEPT,
+			HttpHeaders.ACCEPT_ENCODING, HttpHeaders.CONTENT_TYPE, HttpHeaders.IF_MATCH, HttpHeaders.IF_NONE_MATCH);
+	private static final List<String> CABECERAS_RESPUESTA = List.of(HttpHeaders.CONTENT_TYPE,
+			HttpHeaders.CONTENT_ENCODING, HttpHeaders.ETAG, HttpHeaders.VARY, HttpHeaders.LOCATION);
+
+	private static final List<MediaType> FORMATOS_LISTADO = List.of(MediaType.APPLICATION_JSON,
+			MediaType.APPLICATION_NDJSON, ControladorVideojuego.APPLICATION_SMILE);
+
+	private final ClusterVideojuegos cluster;
+	private final DaoVideojuego dao;
+	private final ObjectMapper objectMapper;
+	private final ObjectMapper objectMapperSmile = Jackson2ObjectMapperBuilder.smile().build();
+
+	public FiltroCluster(ClusterVideojuegos cluster, DaoVideojuego dao, ObjectMapper objectMapper) {
+		this.cluster = cluster;
+		this.dao = dao;
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest peticion, HttpServletResponse respuesta, FilterChain cadena)
+			throws ServletException, IOException {
+		String ruta = peticion.getRequestURI().substring(peticion.getContextPath().length());
+		if(cluster.esReenvio(peticion)) {
+			if(ClusterVideojuegos.RUTA_NOMBRES.equals(ruta)) {
+				reservaNombre(peticion, respuesta);
+			}else {
+				cadena.doFilter(peticion, respuesta);
+			}
+			return;
+		}
+		String metodo = peticion.getMethod();
+		try {
+			Matcher porId = POR_ID.matcher(ruta);
+			if(porId.matches()) {
+				String propietario = cluster.propietario(Integer.parseInt(porId.group(1)));
+				if(propietario.equals(cluster.getNodo())) {
+					cadena.doFilter(peticion, respuesta);
+				}else {
+					reenviar(propietario, ruta, peticion, respuesta);
+				}
+			}else if("/videojuegos".equals(ruta) && "GET".equals(metodo)) {
+				listar(peticion, respuesta);
+			}else {
+				cadena.doFilter(peticion, respuesta);
+			}
+		}catch(IOException e) {
+			if(respuesta.isCommitted()) {
+				throw e;
+			}
+			log.warn("evento=cluster error=nodo_no_disponible ruta={} causa=\"{}\"", ruta, e.toString());
+			respuesta.sendError(HttpStatus.BAD_GATEWAY.value());//502 BAD GATEWAY
+		}
+	}
+
+	//Reenvia la peticion al nodo dueño y copia su respuesta
+	private void reenviar(String nodo, String ruta, HttpServletRequest peticion, HttpServletResponse respuesta)
+			throws IOException {
+		String consulta = peticion.getQueryString();
+		HttpRequest.Builder reenvio = cluster.peticion(nodo, ruta + (consulta != null ? "?" + consulta : ""));
+		for(String cabecera : CABECERAS_PETICION) {
+			for(String valor : Collections.list(peticion.getHeaders(cabecera))) {
+				reenvio.header(cabecera, valor);
+			}
+		}
+		byte[] cuerpo = peticion.getInputStream().readAllBytes();
+		reenvio.method(peticion.getMethod(), cuerpo.length == 0 ? HttpRequest.BodyPublishers.noBody()
+				: HttpRequest.BodyPublishers.ofByteArray(cuerpo));
+		HttpResponse<byte[]> r;
+		try {
+			r = cluster.enviar(reenvio).join();
+		}catch(CompletionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+		respuesta.setStatus(r.statusCode());
+		for(String cabecera : CABECERAS_RESPUESTA) {
+			for(String valor : r.headers().allValues(cabecera)) {
+				respuesta.addHeader(cabecera, valor);
+			}
+		}
+		respuesta.getOutputStream().write(r.body());
+	}
+
+	//Junta el listado de todos los nodos
+	private void listar(HttpServletRequest peticion, HttpServletResponse respuesta) throws IOException {
+		MediaType formato = formato(peticion.getHeader(HttpHeaders.ACCEPT));
+		ConsultaVideojuegos consulta;
+		try {
+			consulta = ControladorVideojuego.crearConsulta(peticion.getParameter("nombre"),
+					peticion.getParameter("compania"), entero(peticion, "annoMin"), entero(peticion, "annoMax"),
+					entero(peticion, "notaMin"), entero(peticion, "notaMax"), peticion.getParameter("sort"),
+					entero(peticion, "limit"), entero(peticion, "cursor"));
+		}catch(IllegalArgumentException e) {
+			respuesta.sendError(HttpStatus.BAD_REQUEST.value());//400 BAD REQUEST
+			return;
+		}
+		Integer limite = consulta.getLimite();
+		if(formato == null || (limite != null && (limite <= 0 || limite > ControladorVideojuego.LIMITE_MAXIMO))) {
+			respuesta.sendError(formato == null ? HttpStatus.NOT_ACCEPTABLE.value() : HttpStatus.BAD_REQUEST.value());
+			return;
+		}
+		//Cada nodo aplica los filtros, el orden, el cursor y el limite a su
+		//particion, asi que los primeros del total estan entre los que devuelven
+		List<Videojuego> lista = cluster.listarOtros(peticion.getQueryString());
+		lista.addAll(consulta.isVacia() ? dao.list() : dao.list(consulta));
+		lista.sort(consulta.comparador());
+		if(limite != null && lista.size() > limite) {
+			lista = new ArrayList<Videojuego>(lista.subList(0, limite));
+		}
+		log.info("evento=listado_cluster nodos={} resultados={}", cluster.getOtros().size() + 1, lista.size());
+		if(limite != null && lista.size() == limite && consulta.getCampoOrden() == ConsultaVideojuegos.Campo.ID) {
+			respuesta.setHeader(ControladorVideojuego.CABECERA_CURSOR,
+					String.valueOf(lista.get(lista.size() - 1).getId()));
+		}
+		respuesta.setStatus(HttpStatus.OK.value());
+		respuesta.setContentType(formato.toString());
+		if(MediaType.APPLICATION_NDJSON.equals(formato)) {
+			try(SequenceWriter escritor = objectMapper.writer().withRootValueSeparator("\n")
+					.writeValues(respuesta.getOutputStream())) {
+				escritor.writeAll(lista);
+			}
+		}else {
+			ObjectMapper mapper = ControladorVideojuego.APPLICATION_SMILE.equals(formato) ? objectMapperSmile
+					: objectMapper;
+			respuesta.getOutputStream().write(mapper.writeValueAsBytes(lista));
+		}
+	}
+
+	//Reserva (POST) o libera (DELETE) un nombre del que este nodo es dueño,
+	//a peticion de otro nodo: 200 OK si queda reservado o liberado, 409
+	//CONFLICT si lo usa otro videojuego
+	private void reservaNombre(HttpServletRequest peticion, HttpServletResponse respuesta) throws IOException {
+		String nombre = peticion.getParameter("nombre");
+		Integer id;
+		try {
+			id = entero(peticion, "id");
+		}catch(IllegalArgumentException e) {
+			id = null;
+		}
+		if(nombre == null || id == null) {
+			respuesta.sendError(HttpStatus.BAD_REQUEST.value());//400 BAD REQUEST
+			return;
+		}
+		if("DELETE".equals(peticion.getMethod())) {
+			cluster.liberarPropio(nombre, id);
+			respuesta.setStatus(HttpStatus.OK.value());//200 OK
+		}else if("POST".equals(peticion.getMethod())) {
+			try {
+				respuesta.setStatus(cluster.reservarPropio(nombre, id) ? HttpStatus.OK.value()//200 OK
+						: HttpStatus.CONFLICT.value());//409 CONFLICT
+			}catch(IOException e) {
+				log.warn("evento=cluster error=nodo_no_disponible ruta={} causa=\"{}\"",
+						ClusterVideojuegos.RUTA_NOMBRES, e.toString());
+				respuesta.sendError(HttpStatus.BAD_GATEWAY.value());//502 BAD GATEWAY
+			}
+		}else {
+			respuesta.sendError(HttpStatus.METHOD_NOT_ALLOWED.value());//405 METHOD NOT ALLOWED
+		}
+	}
+
+	//El primer formato de FORMATOS_LISTADO que acepta el cliente, por orden
+	//de preferencia, o null si no acepta ninguno
+	private static MediaType formato(String accept) {
+		List<MediaType> aceptados;
+		try {
+			aceptados = accept == null ? List.of(MediaType.ALL) : MediaType.parseMediaTypes(accept);
+		}catch(InvalidMediaTypeException e) {
+			return null;
+		}
+		aceptados = new ArrayList<MediaType>(aceptados);
+		MediaType.sortBySpecificityAndQuality(aceptados);
+		for(MediaType aceptado : aceptados) {
+			for(MediaType formato : FORMATOS_LISTADO) {
+				if(aceptado.isCompatibleWith(formato)) {
+					return formato;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static Integer entero(HttpServletRequest peticion, String parametro) {
+		String valor = peticion.getParameter(parametro);
+		return valor == null ? null : Integer.valueOf(valor);//NumberFormatException es IllegalArgumentException
+	}
+}
@@ -0,0 +1,170 @@
+package serviciosrest.controlador;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import serviciosrest.modelo.entidad.CambioVideojuego;
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+import serviciosrest.modelo.persistencia.OyenteCambios;
+
+/**
+ * <p>Historial de los ultimos cambios del catalogo, para los clientes que se
+ * suscriben a GET /videojuegos/changes en lugar de volver a pedir el listado
+ * completo.</p>
+ * <p>Cada cambio se guarda con la version del catalogo que le ha dado lugar
+ * (su secuencia), en un buffer circular de tamaño fijo (propiedad
+ * {@code videojuegos.cambios.capacidad}): la memoria esta acotada y un cambio
+ * nuevo sobrescribe el de hace {@code capacidad} versiones. Guardar un cambio
+ * no bloquea ni espera a los suscriptores; solo les avisa para que lean
+ * cuando puedan, cada uno a su ritmo con su propio {@link Lector}. Si uno se
+ * queda tan atras que sus cambios se han sobrescrito, recibe un cambio
+ * {@link CambioVideojuego#RESINCRONIZAR} y tiene que volver a pedir el
+ * listado.</p>
+ */
+@Component
+public class HistorialCambios implements OyenteCambios {
+
+	private final DaoVideojuego dao;
+	private final AtomicReferenceArray<CambioVideojuego> cambios;
+	private final int mascara;
+	private final List<Runnable> suscriptores = new CopyOnWriteArrayList<>();
+	//La version del catalogo cuando empezamos a guardar cambios: los
+	//anteriores no estan en el historial
+	private final long inicio;
+
+	public HistorialCambios(DaoVideojuego dao, MeterRegistry metricas,
+			@Value("${videojuegos.cambios.capacidad:65536}") int capacidad) {
+		if(capacidad < 2) {
+			throw new IllegalArgumentException("videojuegos.cambios.capacidad debe ser al menos 2");
+		}
+		//Redondeamos a una potencia de 2 para calcular la posicion con una mascara
+		int tamano = Integer.highestOneBit(capacidad - 1) << 1;
+		this.dao = dao;
+		this.cambios = new AtomicReferenceArray<>(tamano);
+		this.mascara = tamano - 1;
+		Gauge.builder("videojuegos.cambios.suscriptores", suscriptores, List::size)
+			.description("Clientes suscritos a los cambios del catalogo")
+			.register(metricas);
+		//Primero nos registramos y luego leemos la version: asi puede sobrar
+		//algun cambio anterior al inicio, pero nunca falta uno posterior
+		dao.addOyente(this);
+		this.inicio = dao.getVersion();
+	}
+
+	/**
+	 * @param desde la ultima secuencia que tiene el cliente (la version del
+	 * catalogo de su listado, o la del ultimo cambio que recibio)
+	 * @return un lector que empieza en el cambio siguiente a {@code desde}, o
+	 * null si esos cambios ya no estan en el historial (o todavia no han
+	 * pasado) y el cliente tiene que volver a pedir el listado
+	 */
+	public Lector lector(long desde) {
+		long actual = dao.getVersion();
+		if(desde < inicio || desde > actual || actual - desde > cambios.length()) {
+			return null;
+		}
+		CambioVideojuego siguiente = cambios.get(posicion(desde + 1));
+		if(siguiente != null && siguiente.getSecuencia() > desde + 1) {
+			return null;
+		}
+		return new Lector(desde + 1);
+	}
+
+	/**
+	 * Registra un aviso que se ejecutara despues de guardar cada cambio, en el
+	 * hilo que lo ha hecho: tiene que ser rapido y no lanzar excepciones (lo
+	 * normal es que solo programe la lectura en otro hilo)
+	 * @param aviso el aviso
+	 */
+	public void suscribir(Runnable aviso) {
+		suscriptores.add(aviso);
+	}
+
+	/**
+	 * @param aviso un aviso registrado con {@link #suscribir(Runnable)}
+	 */
+	public void cancelar(Runnable aviso) {
+		suscriptores.remove(aviso);
+	}
+
+	/**
+	 * @return la secuencia del ultimo cambio
+	 */
+	public long getSecuencia() {
+		return dao.getVersion();
+	}
+
+	@Override
+	public void cambio(long version, Videojuego anterior, Videojuego nuevo) {
+		if(anterior == null) {
+			guardar(new CambioVideojuego(version, CambioVideojuego.ALTA, nuevo.getId(), nuevo));
+		}else if(nuevo == null) {
+			guardar(new CambioVideojuego(version, CambioVideojuego.BAJA, anterior.getId(), null));
+		}else {
+			guardar(new CambioVideojuego(version, CambioVideojuego.MODIFICACION, nuevo.getId(), nuevo));
+		}
+	}
+
+	@Override
+	public void recarga(long version) {
+		guardar(new CambioVideojuego(version, CambioVideojuego.RECARGA, null, null));
+	}
+
+	private void guardar(CambioVideojuego cambio) {
+		//Con varios hilos los cambios pueden llegar desordenados: nunca
+		//sustituimos uno mas nuevo por uno mas viejo
+		cambios.accumulateAndGet(posicion(cambio.getSecuencia()), cambio,
+				(actual, nuevo) -> actual == null || actual.getSecuencia() < nuevo.getSecuencia() ? nuevo : actual);
+		for(Runnable aviso : suscriptores) {
+			aviso.run();
+		}
+	}
+
+	private int posicion(long secuencia) {
+		return (int) (secuencia & mascara);
+	}
+
+	/**
+	 * Lee los cambios en orden a partir de una secuencia. Solo lo puede usar
+	 * un hilo a la vez.
+	 */
+	public final class Lector {
+
+		private long siguiente;
+		private boolean perdido;
+
+		private Lector(long siguiente) {
+			this.siguiente = siguiente;
+		}
+
+		/**
+		 * @return el siguiente cambio, null si todavia no se ha producido o un
+		 * cambio {@link CambioVideojuego#RESINCRONIZAR} (y a partir de ahi
+		 * siempre null) si ya se ha sobrescrito
+		 */
+		public CambioVideojuego siguiente() {
+			if(perdido) {
+				return null;
+			}
+			CambioVideojuego cambio = cambios.get(posicion(siguiente));
+			if(cambio == null || cambio.getSecuencia() < siguiente) {
+				//Todavia no ha llegado (lo que hay es de una vuelta anterior)
+				return null;
+			}
+			if(cambio.getSecuencia() > siguiente) {
+				perdido = true;
+				return new CambioVideojuego(dao.getVersion(), CambioVideojuego.RESINCRONIZAR, null, null);
+			}
+			siguiente++;
+			return cambio;
+		}
+	}
+}
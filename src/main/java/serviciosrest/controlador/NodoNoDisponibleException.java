@@ -0,0 +1,23 @@
+package serviciosrest.controlador;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Otro nodo del cluster no ha respondido a algo que hacia falta para
+ * atender la peticion (por ejemplo, reservar un nombre).
+ * {@link ControladorVideojuego} responde 502 BAD GATEWAY, igual que
+ * {@link FiltroCluster}.
+ */
+public class NodoNoDisponibleException extends UncheckedIOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param nodo el nodo que no ha respondido
+	 * @param causa el error de la peticion
+	 */
+	public NodoNoDisponibleException(String nodo, IOException causa) {
+		super("El nodo " + nodo + " no esta disponible", causa);
+	}
+}
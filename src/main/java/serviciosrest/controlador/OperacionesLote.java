@@ -0,0 +1,58 @@
+package serviciosrest.controlador;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+
+import serviciosrest.modelo.entidad.ResultadoLote;
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+
+/**
+ * Aplica un bloque de una peticion por lotes en el DAO y traduce el
+ * resultado de cada elemento a un {@link ResultadoLote}. Comun a los dos
+ * controladores (servlet y reactivo).
+ */
+final class OperacionesLote {
+
+	private OperacionesLote() {
+	}
+
+	static List<ResultadoLote> altas(DaoVideojuego dao, List<Videojuego> lote) {
+		List<ResultadoLote> resultados = new ArrayList<ResultadoLote>(lote.size());
+		for(Videojuego vRes : dao.addAll(lote)) {
+			resultados.add(vRes != null
+					? new ResultadoLote(vRes.getId(), ResultadoLote.CREADO, HttpStatus.CREATED.value())
+					: new ResultadoLote(null, ResultadoLote.CONFLICTO, HttpStatus.CONFLICT.value()));
+		}
+		return resultados;
+	}
+
+	static List<ResultadoLote> modificaciones(DaoVideojuego dao, List<Videojuego> lote) {
+		int[] estados = dao.updateAll(lote);
+		List<ResultadoLote> resultados = new ArrayList<ResultadoLote>(lote.size());
+		for(int i = 0; i < estados.length; i++) {
+			int id = lote.get(i).getId();
+			if(estados[i] == 0) {
+				resultados.add(new ResultadoLote(id, ResultadoLote.MODIFICADO, HttpStatus.OK.value()));
+			}else if(estados[i] == 1) {
+				resultados.add(new ResultadoLote(id, ResultadoLote.NO_ENCONTRADO, HttpStatus.NOT_FOUND.value()));
+			}else {
+				resultados.add(new ResultadoLote(id, ResultadoLote.CONFLICTO, HttpStatus.CONFLICT.value()));
+			}
+		}
+		return resultados;
+	}
+
+	static List<ResultadoLote> bajas(DaoVideojuego dao, List<Integer> lote) {
+		boolean[] borrados = dao.deleteAll(lote);
+		List<ResultadoLote> resultados = new ArrayList<ResultadoLote>(lote.size());
+		for(int i = 0; i < borrados.length; i++) {
+			resultados.add(borrados[i]
+					? new ResultadoLote(lote.get(i), ResultadoLote.BORRADO, HttpStatus.OK.value())
+					: new ResultadoLote(lote.get(i), ResultadoLote.NO_ENCONTRADO, HttpStatus.NOT_FOUND.value()));
+		}
+		return resultados;
+	}
+}
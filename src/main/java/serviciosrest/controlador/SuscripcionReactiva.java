@@ -0,0 +1,83 @@
+package serviciosrest.controlador;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.http.codec.ServerSentEvent;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import serviciosrest.modelo.entidad.CambioVideojuego;
+
+/**
+ * Envia los cambios del historial a un cliente suscrito por Server-Sent
+ * Events (modo reactivo). Igual que {@link SuscripcionSse}, pero en lugar de
+ * bloquearse escribiendo en la conexion solo emite los cambios que pide
+ * WebFlux, que pide mas segun la conexion va admitiendo datos. Lo que no se
+ * ha pedido se queda en el historial, no en un buffer aparte.
+ */
+final class SuscripcionReactiva implements Runnable {
+
+	private final HistorialCambios historial;
+	private final HistorialCambios.Lector lector;
+	private final FluxSink<ServerSentEvent<CambioVideojuego>> sumidero;
+	private final Scheduler.Worker hilo = Schedulers.parallel().createWorker();
+	//Avisos sin atender: solo hay un envio en marcha a la vez
+	private final AtomicInteger pendientes = new AtomicInteger();
+
+	private SuscripcionReactiva(HistorialCambios historial, HistorialCambios.Lector lector,
+			FluxSink<ServerSentEvent<CambioVideojuego>> sumidero) {
+		this.historial = historial;
+		this.lector = lector;
+		this.sumidero = sumidero;
+	}
+
+	/**
+	 * @param historial el historial de cambios
+	 * @param lector el lector desde el que se empieza
+	 * @return los cambios a partir del lector, como eventos SSE
+	 */
+	static Flux<ServerSentEvent<CambioVideojuego>> flujo(HistorialCambios historial, HistorialCambios.Lector lector) {
+		//Con ERROR, emitir algo que no se ha pedido es un fallo en lugar de
+		//guardarlo en memoria
+		return Flux.create(sumidero -> {
+			SuscripcionReactiva suscripcion = new SuscripcionReactiva(historial, lector, sumidero);
+			sumidero.onRequest(n -> suscripcion.run());
+			sumidero.onDispose(() -> {
+				historial.cancelar(suscripcion);
+				suscripcion.hilo.dispose();
+			});
+			historial.suscribir(suscripcion);
+		}, FluxSink.OverflowStrategy.ERROR);
+	}
+
+	//El aviso del historial y de las peticiones de WebFlux
+	@Override
+	public void run() {
+		if(pendientes.getAndIncrement() == 0) {
+			hilo.schedule(this::enviar);
+		}
+	}
+
+	private void enviar() {
+		int atendidos = 1;
+		do {
+			while(sumidero.requestedFromDownstream() > 0 && !sumidero.isCancelled()) {
+				CambioVideojuego cambio = lector.siguiente();
+				if(cambio == null) {
+					break;
+				}
+				if(CambioVideojuego.RESINCRONIZAR.equals(cambio.getTipo())) {
+					//Sin id, para que al reconectar no se salte nada
+					sumidero.next(ServerSentEvent.builder(cambio).event(cambio.getTipo()).build());
+					sumidero.complete();
+					return;
+				}
+				sumidero.next(ServerSentEvent.builder(cambio).id(Long.toString(cambio.getSecuencia()))
+						.event(cambio.getTipo()).build());
+			}
+			atendidos = pendientes.addAndGet(-atendidos);
+		}while(atendidos != 0);
+	}
+}
@@ -0,0 +1,93 @@
+package serviciosrest.controlador;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import serviciosrest.modelo.entidad.CambioVideojuego;
+
+/**
+ * Envia los cambios del historial a un cliente suscrito por Server-Sent
+ * Events (modo servlet). Cuando llega un cambio no se escribe en el hilo que
+ * lo ha hecho, sino que se programa el envio en otro hilo, y ese hilo envia
+ * todos los cambios pendientes seguidos. Si el cliente lee despacio, el envio
+ * se queda bloqueado escribiendo en su conexion y los cambios se acumulan en
+ * el historial y no en memoria aparte; si se queda tan atras que se
+ * sobrescriben, se le envia {@link CambioVideojuego#RESINCRONIZAR} y se
+ * cierra la suscripcion.
+ */
+final class SuscripcionSse implements Runnable {
+
+	//Los hilos solo se usan mientras hay algo que enviar
+	private static final ExecutorService hilos = Executors.newCachedThreadPool(r -> {
+		Thread hilo = new Thread(r, "cambios-sse");
+		hilo.setDaemon(true);
+		return hilo;
+	});
+
+	private final HistorialCambios historial;
+	private final HistorialCambios.Lector lector;
+	private final SseEmitter emisor;
+	//Avisos sin atender: solo hay un envio en marcha a la vez
+	private final AtomicInteger pendientes = new AtomicInteger();
+	private volatile boolean terminada;
+
+	SuscripcionSse(HistorialCambios historial, HistorialCambios.Lector lector, SseEmitter emisor) {
+		this.historial = historial;
+		this.lector = lector;
+		this.emisor = emisor;
+	}
+
+	/**
+	 * Empieza a enviar los cambios, primero los que ya estan en el historial
+	 */
+	void iniciar() {
+		emisor.onCompletion(this::terminar);
+		emisor.onTimeout(this::terminar);
+		emisor.onError(e -> terminar());
+		historial.suscribir(this);
+		run();
+	}
+
+	//El aviso del historial
+	@Override
+	public void run() {
+		if(pendientes.getAndIncrement() == 0) {
+			hilos.execute(this::enviar);
+		}
+	}
+
+	private void enviar() {
+		int atendidos = 1;
+		do {
+			try {
+				for(CambioVideojuego cambio = lector.siguiente(); cambio != null && !terminada;
+						cambio = lector.siguiente()) {
+					if(CambioVideojuego.RESINCRONIZAR.equals(cambio.getTipo())) {
+						//Sin id, para que al reconectar no se salte nada
+						emisor.send(SseEmitter.event().name(cambio.getTipo()).data(cambio, MediaType.APPLICATION_JSON));
+						emisor.complete();
+						terminar();
+						return;
+					}
+					emisor.send(SseEmitter.event().id(Long.toString(cambio.getSecuencia())).name(cambio.getTipo())
+							.data(cambio, MediaType.APPLICATION_JSON));
+				}
+			}catch(IOException | IllegalStateException e) {
+				//El cliente se ha ido o el emisor ya esta cerrado
+				terminar();
+				return;
+			}
+			atendidos = pendientes.addAndGet(-atendidos);
+		}while(atendidos != 0);
+	}
+
+	private void terminar() {
+		terminada = true;
+		historial.cancelar(this);
+	}
+}
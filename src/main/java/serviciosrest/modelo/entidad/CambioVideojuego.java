@@ -0,0 +1,82 @@
+package serviciosrest.modelo.entidad;
+
+/**
+ * Clase CambioVideojuego:
+ * Un cambio del catalogo tal y como se envia a los clientes suscritos a
+ * /videojuegos/changes. La secuencia es la version del catalogo que ha dado
+ * lugar el cambio, asi que crece de uno en uno y sirve para reanudar la
+ * suscripcion. Lleva el videojuego completo despues del cambio (null en las
+ * bajas), por lo que aplicar dos veces el mismo cambio no estropea nada.
+ *
+ * @author Jorge, Adrian, Antonio
+ *
+ */
+
+public class CambioVideojuego {
+
+	public static final String ALTA = "alta";
+	public static final String MODIFICACION = "modificacion";
+	public static final String BAJA = "baja";
+	//Se ha recargado todo el catalogo: hay que volver a pedir el listado
+	public static final String RECARGA = "recarga";
+	//El cliente se ha quedado atras y los cambios que le faltan ya no estan en
+	//el historial: hay que volver a pedir el listado
+	public static final String RESINCRONIZAR = "resincronizar";
+
+	private long secuencia;
+	private String tipo;
+	private Integer id;
+	private Videojuego videojuego;
+
+	public CambioVideojuego() {
+		super();
+	}
+
+	public CambioVideojuego(long secuencia, String tipo, Integer id, Videojuego videojuego) {
+		this.secuencia = secuencia;
+		this.tipo = tipo;
+		this.id = id;
+		this.videojuego = videojuego;
+	}
+
+	//toString()
+	@Override
+	public String toString() {
+		return "CambioVideojuego [secuencia=" + secuencia + ", tipo=" + tipo + ", id=" + id + ", videojuego="
+				+ videojuego + "]";
+	}
+
+	//GETTERS & SETTERS
+	public long getSecuencia() {
+		return secuencia;
+	}
+
+	public void setSecuencia(long secuencia) {
+		this.secuencia = secuencia;
+	}
+
+	public String getTipo() {
+		return tipo;
+	}
+
+	public void setTipo(String tipo) {
+		this.tipo = tipo;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	public Videojuego getVideojuego() {
+		return videojuego;
+	}
+
+	public void setVideojuego(Videojuego videojuego) {
+		this.videojuego = videojuego;
+	}
+
+}
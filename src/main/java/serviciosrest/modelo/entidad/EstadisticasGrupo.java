@@ -0,0 +1,80 @@
+package serviciosrest.modelo.entidad;
+
+/**
+ * Clase EstadisticasGrupo:
+ * Los agregados de las notas de un grupo de videojuegos (los de una compañia
+ * o los de un año): cuantos hay, la nota media, la minima y la maxima.
+ *
+ * @author Jorge, Adrian, Antonio
+ *
+ */
+
+public class EstadisticasGrupo {
+
+	private String grupo;
+	private int cantidad;
+	private double notaMedia;
+	private int notaMinima;
+	private int notaMaxima;
+
+	public EstadisticasGrupo() {
+		super();
+	}
+
+	public EstadisticasGrupo(String grupo, int cantidad, double notaMedia, int notaMinima, int notaMaxima) {
+		this.grupo = grupo;
+		this.cantidad = cantidad;
+		this.notaMedia = notaMedia;
+		this.notaMinima = notaMinima;
+		this.notaMaxima = notaMaxima;
+	}
+
+	//toString()
+	@Override
+	public String toString() {
+		return "EstadisticasGrupo [grupo=" + grupo + ", cantidad=" + cantidad + ", notaMedia=" + notaMedia
+				+ ", notaMinima=" + notaMinima + ", notaMaxima=" + notaMaxima + "]";
+	}
+
+	//GETTERS & SETTERS
+	public String getGrupo() {
+		return grupo;
+	}
+
+	public void setGrupo(String grupo) {
+		this.grupo = grupo;
+	}
+
+	public int getCantidad() {
+		return cantidad;
+	}
+
+	public void setCantidad(int cantidad) {
+		this.cantidad = cantidad;
+	}
+
+	public double getNotaMedia() {
+		return notaMedia;
+	}
+
+	public void setNotaMedia(double notaMedia) {
+		this.notaMedia = notaMedia;
+	}
+
+	public int getNotaMinima() {
+		return notaMinima;
+	}
+
+	public void setNotaMinima(int notaMinima) {
+		this.notaMinima = notaMinima;
+	}
+
+	public int getNotaMaxima() {
+		return notaMaxima;
+	}
+
+	public void setNotaMaxima(int notaMaxima) {
+		this.notaMaxima = notaMaxima;
+	}
+
+}
@@ -0,0 +1,66 @@
+package serviciosrest.modelo.entidad;
+
+/**
+ * Clase ResultadoLote:
+ * El resultado de cada elemento de una operacion por lotes. Tiene el ID del
+ * videojuego afectado (null si no se ha podido crear), el estado en texto y
+ * el codigo HTTP que habria devuelto la operacion individual.
+ *
+ * @author Jorge, Adrian, Antonio
+ *
+ */
+
+public class ResultadoLote {
+
+	public static final String CREADO = "creado";
+	public static final String MODIFICADO = "modificado";
+	public static final String BORRADO = "borrado";
+	public static final String CONFLICTO = "conflicto";
+	public static final String NO_ENCONTRADO = "no encontrado";
+
+	private Integer id;
+	private String estado;
+	private int codigo;
+
+	public ResultadoLote() {
+		super();
+	}
+
+	public ResultadoLote(Integer id, String estado, int codigo) {
+		this.id = id;
+		this.estado = estado;
+		this.codigo = codigo;
+	}
+
+	//toString()
+	@Override
+	public String toString() {
+		return "ResultadoLote [id=" + id + ", estado=" + estado + ", codigo=" + codigo + "]";
+	}
+
+	//GETTERS & SETTERS
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	public String getEstado() {
+		return estado;
+	}
+
+	public void setEstado(String estado) {
+		this.estado = estado;
+	}
+
+	public int getCodigo() {
+		return codigo;
+	}
+
+	public void setCodigo(int codigo) {
+		this.codigo = codigo;
+	}
+
+}
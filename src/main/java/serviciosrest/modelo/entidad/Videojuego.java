@@ -1,5 +1,7 @@
 package serviciosrest.modelo.entidad;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Clase Videojuego:
  * Los videojuegos tendrán un ID, un nombre, una compañía, una año y una nota.
@@ -15,6 +17,9 @@ public class Videojuego {
 	private String compania;
 	private int anno;
 	private int nota;
+	//Version del videojuego, la asigna el DAO y empieza en 1. No forma parte del
+	//JSON: a los clientes les llega en la cabecera ETag
+	private int version;
 	
 	public Videojuego() {
 		super();
@@ -115,4 +120,14 @@ public class Videojuego {
 		this.nota = nota;
 	}
 
-}
\ No newline at end of file
+	@JsonIgnore
+	public int getVersion() {
+		return version;
+	}
+
+	@JsonIgnore
+	public void setVersion(int version) {
+		this.version = version;
+	}
+
+}
@@ -0,0 +1,42 @@
+package serviciosrest.modelo.persistencia;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * Almacen en el heap: un {@link ConcurrentHashMap} de ID a videojuego. Es el
+ * que usa la aplicacion.
+ */
+public class AlmacenMemoria implements AlmacenVideojuegos {
+
+	private final ConcurrentHashMap<Integer, Videojuego> videojuegos = new ConcurrentHashMap<>();
+
+	@Override
+	public Videojuego get(int id) {
+		return videojuegos.get(id);
+	}
+
+	@Override
+	public void compute(int id, UnaryOperator<Videojuego> funcion) {
+		videojuegos.compute(id, (clave, actual) -> funcion.apply(actual));
+	}
+
+	@Override
+	public Collection<Videojuego> values() {
+		return Collections.unmodifiableCollection(videojuegos.values());
+	}
+
+	@Override
+	public int size() {
+		return videojuegos.size();
+	}
+
+	@Override
+	public void clear() {
+		videojuegos.clear();
+	}
+}
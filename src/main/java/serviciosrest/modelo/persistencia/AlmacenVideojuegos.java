@@ -0,0 +1,50 @@
+package serviciosrest.modelo.persistencia;
+
+import java.util.Collection;
+import java.util.function.UnaryOperator;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * <p>Almacen primario de videojuegos por ID que usa {@link DaoVideojuego}. 
+ * El DAO mantiene por encima los indices secundarios y las reglas (nombre
+ * unico, registro de escritura...); el almacen solo guarda los registros.</p>
+ * 
+ * <p>Las implementaciones tienen que ser seguras con varios hilos: las lecturas
+ * no deben bloquearse y {@link #compute} tiene que ser atomico para un mismo
+ * ID, igual que {@code ConcurrentHashMap.compute}.</p>
+ */
+public interface AlmacenVideojuegos {
+
+	/**
+	 * @param id el ID buscado
+	 * @return el videojuego, o null si no existe
+	 */
+	Videojuego get(int id);
+
+	/**
+	 * Calcula de forma atomica el nuevo valor de un ID. Mientras se ejecuta la
+	 * funcion ningun otro compute del mismo ID puede avanzar.
+	 * @param id el ID a modificar
+	 * @param funcion recibe el valor actual (null si no existe) y devuelve el
+	 * nuevo (null para borrarlo). Si devuelve el mismo objeto no se modifica nada
+	 */
+	void compute(int id, UnaryOperator<Videojuego> funcion);
+
+	/**
+	 * @return una vista de solo lectura de todos los videojuegos, que se puede
+	 * recorrer aunque haya escrituras a la vez
+	 */
+	Collection<Videojuego> values();
+
+	/**
+	 * @return el numero de videojuegos
+	 */
+	int size();
+
+	/**
+	 * Borra todos los videojuegos. Solo se usa al recuperar el catalogo, sin
+	 * peticiones en marcha.
+	 */
+	void clear();
+}
@@ -0,0 +1,185 @@
+package serviciosrest.modelo.persistencia;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Cola de comandos de muchos productores y un unico consumidor, sin
+ * bloqueos (como el anillo del Disruptor). Los productores se reparten las
+ * posiciones de un array circular con un contador atomico, dejan alli su
+ * comando y lo marcan como publicado con el numero de secuencia que les ha
+ * tocado. Un unico hilo consumidor recorre el anillo en orden y le pasa al
+ * {@code aplicar} todos los comandos publicados seguidos que encuentra, en
+ * lotes de como mucho la capacidad del anillo.</p>
+ *
+ * <p>Si el anillo esta lleno, el productor espera a que el consumidor libere
+ * posiciones (contrapresion). Si esta vacio, el consumidor espera un poco
+ * activamente y despues se duerme hasta que el siguiente productor lo
+ * despierte.</p>
+ *
+ * <p>El cierre es un bit del contador de secuencias: los productores reservan
+ * su secuencia con un compareAndSet que falla si el bit esta puesto, asi que
+ * despues de {@link #close()} no se reparte ninguna y el consumidor sabe
+ * exactamente hasta donde tiene que aplicar antes de terminar. Un comando
+ * que llega tarde no se pierde: {@link #enviar(Object)} devuelve false y el
+ * que llama lo aplica por su cuenta.</p>
+ * @param <T> el tipo de los comandos
+ */
+public class AnilloEscritura<T> implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(AnilloEscritura.class);
+
+	//Vueltas de espera activa antes de ceder el procesador o dormirse
+	private static final int VUELTAS = 100;
+	//Bit de "siguiente" que indica que el anillo esta cerrado
+	private static final long CERRADO = Long.MIN_VALUE;
+
+	private final Object[] comandos;
+	//La secuencia publicada en cada posicion (-1 si ninguna)
+	private final AtomicLongArray publicadas;
+	private final int mascara;
+	private final Consumer<List<T>> aplicar;
+	private final Thread consumidor;
+
+	//La siguiente secuencia que se reparte a un productor, con el bit CERRADO
+	//puesto cuando ya no se reparten mas
+	private final AtomicLong siguiente = new AtomicLong();
+	//Secuencias ya leidas por el consumidor: sus posiciones se pueden reutilizar
+	private volatile long leidas;
+	private volatile boolean dormido;
+
+	/**
+	 * Crea el anillo y arranca el hilo consumidor
+	 * @param nombre el nombre del hilo consumidor
+	 * @param capacidad el numero de comandos que caben sin que los productores
+	 * tengan que esperar. Se redondea a potencia de 2
+	 * @param aplicar lo que hace el consumidor con cada lote de comandos, en el
+	 * orden en que se publicaron. La lista solo vale durante la llamada
+	 */
+	public AnilloEscritura(String nombre, int capacidad, Consumer<List<T>> aplicar) {
+		int tamano = Integer.highestOneBit(Math.max(2, capacidad - 1)) << 1;
+		this.comandos = new Object[tamano];
+		this.publicadas = new AtomicLongArray(tamano);
+		for(int i = 0; i < tamano; i++) {
+			publicadas.set(i, -1);
+		}
+		this.mascara = tamano - 1;
+		this.aplicar = aplicar;
+		this.consumidor = new Thread(this::consumir, nombre);
+		this.consumidor.setDaemon(true);
+		this.consumidor.start();
+	}
+
+	/**
+	 * Publica un comando para el consumidor. Si el anillo esta lleno espera a
+	 * que haya sitio
+	 * @param comando el comando
+	 * @return true si se ha publicado (el consumidor lo aplicara aunque se
+	 * cierre el anillo mientras tanto), false si el anillo ya estaba cerrado
+	 */
+	public boolean enviar(T comando) {
+		long secuencia;
+		do {
+			secuencia = siguiente.get();
+			if((secuencia & CERRADO) != 0) {
+				return false;
+			}
+		}while(!siguiente.compareAndSet(secuencia, secuencia + 1));
+		//La posicion esta libre cuando el consumidor ha leido la vuelta anterior
+		for(int vueltas = 0; secuencia - comandos.length >= leidas; vueltas++) {
+			esperar(vueltas);
+		}
+		int posicion = (int) secuencia & mascara;
+		comandos[posicion] = comando;
+		publicadas.set(posicion, secuencia);
+		if(dormido) {
+			LockSupport.unpark(consumidor);
+		}
+		return true;
+	}
+
+	/**
+	 * @return el numero de comandos enviados que el consumidor aun no ha leido
+	 */
+	public int pendientes() {
+		return (int) Math.max(0, (siguiente.get() & ~CERRADO) - leidas);
+	}
+
+	/**
+	 * Deja de aceptar comandos, espera a que se apliquen todos los que ya
+	 * tenian secuencia y para el hilo consumidor
+	 */
+	@Override
+	public void close() {
+		long secuencia;
+		do {
+			secuencia = siguiente.get();
+		}while((secuencia & CERRADO) == 0 && !siguiente.compareAndSet(secuencia, secuencia | CERRADO));
+		LockSupport.unpark(consumidor);
+		try {
+			consumidor.join();
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void consumir() {
+		List<T> lote = new ArrayList<>(comandos.length);
+		long secuencia = 0;
+		int vueltas = 0;
+		while(true) {
+			//Todos los publicados seguidos, sin pasar de una vuelta al anillo
+			int posicion = (int) secuencia & mascara;
+			while(lote.size() < comandos.length && publicadas.get(posicion) == secuencia) {
+				lote.add((T) comandos[posicion]);
+				comandos[posicion] = null;
+				secuencia++;
+				posicion = (int) secuencia & mascara;
+			}
+			if(!lote.isEmpty()) {
+				leidas = secuencia;
+				try {
+					aplicar.accept(lote);
+				}catch(RuntimeException e) {
+					log.error("Error al aplicar un lote de {} comandos", lote.size(), e);
+				}
+				lote.clear();
+				vueltas = 0;
+			}else if(siguiente.get() == (secuencia | CERRADO)) {
+				//Cerrado y aplicado hasta la ultima secuencia repartida
+				return;
+			}else if(vueltas < VUELTAS) {
+				vueltas++;
+				Thread.onSpinWait();
+			}else {
+				//Nos dormimos; el productor que publique despues de ver "dormido" nos
+				//despierta, y el plazo cubre al que lo miro justo antes
+				dormido = true;
+				if(publicadas.get(posicion) != secuencia && (siguiente.get() & CERRADO) == 0) {
+					LockSupport.parkNanos(this, 1_000_000);
+				}
+				dormido = false;
+			}
+		}
+	}
+
+	//Espera activa unas vueltas, despues cede el procesador y al final duerme un poco
+	private static void esperar(int vueltas) {
+		if(vueltas < VUELTAS) {
+			Thread.onSpinWait();
+		}else if(vueltas < 2 * VUELTAS) {
+			Thread.yield();
+		}else {
+			LockSupport.parkNanos(10_000);
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package serviciosrest.modelo.persistencia;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * <p>Carga el catalogo inicial de {@link DaoVideojuego} desde el fichero de
+ * la propiedad {@code videojuegos.carga.fichero}, en lugar de los seis
+ * videojuegos de ejemplo, para arrancar con un catalogo de millones. El
+ * fichero se mapea en memoria y se decodifica por trozos en paralelo, y el
+ * DAO da de alta los videojuegos en el almacen y en los indices tambien en
+ * paralelo ({@link DaoVideojuego#cargar}). Formatos:</p>
+ * <ul>
+ * <li>{@code .csv}: una linea por videojuego con
+ * {@code id,nombre,compania,anno,nota}, en UTF-8. Los campos pueden ir entre
+ * comillas dobles (y una comilla dentro se escribe doble), pero no pueden
+ * tener saltos de linea. La compañia vacia es null. La primera linea se
+ * salta si no empieza por un numero (cabecera).</li>
+ * <li>cualquier otra extension: una {@link Instantanea}, por ejemplo la que
+ * deja la persistencia de otra instancia.</li>
+ * </ul>
+ * <p>Si la persistencia esta habilitada, el fichero solo se carga cuando no
+ * hay nada que recuperar del disco (lo decide {@link PersistenciaVideojuegos}).
+ * Es un bean que no se inicia de forma perezosa aunque lo este el resto
+ * ({@code spring.main.lazy-initialization}): el catalogo tiene que estar
+ * cargado antes de la primera peticion.</p>
+ */
+@Component
+@Lazy(false)
+public class CargaInicial {
+
+	private static final Logger log = LoggerFactory.getLogger(CargaInicial.class);
+
+	//Tamaño minimo de los trozos del CSV que se decodifican en paralelo
+	private static final int TROZO_MINIMO = 1 << 20;
+
+	private final DaoVideojuego dao;
+	private final String fichero;
+	private final boolean persistencia;
+	private boolean cargada;
+
+	public CargaInicial(DaoVideojuego dao,
+			@Value("${videojuegos.carga.fichero:}") String fichero,
+			@Value("${videojuegos.persistencia.habilitada:false}") boolean persistencia) {
+		this.dao = dao;
+		this.fichero = fichero;
+		this.persistencia = persistencia;
+	}
+
+	/**
+	 * Sin persistencia, carga el fichero al arrancar
+	 * @throws IOException si no se puede leer el fichero
+	 */
+	@PostConstruct
+	public void iniciar() throws IOException {
+		if(!persistencia) {
+			cargar();
+		}
+	}
+
+	/**
+	 * Carga el fichero en el DAO, si hay fichero configurado y no se ha
+	 * cargado ya
+	 * @return true si se ha cargado
+	 * @throws IOException si no se puede leer el fichero o no es valido
+	 */
+	public synchronized boolean cargar() throws IOException {
+		if(cargada || fichero.isEmpty()) {
+			return false;
+		}
+		long inicio = System.nanoTime();
+		Path ruta = Paths.get(fichero);
+		List<Videojuego> videojuegos;
+		int siguienteId = 0;
+		if(ruta.getFileName().toString().toLowerCase().endsWith(".csv")) {
+			videojuegos = leerCsv(ruta);
+		}else {
+			Instantanea instantanea = Instantanea.leer(mapear(ruta));
+			if(instantanea == null) {
+				throw new IOException("La instantanea esta incompleta o dañada: " + ruta);
+			}
+			videojuegos = instantanea.getVideojuegos();
+			siguienteId = instantanea.getSiguienteId();
+		}
+		long leido = System.nanoTime();
+		dao.cargar(videojuegos, siguienteId);
+		cargada = true;
+		log.info("Cargados {} videojuegos de {} (lectura {} ms, indices {} ms)", dao.list().size(), ruta,
+				TimeUnit.NANOSECONDS.toMillis(leido - inicio), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - leido));
+		return true;
+	}
+
+	/**
+	 * Lee un fichero CSV de videojuegos (ver el formato en la clase)
+	 * @param ruta el fichero
+	 * @return los videojuegos, en el orden del fichero
+	 * @throws IOException si no se puede leer
+	 * @throws IllegalArgumentException si alguna linea no es valida
+	 */
+	public static List<Videojuego> leerCsv(Path ruta) throws IOException {
+		return leerCsv(mapear(ruta));
+	}
+
+	/**
+	 * Lee videojuegos en CSV ya cargados o mapeados en memoria
+	 * @param datos el contenido, desde la posicion 0 hasta el limite
+	 * @return los videojuegos, en orden
+	 * @throws IllegalArgumentException si alguna linea no es valida
+	 */
+	static List<Videojuego> leerCsv(ByteBuffer datos) {
+		int limite = datos.limit();
+		int inicio = 0;
+		if(limite > 0 && (datos.get(0) < '0' || datos.get(0) > '9')) {
+			inicio = finDeLinea(datos, 0);//Cabecera
+		}
+		//Cada trozo empieza al principio de una linea
+		int partes = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 4,
+				(limite - inicio) / TROZO_MINIMO));
+		int[] cortes = new int[partes + 1];
+		cortes[0] = inicio;
+		for(int i = 1; i < partes; i++) {
+			int nominal = inicio + (int) ((long) (limite - inicio) * i / partes);
+			cortes[i] = Math.max(cortes[i - 1], nominal == 0 ? 0 : finDeLinea(datos, nominal - 1));
+		}
+		cortes[partes] = limite;
+		return IntStream.range(0, partes).parallel()
+			.mapToObj(i -> leerLineas(datos.duplicate(), cortes[i], cortes[i + 1]))
+			.flatMap(List::stream)
+			.collect(Collectors.toList());
+	}
+
+	private static List<Videojuego> leerLineas(ByteBuffer datos, int desde, int hasta) {
+		List<Videojuego> videojuegos = new ArrayList<>();
+		byte[] campo = new byte[256];
+		String[] campos = new String[5];
+		int posicion = desde;
+		while(posicion < hasta) {
+			int linea = posicion;
+			int n = 0;
+			boolean finLinea = false;
+			while(!finLinea) {
+				int longitud = 0;
+				if(posicion < hasta && datos.get(posicion) == '"') {
+					posicion++;
+					while(true) {
+						if(posicion >= hasta) {
+							throw lineaNoValida(linea);
+						}
+						byte b = datos.get(posicion++);
+						if(b == '"') {
+							if(posicion < hasta && datos.get(posicion) == '"') {
+								posicion++;
+							}else {
+								break;
+							}
+						}
+						if(longitud == campo.length) {
+							campo = Arrays.copyOf(campo, campo.length * 2);
+						}
+						campo[longitud++] = b;
+					}
+					if(posicion + 1 < hasta && datos.get(posicion) == '\r' && datos.get(posicion + 1) == '\n') {
+						posicion++;
+					}
+				}else {
+					while(posicion < hasta && datos.get(posicion) != ',' && datos.get(posicion) != '\n') {
+						if(longitud == campo.length) {
+							campo = Arrays.copyOf(campo, campo.length * 2);
+						}
+						campo[longitud++] = datos.get(posicion++);
+					}
+				}
+				if(longitud > 0 && campo[longitud - 1] == '\r' && (posicion >= hasta || datos.get(posicion) == '\n')) {
+					longitud--;
+				}
+				if(n == campos.length) {
+					throw lineaNoValida(linea);
+				}
+				campos[n++] = new String(campo, 0, longitud, StandardCharsets.UTF_8);
+				if(posicion >= hasta || datos.get(posicion) == '\n') {
+					finLinea = true;
+				}else if(datos.get(posicion) != ',') {
+					throw lineaNoValida(linea);
+				}
+				posicion++;
+			}
+			if(n == 1 && campos[0].isEmpty()) {
+				continue;//Linea vacia
+			}
+			if(n != campos.length || campos[1].isEmpty()) {
+				throw lineaNoValida(linea);
+			}
+			try {
+				videojuegos.add(new Videojuego(Integer.parseInt(campos[0]), campos[1],
+						campos[2].isEmpty() ? null : campos[2], Integer.parseInt(campos[3]), Integer.parseInt(campos[4])));
+			}catch(NumberFormatException e) {
+				throw lineaNoValida(linea);
+			}
+		}
+		return videojuegos;
+	}
+
+	//Posicion siguiente al salto de linea que hay en o despues de la posicion
+	private static int finDeLinea(ByteBuffer datos, int posicion) {
+		while(posicion < datos.limit() && datos.get(posicion) != '\n') {
+			posicion++;
+		}
+		return Math.min(posicion + 1, datos.limit());
+	}
+
+	private static IllegalArgumentException lineaNoValida(int posicion) {
+		return new IllegalArgumentException("Linea de CSV no valida en el byte " + posicion);
+	}
+
+	private static ByteBuffer mapear(Path ruta) throws IOException {
+		try(FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ)) {
+			if(canal.size() > Integer.MAX_VALUE) {
+				throw new IOException("Fichero demasiado grande para mapearlo: " + ruta);
+			}
+			return canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package serviciosrest.modelo.persistencia;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * Filtros, orden y paginacion de una consulta de videojuegos. Todos los
+ * filtros son opcionales (null = sin filtro) y se combinan con Y.
+ * <ul>
+ * <li>{@code nombre}: el nombre contiene el texto, sin distinguir mayusculas.</li>
+ * <li>{@code compania}: la compañia es exactamente esa, sin distinguir mayusculas.</li>
+ * <li>{@code annoMin/annoMax}, {@code notaMin/notaMax}: rangos incluidos.</li>
+ * <li>{@code orden}: {@code id}, {@code nombre}, {@code anno} o {@code nota},
+ * con un "-" delante para orden descendente. Por defecto {@code id}.</li>
+ * <li>{@code cursor}: el ultimo ID ya devuelto. Solo con orden por ID.</li>
+ * <li>{@code limite}: numero maximo de resultados.</li>
+ * </ul>
+ */
+public class ConsultaVideojuegos {
+
+	/**
+	 * Campos por los que se puede ordenar
+	 */
+	public enum Campo {
+		ID, NOMBRE, ANNO, NOTA
+	}
+
+	private String nombre;
+	private String compania;
+	private Integer annoMin;
+	private Integer annoMax;
+	private Integer notaMin;
+	private Integer notaMax;
+	private Campo campoOrden = Campo.ID;
+	private boolean descendente;
+	private Integer cursor;
+	private Integer limite;
+
+	/**
+	 * @return true si la consulta no filtra, ni ordena, ni pagina nada
+	 */
+	public boolean isVacia() {
+		return nombre == null && compania == null && annoMin == null && annoMax == null && notaMin == null
+				&& notaMax == null && campoOrden == Campo.ID && !descendente && cursor == null && limite == null;
+	}
+
+	/**
+	 * Comprueba si un videojuego cumple todos los filtros (incluido el cursor)
+	 * @param v el videojuego
+	 * @return true si lo cumple
+	 */
+	public boolean cumple(Videojuego v) {
+		if(nombre != null && !IndiceNGramas.normalizar(v.getNombre()).contains(IndiceNGramas.normalizar(nombre))) {
+			return false;
+		}
+		if(compania != null && !compania.equalsIgnoreCase(v.getCompania())) {
+			return false;
+		}
+		if((annoMin != null && v.getAnno() < annoMin) || (annoMax != null && v.getAnno() > annoMax)) {
+			return false;
+		}
+		if((notaMin != null && v.getNota() < notaMin) || (notaMax != null && v.getNota() > notaMax)) {
+			return false;
+		}
+		if(cursor != null) {
+			return descendente ? v.getId() < cursor : v.getId() > cursor;
+		}
+		return true;
+	}
+
+	/**
+	 * @return el orden pedido; a igualdad del campo se ordena por ID
+	 */
+	public Comparator<Videojuego> comparador() {
+		Comparator<Videojuego> c;
+		switch(campoOrden) {
+		case NOMBRE:
+			c = Comparator.comparing(Videojuego::getNombre, String.CASE_INSENSITIVE_ORDER);
+			break;
+		case ANNO:
+			c = Comparator.comparingInt(Videojuego::getAnno);
+			break;
+		case NOTA:
+			c = Comparator.comparingInt(Videojuego::getNota);
+			break;
+		default:
+			c = (a, b) -> 0;
+		}
+		c = c.thenComparingInt(Videojuego::getId);
+		return descendente ? c.reversed() : c;
+	}
+
+	/**
+	 * Establece el orden a partir de su texto ("nota", "-anno"...)
+	 * @param orden el texto, o null para el orden por defecto
+	 * @throws IllegalArgumentException si el campo no existe
+	 */
+	public void setOrden(String orden) {
+		if(orden == null || orden.isEmpty()) {
+			campoOrden = Campo.ID;
+			descendente = false;
+			return;
+		}
+		descendente = orden.startsWith("-");
+		String campo = descendente ? orden.substring(1) : orden;
+		try {
+			campoOrden = Campo.valueOf(campo.trim().toUpperCase(Locale.ROOT));
+		}catch(IllegalArgumentException e) {
+			throw new IllegalArgumentException("No se puede ordenar por: " + campo);
+		}
+	}
+
+	//GETTERS & SETTERS
+	public String getNombre() {
+		return nombre;
+	}
+
+	public void setNombre(String nombre) {
+		this.nombre = nombre;
+	}
+
+	public String getCompania() {
+		return compania;
+	}
+
+	public void setCompania(String compania) {
+		this.compania = compania;
+	}
+
+	public Integer getAnnoMin() {
+		return annoMin;
+	}
+
+	public void setAnnoMin(Integer annoMin) {
+		this.annoMin = annoMin;
+	}
+
+	public Integer getAnnoMax() {
+		return annoMax;
+	}
+
+	public void setAnnoMax(Integer annoMax) {
+		this.annoMax = annoMax;
+	}
+
+	public Integer getNotaMin() {
+		return notaMin;
+	}
+
+	public void setNotaMin(Integer notaMin) {
+		this.notaMin = notaMin;
+	}
+
+	public Integer getNotaMax() {
+		return notaMax;
+	}
+
+	public void setNotaMax(Integer notaMax) {
+		this.notaMax = notaMax;
+	}
+
+	public Campo getCampoOrden() {
+		return campoOrden;
+	}
+
+	public boolean isDescendente() {
+		return descendente;
+	}
+
+	public Integer getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(Integer cursor) {
+		this.cursor = cursor;
+	}
+
+	public Integer getLimite() {
+		return limite;
+	}
+
+	public void setLimite(Integer limite) {
+		this.limite = limite;
+	}
+}
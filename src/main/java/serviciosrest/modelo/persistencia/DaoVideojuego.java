@@ -1,52 +1,237 @@
 package serviciosrest.modelo.persistencia;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import serviciosrest.modelo.entidad.EstadisticasGrupo;
 import serviciosrest.modelo.entidad.Videojuego;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntPredicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <p>Patron DAO (Data Access Object), objeto que se encarga de hacer las consultas
  * a algun motor de persistencia (BBDD, Ficheros, etc).<br>
- * En este caso, {@link listaVideojuegos} contiene los objetos {@link serviciosrest.modelo.entidad#Videojuego}
- * y simula los datos guardados en una BBDD.<br> 
+ * En este caso, {@link #videojuegos} contiene los objetos {@link serviciosrest.modelo.entidad#Videojuego}
+ * indexados por su ID y simula los datos guardados en una BBDD.<br> 
  * Mediante la anotacion @Component, damos de alta un unico objeto de esta clase
  * dentro del contexto de Spring, su ID sera el nombre de la case en notacion
- * lowerCamelCase (en nuestro caso {@code daoVideojuego}).
+ * lowerCamelCase (en nuestro caso {@code daoVideojuego}).</p>
+ * 
+ * <p>Como el objeto es unico y Tomcat atiende cada peticion en un hilo distinto,
+ * todas las estructuras son concurrentes y ninguna operacion usa un bloqueo global:
+ * <ul>
+ * <li>{@link #almacen}: indice primario ID -&gt; videojuego, un
+ * {@code ConcurrentHashMap} ({@link AlmacenMemoria}). Da la atomicidad por ID
+ * de las escrituras; las lecturas se hacen en {@link #foto}.</li>
+ * <li>{@link #nombres}: indice secundario unico nombre -&gt; ID. La comprobacion
+ * de nombre repetido y la reserva del nombre se hacen en una unica operacion
+ * atomica ({@code putIfAbsent}).</li>
+ * <li>{@link #ids}: IDs ordenados, para recorrer el catalogo por paginas con un
+ * cursor estable.</li>
+ * <li>{@link #indiceNombres}: indice de trigramas para buscar por parte del nombre.</li>
+ * <li>{@link #indiceAutocompletado}: indice de palabras de los nombres para
+ * autocompletar, con tolerancia a faltas de ortografia.</li>
+ * <li>{@link #indiceCompanias}: indice hash por compañia.</li>
+ * <li>{@link #indiceAnnos} y {@link #indiceNotas}: indices ordenados por año y
+ * por nota, para consultas por rango y los "N mejores".</li>
+ * <li>{@link #agregadosCompanias} y {@link #agregadosAnnos}: numero de
+ * videojuegos, media, minima y maxima de las notas y notas ordenadas por
+ * compañia y por año ({@link IndiceAgregados}), para las estadisticas y los
+ * mejores de cada compañia sin recorrer el catalogo.</li>
+ * <li>{@link #contador}: generador atomico de IDs.</li>
+ * <li>{@link #foto}: la ultima {@link FotoCatalogo}, una copia inmutable de
+ * todo el catalogo con su version. Cada cambio publica una foto nueva que
+ * comparte casi todo con la anterior ({@link MapaPersistente}), y los listados
+ * recorren la foto que habia al empezar sin bloquear a nadie.</li>
+ * </ul>
+ * Un nombre se reserva antes de publicar el videojuego en el indice primario
+ * y se libera dentro de la misma operacion atomica (por ID) que lo borra o le
+ * cambia el nombre.</p>
+ * 
+ * <p>Si la persistencia esta activada ({@link PersistenciaVideojuegos}), cada
+ * cambio se añade al {@link RegistroEscritura} dentro de esa misma operacion
+ * atomica, y el metodo no termina hasta que el registro lo confirma.</p>
+ * 
+ * <p>Opcionalmente ({@link #iniciarEscritorUnico(int)}) las altas, 
+ * modificaciones y bajas individuales no se aplican en el hilo de cada
+ * peticion, sino que se encolan en un {@link AnilloEscritura} y las aplica
+ * un unico hilo escritor por lotes: las operaciones atomicas no compiten
+ * entre si, cada lote espera una sola vez al registro de escritura y los
+ * futuros de {@link #addAsync(Videojuego)}, {@link #updateAsync(Videojuego, int)}
+ * y {@link #deleteAsync(int, int)} se completan al terminar el lote. Las
+ * lecturas no cambian: siguen sin bloqueos sobre lo ya publicado.</p>
+ * 
+ * <p>Cada videojuego tiene una version que empieza en 1 y aumenta con cada
+ * modificacion, y el catalogo tiene una version global que aumenta con cada
+ * cambio (ver {@link #getVersion()}). Con ellas el controlador genera los ETag
+ * y se pueden hacer modificaciones y borrados condicionales.</p>
  * 
+ * <p>El tiempo de las operaciones de escritura y de consulta se publica en la
+ * metrica {@code videojuegos.dao}, y el tamaño del catalogo y de los indices en
+ * {@code videojuegos.catalogo} y {@code videojuegos.indice}.</p>
  */
 
 @Component
 public class DaoVideojuego {
+	/**
+	 * Version esperada que vale para cualquier version del videojuego
+	 */
+	public static final int CUALQUIER_VERSION = -1;
+	
 	//Atributos
-	private HashSet<Videojuego> listaVideojuegos;
-	private int contador;
+	private static final Logger log = LoggerFactory.getLogger(DaoVideojuego.class);
+	private final AlmacenVideojuegos almacen;
+	private final ConcurrentHashMap<String, Integer> nombres;
+	private final ConcurrentSkipListSet<Integer> ids;
+	private final IndiceNGramas indiceNombres;
+	private final IndiceAutocompletado indiceAutocompletado;
+	private final IndiceHash<String> indiceCompanias;
+	private final IndiceOrdenado indiceAnnos;
+	private final IndiceOrdenado indiceNotas;
+	private final IndiceAgregados<String> agregadosCompanias;
+	private final IndiceAgregados<Integer> agregadosAnnos;
+	private final List<IndiceSecundario> indices;
+	private final AtomicInteger contador;
+	private final AtomicReference<FotoCatalogo> foto;
+	private final List<OyenteCambios> oyentes;
+	private volatile RegistroEscritura registro;
+	//Con el escritor unico, la cola de las escrituras individuales (null si no)
+	private volatile AnilloEscritura<Comando<?>> escritor;
+	//Los IDs de la particion de esta instancia, o null si tiene todo el catalogo
+	private volatile IntPredicate propios;
+	//La unicidad de los nombres fuera de este DAO, o null si no hace falta
+	private volatile ReservaNombres reservaNombres;
+	//Tiempos de cada operacion (metrica "videojuegos.dao", etiqueta "operacion")
+	private final Timer tiempoAdd;
+	private final Timer tiempoUpdate;
+	private final Timer tiempoDelete;
+	private final Timer tiempoListByNombre;
+	private final Timer tiempoAutocompletar;
+	private final Timer tiempoConsulta;
+	private final Timer tiempoTop;
+	private final Timer tiempoEstadisticas;
+	private final Timer tiempoAddAll;
+	private final Timer tiempoUpdateAll;
+	private final Timer tiempoDeleteAll;
 	
 	/**
 	 * Cuando se cree el objeto dentro del contexto de Spring, se ejecutara
-	 * su constructor, que creara la lista de videojuegos y la poblara de objetos 
+	 * su constructor, que creara los indices de videojuegos y los poblara de objetos 
 	 * {@link serviciosrest.modelo.entidad#Videojuego} para que puedan ser 
-	 * consumidos por nuestros clientes
+	 * consumidos por nuestros clientes.
+	 * @param almacen donde se guardan los videojuegos
+	 * @param metricas donde se registran los tiempos de las operaciones y los
+	 * tamaños del catalogo y de los indices
 	 */
-	
-	public DaoVideojuego () {
-		System.out.println("DaoVideojuego -> Creando la lista de videojuegos!");
-		listaVideojuegos = new HashSet<Videojuego>();
-		Videojuego v1 = new Videojuego(contador++,"The Legend of Zelda: Twilight Princess", "Nintendo", 2006, 95); //ID 0
-		Videojuego v2 = new Videojuego(contador++,"Hearthstone: Heroes of Warcraft", "Blizzard Entertainment", 2014, 88);//ID: 1
-		Videojuego v3 = new Videojuego(contador++,"Final Fantasy VIII", "SquareSoft", 2009, 90);//ID: 2
-		Videojuego v4 = new Videojuego(contador++,"World of Warcraft", "Blizzard Entertainment", 2004, 93);//ID:3
-		Videojuego v5 = new Videojuego(contador++,"Command & Conquer", "Westwood Studios", 1995, 94);//ID:4
-		Videojuego v6 = new Videojuego(contador++,"Pokemon FireRed Version", "Game Freak", 2004, 81);//ID:5
+	public DaoVideojuego (AlmacenVideojuegos almacen, MeterRegistry metricas) {
+		log.info("Creando la lista de videojuegos!");
+		this.almacen = almacen;
+		nombres = new ConcurrentHashMap<String, Integer>();
+		ids = new ConcurrentSkipListSet<Integer>();
+		indiceNombres = new IndiceNGramas();
+		indiceAutocompletado = new IndiceAutocompletado();
+		indiceCompanias = new IndiceHash<String>(v -> normalizarCompania(v.getCompania()));
+		indiceAnnos = new IndiceOrdenado(Videojuego::getAnno);
+		indiceNotas = new IndiceOrdenado(Videojuego::getNota);
+		agregadosCompanias = new IndiceAgregados<String>(v -> normalizarCompania(v.getCompania()),
+				Videojuego::getCompania);
+		agregadosAnnos = new IndiceAgregados<Integer>(Videojuego::getAnno, v -> String.valueOf(v.getAnno()));
+		indices = List.of(indiceNombres, indiceAutocompletado, indiceCompanias, indiceAnnos, indiceNotas, agregadosCompanias,
+				agregadosAnnos);
+		contador = new AtomicInteger();
+		foto = new AtomicReference<FotoCatalogo>(FotoCatalogo.VACIA);
+		oyentes = new CopyOnWriteArrayList<OyenteCambios>();
 		
+		tiempoAdd = temporizador(metricas, "add");
+		tiempoUpdate = temporizador(metricas, "update");
+		tiempoDelete = temporizador(metricas, "delete");
+		tiempoListByNombre = temporizador(metricas, "listByNombre");
+		tiempoAutocompletar = temporizador(metricas, "autocompletar");
+		tiempoConsulta = temporizador(metricas, "consulta");
+		tiempoTop = temporizador(metricas, "top");
+		tiempoEstadisticas = temporizador(metricas, "estadisticas");
+		tiempoAddAll = temporizador(metricas, "addAll");
+		tiempoUpdateAll = temporizador(metricas, "updateAll");
+		tiempoDeleteAll = temporizador(metricas, "deleteAll");
+		Gauge.builder("videojuegos.catalogo", almacen, AlmacenVideojuegos::size)
+			.description("Numero de videojuegos del catalogo")
+			.register(metricas);
+		Gauge.builder("videojuegos.indice", nombres, ConcurrentHashMap::size)
+			.tag("indice", "nombres")
+			.description("Numero de claves de cada indice secundario")
+			.register(metricas);
+		registrarIndice(metricas, "ngramas", indiceNombres);
+		registrarIndice(metricas, "palabras", indiceAutocompletado);
+		registrarIndice(metricas, "companias", indiceCompanias);
+		registrarIndice(metricas, "annos", indiceAnnos);
+		registrarIndice(metricas, "notas", indiceNotas);
+		registrarIndice(metricas, "agregados_companias", agregadosCompanias);
+		registrarIndice(metricas, "agregados_annos", agregadosAnnos);
+		Gauge.builder("videojuegos.escritura.pendientes", this, DaoVideojuego::escriturasPendientes)
+			.description("Escrituras encoladas que el escritor unico aun no ha leido")
+			.register(metricas);
 		
-		listaVideojuegos.add(v1);
-		listaVideojuegos.add(v2);
-		listaVideojuegos.add(v3);
-		listaVideojuegos.add(v4);
-		listaVideojuegos.add(v5);
-		listaVideojuegos.add(v6);
+		add(new Videojuego(0,"The Legend of Zelda: Twilight Princess", "Nintendo", 2006, 95)); //ID 0
+		add(new Videojuego(0,"Hearthstone: Heroes of Warcraft", "Blizzard Entertainment", 2014, 88));//ID: 1
+		add(new Videojuego(0,"Final Fantasy VIII", "SquareSoft", 2009, 90));//ID: 2
+		add(new Videojuego(0,"World of Warcraft", "Blizzard Entertainment", 2004, 93));//ID:3
+		add(new Videojuego(0,"Command & Conquer", "Westwood Studios", 1995, 94));//ID:4
+		add(new Videojuego(0,"Pokemon FireRed Version", "Game Freak", 2004, 81));//ID:5
+	}
+	
+	/**
+	 * El constructor que usa Spring: el almacen en memoria y el registro de
+	 * metricas de Actuator
+	 * @param metricas donde se registran los tiempos de las operaciones y los
+	 * tamaños del catalogo y de los indices
+	 */
+	@Autowired
+	public DaoVideojuego (MeterRegistry metricas) {
+		this(new AlmacenMemoria(), metricas);
+	}
+	
+	/**
+	 * Crea el DAO sin metricas (las que registra no van a ningun sitio)
+	 * @param almacen donde se guardan los videojuegos
+	 */
+	public DaoVideojuego (AlmacenVideojuegos almacen) {
+		this(almacen, new CompositeMeterRegistry());
+	}
+	
+	/**
+	 * Crea el DAO con el almacen en memoria por defecto y sin metricas
+	 */
+	public DaoVideojuego () {
+		this(new AlmacenMemoria());
 	}
 	
 	/***********
@@ -58,14 +243,10 @@ public class DaoVideojuego {
 	 * Metodo añade un videojuego a la lista
 	 * @param v El videojuego que quermos introducir (sin el ID)
 	 * @return v El videojuego que se ha añadido a la lista (con el ID)
-	 * o null en caso de que no se haya podido añadir.
+	 * o null en caso de que no se haya podido añadir (nombre repetido o nulo).
 	 */
 	public Videojuego add(Videojuego v) {
-		v.setId(contador++); //Le asignamos el ID
-		if(listaVideojuegos.add(v)) {
-			return v;
-		}
-		else return null;
+		return esperar(addAsync(v));
 	}
 	
 	//DAR DE BAJA UN VIDEOJUEGO POR ID
@@ -76,86 +257,980 @@ public class DaoVideojuego {
 	 * o false en caso contrario.
 	 */
 	public boolean delete(int id) {
-		for(Videojuego v: listaVideojuegos) {
-			if(v.getId() == id) {
-			return listaVideojuegos.remove(v);
-			}
-		}
-		return false;
+		return delete(id, CUALQUIER_VERSION) == 0;
+	}
+	
+	//DAR DE BAJA UN VIDEOJUEGO POR ID Y VERSION
+	/**
+	 * Borramos el videojuego con el ID solicitado solo si sigue en la version
+	 * esperada (borrado condicional o concurrencia optimista)
+	 * @param id el identificador del videojuego a borrar
+	 * @param versionEsperada la version que tiene que tener el videojuego, o 
+	 * {@link #CUALQUIER_VERSION}
+	 * @return 0 si se ha borrado, 1 si no existe, 3 si su version no es la esperada
+	 */
+	public int delete(int id, int versionEsperada) {
+		return esperar(deleteAsync(id, versionEsperada));
 	}
 	
 	//MODIFICAR UN VIDEOJUEGO POR ID
 	/**
-	 * Metodo que modifica un videojuego con el id pasado
-	 * @param v contiene todos los datos que queremos modificar incluido el id
+	 * Metodo que modifica un videojuego con el id pasado. El videojuego se 
+	 * sustituye en una unica operacion atomica sobre su ID, de modo que nunca deja
+	 * de estar visible para el resto de peticiones. Las modificaciones de un mismo
+	 * ID se serializan; las de IDs distintos se ejecutan en paralelo.
+	 * @param vModificado contiene todos los datos que queremos modificar incluido el id
 	 * @return 0 en caso de que la modificación se haya podido realizar, 1 en caso
 	 * de que el elemento no exista, 2 en caso de que el nombre ya exista en el set
 	 */
 	public int update(Videojuego vModificado) {
+		return update(vModificado, CUALQUIER_VERSION);
+	}
 	
-		int id = vModificado.getId();
-		for(Videojuego v: listaVideojuegos) {
-			if(v.getId() == id) {
-				//Eliminamos el elemento a modificar
-				listaVideojuegos.remove(v);
-				//Añadimos a la lista la modificación
-				if(listaVideojuegos.add(vModificado)) {
-					return 0;//En caso de que se añada a la coleccion
-				}
-				else {//Si el objeto tiene nombre repetido
-					listaVideojuegos.add(v);//Restauramos el videojuego original al set
-					return 2;//El elemento ya existía, es decir ya hay un videojuego con el mismo nombre
-				}
+	//MODIFICAR UN VIDEOJUEGO POR ID Y VERSION
+	/**
+	 * Igual que {@link #update(Videojuego)}, pero solo se modifica si el 
+	 * videojuego sigue en la version esperada. Si se modifica, 
+	 * {@code vModificado} queda con su nueva version.
+	 * @param vModificado contiene todos los datos que queremos modificar incluido el id
+	 * @param versionEsperada la version que tiene que tener el videojuego, o 
+	 * {@link #CUALQUIER_VERSION}
+	 * @return 0, 1 o 2 como {@link #update(Videojuego)}, o 3 si la version
+	 * del videojuego no es la esperada
+	 */
+	public int update(Videojuego vModificado, int versionEsperada) {
+		return esperar(updateAsync(vModificado, versionEsperada));
+	}
+	
+	//ESCRITURAS ASINCRONAS
+	/**
+	 * Igual que {@link #add(Videojuego)}, pero sin esperar al resultado. Con el
+	 * escritor unico el alta se encola y el futuro se completa cuando el hilo
+	 * escritor la ha aplicado y el registro de escritura la ha confirmado; sin
+	 * el, se hace en el hilo que llama y el futuro ya esta completado.
+	 * @param v El videojuego que quermos introducir (sin el ID)
+	 * @return el futuro con el videojuego añadido (con el ID) o con null si no
+	 * se ha podido añadir
+	 */
+	public CompletableFuture<Videojuego> addAsync(Videojuego v) {
+		return enviar((r, escritura) -> add(v, r, escritura), tiempoAdd);
+	}
+	
+	/**
+	 * Igual que {@link #delete(int, int)}, pero sin esperar al resultado (ver
+	 * {@link #addAsync(Videojuego)})
+	 * @param id el identificador del videojuego a borrar
+	 * @param versionEsperada la version que tiene que tener el videojuego, o 
+	 * {@link #CUALQUIER_VERSION}
+	 * @return el futuro con el codigo de {@link #delete(int, int)}
+	 */
+	public CompletableFuture<Integer> deleteAsync(int id, int versionEsperada) {
+		return enviar((r, escritura) -> delete(id, versionEsperada, r, escritura), tiempoDelete);
+	}
+	
+	/**
+	 * Igual que {@link #update(Videojuego, int)}, pero sin esperar al resultado
+	 * (ver {@link #addAsync(Videojuego)})
+	 * @param vModificado contiene todos los datos que queremos modificar incluido el id
+	 * @param versionEsperada la version que tiene que tener el videojuego, o 
+	 * {@link #CUALQUIER_VERSION}
+	 * @return el futuro con el codigo de {@link #update(Videojuego, int)}
+	 */
+	public CompletableFuture<Integer> updateAsync(Videojuego vModificado, int versionEsperada) {
+		return enviar((r, escritura) -> update(vModificado, versionEsperada, r, escritura), tiempoUpdate);
+	}
+	
+	//OPERACIONES POR LOTES
+	/**
+	 * Añade una lista de videojuegos en una sola pasada. Cada videojuego se
+	 * añade igual que con {@link #add(Videojuego)}, pero si la persistencia esta
+	 * activada solo se espera una vez a que el registro de escritura confirme
+	 * todo el lote, en lugar de una vez por videojuego. Los lotes se aplican
+	 * siempre en el hilo que llama, tambien con el escritor unico.
+	 * @param lista los videojuegos a añadir (sin el ID)
+	 * @return para cada videojuego, en el mismo orden, el videojuego añadido
+	 * (con el ID) o null si no se ha podido añadir
+	 */
+	public List<Videojuego> addAll(List<Videojuego> lista) {
+		long inicio = System.nanoTime();
+		RegistroEscritura r = registro;
+		List<RegistroEscritura.Escritura> escrituras = new ArrayList<RegistroEscritura.Escritura>(lista.size());
+		RegistroEscritura.Escritura[] escritura = {null};
+		List<Videojuego> resultado = new ArrayList<Videojuego>(lista.size());
+		try {
+			for(Videojuego v : lista) {
+				resultado.add(add(v, r, escritura));
+				agregarEscritura(escrituras, escritura[0]);
+				escritura[0] = null;
 			}
+		}finally {
+			//Si un elemento falla despues de registrarse, tambien se confirma
+			agregarEscritura(escrituras, escritura[0]);
+			confirmar(escrituras);
 		}
-		//No se ha encontrado el id
-		return 1;
+		tiempoAddAll.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+		return resultado;
+	}
+	
+	/**
+	 * Modifica una lista de videojuegos en una sola pasada, con una unica
+	 * espera al registro de escritura (ver {@link #addAll(List)}).
+	 * @param lista los videojuegos a modificar, con su ID
+	 * @return para cada videojuego, en el mismo orden, el mismo codigo que
+	 * devuelve {@link #update(Videojuego)}
+	 */
+	public int[] updateAll(List<Videojuego> lista) {
+		long inicio = System.nanoTime();
+		RegistroEscritura r = registro;
+		List<RegistroEscritura.Escritura> escrituras = new ArrayList<RegistroEscritura.Escritura>(lista.size());
+		RegistroEscritura.Escritura[] escritura = {null};
+		int[] estados = new int[lista.size()];
+		try {
+			for(int i = 0; i < estados.length; i++) {
+				estados[i] = update(lista.get(i), CUALQUIER_VERSION, r, escritura);
+				agregarEscritura(escrituras, escritura[0]);
+				escritura[0] = null;
+			}
+		}finally {
+			//Si un elemento falla despues de registrarse, tambien se confirma
+			agregarEscritura(escrituras, escritura[0]);
+			confirmar(escrituras);
+		}
+		tiempoUpdateAll.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+		return estados;
+	}
+	
+	/**
+	 * Borra una lista de videojuegos en una sola pasada, con una unica
+	 * espera al registro de escritura (ver {@link #addAll(List)}).
+	 * @param listaIds los IDs de los videojuegos a borrar
+	 * @return para cada ID, en el mismo orden, true si se ha borrado o false
+	 * si no existia
+	 */
+	public boolean[] deleteAll(List<Integer> listaIds) {
+		long inicio = System.nanoTime();
+		RegistroEscritura r = registro;
+		List<RegistroEscritura.Escritura> escrituras = new ArrayList<RegistroEscritura.Escritura>(listaIds.size());
+		RegistroEscritura.Escritura[] escritura = {null};
+		boolean[] borrados = new boolean[listaIds.size()];
+		try {
+			for(int i = 0; i < borrados.length; i++) {
+				borrados[i] = delete(listaIds.get(i), CUALQUIER_VERSION, r, escritura) == 0;
+				agregarEscritura(escrituras, escritura[0]);
+				escritura[0] = null;
+			}
+		}finally {
+			//Si un elemento falla despues de registrarse, tambien se confirma
+			agregarEscritura(escrituras, escritura[0]);
+			confirmar(escrituras);
+		}
+		tiempoDeleteAll.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+		return borrados;
 	}
 	
 	//LISTAR TODOS LOS VIDEOJUEGOS
 	/**
-	 * Metodo que devuelve todos los videojuegos del set
-	 * @return una lista con todos las videojuegos del set
+	 * Metodo que devuelve todos los videojuegos. Es la foto del catalogo en
+	 * el momento de llamarlo ({@link #foto()}): los cambios posteriores no
+	 * se ven en ella.
+	 * @return una coleccion de solo lectura con todos los videojuegos, en orden de ID
 	 */
-	public HashSet<Videojuego> list() {
-		return listaVideojuegos;
+	public Collection<Videojuego> list() {
+		return foto.get();
+	}
+	
+	/**
+	 * La foto del catalogo actual, con su version. Quien necesite la version
+	 * y los datos a la vez (por ejemplo para la ETag de un listado) tiene que
+	 * leer las dos de la misma foto.
+	 * @return la foto del catalogo
+	 */
+	public FotoCatalogo foto() {
+		return foto.get();
+	}
+	
+	//LISTAR POR PAGINAS
+	/**
+	 * Metodo que devuelve una pagina de videojuegos ordenados por ID.
+	 * El cursor es el ultimo ID de la pagina anterior, por lo que las altas y 
+	 * bajas que ocurran entre una pagina y otra no desplazan los resultados.
+	 * @param cursor el ultimo ID ya devuelto (se empieza despues de el), o
+	 * null para empezar desde el principio
+	 * @param limite el numero maximo de videojuegos de la pagina
+	 * @return la pagina con, como mucho, {@code limite} videojuegos
+	 */
+	public List<Videojuego> listPage(Integer cursor, int limite) {
+		List<Videojuego> pagina = new ArrayList<Videojuego>(Math.min(limite, 1024));
+		Iterator<Videojuego> it = iterator(cursor);
+		while(pagina.size() < limite && it.hasNext()) {
+			pagina.add(it.next());
+		}
+		return pagina;
+	}
+	
+	/**
+	 * Recorre los videojuegos en orden de ID sin copiarlos, para poder
+	 * enviarlos al cliente segun se van leyendo.
+	 * @param cursor el ultimo ID ya devuelto, o null para empezar desde el principio
+	 * @return un iterador de solo lectura sobre la foto actual del catalogo, que
+	 * no ve las escrituras que ocurran mientras se recorre
+	 */
+	public Iterator<Videojuego> iterator(Integer cursor) {
+		return foto.get().iterator(cursor);
+	}
+	
+	//AVISOS DE CAMBIOS
+	/**
+	 * Registra un oyente que recibira todos los cambios del catalogo a partir
+	 * de ahora (por ejemplo, para invalidar caches)
+	 * @param oyente el oyente
+	 */
+	public void addOyente(OyenteCambios oyente) {
+		oyentes.add(oyente);
+	}
+	
+	//VERSION DEL CATALOGO
+	/**
+	 * La version del catalogo aumenta con cada alta, baja o modificacion.
+	 * Si se lee antes de hacer una consulta y no ha cambiado, el resultado de la
+	 * consulta tampoco.
+	 * @return la version actual del catalogo
+	 */
+	public long getVersion() {
+		return foto.get().getVersion();
+	}
+	
+	//PARTICION DEL CATALOGO
+	/**
+	 * Limita el DAO a una particion del catalogo, cuando varias instancias se
+	 * reparten los videojuegos por ID: los IDs nuevos se eligen solo entre
+	 * los de la particion (asi dos instancias nunca dan el mismo) y se borran
+	 * los videojuegos que no son de ella, que son los del catalogo inicial
+	 * que le tocan a otra instancia. Se debe llamar al arrancar, antes de
+	 * atender peticiones.
+	 * @param propios dice si un ID es de esta particion
+	 */
+	public void particionar(IntPredicate propios) {
+		this.propios = propios;
+		for(Integer id : ids) {
+			if(!propios.test(id)) {
+				delete(id);
+			}
+		}
+	}
+	
+	/**
+	 * Hace que las altas, los cambios de nombre y las bajas reserven y liberen
+	 * tambien el nombre en la {@link ReservaNombres}, ademas de en este DAO.
+	 * Se debe llamar al arrancar, despues de {@link #particionar}.
+	 * @param reservaNombres la reserva de nombres, o null para no usar ninguna
+	 */
+	public void setReservaNombres(ReservaNombres reservaNombres) {
+		this.reservaNombres = reservaNombres;
 	}
 	
 	//OBTENER VIDEOJUEGO POR ID
 	/**
-	 * Devuelve un videjuego a partir de su id
+	 * Devuelve un videjuego a partir de su id. Se lee de la ultima foto
+	 * publicada, cuyo mapa va directamente por el int del ID: no crea ningun
+	 * objeto (tampoco el Integer de la clave) y su coste no depende del
+	 * tamaño del catalogo. Cada escritura publica su foto antes de terminar,
+	 * asi que se leen siempre los cambios ya hechos.
 	 * @param id el id del videojuego buscado
 	 * @return el videojuego con el id solicitado, null en caso de
 	 * que no exista.
 	 */
 	public Videojuego getById(int id) {
-		
-		for(Videojuego v: listaVideojuegos) {
-			if(v.getId() == id) {
-				return v;
-			}
-		}
-		return null;
+		//No se mide: cuesta menos que tomar los tiempos, y su latencia ya se
+		//ve en la metrica del endpoint (http.server.requests)
+		return foto.get().get(id);
 	}
 	
 	//METODO ADICIONAL -- LISTAR POR NOMBRE
 	/**
-	 * Metodo que devuelve todos los videojuegos que tengan un nombre concreto.
-	 * Como puede haber varios videojuegos con el mismo nombre hay que
-	 * devolver una lista con todas los encontrados
+	 * Metodo que devuelve todos los videojuegos cuyo nombre contenga el texto
+	 * buscado, sin distinguir mayusculas. La busqueda se resuelve con el indice de
+	 * trigramas, por lo que su coste depende del numero de coincidencias y no
+	 * del tamaño del catalogo.
 	 * @param nombre representa el nombre por el que vamos a hacer la
 	 * busqueda
 	 * @return una lista con los videojuegos que coincidan en el nombre.
 	 * La lista estará vacia en caso de que no hay coincidencias
 	 */
-	public HashSet<Videojuego> listByNombre(String nombre){
-		HashSet<Videojuego> listaAux = new HashSet<Videojuego>();
-		for(Videojuego v : listaVideojuegos) {
-			if(v.getNombre().toLowerCase().contains(nombre.toLowerCase())) {
+	public List<Videojuego> listByNombre(String nombre){
+		long inicio = System.nanoTime();
+		String normalizado = IndiceNGramas.normalizar(nombre);
+		FotoCatalogo actual = foto.get();
+		List<Videojuego> listaAux = new ArrayList<Videojuego>();
+		for(Integer id : indiceNombres.buscar(nombre)) {
+			Videojuego v = actual.get(id);
+			//Puede haber cambiado de nombre desde que consultamos el indice
+			if(v != null && IndiceNGramas.normalizar(v.getNombre()).contains(normalizado)) {
 				listaAux.add(v);
 			}
 		}
+		tiempoListByNombre.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
 		return listaAux;
 	}
 	
+	//AUTOCOMPLETAR POR NOMBRE
+	/**
+	 * Los videojuegos cuyo nombre encaja mejor con lo que el usuario lleva
+	 * escrito, para sugerirlos mientras escribe: la ultima palabra puede estar
+	 * a medias, y se toleran faltas de ortografia, acentos y mayusculas (ver
+	 * {@link IndiceAutocompletado}). El coste no depende del tamaño del catalogo.
+	 * @param texto lo que lleva escrito
+	 * @param limite el numero maximo de sugerencias
+	 * @return los videojuegos, del que mas se parece al que menos
+	 */
+	public List<Videojuego> autocompletar(String texto, int limite) {
+		long inicio = System.nanoTime();
+		FotoCatalogo actual = foto.get();
+		List<Videojuego> sugerencias = new ArrayList<Videojuego>(limite);
+		for(Integer id : indiceAutocompletado.buscar(texto, limite)) {
+			Videojuego v = actual.get(id);
+			if(v != null) {
+				sugerencias.add(v);
+			}
+		}
+		tiempoAutocompletar.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+		return sugerencias;
+	}
+	
+	//CONSULTA CON FILTROS Y ORDEN
+	/**
+	 * Metodo que devuelve los videojuegos que cumplen una consulta, en el orden
+	 * pedido y como mucho {@code consulta.getLimite()}.
+	 * @param consulta los filtros, el orden y la paginacion
+	 * @return la lista de videojuegos
+	 * @throws IllegalArgumentException si la consulta no es valida
+	 */
+	public List<Videojuego> list(ConsultaVideojuegos consulta) {
+		long inicio = System.nanoTime();
+		try(Stream<Videojuego> resultado = stream(consulta)) {
+			return resultado.collect(Collectors.toList());
+		}finally {
+			tiempoConsulta.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	/**
+	 * Igual que {@link #list(ConsultaVideojuegos)}, pero los videojuegos se van
+	 * obteniendo segun se recorre el stream. 
+	 * 
+	 * Se elige un indice por el que empezar y el resto de filtros se comprueban
+	 * sobre cada candidato:
+	 * <ol>
+	 * <li>nombre: indice de trigramas.</li>
+	 * <li>compañia: indice hash.</li>
+	 * <li>rango o orden por año o por nota: el indice ordenado correspondiente.
+	 * Si ademas se ordena por ese campo los resultados ya salen en orden y
+	 * basta con leer hasta el limite, por ejemplo para los N mejores por nota.</li>
+	 * <li>si no, los IDs en orden.</li>
+	 * </ol>
+	 * Cuando el indice elegido no da el orden pedido, los candidatos se ordenan
+	 * en memoria.
+	 * 
+	 * Los videojuegos se leen de la foto del catalogo que hay al empezar. El 
+	 * recorrido por ID ascendente es exactamente esa foto; los indices en 
+	 * cambio son los actuales, y un videojuego que entre o salga de un indice
+	 * mientras se recorre puede faltar en el resultado (nunca sale dos veces).
+	 * @param consulta los filtros, el orden y la paginacion
+	 * @return el stream de videojuegos
+	 * @throws IllegalArgumentException si la consulta no es valida
+	 */
+	public Stream<Videojuego> stream(ConsultaVideojuegos consulta) {
+		ConsultaVideojuegos.Campo campo = consulta.getCampoOrden();
+		boolean desc = consulta.isDescendente();
+		if(consulta.getCursor() != null && campo != ConsultaVideojuegos.Campo.ID) {
+			throw new IllegalArgumentException("El cursor solo se puede usar ordenando por id");
+		}
+		boolean rangoAnno = consulta.getAnnoMin() != null || consulta.getAnnoMax() != null;
+		boolean rangoNota = consulta.getNotaMin() != null || consulta.getNotaMax() != null;
+		
+		FotoCatalogo actual = foto.get();
+		Stream<Videojuego> candidatos;
+		boolean ordenado = false;
+		if(consulta.getNombre() != null) {
+			candidatos = porIds(actual, indiceNombres.buscar(consulta.getNombre()).stream());
+		}else if(consulta.getCompania() != null) {
+			candidatos = porIds(actual, indiceCompanias.get(normalizarCompania(consulta.getCompania())).stream());
+		}else if(campo == ConsultaVideojuegos.Campo.ANNO && (rangoAnno || !rangoNota)) {
+			candidatos = porIndice(actual, indiceAnnos, consulta.getAnnoMin(), consulta.getAnnoMax(), desc);
+			ordenado = true;
+		}else if(campo == ConsultaVideojuegos.Campo.NOTA && (rangoNota || !rangoAnno)) {
+			candidatos = porIndice(actual, indiceNotas, consulta.getNotaMin(), consulta.getNotaMax(), desc);
+			ordenado = true;
+		}else if(rangoAnno) {
+			candidatos = porIndice(actual, indiceAnnos, consulta.getAnnoMin(), consulta.getAnnoMax(), false);
+		}else if(rangoNota) {
+			candidatos = porIndice(actual, indiceNotas, consulta.getNotaMin(), consulta.getNotaMax(), false);
+		}else if(!desc) {
+			candidatos = StreamSupport.stream(Spliterators.spliterator(actual.iterator(consulta.getCursor()),
+					actual.size(), Spliterator.ORDERED | Spliterator.NONNULL), false);
+			ordenado = campo == ConsultaVideojuegos.Campo.ID;
+		}else {
+			NavigableSet<Integer> rango = ids;
+			if(consulta.getCursor() != null) {
+				rango = ids.headSet(consulta.getCursor(), false);
+			}
+			candidatos = porIds(actual, rango.descendingSet().stream());
+			ordenado = campo == ConsultaVideojuegos.Campo.ID;
+		}
+		
+		Stream<Videojuego> resultado = candidatos.filter(consulta::cumple);
+		if(!ordenado) {
+			resultado = resultado.sorted(consulta.comparador());
+		}
+		if(consulta.getLimite() != null) {
+			resultado = resultado.limit(consulta.getLimite());
+		}
+		return resultado;
+	}
+	
+	//LOS MEJORES POR NOTA
+	/**
+	 * Los {@code k} videojuegos con mejor nota (a igualdad de nota, el de ID
+	 * mayor), de todo el catalogo o de una compañia. Se leen del final del
+	 * indice de notas o de las notas de la compañia, asi que el coste depende
+	 * de {@code k} y no del tamaño del catalogo.
+	 * @param k cuantos videojuegos como mucho
+	 * @param compania la compañia (sin distinguir mayusculas), o null para
+	 * todo el catalogo
+	 * @return los videojuegos, de mejor a peor nota
+	 */
+	public List<Videojuego> top(int k, String compania) {
+		long inicio = System.nanoTime();
+		NavigableSet<Long> notas = compania == null ? indiceNotas.rango(null, null)
+				: agregadosCompanias.notas(normalizarCompania(compania));
+		try(Stream<Videojuego> mejores = porEntradas(foto.get(), notas.descendingSet(), Videojuego::getNota)) {
+			return mejores.limit(k).collect(Collectors.toList());
+		}finally {
+			tiempoTop.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	//ESTADISTICAS POR GRUPO
+	/**
+	 * Numero de videojuegos y media, minima y maxima de las notas de cada
+	 * compañia, ordenadas por compañia. Son agregados que se mantienen con
+	 * cada cambio: el coste depende del numero de compañias. Los videojuegos
+	 * sin compañia no cuentan.
+	 * @return las estadisticas de cada compañia
+	 */
+	public List<EstadisticasGrupo> estadisticasPorCompania() {
+		long inicio = System.nanoTime();
+		List<EstadisticasGrupo> resultado = agregadosCompanias.estadisticas();
+		resultado.sort(Comparator.comparing(e -> e.getGrupo().toLowerCase(Locale.ROOT)));
+		tiempoEstadisticas.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+		return resultado;
+	}
+	
+	/**
+	 * Igual que {@link #estadisticasPorCompania()}, pero por año
+	 * @return las estadisticas de cada año, ordenadas por año
+	 */
+	public List<EstadisticasGrupo> estadisticasPorAnno() {
+		long inicio = System.nanoTime();
+		List<EstadisticasGrupo> resultado = agregadosAnnos.estadisticas();
+		resultado.sort(Comparator.comparingInt(e -> Integer.parseInt(e.getGrupo())));
+		tiempoEstadisticas.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+		return resultado;
+	}
+	
+	//Convierte IDs en videojuegos de la foto, saltando los que no esten en ella
+	private static Stream<Videojuego> porIds(FotoCatalogo actual, Stream<Integer> idsCandidatos) {
+		return idsCandidatos.map(actual::get).filter(Objects::nonNull);
+	}
+	
+	//Recorre un rango de un indice ordenado. Si el videojuego de la foto no tiene
+	//el valor de la entrada se salta: aparece (o aparecia) en otra posicion
+	private static Stream<Videojuego> porIndice(FotoCatalogo actual, IndiceOrdenado indice, Integer min,
+			Integer max, boolean desc) {
+		NavigableSet<Long> rango = indice.rango(min, max);
+		return porEntradas(actual, desc ? rango.descendingSet() : rango, indice::valor);
+	}
+	
+	//Lo mismo para cualquier conjunto de entradas valor-ID
+	private static Stream<Videojuego> porEntradas(FotoCatalogo actual, NavigableSet<Long> entradas,
+			ToIntFunction<Videojuego> campo) {
+		return entradas.stream()
+				.map(entrada -> {
+					Videojuego v = actual.get(IndiceOrdenado.id(entrada));
+					return v != null && campo.applyAsInt(v) == IndiceOrdenado.valor(entrada) ? v : null;
+				})
+				.filter(Objects::nonNull);
+	}
+	
+	/*********************************
+	 * ESCRITOR UNICO                *
+	 *********************************/
+	
+	/**
+	 * A partir de ahora las altas, modificaciones y bajas individuales las
+	 * aplica un unico hilo escritor (ver la clase). Si ya estaba, no hace nada
+	 * @param capacidad el numero de escrituras que se pueden encolar antes de
+	 * que los que escriben tengan que esperar
+	 */
+	public synchronized void iniciarEscritorUnico(int capacidad) {
+		if(escritor == null) {
+			escritor = new AnilloEscritura<Comando<?>>("escritor-unico", capacidad, this::aplicar);
+		}
+	}
+	
+	/**
+	 * Vuelve a aplicar cada escritura en el hilo que la pide, despues de
+	 * terminar las que ya estaban encoladas
+	 */
+	public synchronized void pararEscritorUnico() {
+		AnilloEscritura<Comando<?>> anillo = escritor;
+		escritor = null;
+		if(anillo != null) {
+			anillo.close();
+		}
+	}
+	
+	/**
+	 * @return true si las escrituras individuales las aplica el escritor unico
+	 */
+	public boolean isEscritorUnico() {
+		return escritor != null;
+	}
+	
+	/*********************************
+	 * PERSISTENCIA Y RECUPERACION   *
+	 *********************************/
+	
+	/**
+	 * Engancha (o desengancha, con null) el registro de escritura
+	 */
+	void setRegistro(RegistroEscritura registro) {
+		this.registro = registro;
+	}
+	
+	/**
+	 * @return el siguiente ID que se asignara
+	 */
+	int getSiguienteId() {
+		return contador.get();
+	}
+	
+	/**
+	 * Sustituye todo el contenido por el recuperado del disco o por el de un
+	 * fichero de carga inicial ({@link CargaInicial}). Solo se debe usar al
+	 * arrancar, antes de atender peticiones, y no pasa por el registro de
+	 * escritura. Los videojuegos se reparten entre varios hilos y cada uno los
+	 * da de alta en el almacen y en todos los indices, que ya son concurrentes;
+	 * si el DAO esta particionado, los que no son de su particion se ignoran.
+	 * @param lista los videojuegos, con su ID
+	 * @param siguienteId el siguiente ID que se asignara
+	 * @throws IllegalArgumentException si hay dos videojuegos con el mismo ID
+	 * o con el mismo nombre
+	 */
+	void cargar(Collection<Videojuego> lista, int siguienteId) {
+		almacen.clear();
+		nombres.clear();
+		ids.clear();
+		for(IndiceSecundario indice : indices) {
+			indice.vaciar();
+		}
+		IntPredicate particion = propios;
+		List<Videojuego> cargados = lista.parallelStream()
+			.filter(v -> particion == null || particion.test(v.getId()))
+			.collect(Collectors.toList());
+		int maximo = cargados.parallelStream()
+			.mapToInt(v -> {
+				v.setVersion(1);
+				almacen.compute(v.getId(), anterior -> {
+					if(anterior != null) {
+						throw new IllegalArgumentException("ID repetido: " + v.getId());
+					}
+					return v;
+				});
+				if(nombres.putIfAbsent(v.getNombre(), v.getId()) != null) {
+					throw new IllegalArgumentException("Nombre repetido: " + v.getNombre());
+				}
+				indexar(v);
+				return v.getId() + 1;
+			})
+			.max().orElse(0);
+		contador.set(Math.max(maximo, siguienteId));
+		MapaPersistente mapa = MapaPersistente.de(cargados);
+		FotoCatalogo recargada = foto.updateAndGet(f -> f.recargada(mapa));
+		long nueva = recargada.getVersion();
+		for(OyenteCambios oyente : oyentes) {
+			oyente.recarga(nueva);
+		}
+	}
+	
+	/*****************************************
+	 * ESCRITURAS SIN CONFIRMAR              *
+	 *****************************************/
+	
+	//Las tres operaciones de escritura dejan en escritura[0] el registro que
+	//hay que confirmar, para que las operaciones por lotes esperen solo una vez.
+	//La foto nueva (y con ella la version del catalogo) se publica dentro de la
+	//operacion atomica sobre el ID, asi que los cambios de un mismo ID llegan
+	//a las fotos en el mismo orden que al almacen
+	
+	private Videojuego add(Videojuego v, RegistroEscritura r, RegistroEscritura.Escritura[] escritura) {
+		if(v.getNombre() == null) {
+			return null;
+		}
+		int id = siguienteId();
+		//Reservamos el nombre de forma atomica, si ya estaba ocupado no se añade
+		if(nombres.putIfAbsent(v.getNombre(), id) != null) {
+			return null;
+		}
+		ReservaNombres reserva = reservaNombres;
+		try {
+			if(reserva != null && !reserva.reservar(v.getNombre(), id)) {
+				nombres.remove(v.getNombre(), id);
+				return null;
+			}
+		}catch(RuntimeException e) {
+			nombres.remove(v.getNombre(), id);
+			throw e;
+		}
+		v.setId(id); //Le asignamos el ID
+		v.setVersion(1);
+		long[] nueva = {0};
+		try {
+			almacen.compute(id, anterior -> {
+				indexar(v);
+				//El registro va lo ultimo: si falla (por ejemplo, un nombre que no
+				//cabe) no queda ninguna escritura sin confirmar
+				if(r != null) {
+					escritura[0] = r.registrar(RegistroEscritura.GUARDAR, id, v);
+				}
+				nueva[0] = publicar(id, v);
+				return v;
+			});
+		}catch(RuntimeException e) {
+			//No se ha guardado: liberamos el nombre y lo que se haya indexado
+			desindexar(v);
+			nombres.remove(v.getNombre(), id);
+			if(reserva != null) {
+				reserva.liberar(v.getNombre(), id);
+			}
+			throw e;
+		}
+		avisar(nueva[0], null, v);
+		return v;
+	}
+	
+	private int delete(int id, int versionEsperada, RegistroEscritura r, RegistroEscritura.Escritura[] escritura) {
+		int[] estado = {1};//Si no se encuentra el id se queda en 1
+		Videojuego[] borrado = {null};
+		long[] nueva = {0};
+		almacen.compute(id, v -> {
+			if(v == null) {
+				return null;
+			}
+			if(versionEsperada != CUALQUIER_VERSION && v.getVersion() != versionEsperada) {
+				estado[0] = 3;
+				return v;
+			}
+			borrado[0] = v;
+			if(r != null) {
+				escritura[0] = r.registrar(RegistroEscritura.BORRAR, id, null);
+			}
+			//Liberamos el nombre solo si sigue perteneciendo a este ID
+			nombres.remove(v.getNombre(), id);
+			desindexar(v);
+			nueva[0] = publicar(id, null);
+			estado[0] = 0;
+			return null;
+		});
+		if(estado[0] == 0) {
+			ReservaNombres reserva = reservaNombres;
+			if(reserva != null) {
+				reserva.liberar(borrado[0].getNombre(), id);
+			}
+			avisar(nueva[0], borrado[0], null);
+		}
+		return estado[0];
+	}
+	
+	private int update(Videojuego vModificado, int versionEsperada, RegistroEscritura r,
+			RegistroEscritura.Escritura[] escritura) {
+		int id = vModificado.getId();
+		String nombreNuevo = vModificado.getNombre();
+		//Si cambia el nombre, el nuevo se reserva fuera antes de la operacion
+		//atomica, que no puede esperar a otro nodo
+		ReservaNombres reserva = reservaNombres;
+		boolean reservado = false;
+		if(reserva != null && nombreNuevo != null) {
+			Videojuego actual = getById(id);
+			if(actual != null && !nombreNuevo.equals(actual.getNombre())) {
+				if(!reserva.reservar(nombreNuevo, id)) {
+					return 2;
+				}
+				reservado = true;
+			}
+		}
+		boolean conReserva = reservado;
+		int[] estado = {1};//Si no se encuentra el id se queda en 1
+		Videojuego[] anterior = {null};
+		long[] nueva = {0};
+		try {
+			almacen.compute(id, v -> {
+				if(v == null) {
+					return null;
+				}
+				if(versionEsperada != CUALQUIER_VERSION && v.getVersion() != versionEsperada) {
+					estado[0] = 3;//Lo ha modificado otro desde que el cliente lo leyo
+					return v;
+				}
+				if(nombreNuevo == null) {
+					estado[0] = 2;
+					return v;
+				}
+				boolean renombrado = !nombreNuevo.equals(v.getNombre());
+				if(renombrado) {
+					//Sin reserva es que lo han renombrado mientras tanto: el nombre
+					//no se ha reservado fuera
+					if((reserva != null && !conReserva) || nombres.putIfAbsent(nombreNuevo, id) != null) {
+						estado[0] = 2;//Ya hay un videojuego con el mismo nombre
+						return v;
+					}
+					nombres.remove(v.getNombre(), id);
+				}
+				vModificado.setVersion(v.getVersion() + 1);
+				int cambiados = 0;
+				try {
+					for(IndiceSecundario indice : indices) {
+						indice.cambio(v, vModificado);
+						cambiados++;
+					}
+					//Como en el alta, el registro va lo ultimo
+					if(r != null) {
+						escritura[0] = r.registrar(RegistroEscritura.GUARDAR, id, vModificado);
+					}
+				}catch(RuntimeException e) {
+					//Se queda como estaba: deshacemos los indices ya cambiados y el nombre
+					for(int i = cambiados - 1; i >= 0; i--) {
+						indices.get(i).cambio(vModificado, v);
+					}
+					if(renombrado) {
+						nombres.remove(nombreNuevo, id);
+						nombres.putIfAbsent(v.getNombre(), id);
+					}
+					throw e;
+				}
+				anterior[0] = v;
+				nueva[0] = publicar(id, vModificado);
+				estado[0] = 0;
+				return vModificado;
+			});
+		}finally {
+			//Si no se ha hecho, el nombre reservado se libera (salvo que otra
+			//modificacion de este ID ya lo este usando)
+			if(conReserva && estado[0] != 0) {
+				Videojuego actual = getById(id);
+				if(actual == null || !nombreNuevo.equals(actual.getNombre())) {
+					reserva.liberar(nombreNuevo, id);
+				}
+			}
+		}
+		if(estado[0] == 0) {
+			if(reserva != null && !nombreNuevo.equals(anterior[0].getNombre())) {
+				reserva.liberar(anterior[0].getNombre(), id);
+			}
+			avisar(nueva[0], anterior[0], vModificado);
+		}
+		return estado[0];
+	}
+	
+	//Aplica una escritura individual: con el escritor unico la encola, y si no
+	//(o si el anillo se acaba de cerrar) la hace en este hilo y espera al
+	//registro de escritura. Los errores se devuelven en el futuro
+	private <T> CompletableFuture<T> enviar(OperacionEscritura<T> operacion, Timer tiempo) {
+		Comando<T> comando = new Comando<T>(operacion, tiempo);
+		AnilloEscritura<Comando<?>> anillo = escritor;
+		if(anillo == null || !anillo.enviar(comando)) {
+			RegistroEscritura.Escritura[] escritura = {null};
+			comando.aplicar(registro, escritura);
+			RuntimeException error = null;
+			try {
+				confirmar(escritura[0]);
+			}catch(RuntimeException e) {
+				error = e;
+			}
+			comando.completar(error);
+		}
+		return comando.futuro;
+	}
+	
+	//Lo que hace el hilo del escritor unico con cada lote de comandos: los
+	//aplica en orden, espera una sola vez a que el registro de escritura
+	//confirme todo el lote (como addAll) y despues completa los futuros
+	private void aplicar(List<Comando<?>> lote) {
+		RegistroEscritura r = registro;
+		List<RegistroEscritura.Escritura> escrituras = new ArrayList<RegistroEscritura.Escritura>(lote.size());
+		RegistroEscritura.Escritura[] escritura = {null};
+		for(Comando<?> comando : lote) {
+			escritura[0] = null;
+			comando.aplicar(r, escritura);
+			agregarEscritura(escrituras, escritura[0]);
+		}
+		RuntimeException error = null;
+		try {
+			confirmar(escrituras);
+		}catch(RuntimeException e) {
+			error = e;
+		}
+		for(Comando<?> comando : lote) {
+			comando.completar(error);
+		}
+	}
+	
+	private int escriturasPendientes() {
+		AnilloEscritura<Comando<?>> anillo = escritor;
+		return anillo == null ? 0 : anillo.pendientes();
+	}
+	
+	//Espera al resultado de una escritura y, si ha fallado, lanza la excepcion original
+	private static <T> T esperar(CompletableFuture<T> futuro) {
+		try {
+			return futuro.join();
+		}catch(CompletionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+	
+	//Publica una foto nueva con el cambio del ID (null si se borra) y devuelve
+	//su version. Si otro hilo publica a la vez se vuelve a intentar sobre la suya
+	private long publicar(int id, Videojuego v) {
+		return foto.updateAndGet(f -> f.con(id, v)).getVersion();
+	}
+	
+	//El siguiente ID libre de la particion (o sin mas el siguiente, si no hay)
+	private int siguienteId() {
+		IntPredicate particion = propios;
+		int id = contador.getAndIncrement();
+		while(particion != null && !particion.test(id)) {
+			id = contador.getAndIncrement();
+		}
+		return id;
+	}
+	
+	//Da de alta el videojuego en los indices secundarios
+	private void indexar(Videojuego v) {
+		ids.add(v.getId());
+		for(IndiceSecundario indice : indices) {
+			indice.alta(v);
+		}
+	}
+	
+	//Da de baja el videojuego de los indices secundarios
+	private void desindexar(Videojuego v) {
+		for(IndiceSecundario indice : indices) {
+			indice.baja(v);
+		}
+		ids.remove(v.getId());
+	}
+	
+	private void avisar(long nueva, Videojuego anterior, Videojuego nuevo) {
+		for(OyenteCambios oyente : oyentes) {
+			oyente.cambio(nueva, anterior, nuevo);
+		}
+	}
+	
+	private static Timer temporizador(MeterRegistry metricas, String operacion) {
+		return Timer.builder("videojuegos.dao")
+			.tag("operacion", operacion)
+			.description("Tiempo de las operaciones del DAO")
+			.register(metricas);
+	}
+	
+	private static void registrarIndice(MeterRegistry metricas, String nombre, IndiceSecundario indice) {
+		Gauge.builder("videojuegos.indice", indice, IndiceSecundario::size)
+			.tag("indice", nombre)
+			.description("Numero de claves de cada indice secundario")
+			.register(metricas);
+	}
+	
+	private static String normalizarCompania(String compania) {
+		return compania == null ? null : compania.toLowerCase(Locale.ROOT);
+	}
+	
+	private static void confirmar(RegistroEscritura.Escritura escritura) {
+		if(escritura != null) {
+			escritura.confirmar();
+		}
+	}
+	
+	private static void agregarEscritura(List<RegistroEscritura.Escritura> escrituras,
+			RegistroEscritura.Escritura escritura) {
+		if(escritura != null) {
+			escrituras.add(escritura);
+		}
+	}
+	
+	//Confirmamos de la ultima a la primera: al confirmar la ultima (la de LSN
+	//mas alto) todo el lote ya esta en disco y el resto no tiene que esperar.
+	//Aunque falle alguna hay que confirmarlas todas, o la rotacion del registro
+	//se quedaria esperando a las que no se han confirmado
+	private static void confirmar(List<RegistroEscritura.Escritura> escrituras) {
+		RuntimeException error = null;
+		for(int i = escrituras.size() - 1; i >= 0; i--) {
+			try {
+				escrituras.get(i).confirmar();
+			}catch(RuntimeException e) {
+				if(error == null) {
+					error = e;
+				}
+			}
+		}
+		if(error != null) {
+			throw error;
+		}
+	}
+	
+	//Una de las escrituras privadas de arriba, con el registro y el hueco
+	//para su escritura sin confirmar
+	@FunctionalInterface
+	private interface OperacionEscritura<T> {
+		T aplicar(RegistroEscritura r, RegistroEscritura.Escritura[] escritura);
+	}
+	
+	//Una escritura individual y el futuro que se completa con su resultado. 
+	//Su tiempo va desde que se pide hasta que se completa (cola incluida)
+	private static final class Comando<T> {
+		final OperacionEscritura<T> operacion;
+		final Timer tiempo;
+		final long inicio = System.nanoTime();
+		final CompletableFuture<T> futuro = new CompletableFuture<T>();
+		T resultado;
+		RuntimeException error;
+		
+		Comando(OperacionEscritura<T> operacion, Timer tiempo) {
+			this.operacion = operacion;
+			this.tiempo = tiempo;
+		}
+		
+		void aplicar(RegistroEscritura r, RegistroEscritura.Escritura[] escritura) {
+			try {
+				resultado = operacion.aplicar(r, escritura);
+			}catch(RuntimeException e) {
+				error = e;
+			}
+		}
+		
+		//Con el error del registro de escritura si no ha podido confirmar
+		void completar(RuntimeException errorRegistro) {
+			tiempo.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+			RuntimeException e = error != null ? error : errorRegistro;
+			if(e != null) {
+				futuro.completeExceptionally(e);
+			}else {
+				futuro.complete(resultado);
+			}
+		}
+	}
+	
 }
@@ -0,0 +1,63 @@
+package serviciosrest.modelo.persistencia;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>Pone a {@link DaoVideojuego} en modo escritor unico: las altas,
+ * modificaciones y bajas individuales se encolan y las aplica un solo hilo
+ * por lotes (ver {@link DaoVideojuego#iniciarEscritorUnico(int)}).</p>
+ *
+ * <p>Solo se da de alta en el contexto de Spring si la propiedad
+ * {@code videojuegos.escritura} vale unico.</p>
+ *
+ * <p>El escritor se arranca y se para con el ciclo de vida del contexto
+ * ({@link SmartLifecycle}), no al crear y destruir el bean: Spring lo arranca
+ * cuando ya estan creados todos los beans (asi que la persistencia, si esta
+ * activada, ya ha recuperado el catalogo) y lo para antes de destruir
+ * ninguno, de modo que las escrituras encoladas se aplican antes de que
+ * {@link PersistenciaVideojuegos} cierre el registro. Va en una fase
+ * anterior a la del servidor web: arranca antes de que lleguen peticiones y
+ * se para cuando ya no llegan.</p>
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(name = "videojuegos.escritura", havingValue = "unico")
+public class EscritorUnico implements SmartLifecycle {
+
+	private static final Logger log = LoggerFactory.getLogger(EscritorUnico.class);
+
+	private final DaoVideojuego dao;
+	private final int capacidad;
+
+	public EscritorUnico(DaoVideojuego dao, @Value("${videojuegos.escritura.capacidad:1024}") int capacidad) {
+		this.dao = dao;
+		this.capacidad = capacidad;
+	}
+
+	@Override
+	public void start() {
+		dao.iniciarEscritorUnico(capacidad);
+		log.info("Escritor unico con capacidad para {} escrituras", capacidad);
+	}
+
+	@Override
+	public void stop() {
+		dao.pararEscritorUnico();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return dao.isEscritorUnico();
+	}
+
+	@Override
+	public int getPhase() {
+		return 0;
+	}
+}
@@ -0,0 +1,79 @@
+package serviciosrest.modelo.persistencia;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * <p>Una foto del catalogo: todos los videojuegos tal y como estaban en una
+ * version del catalogo ({@link DaoVideojuego#foto()}). No cambia aunque
+ * despues haya altas, bajas o modificaciones, asi que se puede recorrer
+ * (o serializar) sin bloqueos y sin que un videojuego falte o salga dos
+ * veces, y su version es exactamente la de su contenido.</p>
+ *
+ * <p>Es una coleccion de solo lectura, en orden de ID.</p>
+ */
+public final class FotoCatalogo extends AbstractCollection<Videojuego> {
+
+	/**
+	 * La foto del catalogo vacio, en la version 0
+	 */
+	public static final FotoCatalogo VACIA = new FotoCatalogo(0, MapaPersistente.VACIO);
+
+	private final long version;
+	private final MapaPersistente videojuegos;
+
+	FotoCatalogo(long version, MapaPersistente videojuegos) {
+		this.version = version;
+		this.videojuegos = videojuegos;
+	}
+
+	/**
+	 * @return la version del catalogo de la foto
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @param id el ID
+	 * @return el videojuego con ese ID en la foto, o null si no estaba
+	 */
+	public Videojuego get(int id) {
+		return videojuegos.get(id);
+	}
+
+	@Override
+	public Iterator<Videojuego> iterator() {
+		return videojuegos.iterator();
+	}
+
+	/**
+	 * @param cursor el ultimo ID ya devuelto, o null para empezar desde el principio
+	 * @return los videojuegos con ID mayor que el cursor, en orden
+	 */
+	public Iterator<Videojuego> iterator(Integer cursor) {
+		if(cursor == null) {
+			return videojuegos.iterator();
+		}
+		if(cursor == Integer.MAX_VALUE) {
+			return MapaPersistente.VACIO.iterator();
+		}
+		return videojuegos.iterator(cursor + 1);
+	}
+
+	@Override
+	public int size() {
+		return videojuegos.size();
+	}
+
+	//Para publicar la siguiente version con un cambio
+	FotoCatalogo con(int id, Videojuego v) {
+		return new FotoCatalogo(version + 1, v == null ? videojuegos.sin(id) : videojuegos.con(id, v));
+	}
+
+	FotoCatalogo recargada(MapaPersistente nuevos) {
+		return new FotoCatalogo(version + 1, nuevos);
+	}
+}
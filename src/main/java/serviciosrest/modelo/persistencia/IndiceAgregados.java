@@ -0,0 +1,182 @@
+package serviciosrest.modelo.persistencia;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+
+import serviciosrest.modelo.entidad.EstadisticasGrupo;
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * <p>Agregados de las notas por grupo (por ejemplo por compañia o por año),
+ * que se mantienen al dia con cada alta, baja y modificacion en lugar de
+ * recorrer el catalogo al consultarlos. Por cada grupo se guarda:</p>
+ * <ul>
+ * <li>el numero de videojuegos y la suma de sus notas, para la media;</li>
+ * <li>sus notas ordenadas, con el mismo formato de entrada que
+ * {@link IndiceOrdenado} (nota en los 32 bits altos, ID en los bajos): la
+ * minima y la maxima son la primera y la ultima, y los K mejores del grupo
+ * son las K ultimas, aunque se borre o se baje la nota de alguno de ellos.</li>
+ * </ul>
+ * <p>Cada cambio de un grupo se hace dentro de la operacion atomica del mapa
+ * de grupos sobre su clave. El numero y la suma se publican juntos, asi que
+ * la media siempre es coherente; la minima y la maxima se leen aparte y
+ * pueden ir un cambio por delante. Los videojuegos con clave null no se
+ * agregan.</p>
+ * @param <K> el tipo de la clave del grupo
+ */
+public class IndiceAgregados<K> implements IndiceSecundario {
+
+	private final Function<Videojuego, K> clave;
+	private final Function<Videojuego, String> nombre;
+	private final ConcurrentHashMap<K, Grupo> grupos = new ConcurrentHashMap<>();
+
+	/**
+	 * @param clave obtiene la clave del grupo de un videojuego (ya normalizada)
+	 * @param nombre obtiene el nombre del grupo que se muestra en las estadisticas
+	 */
+	public IndiceAgregados(Function<Videojuego, K> clave, Function<Videojuego, String> nombre) {
+		this.clave = clave;
+		this.nombre = nombre;
+	}
+
+	/**
+	 * @param k la clave (normalizada igual que al agregar)
+	 * @return las estadisticas del grupo, o null si no tiene videojuegos
+	 */
+	public EstadisticasGrupo estadisticas(K k) {
+		Grupo grupo = k == null ? null : grupos.get(k);
+		return grupo == null ? null : grupo.estadisticas();
+	}
+
+	/**
+	 * @return las estadisticas de todos los grupos, en cualquier orden
+	 */
+	public List<EstadisticasGrupo> estadisticas() {
+		List<EstadisticasGrupo> resultado = new ArrayList<>(grupos.size());
+		for(Grupo grupo : grupos.values()) {
+			EstadisticasGrupo e = grupo.estadisticas();
+			if(e != null) {
+				resultado.add(e);
+			}
+		}
+		return resultado;
+	}
+
+	/**
+	 * @param k la clave (normalizada igual que al agregar)
+	 * @return las notas del grupo en orden ascendente; una vista concurrente.
+	 * Usar {@link IndiceOrdenado#valor(long)} y {@link IndiceOrdenado#id(long)}
+	 * para decodificarlas
+	 */
+	public NavigableSet<Long> notas(K k) {
+		Grupo grupo = k == null ? null : grupos.get(k);
+		return grupo == null ? Collections.emptyNavigableSet() : Collections.unmodifiableNavigableSet(grupo.notas);
+	}
+
+	@Override
+	public void alta(Videojuego v) {
+		K k = clave.apply(v);
+		if(k != null) {
+			grupos.compute(k, (c, grupo) -> {
+				if(grupo == null) {
+					grupo = new Grupo();
+				}
+				grupo.poner(v, nombre.apply(v));
+				return grupo;
+			});
+		}
+	}
+
+	@Override
+	public void baja(Videojuego v) {
+		K k = clave.apply(v);
+		if(k != null) {
+			grupos.computeIfPresent(k, (c, grupo) -> grupo.quitar(v) ? grupo : null);
+		}
+	}
+
+	@Override
+	public void cambio(Videojuego anterior, Videojuego nuevo) {
+		K k = clave.apply(nuevo);
+		if(!Objects.equals(clave.apply(anterior), k)) {
+			alta(nuevo);
+			baja(anterior);
+		}else if(k != null && (anterior.getNota() != nuevo.getNota()
+				|| !Objects.equals(nombre.apply(anterior), nombre.apply(nuevo)))) {
+			//Mismo grupo: se cambia en una sola operacion, y el numero no varia
+			grupos.computeIfPresent(k, (c, grupo) -> {
+				if(anterior.getNota() != nuevo.getNota()) {
+					grupo.poner(nuevo, nombre.apply(nuevo));
+					grupo.quitar(anterior);
+				}else {
+					grupo.nombre = nombre.apply(nuevo);
+				}
+				return grupo;
+			});
+		}
+	}
+
+	@Override
+	public void vaciar() {
+		grupos.clear();
+	}
+
+	@Override
+	public int size() {
+		return grupos.size();
+	}
+
+	//Solo se modifica dentro del compute de su clave, asi que los cambios de
+	//un grupo no se cruzan; se lee sin bloqueos
+	private static final class Grupo {
+		final ConcurrentSkipListSet<Long> notas = new ConcurrentSkipListSet<>();
+		volatile Totales totales = new Totales(0, 0);
+		volatile String nombre;
+
+		void poner(Videojuego v, String nombre) {
+			if(notas.add(IndiceOrdenado.entrada(v.getNota(), v.getId()))) {
+				totales = new Totales(totales.cantidad + 1, totales.suma + v.getNota());
+			}
+			this.nombre = nombre;
+		}
+
+		//false si el grupo se queda vacio
+		boolean quitar(Videojuego v) {
+			if(notas.remove(IndiceOrdenado.entrada(v.getNota(), v.getId()))) {
+				totales = new Totales(totales.cantidad - 1, totales.suma - v.getNota());
+			}
+			return totales.cantidad > 0;
+		}
+
+		//Null si se ha vaciado mientras tanto
+		EstadisticasGrupo estadisticas() {
+			Totales t = totales;
+			if(t.cantidad == 0) {
+				return null;
+			}
+			try {
+				return new EstadisticasGrupo(nombre, t.cantidad, (double) t.suma / t.cantidad,
+						IndiceOrdenado.valor(notas.first()), IndiceOrdenado.valor(notas.last()));
+			}catch(NoSuchElementException e) {
+				return null;
+			}
+		}
+	}
+
+	private static final class Totales {
+		final int cantidad;
+		final long suma;
+
+		Totales(int cantidad, long suma) {
+			this.cantidad = cantidad;
+			this.suma = suma;
+		}
+	}
+}
@@ -0,0 +1,611 @@
+package serviciosrest.modelo.persistencia;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * <p>Indice de palabras de los nombres para autocompletar mientras se escribe:
+ * admite que la ultima palabra este a medias, faltas de ortografia
+ * ("pokmon") y acentos ("pokémon" = "pokemon"), y ordena los resultados
+ * por parecido.</p>
+ *
+ * <p>Los nombres se normalizan ({@link #normalizar(String)}) y se parten en
+ * palabras. El diccionario es un mapa ordenado y concurrente palabra -&gt; IDs
+ * que la tienen, y hace de trie implicito: las palabras que empiezan por un
+ * prefijo son un rango del mapa, y para las que estan a una distancia de
+ * edicion (Levenshtein) pequeña se recorre el diccionario en orden
+ * calculando una fila de la matriz de distancias por caracter. Las filas del
+ * prefijo comun con la palabra anterior se reutilizan, y en cuanto una fila
+ * supera la distancia maxima se salta de golpe a la primera palabra que no
+ * tiene ese prefijo. Es lo mismo que recorrer un trie, pero el diccionario se
+ * sigue actualizando con cada cambio sin bloqueos (un trie comprimido o un
+ * FST habria que reconstruirlo).</p>
+ *
+ * <p>Una busqueda:</p>
+ * <ol>
+ * <li>Para cada palabra de la consulta busca las del diccionario que se le
+ * parecen, con su distancia: las que empiezan por ella si es la ultima (se
+ * esta escribiendo), o ella misma, y despues las que estan a distancia 1
+ * (palabras de 3 a 5 letras) o 2 (mas largas) y empiezan por la misma letra:
+ * casi nadie se equivoca en la primera, y asi solo se recorre un trozo del
+ * diccionario.</li>
+ * <li>Los candidatos son los IDs de la palabra de la consulta con menos
+ * apariciones. Con cada una de las demas se descartan los que no tienen
+ * ninguna de sus parecidas, y a los que quedan se les suma la menor distancia.
+ * Los IDs de cada palabra estan en un array ordenado, asi que son cruces de
+ * arrays, sin mirar los nombres.</li>
+ * <li>Ordena por la suma de las distancias, despues los que empiezan por la
+ * primera palabra, despues los nombres mas cortos y por ultimo por ID. Solo
+ * se leen los nombres de los que pueden entrar en el resultado.</li>
+ * </ol>
+ * <p>Para que una consulta muy comun ("s") no recorra medio catalogo, las
+ * palabras parecidas, los pasos del recorrido y los candidatos estan
+ * acotados: el coste no depende del tamaño del catalogo.</p>
+ */
+public class IndiceAutocompletado implements IndiceSecundario {
+
+	//Limites de trabajo de una busqueda
+	static final int MAX_PALABRAS = 32;
+	static final int MAX_PASOS = 20_000;
+	static final int MAX_CANDIDATOS = 1_000;
+
+	//palabra -> IDs cuyo nombre la tiene
+	private final ConcurrentSkipListMap<String, Apariciones> palabras = new ConcurrentSkipListMap<>();
+	//ID -> nombre normalizado, para comprobar y ordenar los candidatos
+	private final ConcurrentHashMap<Integer, String> nombres = new ConcurrentHashMap<>();
+
+	/**
+	 * Normaliza un texto para indexarlo o buscarlo: minusculas, sin acentos ni
+	 * otras marcas, y todo lo que no sea letra o numero se convierte en un
+	 * unico espacio entre palabras
+	 * @param texto el texto
+	 * @return las palabras normalizadas separadas por un espacio
+	 */
+	public static String normalizar(String texto) {
+		String descompuesto = Normalizer.normalize(texto, Normalizer.Form.NFD);
+		StringBuilder normalizado = new StringBuilder(descompuesto.length());
+		for(int i = 0; i < descompuesto.length(); i++) {
+			char c = descompuesto.charAt(i);
+			if(Character.isLetterOrDigit(c)) {
+				normalizado.append(Character.toLowerCase(c));
+			}else if(Character.getType(c) != Character.NON_SPACING_MARK && normalizado.length() > 0
+					&& normalizado.charAt(normalizado.length() - 1) != ' ') {
+				normalizado.append(' ');
+			}
+		}
+		int fin = normalizado.length();
+		return fin > 0 && normalizado.charAt(fin - 1) == ' ' ? normalizado.substring(0, fin - 1)
+				: normalizado.toString();
+	}
+
+	/**
+	 * Busca los nombres que mejor encajan con lo que se esta escribiendo
+	 * @param texto lo escrito hasta ahora. Si no acaba en espacio (o en otro
+	 * separador), la ultima palabra puede estar a medias
+	 * @param limite el numero maximo de resultados
+	 * @return los IDs, del que mas se parece al que menos
+	 */
+	public List<Integer> buscar(String texto, int limite) {
+		String normalizado = normalizar(texto);
+		if(normalizado.isEmpty() || limite <= 0) {
+			return Collections.emptyList();
+		}
+		String[] consulta = normalizado.split(" ");
+		char ultimo = texto.charAt(texto.length() - 1);
+		boolean aMedias = Character.isLetterOrDigit(ultimo) || Character.getType(ultimo) == Character.NON_SPACING_MARK;
+
+		//Las palabras del diccionario que valen para cada una de la consulta, con
+		//su distancia, y cuantos nombres tienen alguna
+		List<Map<String, Integer>> parecidas = new ArrayList<>(consulta.length);
+		long[] apariciones = new long[consulta.length];
+		Integer[] orden = new Integer[consulta.length];
+		for(int i = 0; i < consulta.length; i++) {
+			Map<String, Integer> p = parecidas(consulta[i], aMedias && i == consulta.length - 1);
+			if(p.isEmpty()) {
+				return Collections.emptyList();
+			}
+			for(String palabra : p.keySet()) {
+				Apariciones ids = palabras.get(palabra);
+				apariciones[i] += ids == null ? 0 : ids.lista.size;
+			}
+			parecidas.add(p);
+			orden[i] = i;
+		}
+
+		//Los candidatos salen de la palabra que menos aparece, y cada una de las
+		//demas descarta los que no la tienen. Todo son cruces de listas de IDs
+		//ordenadas, sin mirar los nombres
+		Arrays.sort(orden, Comparator.comparingLong(i -> apariciones[i]));
+		int[] candidatos = candidatos(parecidas.get(orden[0]));
+		int n = candidatos.length;
+		int[] costes = new int[n];
+		int[] primeras = new int[n];//La distancia de la primera palabra de la consulta
+		int[] mejor = new int[n];
+		int costeMaximo = 0;
+		for(int i : orden) {
+			Arrays.fill(mejor, 0, n, Integer.MAX_VALUE);
+			for(Map.Entry<String, Integer> parecida : parecidas.get(i).entrySet()) {
+				ListaIds ids = ordenada(parecida.getKey());
+				if(ids != null) {
+					marcar(candidatos, n, ids, parecida.getValue(), mejor);
+				}
+			}
+			int quedan = 0;
+			for(int j = 0; j < n; j++) {
+				if(mejor[j] != Integer.MAX_VALUE) {
+					candidatos[quedan] = candidatos[j];
+					costes[quedan] = costes[j] + mejor[j];
+					primeras[quedan] = i == 0 ? mejor[j] : primeras[j];
+					costeMaximo = Math.max(costeMaximo, costes[quedan]);
+					quedan++;
+				}
+			}
+			n = quedan;
+		}
+
+		//Solo hace falta el nombre de los que pueden entrar en los resultados:
+		//se miran de menos a mas coste, y nos quedamos con los mejores en un
+		//monticulo con el peor arriba
+		PriorityQueue<Candidato> mejores = new PriorityQueue<>(limite + 1, Collections.reverseOrder());
+		int[][] filas = new int[2][consulta[0].length() + 1];
+		int maxima = tolerancia(consulta[0].length());
+		boolean prefijo = aMedias && consulta.length == 1;
+		for(int coste = 0; coste <= costeMaximo; coste++) {
+			if(mejores.size() == limite && mejores.peek().coste < coste) {
+				break;
+			}
+			for(int j = 0; j < n; j++) {
+				String nombre = costes[j] == coste ? nombres.get(candidatos[j]) : null;
+				if(nombre == null) {
+					continue;
+				}
+				int fin = nombre.indexOf(' ');
+				int primera = distancia(consulta[0], nombre, 0, fin < 0 ? nombre.length() : fin, maxima, prefijo, filas);
+				mejores.add(new Candidato(candidatos[j], coste, primera <= primeras[j], nombre.length()));
+				if(mejores.size() > limite) {
+					mejores.poll();
+				}
+			}
+		}
+		Candidato[] ordenados = mejores.toArray(new Candidato[0]);
+		Arrays.sort(ordenados);
+		List<Integer> resultado = new ArrayList<>(ordenados.length);
+		for(Candidato candidato : ordenados) {
+			resultado.add(candidato.id);
+		}
+		return resultado;
+	}
+
+	@Override
+	public void alta(Videojuego v) {
+		int id = v.getId();
+		String normalizado = normalizar(v.getNombre());
+		nombres.put(id, normalizado);
+		for(String palabra : palabras(normalizado)) {
+			poner(palabra, id);
+		}
+	}
+
+	@Override
+	public void baja(Videojuego v) {
+		int id = v.getId();
+		nombres.remove(id);
+		for(String palabra : palabras(normalizar(v.getNombre()))) {
+			quitar(palabra, id);
+		}
+	}
+
+	@Override
+	public void cambio(Videojuego anterior, Videojuego nuevo) {
+		if(!anterior.getNombre().equals(nuevo.getNombre())) {
+			//Solo se tocan las palabras que cambian: quitar el ID de una palabra
+			//muy comun copia toda su lista
+			int id = nuevo.getId();
+			String normalizado = normalizar(nuevo.getNombre());
+			Set<String> antes = palabras(normalizar(anterior.getNombre()));
+			Set<String> despues = palabras(normalizado);
+			nombres.put(id, normalizado);
+			for(String palabra : despues) {
+				if(!antes.contains(palabra)) {
+					poner(palabra, id);
+				}
+			}
+			for(String palabra : antes) {
+				if(!despues.contains(palabra)) {
+					quitar(palabra, id);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void vaciar() {
+		palabras.clear();
+		nombres.clear();
+	}
+
+	/**
+	 * @return el numero de palabras distintas indexadas
+	 */
+	@Override
+	public int size() {
+		return palabras.size();
+	}
+
+	/**
+	 * @return la distancia de edicion que se tolera en una palabra de esa longitud
+	 */
+	static int tolerancia(int longitud) {
+		return longitud < 3 ? 0 : longitud < 6 ? 1 : 2;
+	}
+
+	/**
+	 * Distancia de Levenshtein entre una palabra de la consulta y otra, o
+	 * entre la de la consulta y el prefijo de la otra que mas se le parezca
+	 * @param consulta la palabra buscada
+	 * @param texto el texto donde esta la palabra con la que se compara
+	 * @param desde donde empieza la palabra en el texto
+	 * @param hasta donde acaba (excluido)
+	 * @param maxima la distancia a partir de la que no interesa el valor exacto
+	 * @param prefijo true para comparar con los prefijos de la palabra
+	 * @param filas dos arrays de al menos {@code consulta.length() + 1}
+	 * @return la distancia, o {@code maxima + 1} si es mayor que {@code maxima}
+	 */
+	static int distancia(String consulta, String texto, int desde, int hasta, int maxima, boolean prefijo,
+			int[][] filas) {
+		int n = consulta.length();
+		int longitud = hasta - desde;
+		if((prefijo ? longitud >= n : longitud == n) && texto.regionMatches(desde, consulta, 0, n)) {
+			return 0;
+		}
+		if(maxima == 0 || longitud == 0 || texto.charAt(desde) != consulta.charAt(0)
+				|| (!prefijo && Math.abs(longitud - n) > maxima)) {
+			return maxima + 1;
+		}
+		int[] fila = filas[0];
+		int[] siguiente = filas[1];
+		for(int i = 0; i <= n; i++) {
+			fila[i] = i;
+		}
+		int mejorPrefijo = n;
+		for(int j = desde; j < hasta; j++) {
+			int minimo = filaSiguiente(consulta, texto.charAt(j), fila, siguiente);
+			int[] t = fila;
+			fila = siguiente;
+			siguiente = t;
+			mejorPrefijo = Math.min(mejorPrefijo, fila[n]);
+			if(minimo > maxima) {
+				break;
+			}
+		}
+		int resultado = prefijo ? mejorPrefijo : fila[n];
+		return Math.min(resultado, maxima + 1);
+	}
+
+	//Una fila de la matriz de distancias al añadir un caracter a la palabra.
+	//Devuelve el minimo de la fila: si pasa de la distancia maxima, ninguna
+	//palabra que empiece igual puede estar mas cerca
+	private static int filaSiguiente(String consulta, char c, int[] fila, int[] siguiente) {
+		siguiente[0] = fila[0] + 1;
+		int minimo = siguiente[0];
+		for(int i = 1; i <= consulta.length(); i++) {
+			int sustitucion = fila[i - 1] + (consulta.charAt(i - 1) == c ? 0 : 1);
+			siguiente[i] = Math.min(sustitucion, Math.min(fila[i], siguiente[i - 1]) + 1);
+			minimo = Math.min(minimo, siguiente[i]);
+		}
+		return minimo;
+	}
+
+	//Las palabras del diccionario que se parecen a una de la consulta, con su
+	//distancia: primero ella misma o las que empiezan por ella, y despues las
+	//que estan cerca
+	private Map<String, Integer> parecidas(String consulta, boolean prefijo) {
+		Map<String, Integer> resultado = new LinkedHashMap<>();
+		if(prefijo) {
+			for(String palabra : palabras.subMap(consulta, true, consulta + Character.MAX_VALUE, false).keySet()) {
+				if(resultado.size() == MAX_PALABRAS) {
+					break;
+				}
+				resultado.put(palabra, 0);
+			}
+		}else if(palabras.containsKey(consulta)) {
+			resultado.put(consulta, 0);
+		}
+		int maxima = tolerancia(consulta.length());
+		if(maxima > 0 && resultado.size() < MAX_PALABRAS) {
+			cercanas(consulta, maxima, prefijo, resultado);
+		}
+		return resultado;
+	}
+
+	//Los IDs de una palabra en orden, o null si no esta. Despues de altas
+	//desordenadas (una carga en paralelo, un nombre nuevo para un ID antiguo)
+	//se ordenan al buscarla, y se publica la lista ordenada si no ha cambiado
+	//mientras tanto
+	private ListaIds ordenada(String palabra) {
+		Apariciones apariciones = palabras.get(palabra);
+		if(apariciones == null) {
+			return null;
+		}
+		ListaIds lista = apariciones.lista;
+		if(!lista.ordenada) {
+			ListaIds ordenada = lista.ordenar();
+			synchronized(apariciones) {
+				if(apariciones.lista == lista) {
+					apariciones.lista = ordenada;
+				}
+			}
+			lista = ordenada;
+		}
+		return lista;
+	}
+
+	//Los IDs de las palabras, ordenados y sin repetir (un nombre puede tener
+	//dos de ellas), como mucho MAX_CANDIDATOS
+	private int[] candidatos(Map<String, Integer> parecidas) {
+		int[] candidatos = new int[MAX_CANDIDATOS];
+		int n = 0;
+		for(String palabra : parecidas.keySet()) {
+			Apariciones apariciones = palabras.get(palabra);
+			if(apariciones == null) {
+				continue;
+			}
+			ListaIds ids = apariciones.lista;
+			int copiar = Math.min(ids.size, candidatos.length - n);
+			System.arraycopy(ids.ids, 0, candidatos, n, copiar);
+			n += copiar;
+			if(n == candidatos.length) {
+				break;
+			}
+		}
+		Arrays.sort(candidatos, 0, n);
+		int distintos = 0;
+		for(int i = 0; i < n; i++) {
+			if(distintos == 0 || candidatos[i] != candidatos[distintos - 1]) {
+				candidatos[distintos++] = candidatos[i];
+			}
+		}
+		return Arrays.copyOf(candidatos, distintos);
+	}
+
+	//Para los candidatos (n primeros, ordenados) que estan en las apariciones
+	//de una palabra, se queda con la menor distancia. Si la lista es mucho mas
+	//larga que los candidatos se busca cada uno, y si no se recorren las dos
+	private static void marcar(int[] candidatos, int n, ListaIds lista, int distancia, int[] mejor) {
+		int[] ids = lista.ids;
+		int size = lista.size;
+		if(size > 8 * n) {
+			int desde = 0;
+			for(int i = 0; i < n && desde < size; i++) {
+				int j = Arrays.binarySearch(ids, desde, size, candidatos[i]);
+				if(j >= 0) {
+					mejor[i] = Math.min(mejor[i], distancia);
+					desde = j + 1;
+				}else {
+					desde = -j - 1;
+				}
+			}
+			return;
+		}
+		//Sin saltos que dependan de los datos, que aqui serian imprevisibles
+		for(int i = 0, j = 0; i < n && j < size;) {
+			int candidato = candidatos[i];
+			int id = ids[j];
+			if(candidato == id) {
+				mejor[i] = Math.min(mejor[i], distancia);
+			}
+			i += candidato <= id ? 1 : 0;
+			j += candidato >= id ? 1 : 0;
+		}
+	}
+
+	//Recorre como un trie (ver la clase) las palabras del diccionario que
+	//empiezan por la misma letra y añade las que estan a distancia maxima o menos
+	private void cercanas(String consulta, int maxima, boolean prefijo, Map<String, Integer> resultado) {
+		int n = consulta.length();
+		//filas[k] es la fila de los k primeros caracteres de la palabra actual, y
+		//mejores[k] la menor distancia de la consulta a uno de esos prefijos
+		int[][] filas = new int[16][n + 1];
+		int[] mejores = new int[16];
+		for(int i = 0; i <= n; i++) {
+			filas[0][i] = i;
+		}
+		mejores[0] = n;
+		String anterior = "";
+		int calculadas = 0;//Filas validas de "anterior" (sin contar la 0)
+		int pasos = 0;
+		String inicial = consulta.substring(0, 1);
+		String palabra = palabras.ceilingKey(inicial);
+		siguientePalabra:
+		while(palabra != null && palabra.startsWith(inicial) && resultado.size() < MAX_PALABRAS
+				&& pasos < MAX_PASOS) {
+			int k = Math.min(calculadas, comun(anterior, palabra));
+			if(palabra.length() >= filas.length) {
+				filas = Arrays.copyOf(filas, palabra.length() + 1);
+				mejores = Arrays.copyOf(mejores, palabra.length() + 1);
+			}
+			for(; k < palabra.length(); k++) {
+				if(filas[k + 1] == null) {
+					filas[k + 1] = new int[n + 1];
+				}
+				int minimo = filaSiguiente(consulta, palabra.charAt(k), filas[k], filas[k + 1]);
+				mejores[k + 1] = Math.min(mejores[k], filas[k + 1][n]);
+				pasos++;
+				if(minimo > maxima) {
+					//Ninguna palabra con este prefijo vale: saltamos a la siguiente que no lo tenga
+					anterior = palabra;
+					calculadas = k + 1;
+					palabra = siguienteSinPrefijo(palabra.substring(0, k + 1));
+					continue siguientePalabra;
+				}
+			}
+			int coste = prefijo ? mejores[palabra.length()] : filas[palabra.length()][n];
+			if(coste <= maxima) {
+				resultado.putIfAbsent(palabra, coste);
+			}
+			anterior = palabra;
+			calculadas = palabra.length();
+			palabra = palabras.higherKey(palabra);
+		}
+	}
+
+	//La primera palabra del diccionario que va despues de todas las que
+	//empiezan por el prefijo
+	private String siguienteSinPrefijo(String prefijo) {
+		int fin = prefijo.length();
+		while(fin > 0 && prefijo.charAt(fin - 1) == Character.MAX_VALUE) {
+			fin--;
+		}
+		if(fin == 0) {
+			return null;
+		}
+		return palabras.ceilingKey(prefijo.substring(0, fin - 1) + (char) (prefijo.charAt(fin - 1) + 1));
+	}
+
+	private static int comun(String a, String b) {
+		int n = Math.min(a.length(), b.length());
+		int i = 0;
+		while(i < n && a.charAt(i) == b.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+
+	private void poner(String palabra, int id) {
+		boolean puesto = false;
+		while(!puesto) {
+			Apariciones apariciones = palabras.computeIfAbsent(palabra, p -> new Apariciones());
+			synchronized(apariciones) {
+				//Si se acaba de quedar vacia y de salir del diccionario, se crea otra
+				if(!apariciones.borrada) {
+					apariciones.lista = apariciones.lista.con(id);
+					puesto = true;
+				}
+			}
+		}
+	}
+
+	private void quitar(String palabra, int id) {
+		Apariciones apariciones = palabras.get(palabra);
+		if(apariciones == null) {
+			return;
+		}
+		synchronized(apariciones) {
+			apariciones.lista = apariciones.lista.sin(id);
+			if(apariciones.lista.size == 0 && !apariciones.borrada) {
+				apariciones.borrada = true;
+				palabras.remove(palabra, apariciones);
+			}
+		}
+	}
+
+	private static Set<String> palabras(String normalizado) {
+		Set<String> resultado = new HashSet<>();
+		for(String palabra : normalizado.split(" ")) {
+			if(!palabra.isEmpty()) {
+				resultado.add(palabra);
+			}
+		}
+		return resultado;
+	}
+
+	//Los IDs de una palabra. Se leen sin bloqueos de la ultima lista publicada,
+	//y se cambian con el cerrojo del objeto
+	private static final class Apariciones {
+		volatile ListaIds lista = ListaIds.VACIA;
+		//Se ha quedado vacia y ha salido del diccionario: ya no se le añade nada
+		boolean borrada;
+	}
+
+	//Una version de los IDs de una palabra, en un array para cruzarlos sin
+	//cajas ni punteros. Una alta escribe despues del final de la version
+	//anterior (que no lo ve) y una baja copia el array, asi que quien la este
+	//recorriendo no ve huecos ni repetidos
+	private static final class ListaIds {
+		static final ListaIds VACIA = new ListaIds(new int[0], 0, true);
+
+		final int[] ids;
+		final int size;
+		final boolean ordenada;
+
+		ListaIds(int[] ids, int size, boolean ordenada) {
+			this.ids = ids;
+			this.size = size;
+			this.ordenada = ordenada;
+		}
+
+		ListaIds con(int id) {
+			int[] destino = size < ids.length ? ids : Arrays.copyOf(ids, Math.max(4, size * 2));
+			destino[size] = id;
+			return new ListaIds(destino, size + 1, ordenada && (size == 0 || ids[size - 1] < id));
+		}
+
+		ListaIds sin(int id) {
+			int i = -1;
+			if(ordenada) {
+				i = Arrays.binarySearch(ids, 0, size, id);
+			}else {
+				for(int j = 0; j < size && i < 0; j++) {
+					if(ids[j] == id) {
+						i = j;
+					}
+				}
+			}
+			if(i < 0) {
+				return this;
+			}
+			int[] quedan = new int[size - 1];
+			System.arraycopy(ids, 0, quedan, 0, i);
+			System.arraycopy(ids, i + 1, quedan, i, size - 1 - i);
+			return new ListaIds(quedan, size - 1, ordenada);
+		}
+
+		ListaIds ordenar() {
+			int[] ordenados = Arrays.copyOf(ids, size);
+			Arrays.sort(ordenados);
+			return new ListaIds(ordenados, size, true);
+		}
+	}
+
+	//Orden de los resultados: el menor es el mejor
+	private static final class Candidato implements Comparable<Candidato> {
+		final int id;
+		final int coste;
+		final boolean empieza;
+		final int longitud;
+
+		Candidato(int id, int coste, boolean empieza, int longitud) {
+			this.id = id;
+			this.coste = coste;
+			this.empieza = empieza;
+			this.longitud = longitud;
+		}
+
+		@Override
+		public int compareTo(Candidato otro) {
+			if(coste != otro.coste) {
+				return Integer.compare(coste, otro.coste);
+			}
+			if(empieza != otro.empieza) {
+				return empieza ? -1 : 1;
+			}
+			if(longitud != otro.longitud) {
+				return Integer.compare(longitud, otro.longitud);
+			}
+			return Integer.compare(id, otro.id);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package serviciosrest.modelo.persistencia;
+
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * Indice hash de una clave (por ejemplo la compañia) a los IDs que la tienen.
+ * Los videojuegos con clave null no se indexan.
+ * @param <K> el tipo de la clave
+ */
+public class IndiceHash<K> implements IndiceSecundario {
+
+	private final Function<Videojuego, K> clave;
+	private final ConcurrentHashMap<K, Set<Integer>> ids = new ConcurrentHashMap<>();
+
+	/**
+	 * @param clave obtiene la clave de un videojuego (ya normalizada)
+	 */
+	public IndiceHash(Function<Videojuego, K> clave) {
+		this.clave = clave;
+	}
+
+	/**
+	 * @param k la clave (normalizada igual que al indexar)
+	 * @return los IDs con esa clave; una vista concurrente que puede cambiar
+	 */
+	public Set<Integer> get(K k) {
+		Set<Integer> resultado = k == null ? null : ids.get(k);
+		return resultado == null ? Collections.emptySet() : Collections.unmodifiableSet(resultado);
+	}
+
+	@Override
+	public void alta(Videojuego v) {
+		K k = clave.apply(v);
+		if(k != null) {
+			ids.compute(k, (c, lista) -> {
+				if(lista == null) {
+					lista = ConcurrentHashMap.newKeySet();
+				}
+				lista.add(v.getId());
+				return lista;
+			});
+		}
+	}
+
+	@Override
+	public void baja(Videojuego v) {
+		K k = clave.apply(v);
+		if(k != null) {
+			ids.computeIfPresent(k, (c, lista) -> {
+				lista.remove(v.getId());
+				return lista.isEmpty() ? null : lista;
+			});
+		}
+	}
+
+	@Override
+	public void cambio(Videojuego anterior, Videojuego nuevo) {
+		if(!Objects.equals(clave.apply(anterior), clave.apply(nuevo))) {
+			baja(anterior);
+			alta(nuevo);
+		}
+	}
+
+	@Override
+	public void vaciar() {
+		ids.clear();
+	}
+
+	@Override
+	public int size() {
+		return ids.size();
+	}
+}
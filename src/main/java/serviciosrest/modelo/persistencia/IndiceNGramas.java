@@ -0,0 +1,167 @@
+package serviciosrest.modelo.persistencia;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * <p>Indice invertido de trigramas (n-gramas de 3 caracteres) sobre los nombres
+ * normalizados de los videojuegos. Sirve para resolver busquedas por subcadena
+ * sin recorrer todo el catalogo: cada trigrama apunta a los IDs cuyo nombre lo
+ * contiene (su "lista de apariciones").</p>
+ * 
+ * <p>Para buscar una subcadena se cruzan las listas de apariciones de todos sus
+ * trigramas, empezando por la mas corta, y solo se confirma con {@code contains}
+ * sobre los pocos candidatos que quedan. Las consultas de menos de 3 caracteres
+ * no tienen trigramas y se resuelven recorriendo los nombres ya normalizados.</p>
+ * 
+ * <p>El indice se actualiza de forma incremental con {@link #alta(Videojuego)} y
+ * {@link #baja(Videojuego)}; todas sus estructuras son concurrentes.</p>
+ */
+public class IndiceNGramas implements IndiceSecundario {
+
+	static final int N = 3;
+
+	//trigrama -> IDs cuyo nombre normalizado lo contiene
+	private final ConcurrentHashMap<Long, Set<Integer>> apariciones = new ConcurrentHashMap<>();
+	//ID -> nombre normalizado, para confirmar candidatos sin volver a normalizar
+	private final ConcurrentHashMap<Integer, String> nombres = new ConcurrentHashMap<>();
+
+	/**
+	 * Normaliza un nombre para indexarlo o buscarlo (minusculas independientes
+	 * del idioma del sistema)
+	 * @param nombre el texto a normalizar
+	 * @return el texto normalizado
+	 */
+	public static String normalizar(String nombre) {
+		return nombre.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Indexa el nombre de un videojuego
+	 * @param v el videojuego
+	 */
+	@Override
+	public void alta(Videojuego v) {
+		int id = v.getId();
+		String normalizado = normalizar(v.getNombre());
+		nombres.put(id, normalizado);
+		for(long trigrama : trigramas(normalizado)) {
+			//Se añade dentro de compute para no competir con una baja que vacie la lista
+			apariciones.compute(trigrama, (t, ids) -> {
+				if(ids == null) {
+					ids = ConcurrentHashMap.newKeySet();
+				}
+				ids.add(id);
+				return ids;
+			});
+		}
+	}
+
+	/**
+	 * Quita del indice el nombre de un videojuego
+	 * @param v el videojuego, con el nombre con el que se indexo
+	 */
+	@Override
+	public void baja(Videojuego v) {
+		int id = v.getId();
+		nombres.remove(id);
+		for(long trigrama : trigramas(normalizar(v.getNombre()))) {
+			//Si la lista se queda vacia la quitamos para no acumular basura
+			apariciones.computeIfPresent(trigrama, (t, ids) -> {
+				ids.remove(id);
+				return ids.isEmpty() ? null : ids;
+			});
+		}
+	}
+
+	/**
+	 * Busca los IDs cuyo nombre contiene la subcadena (sin distinguir mayusculas)
+	 * @param consulta la subcadena a buscar
+	 * @return los IDs encontrados, en ningun orden concreto
+	 */
+	public List<Integer> buscar(String consulta) {
+		String normalizada = normalizar(consulta);
+		List<Integer> encontrados = new ArrayList<>();
+		long[] trigramas = trigramas(normalizada);
+		if(trigramas.length == 0) {
+			//Consulta demasiado corta para el indice
+			for(Map.Entry<Integer, String> e : nombres.entrySet()) {
+				if(e.getValue().contains(normalizada)) {
+					encontrados.add(e.getKey());
+				}
+			}
+			return encontrados;
+		}
+
+		List<Set<Integer>> listas = new ArrayList<>(trigramas.length);
+		for(long trigrama : trigramas) {
+			Set<Integer> lista = apariciones.get(trigrama);
+			if(lista == null) {
+				return encontrados;//Algun trigrama no aparece en ningun nombre
+			}
+			listas.add(lista);
+		}
+		//Recorremos la lista mas corta y comprobamos el resto
+		listas.sort(Comparator.comparingInt(Set::size));
+		candidatos:
+		for(Integer id : listas.get(0)) {
+			for(int i = 1; i < listas.size(); i++) {
+				if(!listas.get(i).contains(id)) {
+					continue candidatos;
+				}
+			}
+			//Los trigramas no garantizan el orden, confirmamos la subcadena
+			String nombre = nombres.get(id);
+			if(nombre != null && nombre.contains(normalizada)) {
+				encontrados.add(id);
+			}
+		}
+		return encontrados;
+	}
+
+	@Override
+	public void cambio(Videojuego anterior, Videojuego nuevo) {
+		if(!anterior.getNombre().equals(nuevo.getNombre())) {
+			baja(anterior);
+			alta(nuevo);
+		}
+	}
+
+	@Override
+	public void vaciar() {
+		apariciones.clear();
+		nombres.clear();
+	}
+
+	/**
+	 * @return el numero de trigramas distintos indexados
+	 */
+	@Override
+	public int size() {
+		return apariciones.size();
+	}
+
+	/**
+	 * Calcula los trigramas distintos de un texto ya normalizado. Cada trigrama
+	 * se codifica en un long con 16 bits por caracter.
+	 */
+	static long[] trigramas(String texto) {
+		int total = texto.length() - N + 1;
+		if(total <= 0) {
+			return new long[0];
+		}
+		long[] resultado = new long[total];
+		for(int i = 0; i < total; i++) {
+			resultado[i] = ((long) texto.charAt(i) << 32) | ((long) texto.charAt(i + 1) << 16) | texto.charAt(i + 2);
+		}
+		return Arrays.stream(resultado).distinct().toArray();
+	}
+}
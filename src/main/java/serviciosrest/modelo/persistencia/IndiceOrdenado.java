@@ -0,0 +1,103 @@
+package serviciosrest.modelo.persistencia;
+
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * <p>Indice ordenado por un campo entero (año, nota...). Cada entrada es un long
+ * con el valor del campo en los 32 bits altos y el ID en los bajos, de modo que
+ * el orden natural es por valor y, a igualdad, por ID.</p>
+ * 
+ * <p>Un rango de valores es un {@code subSet} del indice, asi que las consultas
+ * por rango y los "N primeros" cuestan lo que el resultado y no el catalogo.</p>
+ */
+public class IndiceOrdenado implements IndiceSecundario {
+
+	private final ToIntFunction<Videojuego> campo;
+	private final ConcurrentSkipListSet<Long> entradas = new ConcurrentSkipListSet<>();
+	//El size() de ConcurrentSkipListSet recorre todo el conjunto
+	private final AtomicInteger tamano = new AtomicInteger();
+
+	/**
+	 * @param campo obtiene el valor del campo de un videojuego
+	 */
+	public IndiceOrdenado(ToIntFunction<Videojuego> campo) {
+		this.campo = campo;
+	}
+
+	/**
+	 * @param min valor minimo (incluido), o null si no hay
+	 * @param max valor maximo (incluido), o null si no hay
+	 * @return las entradas del rango en orden ascendente; una vista concurrente.
+	 * Usar {@link #valor(long)} y {@link #id(long)} para decodificarlas
+	 */
+	public NavigableSet<Long> rango(Integer min, Integer max) {
+		long desde = entrada(min == null ? Integer.MIN_VALUE : min, 0);
+		long hasta = entrada(max == null ? Integer.MAX_VALUE : max, -1);
+		return entradas.subSet(desde, true, hasta, true);
+	}
+
+	/**
+	 * @return el valor del campo de una entrada
+	 */
+	public static int valor(long entrada) {
+		return (int) (entrada >> 32);
+	}
+
+	/**
+	 * @return el ID de una entrada
+	 */
+	public static int id(long entrada) {
+		return (int) entrada;
+	}
+
+	/**
+	 * @return el valor del campo que indexa este indice para un videojuego
+	 */
+	public int valor(Videojuego v) {
+		return campo.applyAsInt(v);
+	}
+
+	@Override
+	public void alta(Videojuego v) {
+		if(entradas.add(entrada(campo.applyAsInt(v), v.getId()))) {
+			tamano.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void baja(Videojuego v) {
+		if(entradas.remove(entrada(campo.applyAsInt(v), v.getId()))) {
+			tamano.decrementAndGet();
+		}
+	}
+
+	@Override
+	public void cambio(Videojuego anterior, Videojuego nuevo) {
+		if(campo.applyAsInt(anterior) != campo.applyAsInt(nuevo)) {
+			//Primero el alta, asi el videojuego nunca desaparece de un recorrido
+			alta(nuevo);
+			baja(anterior);
+		}
+	}
+
+	@Override
+	public void vaciar() {
+		entradas.clear();
+		tamano.set(0);
+	}
+
+	@Override
+	public int size() {
+		return tamano.get();
+	}
+
+	//El ID se guarda sin signo en los 32 bits bajos
+	static long entrada(int valor, int id) {
+		return ((long) valor << 32) | (id & 0xFFFFFFFFL);
+	}
+}
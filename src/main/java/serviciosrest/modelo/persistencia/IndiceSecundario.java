@@ -0,0 +1,41 @@
+package serviciosrest.modelo.persistencia;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * Indice secundario que {@link DaoVideojuego} mantiene al dia. Los metodos se
+ * llaman dentro de la operacion atomica del DAO sobre el ID, asi que los
+ * cambios de un mismo videojuego llegan en orden; los de videojuegos distintos
+ * pueden llegar a la vez y el indice tiene que ser concurrente.
+ */
+public interface IndiceSecundario {
+
+	/**
+	 * Añade un videojuego al indice
+	 */
+	void alta(Videojuego v);
+
+	/**
+	 * Quita un videojuego del indice
+	 */
+	void baja(Videojuego v);
+
+	/**
+	 * Un videojuego se ha modificado. Por defecto se quita y se vuelve a añadir;
+	 * los indices pueden no hacer nada si su clave no ha cambiado.
+	 */
+	default void cambio(Videojuego anterior, Videojuego nuevo) {
+		baja(anterior);
+		alta(nuevo);
+	}
+
+	/**
+	 * Vacia el indice
+	 */
+	void vaciar();
+
+	/**
+	 * @return el numero de claves distintas del indice
+	 */
+	int size();
+}
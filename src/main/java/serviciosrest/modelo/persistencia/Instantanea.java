@@ -0,0 +1,282 @@
+package serviciosrest.modelo.persistencia;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * <p>Instantanea binaria del catalogo completo en el fichero 
+ * {@code instantanea-LSN.bin}. Junto con los registros de 
+ * {@link RegistroEscritura} a partir de ese LSN permite reconstruir el
+ * catalogo tras un reinicio.</p>
+ * 
+ * <p>Formato: cabecera ({@code VJSN}, version, LSN, siguiente ID), y por cada
+ * videojuego un 1 seguido de sus campos; un 0 marca el final y despues va el 
+ * CRC32 de todo lo anterior. Se escribe en un fichero temporal que se renombra
+ * al terminar, por lo que nunca queda una instantanea a medias con el nombre
+ * definitivo. Se lee mapeada en memoria y decodificando por trozos en
+ * paralelo, y tambien sirve como fichero de {@link CargaInicial}.</p>
+ */
+public class Instantanea {
+
+	private static final int MAGICO = 0x564A534E;//"VJSN"
+	private static final int VERSION = 1;
+	private static final String PREFIJO = "instantanea-";
+	private static final String EXTENSION = ".bin";
+	//Bytes de la cabecera y videojuegos que decodifica cada tarea al leer
+	private static final int CABECERA = 4 + 4 + 8 + 4;
+	private static final int TROZO = 16_384;
+
+	private final long lsn;
+	private final int siguienteId;
+	private final List<Videojuego> videojuegos;
+
+	private Instantanea(long lsn, int siguienteId, List<Videojuego> videojuegos) {
+		this.lsn = lsn;
+		this.siguienteId = siguienteId;
+		this.videojuegos = videojuegos;
+	}
+
+	/**
+	 * @return el primer LSN del registro que hay que aplicar encima de la instantanea
+	 */
+	public long getLsn() {
+		return lsn;
+	}
+
+	public int getSiguienteId() {
+		return siguienteId;
+	}
+
+	public List<Videojuego> getVideojuegos() {
+		return videojuegos;
+	}
+
+	/**
+	 * Escribe una instantanea y borra las anteriores
+	 * @param directorio donde se guarda
+	 * @param lsn el primer LSN del registro que no esta garantizado que contenga
+	 * @param siguienteId el siguiente ID que asignara el DAO
+	 * @param videojuegos los videojuegos a guardar
+	 * @return el fichero escrito
+	 * @throws IOException si no se puede escribir
+	 */
+	public static Path escribir(Path directorio, long lsn, int siguienteId, Iterator<Videojuego> videojuegos)
+			throws IOException {
+		Files.createDirectories(directorio);
+		Path definitivo = directorio.resolve(String.format("%s%020d%s", PREFIJO, lsn, EXTENSION));
+		Path temporal = directorio.resolve(definitivo.getFileName() + ".tmp");
+		try(FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			CheckedOutputStream checked = new CheckedOutputStream(
+					new BufferedOutputStream(Channels.newOutputStream(canal), 1 << 16), new CRC32());
+			DataOutputStream out = new DataOutputStream(checked);
+			out.writeInt(MAGICO);
+			out.writeInt(VERSION);
+			out.writeLong(lsn);
+			out.writeInt(siguienteId);
+			while(videojuegos.hasNext()) {
+				Videojuego v = videojuegos.next();
+				out.writeByte(1);
+				out.writeInt(v.getId());
+				escribirVideojuego(out, v);
+			}
+			out.writeByte(0);
+			out.writeLong(checked.getChecksum().getValue());
+			out.flush();
+			canal.force(true);
+		}
+		Files.move(temporal, definitivo, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		for(Path antigua : instantaneas(directorio)) {
+			if(!antigua.equals(definitivo)) {
+				Files.deleteIfExists(antigua);
+			}
+		}
+		return definitivo;
+	}
+
+	/**
+	 * Lee la instantanea mas reciente que este completa
+	 * @param directorio donde buscarla
+	 * @return la instantanea, o null si no hay ninguna valida
+	 * @throws IOException si no se puede leer el directorio
+	 */
+	public static Instantanea leerUltima(Path directorio) throws IOException {
+		List<Path> instantaneas = instantaneas(directorio);
+		for(int i = instantaneas.size() - 1; i >= 0; i--) {
+			Instantanea instantanea = leer(instantaneas.get(i));
+			if(instantanea != null) {
+				return instantanea;
+			}
+		}
+		return null;
+	}
+
+	//La instantanea se mapea en memoria y se lee en dos pasadas: la primera
+	//salta de videojuego en videojuego (solo lee las longitudes) para comprobar
+	//que esta completa, calcular el CRC y partirla en trozos; la segunda
+	//decodifica los trozos en paralelo
+	private static Instantanea leer(Path fichero) throws IOException {
+		try(FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ)) {
+			if(canal.size() > Integer.MAX_VALUE) {
+				throw new IOException("Instantanea demasiado grande para mapearla: " + fichero);
+			}
+			return leer(canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size()));
+		}
+	}
+
+	/**
+	 * Lee una instantanea ya cargada o mapeada en memoria
+	 * @param datos el contenido del fichero, desde su posicion 0
+	 * @return la instantanea, o null si no es valida o esta truncada
+	 */
+	static Instantanea leer(ByteBuffer datos) {
+		if(datos.limit() < CABECERA || datos.getInt(0) != MAGICO || datos.getInt(4) != VERSION) {
+			return null;
+		}
+		long lsn = datos.getLong(8);
+		int siguienteId = datos.getInt(16);
+		List<Integer> cortes = new ArrayList<>();
+		int posicion = CABECERA;
+		int total = 0;
+		while(true) {
+			if(posicion >= datos.limit()) {
+				return null;//Instantanea truncada
+			}
+			byte marca = datos.get(posicion);
+			if(marca == 0) {
+				break;
+			}
+			if(marca != 1) {
+				return null;
+			}
+			if(total % TROZO == 0) {
+				cortes.add(posicion);
+			}
+			posicion = saltarVideojuego(datos, posicion + 1 + 4);
+			if(posicion < 0) {
+				return null;
+			}
+			total++;
+		}
+		if(posicion + 1 + 8 > datos.limit()) {
+			return null;
+		}
+		ByteBuffer contenido = datos.duplicate();
+		contenido.position(0).limit(posicion + 1);
+		CRC32 crc = new CRC32();
+		crc.update(contenido);
+		if(datos.getLong(posicion + 1) != crc.getValue()) {
+			return null;
+		}
+		Videojuego[] videojuegos = new Videojuego[total];
+		IntStream.range(0, cortes.size()).parallel().forEach(i -> {
+			ByteBuffer trozo = datos.duplicate();
+			trozo.position(cortes.get(i));
+			for(int j = i * TROZO; j < Math.min(videojuegos.length, (i + 1) * TROZO); j++) {
+				trozo.get();//Marca
+				int id = trozo.getInt();
+				String nombre = leerUTF(trozo);
+				String compania = trozo.get() != 0 ? leerUTF(trozo) : null;
+				videojuegos[j] = new Videojuego(id, nombre, compania, trozo.getInt(), trozo.getInt());
+			}
+		});
+		return new Instantanea(lsn, siguienteId, Arrays.asList(videojuegos));
+	}
+
+	//Devuelve la posicion del siguiente videojuego, o -1 si se sale del fichero
+	private static int saltarVideojuego(ByteBuffer datos, int posicion) {
+		int limite = datos.limit();
+		if(posicion + 2 > limite) {
+			return -1;
+		}
+		posicion += 2 + Short.toUnsignedInt(datos.getShort(posicion));//Nombre
+		if(posicion + 1 > limite) {
+			return -1;
+		}
+		if(datos.get(posicion++) != 0) {
+			if(posicion + 2 > limite) {
+				return -1;
+			}
+			posicion += 2 + Short.toUnsignedInt(datos.getShort(posicion));//Compañia
+		}
+		posicion += 8;//Año y nota
+		return posicion > limite ? -1 : posicion;
+	}
+
+	//Lee una cadena escrita con writeUTF (UTF-8 modificado). Casi siempre es
+	//ASCII, que se copia tal cual; si no, la decodifica DataInputStream
+	private static String leerUTF(ByteBuffer datos) {
+		int longitud = Short.toUnsignedInt(datos.getShort());
+		byte[] bytes = new byte[longitud + 2];
+		datos.get(bytes, 2, longitud);
+		boolean ascii = true;
+		for(int i = 2; i < bytes.length && ascii; i++) {
+			ascii = bytes[i] >= 0;
+		}
+		if(ascii) {
+			return new String(bytes, 2, longitud, StandardCharsets.ISO_8859_1);
+		}
+		bytes[0] = (byte) (longitud >>> 8);
+		bytes[1] = (byte) longitud;
+		try {
+			return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+		}catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static List<Path> instantaneas(Path directorio) throws IOException {
+		if(!Files.isDirectory(directorio)) {
+			return new ArrayList<>();
+		}
+		try(Stream<Path> ficheros = Files.list(directorio)) {
+			return ficheros.filter(p -> {
+				String nombre = p.getFileName().toString();
+				return nombre.startsWith(PREFIJO) && nombre.endsWith(EXTENSION);
+			}).sorted().collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Escribe los campos de un videojuego salvo el ID. Lo comparten la
+	 * instantanea y el registro de escritura.
+	 */
+	static void escribirVideojuego(DataOutputStream out, Videojuego v) throws IOException {
+		out.writeUTF(v.getNombre());
+		out.writeBoolean(v.getCompania() != null);
+		if(v.getCompania() != null) {
+			out.writeUTF(v.getCompania());
+		}
+		out.writeInt(v.getAnno());
+		out.writeInt(v.getNota());
+	}
+
+	static Videojuego leerVideojuego(DataInputStream in, int id) throws IOException {
+		String nombre = in.readUTF();
+		String compania = in.readBoolean() ? in.readUTF() : null;
+		return new Videojuego(id, nombre, compania, in.readInt(), in.readInt());
+	}
+}
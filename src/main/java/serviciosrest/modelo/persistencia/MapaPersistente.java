@@ -0,0 +1,278 @@
+package serviciosrest.modelo.persistencia;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * <p>Mapa inmutable ID -&gt; videojuego (un HAMT, <i>hash array mapped trie</i>,
+ * en el que el "hash" es el propio ID). Cada modificacion devuelve un mapa
+ * nuevo que comparte con el anterior todo menos el camino de la raiz a la
+ * hoja que cambia, asi que el mapa viejo sigue valiendo y se puede recorrer
+ * sin bloqueos mientras otros hilos publican versiones nuevas.</p>
+ *
+ * <p>El ID se consume de 5 en 5 bits, empezando por los mas altos, en 7
+ * niveles: el recorrido sale en orden de ID. Cada nodo guarda solo los hijos
+ * que existen, con un mapa de bits que dice cuales son (su posicion en el
+ * array es el numero de bits a 1 por debajo del suyo). Una alta, baja o
+ * modificacion copia 7 nodos de, como mucho, 32 referencias.</p>
+ */
+public final class MapaPersistente {
+
+	/**
+	 * El mapa vacio
+	 */
+	public static final MapaPersistente VACIO = new MapaPersistente(null, 0);
+
+	private static final int BITS = 5;
+	private static final int MASCARA = (1 << BITS) - 1;
+	private static final int DESPLAZAMIENTO_RAIZ = 30;
+	private static final int NIVELES = DESPLAZAMIENTO_RAIZ / BITS + 1;
+
+	private final Nodo raiz;
+	private final int size;
+
+	private MapaPersistente(Nodo raiz, int size) {
+		this.raiz = raiz;
+		this.size = size;
+	}
+
+	/**
+	 * Construye el mapa de una vez, sin copias intermedias
+	 * @param videojuegos los videojuegos, en cualquier orden
+	 * @return el mapa
+	 * @throws IllegalArgumentException si hay dos videojuegos con el mismo ID
+	 */
+	public static MapaPersistente de(Collection<Videojuego> videojuegos) {
+		Videojuego[] ordenados = videojuegos.toArray(new Videojuego[0]);
+		Arrays.parallelSort(ordenados, Comparator.comparingInt(Videojuego::getId));
+		if(ordenados.length == 0) {
+			return VACIO;
+		}
+		return new MapaPersistente(construir(ordenados, 0, ordenados.length, DESPLAZAMIENTO_RAIZ), ordenados.length);
+	}
+
+	/**
+	 * @param id el ID
+	 * @return el videojuego con ese ID, o null si no esta
+	 */
+	public Videojuego get(int id) {
+		int clave = clave(id);
+		Nodo nodo = raiz;
+		for(int desplazamiento = DESPLAZAMIENTO_RAIZ; nodo != null; desplazamiento -= BITS) {
+			int bit = bit(clave, desplazamiento);
+			if((nodo.mapa & bit) == 0) {
+				return null;
+			}
+			Object hijo = nodo.hijos[Integer.bitCount(nodo.mapa & (bit - 1))];
+			if(desplazamiento == 0) {
+				return (Videojuego) hijo;
+			}
+			nodo = (Nodo) hijo;
+		}
+		return null;
+	}
+
+	/**
+	 * @param id el ID
+	 * @param v el videojuego que tiene que tener ese ID
+	 * @return un mapa igual a este pero con {@code v} en {@code id}
+	 */
+	public MapaPersistente con(int id, Videojuego v) {
+		return new MapaPersistente(con(raiz, clave(id), DESPLAZAMIENTO_RAIZ, v), get(id) == null ? size + 1 : size);
+	}
+
+	/**
+	 * @param id el ID
+	 * @return un mapa igual a este pero sin {@code id} (este mismo si no estaba)
+	 */
+	public MapaPersistente sin(int id) {
+		if(get(id) == null) {
+			return this;
+		}
+		return new MapaPersistente(sin(raiz, clave(id), DESPLAZAMIENTO_RAIZ), size - 1);
+	}
+
+	/**
+	 * @return el numero de videojuegos
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return los videojuegos en orden de ID
+	 */
+	public Iterator<Videojuego> iterator() {
+		return iterator(Integer.MIN_VALUE);
+	}
+
+	/**
+	 * @param desde el primer ID que interesa
+	 * @return los videojuegos con ID mayor o igual que {@code desde}, en orden
+	 */
+	public Iterator<Videojuego> iterator(int desde) {
+		return new Recorrido(desde);
+	}
+
+	//Con el bit de signo cambiado, el orden sin signo de las claves es el
+	//orden con signo de los IDs
+	private static int clave(int id) {
+		return id ^ Integer.MIN_VALUE;
+	}
+
+	private static int bit(int clave, int desplazamiento) {
+		return 1 << ((clave >>> desplazamiento) & MASCARA);
+	}
+
+	//Nodos [desde, hasta) de un array ordenado, que comparten los bits de la
+	//clave por encima de "desplazamiento"
+	private static Nodo construir(Videojuego[] ordenados, int desde, int hasta, int desplazamiento) {
+		int mapa = 0;
+		int n = 0;
+		for(int i = desde; i < hasta; i++) {
+			int bit = bit(clave(ordenados[i].getId()), desplazamiento);
+			if((mapa & bit) != 0) {
+				if(desplazamiento == 0) {
+					throw new IllegalArgumentException("ID repetido: " + ordenados[i].getId());
+				}
+				continue;
+			}
+			mapa |= bit;
+			n++;
+		}
+		Object[] hijos = new Object[n];
+		int inicio = desde;
+		for(int h = 0; h < n; h++) {
+			int bit = bit(clave(ordenados[inicio].getId()), desplazamiento);
+			int fin = inicio + 1;
+			while(fin < hasta && bit(clave(ordenados[fin].getId()), desplazamiento) == bit) {
+				fin++;
+			}
+			hijos[h] = desplazamiento == 0 ? ordenados[inicio]
+					: construir(ordenados, inicio, fin, desplazamiento - BITS);
+			inicio = fin;
+		}
+		return new Nodo(mapa, hijos);
+	}
+
+	private static Nodo con(Nodo nodo, int clave, int desplazamiento, Videojuego v) {
+		int bit = bit(clave, desplazamiento);
+		if(nodo == null) {
+			return new Nodo(bit, new Object[] { hoja(null, clave, desplazamiento, v) });
+		}
+		int i = Integer.bitCount(nodo.mapa & (bit - 1));
+		if((nodo.mapa & bit) != 0) {
+			Object[] hijos = nodo.hijos.clone();
+			hijos[i] = hoja((Nodo) (desplazamiento == 0 ? null : hijos[i]), clave, desplazamiento, v);
+			return new Nodo(nodo.mapa, hijos);
+		}
+		Object[] hijos = new Object[nodo.hijos.length + 1];
+		System.arraycopy(nodo.hijos, 0, hijos, 0, i);
+		hijos[i] = hoja(null, clave, desplazamiento, v);
+		System.arraycopy(nodo.hijos, i, hijos, i + 1, nodo.hijos.length - i);
+		return new Nodo(nodo.mapa | bit, hijos);
+	}
+
+	//El hijo de un nodo: en el ultimo nivel el videojuego, y si no el subarbol
+	private static Object hoja(Nodo hijo, int clave, int desplazamiento, Videojuego v) {
+		return desplazamiento == 0 ? v : con(hijo, clave, desplazamiento - BITS, v);
+	}
+
+	//Null si el nodo se queda vacio
+	private static Nodo sin(Nodo nodo, int clave, int desplazamiento) {
+		int bit = bit(clave, desplazamiento);
+		int i = Integer.bitCount(nodo.mapa & (bit - 1));
+		Nodo hijo = desplazamiento == 0 ? null : sin((Nodo) nodo.hijos[i], clave, desplazamiento - BITS);
+		if(hijo != null) {
+			Object[] hijos = nodo.hijos.clone();
+			hijos[i] = hijo;
+			return new Nodo(nodo.mapa, hijos);
+		}
+		if(nodo.hijos.length == 1) {
+			return null;
+		}
+		Object[] hijos = new Object[nodo.hijos.length - 1];
+		System.arraycopy(nodo.hijos, 0, hijos, 0, i);
+		System.arraycopy(nodo.hijos, i + 1, hijos, i, hijos.length - i);
+		return new Nodo(nodo.mapa & ~bit, hijos);
+	}
+
+	private static final class Nodo {
+		final int mapa;
+		final Object[] hijos;
+
+		Nodo(int mapa, Object[] hijos) {
+			this.mapa = mapa;
+			this.hijos = hijos;
+		}
+	}
+
+	//Recorrido en profundidad con una pila de un nodo y una posicion por nivel
+	private final class Recorrido implements Iterator<Videojuego> {
+		private final Nodo[] nodos = new Nodo[NIVELES];
+		private final int[] posiciones = new int[NIVELES];
+		private int nivel;
+		private Videojuego siguiente;
+
+		Recorrido(int desde) {
+			if(raiz == null) {
+				return;
+			}
+			//Bajamos por el camino de "desde" mientras exista, y nos quedamos en
+			//el primer hijo que no sea menor
+			int clave = clave(desde);
+			nodos[0] = raiz;
+			for(int desplazamiento = DESPLAZAMIENTO_RAIZ;; desplazamiento -= BITS) {
+				Nodo nodo = nodos[nivel];
+				int bit = bit(clave, desplazamiento);
+				posiciones[nivel] = Integer.bitCount(nodo.mapa & (bit - 1));
+				if((nodo.mapa & bit) == 0 || desplazamiento == 0) {
+					break;
+				}
+				Nodo hijo = (Nodo) nodo.hijos[posiciones[nivel]];
+				nodos[++nivel] = hijo;
+			}
+			siguiente = avanzar();
+		}
+
+		//Desde la posicion actual, el primer videojuego que quede
+		private Videojuego avanzar() {
+			while(nivel >= 0) {
+				Nodo nodo = nodos[nivel];
+				if(posiciones[nivel] == nodo.hijos.length) {
+					nodos[nivel] = null;
+					if(--nivel >= 0) {
+						posiciones[nivel]++;
+					}
+				}else if(nivel == NIVELES - 1) {
+					return (Videojuego) nodo.hijos[posiciones[nivel]];
+				}else {
+					nodos[nivel + 1] = (Nodo) nodo.hijos[posiciones[nivel]];
+					posiciones[++nivel] = 0;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return siguiente != null;
+		}
+
+		@Override
+		public Videojuego next() {
+			if(siguiente == null) {
+				throw new NoSuchElementException();
+			}
+			Videojuego v = siguiente;
+			posiciones[nivel]++;
+			siguiente = avanzar();
+			return v;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package serviciosrest.modelo.persistencia;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * Recibe los cambios del catalogo de {@link DaoVideojuego}. Se llama despues
+ * de que el cambio sea visible y de que aumente la version del catalogo, en
+ * el hilo que ha hecho el cambio, asi que tiene que ser rapido y no puede
+ * lanzar excepciones.
+ */
+public interface OyenteCambios {
+
+	/**
+	 * Un videojuego se ha añadido, modificado o borrado
+	 * @param version la version del catalogo que ha dado lugar el cambio. Cada
+	 * cambio tiene la suya, pero con varios hilos pueden llegar desordenados
+	 * @param anterior el videojuego antes del cambio, o null si es un alta
+	 * @param nuevo el videojuego despues del cambio, o null si es una baja
+	 */
+	void cambio(long version, Videojuego anterior, Videojuego nuevo);
+
+	/**
+	 * Se ha sustituido todo el catalogo (al recuperarlo del disco)
+	 * @param version la version del catalogo despues de la recarga
+	 */
+	default void recarga(long version) {
+	}
+}
@@ -0,0 +1,198 @@
+package serviciosrest.modelo.persistencia;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * <p>Hace que el catalogo de {@link DaoVideojuego} sobreviva a los reinicios.
+ * Al arrancar carga la ultima {@link Instantanea} y le aplica los registros
+ * del {@link RegistroEscritura} posteriores a ella; despues engancha el
+ * registro al DAO para que todos los cambios queden en disco.</p>
+ * 
+ * <p>Cada cierto tiempo (y al parar la aplicacion) escribe una instantanea
+ * nueva y borra los segmentos del registro que ya contiene, de modo que el 
+ * tiempo de recuperacion no crece sin limite.</p>
+ * 
+ * <p>Solo se da de alta en el contexto de Spring si la propiedad
+ * {@code videojuegos.persistencia.habilitada} vale true, y nunca de forma
+ * perezosa: nadie depende de este bean.</p>
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(name = "videojuegos.persistencia.habilitada", havingValue = "true")
+public class PersistenciaVideojuegos {
+
+	private static final Logger log = LoggerFactory.getLogger(PersistenciaVideojuegos.class);
+
+	private final DaoVideojuego dao;
+	private Path directorio;
+	private final PoliticaSincronizacion politica;
+	private final Duration intervaloFsync;
+	private final Duration intervaloInstantanea;
+
+	private CargaInicial carga;
+	private RegistroEscritura registro;
+	private ScheduledExecutorService programador;
+
+	public PersistenciaVideojuegos(DaoVideojuego dao,
+			@Value("${videojuegos.persistencia.directorio:datos}") String directorio,
+			@Value("${videojuegos.persistencia.fsync:lotes}") String politica,
+			@Value("${videojuegos.persistencia.intervalo-fsync:100ms}") Duration intervaloFsync,
+			@Value("${videojuegos.persistencia.intervalo-instantanea:5m}") Duration intervaloInstantanea) {
+		this.dao = dao;
+		this.directorio = Paths.get(directorio);
+		this.politica = PoliticaSincronizacion.valueOf(politica.trim().toUpperCase());
+		this.intervaloFsync = intervaloFsync;
+		this.intervaloInstantanea = intervaloInstantanea;
+	}
+
+	/**
+	 * @param carga el fichero de carga inicial, que se usa si no hay nada
+	 * que recuperar del disco
+	 */
+	@Autowired(required = false)
+	public void setCarga(CargaInicial carga) {
+		this.carga = carga;
+	}
+
+	/**
+	 * En el modo cluster todos los nodos pueden estar en la misma maquina y
+	 * con la misma configuracion. Como cada uno escribe su instantanea y
+	 * borra los segmentos del registro que encuentra en el directorio, cada
+	 * nodo usa un subdirectorio con el numero de su puerto
+	 * @param nodos la lista de nodos del cluster (vacia si no hay cluster)
+	 * @param puerto el puerto de este nodo
+	 */
+	@Autowired
+	public void setCluster(@Value("${videojuegos.cluster.nodos:}") String nodos,
+			@Value("${server.port:8080}") int puerto) {
+		if(!nodos.isBlank()) {
+			directorio = directorio.resolve(String.valueOf(puerto));
+		}
+	}
+
+	/**
+	 * Recupera el catalogo del disco y empieza a registrar los cambios
+	 * @throws IOException si no se puede leer o escribir el directorio de datos
+	 */
+	@PostConstruct
+	public void iniciar() throws IOException {
+		long inicio = System.nanoTime();
+		Files.createDirectories(directorio);
+		Instantanea instantanea = Instantanea.leerUltima(directorio);
+		long desde = instantanea == null ? 0 : instantanea.getLsn();
+		List<RegistroEscritura.Entrada> entradas = RegistroEscritura.leer(directorio, desde);
+
+		if(instantanea == null && entradas.isEmpty()) {
+			//Directorio vacio: el punto de partida es el fichero de carga inicial o,
+			//si no hay, lo que tenga el DAO (los datos de ejemplo)
+			log.info("Sin datos previos en {}", directorio.toAbsolutePath());
+			if(carga != null) {
+				carga.cargar();
+			}
+		}else {
+			Map<Integer, Videojuego> estado = new HashMap<>();
+			int siguienteId = 0;
+			if(instantanea != null) {
+				for(Videojuego v : instantanea.getVideojuegos()) {
+					estado.put(v.getId(), v);
+				}
+				siguienteId = instantanea.getSiguienteId();
+			}
+			for(RegistroEscritura.Entrada e : entradas) {
+				if(e.tipo == RegistroEscritura.GUARDAR) {
+					estado.put(e.id, e.videojuego);
+				}else {
+					estado.remove(e.id);
+				}
+				siguienteId = Math.max(siguienteId, e.id + 1);
+			}
+			dao.cargar(estado.values(), siguienteId);
+			log.info("Recuperados {} videojuegos ({} registros aplicados) en {} ms", estado.size(),
+					entradas.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+		}
+		long ultimoLsn = entradas.isEmpty() ? desde - 1 : entradas.get(entradas.size() - 1).lsn;
+		ultimoLsn = Math.max(ultimoLsn, 0);
+
+		//Dejamos todo en una instantanea nueva y empezamos el registro de cero, asi
+		//no se escribe nunca detras de un registro a medias de la ejecucion anterior
+		Instantanea.escribir(directorio, ultimoLsn + 1, dao.getSiguienteId(), dao.iterator(null));
+		for(Path segmento : RegistroEscritura.segmentos(directorio)) {
+			Files.delete(segmento);
+		}
+		registro = new RegistroEscritura(directorio, politica, intervaloFsync.toMillis(), ultimoLsn);
+		dao.setRegistro(registro);
+
+		if(!intervaloInstantanea.isZero()) {
+			programador = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread hilo = new Thread(r, "instantaneas");
+				hilo.setDaemon(true);
+				return hilo;
+			});
+			long periodo = intervaloInstantanea.toMillis();
+			programador.scheduleWithFixedDelay(() -> {
+				try {
+					instantanea();
+				}catch(IOException | RuntimeException e) {
+					log.error("Error al hacer la instantanea", e);
+				}
+			}, periodo, periodo, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Escribe una instantanea del catalogo y borra los segmentos del registro
+	 * que ya no hacen falta. Se puede hacer mientras se atienden peticiones.
+	 * @throws IOException si no se puede escribir
+	 */
+	public synchronized void instantanea() throws IOException {
+		long corte = registro.rotar();
+		//Es una instantanea "difusa": puede incluir cambios posteriores al corte,
+		//pero aplicar de nuevo esos registros al recuperar da el mismo resultado
+		Instantanea.escribir(directorio, corte, dao.getSiguienteId(), dao.iterator(null));
+		registro.borrarAnteriores(corte);
+	}
+
+	/**
+	 * Al parar la aplicacion dejamos una instantanea para que el siguiente
+	 * arranque sea rapido y cerramos el registro
+	 * @throws IOException si no se puede escribir
+	 */
+	@PreDestroy
+	public void cerrar() throws IOException {
+		if(programador != null) {
+			programador.shutdownNow();
+		}
+		if(registro != null) {
+			try {
+				instantanea();
+			}finally {
+				dao.setRegistro(null);
+				registro.close();
+				registro = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package serviciosrest.modelo.persistencia;
+
+/**
+ * Cuando se fuerza a disco (fsync) el registro de escritura
+ * 
+ * <ul>
+ * <li>{@link #SIEMPRE}: cada escritura espera a su propio fsync antes de 
+ * responder. Si varias coinciden en el tiempo, comparten el mismo fsync.</li>
+ * <li>{@link #LOTES}: un hilo dedicado agrupa todas las escrituras pendientes
+ * en un unico fsync y las escrituras esperan a que termine (group commit).</li>
+ * <li>{@link #INTERVALO}: las escrituras no esperan; el hilo dedicado hace fsync
+ * cada cierto tiempo. Un fallo puede perder el ultimo intervalo.</li>
+ * </ul>
+ */
+public enum PoliticaSincronizacion {
+	SIEMPRE, LOTES, INTERVALO
+}
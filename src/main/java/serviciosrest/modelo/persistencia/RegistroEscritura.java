@@ -0,0 +1,476 @@
+package serviciosrest.modelo.persistencia;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import serviciosrest.modelo.entidad.Videojuego;
+
+/**
+ * <p>Registro de escritura anticipada (write-ahead log) de los cambios del
+ * catalogo. Cada alta, modificacion o baja se añade al final del fichero antes
+ * de confirmarse al cliente, de modo que tras un reinicio se puede reconstruir
+ * el catalogo aplicando los registros sobre la ultima {@link Instantanea}.</p>
+ * 
+ * <p>Cada registro se guarda como {@code [longitud][crc32][lsn][tipo][id][datos]}.
+ * El LSN (numero de secuencia del registro) es creciente. Al leer se para en el
+ * primer registro incompleto o corrupto, que corresponde a una escritura que
+ * no llego a confirmarse.</p>
+ * 
+ * <p>Los registros se acumulan en memoria y un unico hilo a la vez los escribe
+ * y hace fsync, asi todas las escrituras que llegan mientras se hace un fsync
+ * se confirman juntas con el siguiente (group commit). Cuando se hace cada
+ * fsync depende de la {@link PoliticaSincronizacion}.</p>
+ * 
+ * <p>El registro se divide en segmentos {@code wal-LSN.log}, donde LSN es el
+ * primero que contiene. Al hacer una instantanea se abre un segmento nuevo
+ * con {@link #rotar()} y los anteriores se borran cuando la instantanea esta
+ * en disco.</p>
+ */
+public class RegistroEscritura implements Closeable {
+
+	static final byte GUARDAR = 1;
+	static final byte BORRAR = 2;
+
+	private static final String PREFIJO = "wal-";
+	private static final String EXTENSION = ".log";
+
+	/**
+	 * Escritura registrada pero todavia no aplicada en memoria. La devuelve
+	 * {@link #registrar} y hay que confirmar con {@link Escritura#confirmar()} al terminar.
+	 */
+	public final class Escritura {
+		private final long lsn;
+		private final EnVuelo enVuelo;
+
+		private Escritura(long lsn, EnVuelo enVuelo) {
+			this.lsn = lsn;
+			this.enVuelo = enVuelo;
+		}
+
+		/**
+		 * Marca la escritura como aplicada en memoria y, segun la politica,
+		 * espera a que este en disco.
+		 */
+		public void confirmar() {
+			RegistroEscritura.this.confirmar(this);
+		}
+	}
+
+	//Escrituras de un segmento registradas pero aun no aplicadas en memoria. Al
+	//rotar se espera a que lleguen a 0, dormido: la ultima en aplicarse avisa
+	private static final class EnVuelo {
+		private final AtomicInteger pendientes = new AtomicInteger();
+
+		void registrada() {
+			pendientes.incrementAndGet();
+		}
+
+		void aplicada() {
+			if(pendientes.decrementAndGet() == 0) {
+				synchronized(this) {
+					notifyAll();
+				}
+			}
+		}
+
+		synchronized void esperar() throws InterruptedException {
+			while(pendientes.get() > 0) {
+				wait();
+			}
+		}
+	}
+
+	/**
+	 * Registro leido del disco durante la recuperacion
+	 */
+	public static final class Entrada {
+		final long lsn;
+		final byte tipo;
+		final int id;
+		final Videojuego videojuego;
+
+		Entrada(long lsn, byte tipo, int id, Videojuego videojuego) {
+			this.lsn = lsn;
+			this.tipo = tipo;
+			this.id = id;
+			this.videojuego = videojuego;
+		}
+	}
+
+	private final Path directorio;
+	private final PoliticaSincronizacion politica;
+	private final long intervaloMs;
+	private final Thread sincronizador;
+
+	//Protegidos por "this"
+	private ByteArrayOutputStream pendiente = new ByteArrayOutputStream(64 * 1024);
+	private long ultimoLsn;
+	private long sincronizadoLsn;
+	private EnVuelo enVuelo = new EnVuelo();
+	private boolean cerrado;
+	private IOException error;
+
+	//Protegido por "canalLock": solo un hilo escribe y hace fsync a la vez
+	private final Object canalLock = new Object();
+	private FileChannel canal;
+
+	/**
+	 * Abre un segmento nuevo en el directorio
+	 * @param directorio donde se guardan los segmentos
+	 * @param politica cuando hacer fsync
+	 * @param intervaloMs cada cuanto hace fsync la politica {@link PoliticaSincronizacion#INTERVALO}
+	 * @param ultimoLsn el ultimo LSN ya usado (los nuevos registros continuan a partir de el)
+	 * @throws IOException si no se puede crear el segmento
+	 */
+	public RegistroEscritura(Path directorio, PoliticaSincronizacion politica, long intervaloMs, long ultimoLsn)
+			throws IOException {
+		this.directorio = directorio;
+		this.politica = politica;
+		this.intervaloMs = intervaloMs;
+		this.ultimoLsn = ultimoLsn;
+		this.sincronizadoLsn = ultimoLsn;
+		Files.createDirectories(directorio);
+		this.canal = abrirSegmento(ultimoLsn + 1);
+		if(politica == PoliticaSincronizacion.SIEMPRE) {
+			sincronizador = null;
+		}else {
+			sincronizador = new Thread(this::sincronizar, "registro-escritura");
+			sincronizador.setDaemon(true);
+			sincronizador.start();
+		}
+	}
+
+	/**
+	 * Añade un cambio al registro (solo en memoria). Se llama dentro de la 
+	 * operacion atomica del DAO sobre el ID, por lo que el orden de los registros
+	 * de un mismo videojuego es el mismo en que se aplicaron.
+	 * @param tipo {@link #GUARDAR} o {@link #BORRAR}
+	 * @param id el ID del videojuego
+	 * @param v el nuevo estado del videojuego, o null si se borra
+	 * @return la escritura, que hay que confirmar despues de aplicarla
+	 */
+	public Escritura registrar(byte tipo, int id, Videojuego v) {
+		byte[] datos = serializar(tipo, id, v);
+		synchronized(this) {
+			if(cerrado) {
+				throw new IllegalStateException("El registro de escritura esta cerrado");
+			}
+			long lsn = ++ultimoLsn;
+			escribirRegistro(pendiente, lsn, datos);
+			enVuelo.registrada();
+			if(politica == PoliticaSincronizacion.LOTES) {
+				notifyAll();//Despertamos al sincronizador
+			}
+			return new Escritura(lsn, enVuelo);
+		}
+	}
+
+	private void confirmar(Escritura e) {
+		e.enVuelo.aplicada();
+		try {
+			switch(politica) {
+			case SIEMPRE:
+				//Si otro hilo ya ha hecho fsync de nuestro registro no repetimos
+				if(sincronizadoHasta() < e.lsn) {
+					volcar();
+				}
+				break;
+			case LOTES:
+				synchronized(this) {
+					while(sincronizadoLsn < e.lsn && error == null) {
+						wait();
+					}
+				}
+				break;
+			default:
+				break;
+			}
+			synchronized(this) {
+				if(error != null) {
+					throw error;
+				}
+			}
+		}catch(IOException ex) {
+			throw new UncheckedIOException("No se ha podido escribir el registro", ex);
+		}catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrumpido esperando al registro", ex);
+		}
+	}
+
+	/**
+	 * Cierra el segmento actual y abre otro. Despues espera a que se apliquen en
+	 * memoria todas las escrituras del segmento cerrado, de modo que una
+	 * instantanea que se empiece a partir de ahora las contiene.
+	 * @return el primer LSN del segmento nuevo
+	 * @throws IOException si no se puede crear el segmento
+	 */
+	public long rotar() throws IOException {
+		EnVuelo anteriores;
+		long corte;
+		synchronized(canalLock) {
+			synchronized(this) {
+				//Lo pendiente va al segmento viejo, asi ningun LSN anterior al corte
+				//acaba en el nuevo
+				corte = ultimoLsn + 1;
+				anteriores = enVuelo;
+				enVuelo = new EnVuelo();
+				escribir(pendiente, corte - 1);
+				pendiente = new ByteArrayOutputStream(64 * 1024);
+				canal.close();
+				canal = abrirSegmento(corte);
+			}
+		}
+		try {
+			anteriores.esperar();
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrumpido esperando a las escrituras del segmento");
+		}
+		return corte;
+	}
+
+	/**
+	 * Borra los segmentos cuyos registros son todos anteriores a un LSN
+	 * @param lsn el primer LSN que hay que conservar
+	 * @throws IOException si no se puede borrar algun segmento
+	 */
+	public void borrarAnteriores(long lsn) throws IOException {
+		List<Path> segmentos = segmentos(directorio);
+		for(int i = 0; i + 1 < segmentos.size(); i++) {
+			//Un segmento acaba justo antes de donde empieza el siguiente
+			if(primerLsn(segmentos.get(i + 1)) <= lsn) {
+				Files.deleteIfExists(segmentos.get(i));
+			}
+		}
+	}
+
+	/**
+	 * @return el ultimo LSN asignado
+	 */
+	public synchronized long getUltimoLsn() {
+		return ultimoLsn;
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized(this) {
+			if(cerrado) {
+				return;
+			}
+			cerrado = true;
+			notifyAll();
+		}
+		if(sincronizador != null) {
+			sincronizador.interrupt();
+			try {
+				sincronizador.join();
+			}catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized(canalLock) {
+			volcar();
+			canal.close();
+		}
+	}
+
+	/**
+	 * Lee en orden todos los registros validos del directorio a partir de un LSN
+	 * @param directorio donde estan los segmentos
+	 * @param desdeLsn el primer LSN que interesa
+	 * @return los registros encontrados
+	 * @throws IOException si no se pueden leer los segmentos
+	 */
+	public static List<Entrada> leer(Path directorio, long desdeLsn) throws IOException {
+		List<Entrada> entradas = new ArrayList<>();
+		List<Path> segmentos = segmentos(directorio);
+		for(int i = 0; i < segmentos.size(); i++) {
+			//Nos saltamos los segmentos que acaban antes del LSN pedido
+			if(i + 1 < segmentos.size() && primerLsn(segmentos.get(i + 1)) <= desdeLsn) {
+				continue;
+			}
+			try(InputStream in = Files.newInputStream(segmentos.get(i))) {
+				leerSegmento(new DataInputStream(new BufferedInputStream(in, 1 << 16)), desdeLsn, entradas);
+			}
+		}
+		return entradas;
+	}
+
+	/**************************
+	 * METODOS PRIVADOS       *
+	 **************************/
+
+	private synchronized long sincronizadoHasta() {
+		return sincronizadoLsn;
+	}
+
+	//Escribe en el fichero todo lo pendiente y hace fsync
+	private void volcar() throws IOException {
+		synchronized(canalLock) {
+			ByteArrayOutputStream lote;
+			long hasta;
+			synchronized(this) {
+				if(pendiente.size() == 0) {
+					return;
+				}
+				lote = pendiente;
+				hasta = ultimoLsn;
+				pendiente = new ByteArrayOutputStream(Math.max(64 * 1024, lote.size()));
+			}
+			//Mientras escribimos y hacemos fsync se pueden seguir registrando cambios
+			escribir(lote, hasta);
+		}
+	}
+
+	//Escribe un lote en el segmento actual y hace fsync. Requiere canalLock
+	private void escribir(ByteArrayOutputStream lote, long hasta) throws IOException {
+		if(lote.size() > 0) {
+			try {
+				ByteBuffer buffer = ByteBuffer.wrap(lote.toByteArray());
+				while(buffer.hasRemaining()) {
+					canal.write(buffer);
+				}
+				canal.force(false);
+			}catch(IOException e) {
+				synchronized(this) {
+					error = e;
+					notifyAll();
+				}
+				throw e;
+			}
+		}
+		synchronized(this) {
+			sincronizadoLsn = Math.max(sincronizadoLsn, hasta);
+			notifyAll();
+		}
+	}
+
+	//Bucle del hilo sincronizador para las politicas LOTES e INTERVALO
+	private void sincronizar() {
+		try {
+			while(true) {
+				if(politica == PoliticaSincronizacion.LOTES) {
+					synchronized(this) {
+						while(pendiente.size() == 0 && !cerrado) {
+							wait();
+						}
+						if(cerrado) {
+							return;
+						}
+					}
+				}else {
+					Thread.sleep(intervaloMs);
+				}
+				volcar();
+			}
+		}catch(InterruptedException e) {
+			//Nos piden cerrar: close() vuelca lo que quede
+		}catch(IOException e) {
+			//El error queda guardado y lo reciben las escrituras que esperan
+		}
+	}
+
+	private FileChannel abrirSegmento(long primerLsn) throws IOException {
+		Path segmento = directorio.resolve(String.format("%s%020d%s", PREFIJO, primerLsn, EXTENSION));
+		return FileChannel.open(segmento, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+	}
+
+	static List<Path> segmentos(Path directorio) throws IOException {
+		if(!Files.isDirectory(directorio)) {
+			return new ArrayList<>();
+		}
+		try(Stream<Path> ficheros = Files.list(directorio)) {
+			//El LSN va con ceros a la izquierda, asi que el orden alfabetico es el de LSN
+			return ficheros.filter(p -> {
+				String nombre = p.getFileName().toString();
+				return nombre.startsWith(PREFIJO) && nombre.endsWith(EXTENSION);
+			}).sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static long primerLsn(Path segmento) {
+		String nombre = segmento.getFileName().toString();
+		return Long.parseLong(nombre.substring(PREFIJO.length(), nombre.length() - EXTENSION.length()));
+	}
+
+	private static byte[] serializar(byte tipo, int id, Videojuego v) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(tipo);
+			out.writeInt(id);
+			if(tipo == GUARDAR) {
+				Instantanea.escribirVideojuego(out, v);
+			}
+			return bytes.toByteArray();
+		}catch(IOException e) {
+			throw new UncheckedIOException(e);//No ocurre escribiendo en memoria
+		}
+	}
+
+	private static void escribirRegistro(ByteArrayOutputStream destino, long lsn, byte[] datos) {
+		CRC32 crc = new CRC32();
+		ByteBuffer cabecera = ByteBuffer.allocate(16);
+		cabecera.putInt(datos.length + 8);
+		cabecera.putLong(4 + 4, lsn);
+		crc.update(cabecera.array(), 8, 8);
+		crc.update(datos);
+		cabecera.putInt(4, (int) crc.getValue());
+		destino.write(cabecera.array(), 0, 16);
+		destino.write(datos, 0, datos.length);
+	}
+
+	private static void leerSegmento(DataInputStream in, long desdeLsn, List<Entrada> entradas) throws IOException {
+		CRC32 crc = new CRC32();
+		while(true) {
+			byte[] cuerpo;
+			int crcLeido;
+			try {
+				int longitud = in.readInt();
+				crcLeido = in.readInt();
+				if(longitud < 13 || longitud > (1 << 20)) {
+					return;//Registro corrupto
+				}
+				cuerpo = new byte[longitud];
+				in.readFully(cuerpo);
+			}catch(EOFException e) {
+				return;//Fin del segmento o registro a medio escribir
+			}
+			crc.reset();
+			crc.update(cuerpo);
+			if((int) crc.getValue() != crcLeido) {
+				return;
+			}
+			DataInputStream registro = new DataInputStream(new ByteArrayInputStream(cuerpo));
+			long lsn = registro.readLong();
+			byte tipo = registro.readByte();
+			int id = registro.readInt();
+			Videojuego v = tipo == GUARDAR ? Instantanea.leerVideojuego(registro, id) : null;
+			if(lsn >= desdeLsn) {
+				entradas.add(new Entrada(lsn, tipo, id, v));
+			}
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package serviciosrest.modelo.persistencia;
+
+/**
+ * <p>Unicidad de los nombres mas alla de un {@link DaoVideojuego}: en el modo
+ * cluster, el nombre tiene que estar libre en todos los nodos. El DAO la
+ * consulta despues de reservar el nombre en su propio mapa y fuera de la
+ * operacion atomica sobre el ID, porque puede tener que preguntar a otro
+ * nodo. Pasan por ella las altas, los cambios de nombre y las bajas, sueltas
+ * o por lotes.</p>
+ *
+ * <p>Con el escritor unico la llama el hilo escritor, asi que una reserva
+ * lenta retrasa todas las escrituras.</p>
+ */
+public interface ReservaNombres {
+
+	/**
+	 * Reserva un nombre para un videojuego
+	 * @param nombre el nombre
+	 * @param id el ID del videojuego que lo va a usar
+	 * @return true si el nombre queda reservado para ese ID (tambien si ya lo
+	 * estaba), false si lo tiene otro videojuego
+	 * @throws RuntimeException si no se puede saber (por ejemplo, porque no
+	 * responde otro nodo); el DAO no hace la escritura
+	 */
+	boolean reservar(String nombre, int id);
+
+	/**
+	 * Libera un nombre si sigue reservado para ese ID, despues de una baja,
+	 * de un cambio de nombre o de una escritura que no se ha podido hacer.
+	 * No lanza excepciones
+	 * @param nombre el nombre
+	 * @param id el ID del videojuego que lo tenia
+	 */
+	void liberar(String nombre, int id);
+}
@@ -0,0 +1,69 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import serviciosrest.modelo.persistencia.AnilloEscritura;
+
+class AnilloEscrituraTests {
+
+	@Test
+	void aplicaEnOrdenTodoLoPublicadoAntesDeCerrar() throws Exception {
+		List<Integer> aplicados = new ArrayList<>();
+		AnilloEscritura<Integer> anillo = new AnilloEscritura<>("prueba", 4, aplicados::addAll);
+		for(int i = 0; i < 1_000; i++) {
+			anillo.enviar(i);
+		}
+		anillo.close();
+		assertEquals(1_000, aplicados.size());
+		for(int i = 0; i < 1_000; i++) {
+			assertEquals(i, aplicados.get(i));
+		}
+		assertFalse(anillo.enviar(1_000));
+		assertEquals(1_000, aplicados.size());
+	}
+
+	@Test
+	void cerrarConProductoresEnviandoNoPierdeNingunComando() throws Exception {
+		AtomicInteger aplicados = new AtomicInteger();
+		//Un consumidor lento y un anillo pequeño: los productores esperan sitio
+		//mientras se cierra
+		AnilloEscritura<Integer> anillo = new AnilloEscritura<>("prueba", 4, lote -> {
+			aplicados.addAndGet(lote.size());
+			Thread.yield();
+		});
+		AtomicInteger publicados = new AtomicInteger();
+		AtomicInteger rechazados = new AtomicInteger();
+		List<CompletableFuture<Void>> productores = new ArrayList<>();
+		for(int h = 0; h < 4; h++) {
+			productores.add(CompletableFuture.runAsync(() -> {
+				for(int i = 0; i < 20_000; i++) {
+					if(anillo.enviar(i)) {
+						publicados.incrementAndGet();
+					}else {
+						rechazados.incrementAndGet();
+					}
+				}
+			}));
+		}
+		while(publicados.get() < 1_000) {
+			Thread.onSpinWait();
+		}
+		anillo.close();
+		for(CompletableFuture<Void> productor : productores) {
+			productor.get(1, TimeUnit.MINUTES);
+		}
+
+		//Lo que se publico se aplico antes de que close() volviera; lo demas se rechazo
+		assertEquals(publicados.get(), aplicados.get());
+		assertEquals(4 * 20_000, publicados.get() + rechazados.get());
+	}
+}
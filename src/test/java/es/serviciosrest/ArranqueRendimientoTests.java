@@ -0,0 +1,151 @@
+package es.serviciosrest;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import serviciosrest.PspA3RestApplication;
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.Instantanea;
+
+/**
+ * Tiempo hasta la primera peticion: arranca la aplicacion en otra JVM y mide
+ * desde que se lanza el proceso hasta que GET /videojuegos/0 responde 200
+ * (la mediana de varias veces), con y sin inicializacion perezosa de los
+ * beans y, si se ha generado antes con {@code mvn -Pcds package -DskipTests},
+ * con y sin el archivo CDS de target/cds. Despues mide lo mismo cargando un
+ * catalogo grande desde un CSV y desde una instantanea ({@code CargaInicial}).
+ *
+ * Solo se ejecuta bajo demanda:
+ * {@code mvn test -Dtest=ArranqueRendimientoTests -Dbenchmark=true}<br>
+ * Las veces que se arranca cada configuracion se cambian con
+ * {@code -Dbenchmark.arranques=N} y los videojuegos del catalogo grande con
+ * {@code -Dbenchmark.videojuegos=N}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ArranqueRendimientoTests {
+
+	private static final int ARRANQUES = Integer.getInteger("benchmark.arranques", 5);
+	private static final int VIDEOJUEGOS = Integer.getInteger("benchmark.videojuegos", 1_000_000);
+	private static final Path CDS = Paths.get("target", "cds");
+
+	private final HttpClient cliente = HttpClient.newHttpClient();
+
+	@Test
+	void tiempoHastaLaPrimeraPeticion(@TempDir Path temporal) throws Exception {
+		List<String> clases = List.of("-cp", System.getProperty("java.class.path"),
+				PspA3RestApplication.class.getName());
+		medir("sin optimizar", null, clases, "--spring.main.lazy-initialization=false");
+		medir("perezoso", null, clases, "--spring.main.lazy-initialization=true");
+		Path jar;
+		try(Stream<Path> jars = Files.list(CDS)) {
+			jar = jars.filter(p -> p.toString().endsWith("-cds.jar")).findFirst().orElse(null);
+		}catch(java.io.IOException e) {
+			jar = null;
+		}
+		if(jar != null && Files.exists(CDS.resolve("videojuegos.jsa"))) {
+			List<String> conJar = List.of("-jar", jar.getFileName().toString());
+			medir("jar", CDS, conJar, "--spring.main.lazy-initialization=false");
+			List<String> conCds = List.of("-XX:SharedArchiveFile=videojuegos.jsa", "-jar",
+					jar.getFileName().toString());
+			medir("jar + CDS", CDS, conCds, "--spring.main.lazy-initialization=false");
+			medir("jar + CDS + perezoso", CDS, conCds, "--spring.main.lazy-initialization=true");
+		}else {
+			System.out.println("Sin archivo CDS en " + CDS.toAbsolutePath() + ": mvn -Pcds package -DskipTests");
+		}
+
+		//Catalogo grande
+		Path csv = temporal.resolve("videojuegos.csv");
+		try(BufferedWriter out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+			out.write("id,nombre,compania,anno,nota\n");
+			for(int i = 0; i < VIDEOJUEGOS; i++) {
+				Videojuego v = videojuego(i);
+				out.write(v.getId() + ",\"" + v.getNombre() + "\"," + v.getCompania() + "," + v.getAnno() + ","
+						+ v.getNota() + "\n");
+			}
+		}
+		Path binario = Instantanea.escribir(temporal, 0, VIDEOJUEGOS,
+				IntStream.range(0, VIDEOJUEGOS).mapToObj(ArranqueRendimientoTests::videojuego).iterator());
+		medir(VIDEOJUEGOS + " desde CSV", null, clases, "--spring.main.lazy-initialization=true",
+				"--videojuegos.carga.fichero=" + csv);
+		medir(VIDEOJUEGOS + " desde instantanea", null, clases, "--spring.main.lazy-initialization=true",
+				"--videojuegos.carga.fichero=" + binario);
+	}
+
+	private static Videojuego videojuego(int i) {
+		return new Videojuego(i, "Videojuego " + i, "Compania " + (i % 1000), 1980 + i % 45, i % 101);
+	}
+
+	private void medir(String configuracion, Path directorio, List<String> clases, String... opciones)
+			throws Exception {
+		long[] tiempos = new long[ARRANQUES];
+		for(int i = 0; i < ARRANQUES; i++) {
+			int puerto;
+			try(ServerSocket libre = new ServerSocket(0)) {
+				puerto = libre.getLocalPort();
+			}
+			List<String> comando = new ArrayList<>();
+			comando.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+			comando.add("-Xmx2g");
+			comando.addAll(clases);
+			comando.add("--server.port=" + puerto);
+			comando.add("--videojuegos.persistencia.habilitada=false");
+			comando.add("--logging.level.serviciosrest=WARN");
+			comando.addAll(Arrays.asList(opciones));
+			ProcessBuilder proceso = new ProcessBuilder(comando).redirectErrorStream(true)
+					.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+			if(directorio != null) {
+				proceso.directory(directorio.toFile());
+			}
+			long inicio = System.nanoTime();
+			Process servidor = proceso.start();
+			try {
+				esperarPrimeraPeticion(puerto);
+				tiempos[i] = System.nanoTime() - inicio;
+			}finally {
+				servidor.destroy();
+				servidor.waitFor();
+			}
+		}
+		Arrays.sort(tiempos);
+		System.out.printf("%-28s primera peticion en %5d ms (mediana de %d, minimo %d ms)%n", configuracion,
+				tiempos[ARRANQUES / 2] / 1_000_000, ARRANQUES, tiempos[0] / 1_000_000);
+	}
+
+	private void esperarPrimeraPeticion(int puerto) throws Exception {
+		HttpRequest peticion = HttpRequest.newBuilder(URI.create("http://localhost:" + puerto + "/videojuegos/0"))
+				.build();
+		long limite = System.nanoTime() + Duration.ofSeconds(120).toNanos();
+		while(true) {
+			try {
+				if(cliente.send(peticion, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+					return;
+				}
+			}catch(java.io.IOException e) {
+				//Todavia no escucha
+			}
+			if(System.nanoTime() > limite) {
+				throw new IllegalStateException("El servidor no ha arrancado");
+			}
+			Thread.sleep(10);
+		}
+	}
+}
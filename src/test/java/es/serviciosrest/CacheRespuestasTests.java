@@ -0,0 +1,188 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.ThreadMXBean;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import serviciosrest.controlador.CacheRespuestas;
+import serviciosrest.controlador.EtagsVideojuego;
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+
+class CacheRespuestasTests {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final SimpleMeterRegistry metricas = new SimpleMeterRegistry();
+
+	private double contador(String tipo, String resultado) {
+		return metricas.get("videojuegos.cache").tag("tipo", tipo).tag("resultado", resultado).counter().count();
+	}
+
+	@Test
+	void guardaElJsonDeCadaVersionDeUnVideojuego() throws Exception {
+		DaoVideojuego dao = new DaoVideojuego();
+		CacheRespuestas cache = new CacheRespuestas(dao, mapper, new EtagsVideojuego(), metricas, DataSize.ofMegabytes(1));
+
+		byte[] json = cache.videojuego(dao.getById(3));
+		assertArrayEquals(mapper.writeValueAsBytes(dao.getById(3)), json);
+		assertSame(json, cache.videojuego(dao.getById(3)));
+		assertEquals(1, contador("videojuego", "acierto"));
+		assertEquals(1, contador("videojuego", "fallo"));
+
+		//Al modificarlo se invalida la version anterior
+		assertEquals(0, dao.update(new Videojuego(3, "World of Warcraft: Classic", "Blizzard Entertainment", 2019, 85)));
+		assertEquals("{\"id\":3,\"nombre\":\"World of Warcraft: Classic\",\"compania\":\"Blizzard Entertainment\","
+				+ "\"anno\":2019,\"nota\":85}", new String(cache.videojuego(dao.getById(3)), StandardCharsets.UTF_8));
+		assertEquals(2, contador("videojuego", "fallo"));
+	}
+
+	@Test
+	void guardaLaEtagConElJsonYSustituyeAlQueNoSeUsaDeSuConjunto() throws Exception {
+		DaoVideojuego dao = new DaoVideojuego();
+		EtagsVideojuego etags = new EtagsVideojuego();
+		//El minimo de huecos es 1024, de dos en dos: los IDs 0, 512 y 1024 van al mismo conjunto
+		CacheRespuestas cache = new CacheRespuestas(dao, mapper, etags, metricas, DataSize.ofKilobytes(1));
+		for(int i = 0; dao.add(new Videojuego(0, "Juego " + i, "Compania", 2000, 50)).getId() < 1024; i++) {
+		}
+
+		CacheRespuestas.VideojuegoCodificado codificado = cache.codificado(dao.getById(0));
+		assertEquals(etags.etag(dao.getById(0).getVersion()), codificado.getEtag());
+		assertArrayEquals(mapper.writeValueAsBytes(dao.getById(0)), codificado.getJson());
+		assertSame(codificado, cache.codificado(dao.getById(0)));
+
+		//El 1024 sustituye al 512, que no se ha vuelto a pedir, y no al 0
+		CacheRespuestas.VideojuegoCodificado otro = cache.codificado(dao.getById(512));
+		assertArrayEquals(mapper.writeValueAsBytes(dao.getById(1024)), cache.videojuego(dao.getById(1024)));
+		assertSame(codificado, cache.codificado(dao.getById(0)));
+		assertNotSame(otro, cache.codificado(dao.getById(512)));
+		assertEquals(2, contador("videojuego", "acierto"));
+		assertEquals(4, contador("videojuego", "fallo"));
+	}
+
+	@Test
+	void conLaCacheLlenaLosVideojuegosQueSePidenSiguenAcertando() {
+		DaoVideojuego dao = new DaoVideojuego();
+		CacheRespuestas cache = new CacheRespuestas(dao, mapper, new EtagsVideojuego(), metricas, DataSize.ofKilobytes(4));
+		for(int i = 0; i < 2_000; i++) {
+			dao.add(new Videojuego(0, "Juego " + i, "Compania", 2000, 50));
+		}
+		//Se llena el limite: caben unas 50 entradas
+		for(int id = 1; id <= 2_000; id++) {
+			cache.codificado(dao.getById(id));
+		}
+		assertTrue(metricas.get("videojuegos.cache.entradas").gauge().value() * 70 <= 4096);
+
+		//Videojuegos nuevos, dos de ellos en el mismo conjunto (7 y 519)
+		int[] calientes = { 1500, 1501, 7, 519 };
+		for(int vuelta = 0; vuelta < 2; vuelta++) {
+			for(int id : calientes) {
+				cache.codificado(dao.getById(id));
+			}
+		}
+		double aciertos = contador("videojuego", "acierto");
+		for(int id : calientes) {
+			cache.codificado(dao.getById(id));
+		}
+		assertEquals(aciertos + calientes.length, contador("videojuego", "acierto"));
+
+		//Montar el listado completo no los echa
+		cache.lista(dao.getVersion(), dao.list());
+		aciertos = contador("videojuego", "acierto");
+		for(int id : calientes) {
+			cache.codificado(dao.getById(id));
+		}
+		assertEquals(aciertos + calientes.length, contador("videojuego", "acierto"));
+	}
+
+	@Test
+	void guardaElListadoPorVersionDelCatalogo() throws Exception {
+		DaoVideojuego dao = new DaoVideojuego();
+		CacheRespuestas cache = new CacheRespuestas(dao, mapper, new EtagsVideojuego(), metricas, DataSize.ofMegabytes(1));
+
+		long version = dao.getVersion();
+		byte[] lista = cache.lista(version, dao.list());
+		assertArrayEquals(mapper.writeValueAsBytes(dao.list()), lista);
+		assertSame(lista, cache.lista(dao.getVersion(), dao.list()));
+
+		assertEquals(true, dao.delete(5));
+		byte[] nueva = cache.lista(dao.getVersion(), dao.list());
+		assertArrayEquals(mapper.writeValueAsBytes(dao.list()), nueva);
+		assertEquals(1, contador("lista", "acierto"));
+		assertEquals(2, contador("lista", "fallo"));
+		//El resto de videojuegos no se han vuelto a serializar
+		assertEquals(6, contador("videojuego", "fallo"));
+
+		assertArrayEquals(mapper.writeValueAsBytes(List.of()), cache.lista(List.of()));
+	}
+
+	@Test
+	void guardaElListadoComprimidoPorVersionDelCatalogo() throws Exception {
+		DaoVideojuego dao = new DaoVideojuego();
+		CacheRespuestas cache = new CacheRespuestas(dao, mapper, new EtagsVideojuego(), metricas, DataSize.ofMegabytes(1));
+
+		byte[] json = cache.lista(dao.getVersion(), dao.list());
+		byte[] gzip = cache.listaComprimida(dao.getVersion(), json);
+		assertArrayEquals(json, new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes());
+		assertSame(gzip, cache.listaComprimida(dao.getVersion(), json));
+		assertEquals(1, contador("lista_gzip", "acierto"));
+
+		//Con una nueva version del catalogo se vuelve a comprimir
+		assertEquals(true, dao.delete(5));
+		byte[] nuevoJson = cache.lista(dao.getVersion(), dao.list());
+		byte[] nuevoGzip = cache.listaComprimida(dao.getVersion(), nuevoJson);
+		assertArrayEquals(nuevoJson, new GZIPInputStream(new ByteArrayInputStream(nuevoGzip)).readAllBytes());
+		assertEquals(2, contador("lista_gzip", "fallo"));
+	}
+
+	@Test
+	void unaConsultaConLaCacheCalienteNoReservaMemoria() {
+		//Lo mismo que hace GET /videojuegos/{id} antes de escribir la respuesta:
+		//buscar el videojuego, sacar el JSON y la ETag de la cache y comparar la
+		//ETag con If-None-Match. ConsultaPorIdAsignacionTests lo mide con JMH
+		ThreadMXBean hilos = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(hilos.isThreadAllocatedMemorySupported() && hilos.isThreadAllocatedMemoryEnabled());
+		DaoVideojuego dao = new DaoVideojuego();
+		EtagsVideojuego etags = new EtagsVideojuego();
+		CacheRespuestas cache = new CacheRespuestas(dao, mapper, etags, metricas, DataSize.ofMegabytes(1));
+		String ifNoneMatch = "W/" + etags.etag(dao.getById(3).getVersion());
+
+		int coincidencias = consultar(dao, cache, etags, ifNoneMatch, 20_000);
+		long antes = hilos.getCurrentThreadAllocatedBytes();
+		coincidencias += consultar(dao, cache, etags, ifNoneMatch, 100_000);
+		long reservados = hilos.getCurrentThreadAllocatedBytes() - antes;
+
+		assertEquals(120_000, coincidencias);
+		//Margen para lo que pueda reservar la propia JVM (compilacion, etc.),
+		//muy por debajo de un objeto por consulta
+		assertTrue(reservados < 100_000, reservados + " bytes en 100000 consultas");
+	}
+
+	private static int consultar(DaoVideojuego dao, CacheRespuestas cache, EtagsVideojuego etags,
+			String ifNoneMatch, int veces) {
+		int coincidencias = 0;
+		for(int i = 0; i < veces; i++) {
+			CacheRespuestas.VideojuegoCodificado codificado = cache.codificado(dao.getById(3));
+			if(etags.coincide(ifNoneMatch, codificado.getEtag())) {
+				coincidencias++;
+			}
+		}
+		return coincidencias;
+	}
+}
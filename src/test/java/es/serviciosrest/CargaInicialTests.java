@@ -0,0 +1,106 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.CargaInicial;
+import serviciosrest.modelo.persistencia.ConsultaVideojuegos;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+import serviciosrest.modelo.persistencia.Instantanea;
+
+class CargaInicialTests {
+
+	@TempDir
+	Path directorio;
+
+	@Test
+	void cargaUnCsvConComillasYCabecera() throws Exception {
+		Path csv = directorio.resolve("catalogo.csv");
+		Files.write(csv, ("id,nombre,compania,anno,nota\r\n"
+				+ "10,\"Command & Conquer, Red Alert\",Westwood Studios,1996,90\r\n"
+				+ "3,\"El \"\"Zelda\"\" de siempre\",,1986,99\r\n"
+				+ "\n"
+				+ "7,Pokémon Rojo,Game Freak,1996,\"85\"").getBytes(StandardCharsets.UTF_8));
+		DaoVideojuego dao = new DaoVideojuego();
+		assertTrue(new CargaInicial(dao, csv.toString(), false).cargar());
+
+		assertEquals(3, dao.list().size());
+		assertNull(dao.getById(0));//Ya no estan los de ejemplo
+		assertEquals("Command & Conquer, Red Alert", dao.getById(10).getNombre());
+		assertEquals("El \"Zelda\" de siempre", dao.getById(3).getNombre());
+		assertNull(dao.getById(3).getCompania());
+		assertEquals("Pokémon Rojo", dao.getById(7).getNombre());
+		assertEquals(85, dao.getById(7).getNota());
+		assertEquals(1, dao.getById(7).getVersion());
+		//Los indices estan al dia y los IDs nuevos siguen al mayor
+		assertEquals(1, dao.listByNombre("zelda").size());
+		ConsultaVideojuegos consulta = new ConsultaVideojuegos();
+		consulta.setAnnoMin(1996);
+		consulta.setAnnoMax(1996);
+		assertEquals(2, dao.list(consulta).size());
+		assertEquals(11, dao.add(new Videojuego(0, "Nuevo", "Nadie", 2021, 1)).getId());
+	}
+
+	@Test
+	void cargaUnCsvGrandePorTrozos() throws Exception {
+		int n = 100_000;//Varios MB, para que se lea en varios trozos
+		Path csv = directorio.resolve("grande.csv");
+		try(BufferedWriter out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+			for(int i = 0; i < n; i++) {
+				out.write(i + ",Videojuego numero " + i + " de la prueba de carga,Compania " + (i % 100) + ","
+						+ (1980 + i % 45) + "," + (i % 101) + "\n");
+			}
+		}
+		List<Videojuego> leidos = CargaInicial.leerCsv(csv);
+		assertEquals(n, leidos.size());
+		for(int i = 0; i < n; i++) {
+			assertEquals(i, leidos.get(i).getId());
+		}
+		DaoVideojuego dao = new DaoVideojuego();
+		new CargaInicial(dao, csv.toString(), false).cargar();
+		assertEquals(n, dao.list().size());
+		assertEquals("Videojuego numero 54321 de la prueba de carga", dao.getById(54321).getNombre());
+	}
+
+	@Test
+	void cargaUnaInstantanea() throws Exception {
+		Path instantanea = Instantanea.escribir(directorio, 1, 500, IntStream.range(0, 300)
+				.mapToObj(i -> new Videojuego(i, "Juego ñ " + i, i % 2 == 0 ? "Compañia" : null, 2000, i % 101))
+				.iterator());
+		DaoVideojuego dao = new DaoVideojuego();
+		CargaInicial carga = new CargaInicial(dao, instantanea.toString(), false);
+		assertTrue(carga.cargar());
+		assertFalse(carga.cargar());//Solo una vez
+		assertEquals(300, dao.list().size());
+		assertEquals("Juego ñ 299", dao.getById(299).getNombre());
+		assertEquals("Compañia", dao.getById(298).getCompania());
+		assertNull(dao.getById(299).getCompania());
+		assertEquals(500, dao.add(new Videojuego(0, "Nuevo", "Nadie", 2021, 1)).getId());
+	}
+
+	@Test
+	void rechazaFicherosNoValidos() throws Exception {
+		Path malFormado = directorio.resolve("mal.csv");
+		Files.write(malFormado, "1,Uno,Compania,2000\n".getBytes(StandardCharsets.UTF_8));
+		assertThrows(IllegalArgumentException.class, () -> CargaInicial.leerCsv(malFormado));
+
+		Path repetido = directorio.resolve("repetido.csv");
+		Files.write(repetido, "1,Uno,A,2000,1\n2,Uno,B,2001,2\n".getBytes(StandardCharsets.UTF_8));
+		assertThrows(IllegalArgumentException.class,
+				() -> new CargaInicial(new DaoVideojuego(), repetido.toString(), false).cargar());
+	}
+}
@@ -0,0 +1,158 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import serviciosrest.PspA3RestApplication;
+
+/**
+ * Prueba de escalado del modo cluster: arranca 1, 2 y 4 nodos (cada uno en
+ * su propia JVM y su propio puerto) y mide las altas por segundo, las
+ * lecturas por ID por segundo y la latencia del listado completo, enviando
+ * cada peticion a un nodo distinto por turnos, como haria un balanceador.
+ * Con mas de un nodo la mitad de las lecturas (o mas) se reenvian al dueño,
+ * cada alta pregunta el nombre a los demas nodos y el listado los consulta
+ * a todos. Los nodos solo escalan si cada uno tiene sus propios nucleos (o
+ * su propia maquina): en una maquina con pocos nucleos los numeros muestran
+ * sobre todo el coste de esos saltos.
+ *
+ * Solo se ejecuta bajo demanda:
+ * {@code mvn test -Dtest=ClusterRendimientoTests -Dbenchmark=true}<br>
+ * Las operaciones se cambian con {@code -Dbenchmark.operaciones=N} y las
+ * peticiones en vuelo a la vez con {@code -Dbenchmark.concurrencia=N}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ClusterRendimientoTests {
+
+	private static final int OPERACIONES = Integer.getInteger("benchmark.operaciones", 10_000);
+	private static final int CONCURRENCIA = Integer.getInteger("benchmark.concurrencia", 32);
+
+	private final HttpClient cliente = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+	@Test
+	void escaladoCon1Con2YCon4Nodos() throws Exception {
+		for(int nodos : new int[] { 1, 2, 4 }) {
+			medir(nodos);
+		}
+	}
+
+	private void medir(int n) throws Exception {
+		List<String> nodos = new ArrayList<String>();
+		for(int i = 0; i < n; i++) {
+			try(ServerSocket libre = new ServerSocket(0)) {
+				nodos.add("http://localhost:" + libre.getLocalPort());
+			}
+		}
+		List<Process> procesos = new ArrayList<Process>();
+		try {
+			for(String nodo : nodos) {
+				procesos.add(new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin"
+						+ File.separator + "java", "-Xmx512m", "-cp", System.getProperty("java.class.path"),
+						PspA3RestApplication.class.getName(), "--server.port=" + nodo.substring(nodo.lastIndexOf(':') + 1),
+						"--videojuegos.cluster.nodos=" + String.join(",", nodos),
+						"--videojuegos.persistencia.habilitada=false", "--videojuegos.admision.habilitada=false",
+						"--logging.level.serviciosrest=WARN")
+						.redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start());
+			}
+			for(String nodo : nodos) {
+				esperarArranque(nodo);
+			}
+			String prefijo = "n" + n + "-";
+			//Calentamiento
+			ejecutar(nodos, 2_000, i -> post(nodos, i, prefijo + "calentamiento-"));
+			ejecutar(nodos, 2_000, i -> get(nodos, i, "/videojuegos/" + (i % 6)));
+
+			int[] ids = new int[OPERACIONES];
+			double altas = ejecutar(nodos, OPERACIONES, i -> post(nodos, i, prefijo).thenApply(r -> {
+				String cuerpo = r.body();
+				ids[i] = Integer.parseInt(cuerpo.substring(cuerpo.indexOf(':') + 1, cuerpo.indexOf(',')));
+				return r;
+			}));
+			double lecturas = ejecutar(nodos, OPERACIONES, i -> get(nodos, i, "/videojuegos/" + ids[i]));
+			long inicio = System.nanoTime();
+			int listados = 20;
+			for(int i = 0; i < listados; i++) {
+				HttpResponse<String> r = get(nodos, i, "/videojuegos").join();
+				assertEquals(200, r.statusCode());
+			}
+			double listado = (System.nanoTime() - inicio) / 1e6 / listados;
+			System.out.printf("%d nodos: %.0f altas/s, %.0f lecturas/s, listado de %d videojuegos en %.1f ms%n", n,
+					altas, lecturas, OPERACIONES + 2_006, listado);
+		}finally {
+			for(Process proceso : procesos) {
+				proceso.destroy();
+				proceso.waitFor();
+			}
+		}
+	}
+
+	//Ejecuta las operaciones con CONCURRENCIA peticiones en vuelo y devuelve
+	//las operaciones por segundo. Todas tienen que ir bien
+	private static double ejecutar(List<String> nodos, int operaciones,
+			IntFunction<CompletableFuture<HttpResponse<String>>> operacion) throws Exception {
+		Semaphore enVuelo = new Semaphore(CONCURRENCIA);
+		AtomicInteger fallidas = new AtomicInteger();
+		long inicio = System.nanoTime();
+		for(int i = 0; i < operaciones; i++) {
+			enVuelo.acquire();
+			operacion.apply(i).whenComplete((r, e) -> {
+				if(e != null || r.statusCode() >= 300) {
+					fallidas.incrementAndGet();
+				}
+				enVuelo.release();
+			});
+		}
+		enVuelo.acquire(CONCURRENCIA);
+		double porSegundo = operaciones / ((System.nanoTime() - inicio) / 1e9);
+		assertEquals(0, fallidas.get());
+		return porSegundo;
+	}
+
+	private CompletableFuture<HttpResponse<String>> post(List<String> nodos, int i, String prefijo) {
+		return cliente.sendAsync(HttpRequest.newBuilder(URI.create(nodos.get(i % nodos.size()) + "/videojuegos"))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString("{\"nombre\":\"" + prefijo + i
+						+ "\",\"compania\":\"Compania " + (i % 100) + "\",\"anno\":" + (1980 + i % 45)
+						+ ",\"nota\":" + (i % 101) + "}"))
+				.build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	private CompletableFuture<HttpResponse<String>> get(List<String> nodos, int i, String ruta) {
+		return cliente.sendAsync(HttpRequest.newBuilder(URI.create(nodos.get(i % nodos.size()) + ruta)).build(),
+				HttpResponse.BodyHandlers.ofString());
+	}
+
+	private void esperarArranque(String nodo) throws Exception {
+		HttpRequest peticion = HttpRequest.newBuilder(URI.create(nodo + "/actuator/health")).build();
+		long limite = System.nanoTime() + Duration.ofSeconds(90).toNanos();
+		while(true) {
+			try {
+				if(cliente.send(peticion, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+					return;
+				}
+			}catch(java.io.IOException e) {
+				//Todavia no escucha
+			}
+			if(System.nanoTime() > limite) {
+				throw new IllegalStateException("El nodo " + nodo + " no ha arrancado");
+			}
+			Thread.sleep(200);
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import serviciosrest.PspA3RestApplication;
+import serviciosrest.controlador.AnilloHash;
+import serviciosrest.controlador.ClusterVideojuegos;
+import serviciosrest.controlador.ControladorVideojuego;
+import serviciosrest.modelo.entidad.ResultadoLote;
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+
+class ClusterVideojuegosTests {
+
+	//Los dos nodos con la misma configuracion de persistencia
+	@TempDir
+	Path directorio;
+
+	private final HttpClient cliente = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	void elAnilloRepartePorIgualYSoloMueveLoNecesario() {
+		AnilloHash dos = new AnilloHash(List.of("a", "b"), 128);
+		AnilloHash tres = new AnilloHash(List.of("a", "b", "c"), 128);
+		int n = 100_000;
+		Map<String, Integer> reparto = new HashMap<String, Integer>();
+		int movidos = 0;
+		for(int id = 0; id < n; id++) {
+			String antes = dos.nodo(id);
+			String despues = tres.nodo(id);
+			reparto.merge(despues, 1, Integer::sum);
+			if(!antes.equals(despues)) {
+				//Al añadir un nodo, solo se mueven IDs al nodo nuevo
+				assertEquals("c", despues);
+				movidos++;
+			}
+		}
+		for(int parte : reparto.values()) {
+			assertTrue(Math.abs(parte - n / 3) < n / 10, "Reparto desigual: " + reparto);
+		}
+		assertEquals(reparto.get("c"), movidos);
+	}
+
+	@Test
+	void dosNodosSeRepartenElCatalogo() throws Exception {
+		int puertoA = puertoLibre();
+		int puertoB = puertoLibre();
+		String nodos = "http://localhost:" + puertoA + ",http://localhost:" + puertoB;
+		try(ConfigurableApplicationContext a = arrancar(puertoA, nodos);
+				ConfigurableApplicationContext b = arrancar(puertoB, nodos)) {
+			DaoVideojuego daoA = a.getBean(DaoVideojuego.class);
+			DaoVideojuego daoB = b.getBean(DaoVideojuego.class);
+			//El catalogo inicial queda repartido y cualquier nodo lo lista entero
+			assertEquals(6, daoA.list().size() + daoB.list().size());
+			assertEquals(6, listar(puertoA, "").length);
+			assertEquals(6, listar(puertoB, "").length);
+
+			//La cabecera de reenvio solo vale desde la direccion de un nodo
+			ClusterVideojuegos cluster = a.getBean(ClusterVideojuegos.class);
+			MockHttpServletRequest reenvio = new MockHttpServletRequest("GET", "/videojuegos/1");
+			reenvio.addHeader(ClusterVideojuegos.CABECERA_REENVIO, "http://localhost:" + puertoB);
+			reenvio.setRemoteAddr("127.0.0.1");
+			assertTrue(cluster.esReenvio(reenvio));
+			reenvio.setRemoteAddr("10.1.2.3");
+			assertFalse(cluster.esReenvio(reenvio));
+
+			//Un alta en B, para que seguro que tenga algun videojuego
+			HttpResponse<String> enB = enviar(puertoB, "POST", "/videojuegos",
+					"{\"nombre\":\"Nodo B\",\"compania\":\"Nodo\",\"anno\":2021,\"nota\":50}");
+			assertEquals(201, enB.statusCode());
+			Videojuego deB = mapper.readValue(enB.body(), Videojuego.class);
+			assertEquals(deB.getNombre(), daoB.getById(deB.getId()).getNombre());
+
+			//Altas en A: cada una en A, con IDs que no se repiten en B
+			Set<Integer> ids = new HashSet<Integer>();
+			for(int i = 0; i < 20; i++) {
+				HttpResponse<String> r = enviar(puertoA, "POST", "/videojuegos",
+						"{\"nombre\":\"Cluster " + i + "\",\"compania\":\"Nodo\",\"anno\":2021,\"nota\":" + i + "}");
+				assertEquals(201, r.statusCode());
+				ids.add(mapper.readValue(r.body(), Videojuego.class).getId());
+			}
+			assertEquals(20, ids.size());
+			assertEquals(27, daoA.list().size() + daoB.list().size());
+
+			//Cualquier nodo lee cualquier videojuego, sea de quien sea
+			for(int id : ids) {
+				HttpResponse<String> r = enviar(puertoB, "GET", "/videojuegos/" + id, null);
+				assertEquals(200, r.statusCode());
+				assertTrue(r.headers().firstValue("ETag").isPresent());
+			}
+
+			//El nombre es unico en todo el cluster
+			assertEquals(409, enviar(puertoB, "POST", "/videojuegos",
+					"{\"nombre\":\"Cluster 3\",\"compania\":\"Otro\",\"anno\":2021,\"nota\":1}").statusCode());
+			Videojuego deA = daoA.list().iterator().next();
+			assertEquals(409, enviar(puertoB, "PUT", "/videojuegos/" + deA.getId(), "{\"nombre\":\""
+					+ deB.getNombre() + "\",\"compania\":\"Otro\",\"anno\":2021,\"nota\":1}").statusCode());
+			assertEquals(200, enviar(puertoB, "PUT", "/videojuegos/" + deA.getId(), "{\"nombre\":\""
+					+ deA.getNombre() + "\",\"compania\":\"Otra\",\"anno\":2021,\"nota\":1}").statusCode());
+			assertEquals("Otra", daoA.getById(deA.getId()).getCompania());
+
+			//Listado por paginas desde B: todos, ordenados por ID y sin repetir
+			List<Integer> paginado = new ArrayList<Integer>();
+			String cursor = null;
+			do {
+				HttpResponse<String> r = enviar(puertoB, "GET",
+						"/videojuegos?limit=7" + (cursor != null ? "&cursor=" + cursor : ""), null);
+				for(Videojuego v : mapper.readValue(r.body(), Videojuego[].class)) {
+					paginado.add(v.getId());
+				}
+				cursor = r.headers().firstValue(ControladorVideojuego.CABECERA_CURSOR).orElse(null);
+			}while(cursor != null);
+			assertEquals(27, paginado.size());
+			for(int i = 1; i < paginado.size(); i++) {
+				assertTrue(paginado.get(i - 1) < paginado.get(i));
+			}
+			Videojuego[] mejores = listar(puertoA, "?nombre=cluster&notaMin=15&sort=-nota");
+			assertEquals(5, mejores.length);
+			assertEquals(19, mejores[0].getNota());
+			assertEquals(15, mejores[4].getNota());
+
+			//Las operaciones por lotes tambien reservan el nombre en todo el cluster
+			HttpResponse<String> lote = enviar(puertoB, "POST", "/videojuegos/batch",
+					"[{\"nombre\":\"Cluster 4\",\"compania\":\"Otro\",\"anno\":2021,\"nota\":1},"
+					+ "{\"nombre\":\"Lote B\",\"compania\":\"Otro\",\"anno\":2021,\"nota\":1}]");
+			assertEquals(200, lote.statusCode());
+			ResultadoLote[] altas = mapper.readValue(lote.body(), ResultadoLote[].class);
+			assertEquals(ResultadoLote.CONFLICTO, altas[0].getEstado());
+			assertEquals(ResultadoLote.CREADO, altas[1].getEstado());
+			lote = enviar(puertoB, "PUT", "/videojuegos/batch", "[{\"id\":" + altas[1].getId()
+					+ ",\"nombre\":\"Cluster 5\",\"compania\":\"Otro\",\"anno\":2021,\"nota\":1}]");
+			assertEquals(ResultadoLote.CONFLICTO, mapper.readValue(lote.body(), ResultadoLote[].class)[0].getEstado());
+			assertEquals(200, enviar(puertoA, "DELETE", "/videojuegos/" + altas[1].getId(), null).statusCode());
+
+			//Borrado a traves de cualquier nodo
+			for(int id : ids) {
+				assertEquals(200, enviar(puertoB, "DELETE", "/videojuegos/" + id, null).statusCode());
+				assertEquals(404, enviar(puertoA, "GET", "/videojuegos/" + id, null).statusCode());
+			}
+			assertEquals(7, listar(puertoA, "").length);
+
+			//Al borrarlo, el nombre queda libre para otro videojuego
+			assertEquals(201, enviar(puertoB, "POST", "/videojuegos",
+					"{\"nombre\":\"Cluster 3\",\"compania\":\"Otro\",\"anno\":2021,\"nota\":1}").statusCode());
+		}
+
+		//Cada nodo ha guardado su particion en su propio directorio, sin borrar la del otro
+		assertTrue(Files.isDirectory(directorio.resolve(String.valueOf(puertoA))));
+		assertTrue(Files.isDirectory(directorio.resolve(String.valueOf(puertoB))));
+		try(ConfigurableApplicationContext a = arrancar(puertoA, nodos);
+				ConfigurableApplicationContext b = arrancar(puertoB, nodos)) {
+			assertEquals(8, listar(puertoA, "").length);
+			assertEquals(1, listar(puertoB, "?nombre=cluster").length);
+		}
+	}
+
+	private ConfigurableApplicationContext arrancar(int puerto, String nodos) {
+		return new SpringApplicationBuilder(PspA3RestApplication.class).run("--server.port=" + puerto,
+				"--videojuegos.cluster.nodos=" + nodos, "--videojuegos.persistencia.habilitada=true",
+				"--videojuegos.persistencia.directorio=" + directorio);
+	}
+
+	private static int puertoLibre() throws Exception {
+		try(ServerSocket libre = new ServerSocket(0)) {
+			return libre.getLocalPort();
+		}
+	}
+
+	private Videojuego[] listar(int puerto, String consulta) throws Exception {
+		HttpResponse<String> r = enviar(puerto, "GET", "/videojuegos" + consulta, null);
+		assertEquals(200, r.statusCode());
+		return mapper.readValue(r.body(), Videojuego[].class);
+	}
+
+	private HttpResponse<String> enviar(int puerto, String metodo, String ruta, String cuerpo) throws Exception {
+		HttpRequest.Builder peticion = HttpRequest.newBuilder(URI.create("http://localhost:" + puerto + ruta));
+		if(cuerpo != null) {
+			peticion.header("Content-Type", "application/json");
+		}
+		peticion.method(metodo, cuerpo == null ? HttpRequest.BodyPublishers.noBody()
+				: HttpRequest.BodyPublishers.ofString(cuerpo));
+		return cliente.send(peticion.build(), HttpResponse.BodyHandlers.ofString());
+	}
+}
@@ -0,0 +1,127 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.Duration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import serviciosrest.PspA3RestApplication;
+import serviciosrest.controlador.ClusterVideojuegos;
+import serviciosrest.controlador.ControlAdmision;
+
+@SpringBootTest(classes = PspA3RestApplication.class, properties = { "videojuegos.persistencia.habilitada=false",
+		"videojuegos.admision.habilitada=true", "videojuegos.admision.tasa=1", "videojuegos.admision.rafaga=3" })
+@AutoConfigureMockMvc
+class ControlAdmisionTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private MeterRegistry metricas;
+
+	//La IP desde la que llega la peticion
+	private static RequestPostProcessor desde(String ip) {
+		return peticion -> {
+			peticion.setRemoteAddr(ip);
+			return peticion;
+		};
+	}
+
+	@Test
+	void elCuboDeCadaClienteSeAgotaConSuRafaga() throws Exception {
+		for(int i = 0; i < 3; i++) {
+			mockMvc.perform(get("/videojuegos/1").with(desde("10.0.0.1")))
+				.andExpect(status().isOk());
+		}
+		//Una clave inventada no da un cubo nuevo
+		mockMvc.perform(get("/videojuegos/1").with(desde("10.0.0.1")).header("X-Api-Key", "otra"))
+			.andExpect(status().isTooManyRequests())
+			.andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+
+		//Otro cliente tiene su propio cubo, y las metricas no pasan por el control
+		mockMvc.perform(get("/videojuegos").with(desde("10.0.0.2")))
+			.andExpect(status().isOk());
+		mockMvc.perform(get("/videojuegos").with(desde("10.0.0.2")))
+			.andExpect(status().isTooManyRequests());
+		for(int i = 0; i < 5; i++) {
+			mockMvc.perform(get("/actuator/health").with(desde("10.0.0.1")))
+				.andExpect(status().isOk());
+		}
+		assertTrue(metricas.get("videojuegos.admision").tag("resultado", "limite_cliente").counter().count() >= 2);
+	}
+
+	@Test
+	void sinClusterLaCabeceraDeReenvioNoSeSaltaElControl() throws Exception {
+		for(int i = 0; i < 3; i++) {
+			mockMvc.perform(get("/videojuegos/1").with(desde("10.0.0.3"))
+					.header(ClusterVideojuegos.CABECERA_REENVIO, "http://localhost:8881"))
+				.andExpect(status().isOk());
+		}
+		mockMvc.perform(get("/videojuegos/1").with(desde("10.0.0.3"))
+				.header(ClusterVideojuegos.CABECERA_REENVIO, "http://localhost:8881"))
+			.andExpect(status().isTooManyRequests());
+	}
+
+	@Test
+	void costeSegunLaOperacion() {
+		assertEquals(1, ControlAdmision.coste("GET", "/videojuegos/3", false));
+		assertEquals(2, ControlAdmision.coste("PUT", "/videojuegos/3", false));
+		assertEquals(2, ControlAdmision.coste("POST", "/videojuegos", false));
+		assertEquals(3, ControlAdmision.coste("GET", "/videojuegos", false));
+		assertEquals(5, ControlAdmision.coste("GET", "/videojuegos", true));
+		assertEquals(20, ControlAdmision.coste("POST", "/videojuegos/batch", false));
+		assertEquals(0, ControlAdmision.coste("GET", "/actuator/prometheus", false));
+		assertTrue(!ControlAdmision.limitaConcurrencia("/videojuegos/changes"));
+	}
+
+	@Test
+	void elLimiteDeConcurrenciaRechazaConSobrecargaYSeAdapta() throws Exception {
+		ControlAdmision control = new ControlAdmision(new SimpleMeterRegistry(), 1e6, 1e6, 10, 4, 100,
+				Duration.ofMillis(20));
+		//Una peticion de lote sola entra aunque cueste mas que el limite
+		ControlAdmision.Admision lote = control.admitir("a", 20, true);
+		assertEquals(ControlAdmision.Resultado.ADMITIDA, lote.getResultado());
+		ControlAdmision.Admision rechazada = control.admitir("a", 1, true);
+		assertEquals(ControlAdmision.Resultado.SOBRECARGA, rechazada.getResultado());
+		assertEquals(503, rechazada.getCodigo());
+		assertEquals(1, rechazada.getReintentar());
+		//Las suscripciones no cuentan para la concurrencia
+		assertEquals(ControlAdmision.Resultado.ADMITIDA, control.admitir("a", 1, false).getResultado());
+		control.terminar(lote, false);
+
+		//Las peticiones rapidas suben el limite
+		for(int i = 0; i < 100; i++) {
+			control.terminar(control.admitir("a", 1, true), false);
+		}
+		double subido = control.getLimite();
+		assertTrue(subido > 10, "Limite " + subido);
+
+		//Una lenta lo baja un 10%, pero solo una vez por tiempo de respuesta
+		Thread.sleep(50);
+		ControlAdmision.Admision lenta1 = control.admitir("a", 1, true);
+		ControlAdmision.Admision lenta2 = control.admitir("a", 1, true);
+		Thread.sleep(30);
+		control.terminar(lenta1, false);
+		control.terminar(lenta2, false);
+		assertEquals(subido * 0.9, control.getLimite(), 1e-9);
+		//Un 5xx tambien lo baja, aunque sea rapido
+		Thread.sleep(5);
+		control.terminar(control.admitir("a", 1, true), true);
+		assertEquals(subido * 0.81, control.getLimite(), 1e-9);
+	}
+}
@@ -0,0 +1,186 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
+import org.springframework.test.web.reactive.server.FluxExchangeResult;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import serviciosrest.PspA3RestApplication;
+import serviciosrest.controlador.ControladorVideojuego;
+import serviciosrest.modelo.entidad.CambioVideojuego;
+import serviciosrest.modelo.entidad.ResultadoLote;
+import serviciosrest.modelo.entidad.Videojuego;
+
+@SpringBootTest(classes = PspA3RestApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = { "spring.main.web-application-type=reactive", "videojuegos.persistencia.habilitada=false" })
+@AutoConfigureWebTestClient
+@DirtiesContext
+class ControladorVideojuegoReactivoTests {
+
+	@Autowired
+	private WebTestClient cliente;
+
+	@Test
+	void listarPorPaginasYEnStreaming() {
+		cliente.get().uri("/videojuegos?limit=4").exchange()
+			.expectStatus().isOk()
+			.expectHeader().valueEquals(ControladorVideojuego.CABECERA_CURSOR, "3")
+			.expectBody().jsonPath("$.length()").isEqualTo(4);
+
+		cliente.get().uri("/videojuegos?limit=0").exchange()
+			.expectStatus().isBadRequest();
+
+		cliente.get().uri("/videojuegos?nombre=warcraft").accept(MediaType.APPLICATION_NDJSON).exchange()
+			.expectStatus().isOk()
+			.expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+			.expectBody(String.class).isEqualTo(
+				"{\"id\":1,\"nombre\":\"Hearthstone: Heroes of Warcraft\",\"compania\":\"Blizzard Entertainment\",\"anno\":2014,\"nota\":88}\n"
+				+ "{\"id\":3,\"nombre\":\"World of Warcraft\",\"compania\":\"Blizzard Entertainment\",\"anno\":2004,\"nota\":93}\n");
+	}
+
+	@Test
+	void mejoresYEstadisticas() {
+		cliente.get().uri("/videojuegos/top?k=3").exchange()
+			.expectStatus().isOk()
+			.expectBody().jsonPath("$.length()").isEqualTo(3);
+		cliente.get().uri("/videojuegos/stats?groupBy=anno").exchange()
+			.expectStatus().isOk()
+			.expectBody().jsonPath("$[0].cantidad").isNumber();
+		cliente.get().uri("/videojuegos/stats?groupBy=precio").exchange()
+			.expectStatus().isBadRequest();
+	}
+
+	@Test
+	void altaConsultaYModificacionConEtag() {
+		EntityExchangeResult<Videojuego> alta = cliente.post().uri("/videojuegos")
+			.contentType(MediaType.APPLICATION_JSON)
+			.bodyValue("{\"nombre\":\"Reactivo\",\"compania\":\"Netty\",\"anno\":2021,\"nota\":70}")
+			.exchange()
+			.expectStatus().isCreated()
+			.expectBody(Videojuego.class).returnResult();
+		int id = alta.getResponseBody().getId();
+		String etag = alta.getResponseHeaders().getETag();
+
+		cliente.get().uri("/videojuegos/" + id).header(HttpHeaders.IF_NONE_MATCH, etag).exchange()
+			.expectStatus().isNotModified();
+
+		cliente.put().uri("/videojuegos/" + id).contentType(MediaType.APPLICATION_JSON)
+			.header(HttpHeaders.IF_MATCH, etag)
+			.bodyValue("{\"nombre\":\"Reactivo 2\",\"compania\":\"Netty\",\"anno\":2021,\"nota\":80}")
+			.exchange()
+			.expectStatus().isOk();
+
+		//La ETag ya no es la actual
+		cliente.delete().uri("/videojuegos/" + id).header(HttpHeaders.IF_MATCH, etag).exchange()
+			.expectStatus().isEqualTo(412);
+		cliente.post().uri("/videojuegos").contentType(MediaType.APPLICATION_JSON)
+			.bodyValue("{\"nombre\":\"Reactivo 2\",\"compania\":\"Netty\",\"anno\":2021,\"nota\":80}")
+			.exchange()
+			.expectStatus().isEqualTo(409);
+		cliente.delete().uri("/videojuegos/" + id).exchange()
+			.expectStatus().isOk();
+		cliente.get().uri("/videojuegos/" + id).exchange()
+			.expectStatus().isNotFound();
+	}
+
+	@Test
+	void lotesNdjson() {
+		cliente.post().uri("/videojuegos/batch").contentType(MediaType.APPLICATION_NDJSON)
+			.bodyValue("{\"nombre\":\"Lote reactivo 1\",\"compania\":\"Netty\",\"anno\":2020,\"nota\":50}\n"
+				+ "{\"nombre\":\"Lote reactivo 1\",\"compania\":\"Netty\",\"anno\":2020,\"nota\":50}\n")
+			.exchange()
+			.expectStatus().isOk()
+			.expectBody()
+			.jsonPath("$.length()").isEqualTo(2)
+			.jsonPath("$[0].estado").isEqualTo(ResultadoLote.CREADO)
+			.jsonPath("$[1].estado").isEqualTo(ResultadoLote.CONFLICTO);
+
+		cliente.method(HttpMethod.DELETE).uri("/videojuegos/batch").contentType(MediaType.APPLICATION_JSON)
+			.bodyValue("[999999]")
+			.exchange()
+			.expectStatus().isOk()
+			.expectBody().jsonPath("$[0].estado").isEqualTo(ResultadoLote.NO_ENCONTRADO);
+
+		cliente.post().uri("/videojuegos/batch").contentType(MediaType.APPLICATION_NDJSON)
+			.bodyValue("{\"nombre\":")
+			.exchange()
+			.expectStatus().isBadRequest();
+	}
+
+	@Test
+	void suscripcionACambios() {
+		String etag = cliente.get().uri("/videojuegos").exchange()
+			.expectStatus().isOk()
+			.returnResult(String.class).getResponseHeaders().getETag();
+		long version = Long.parseLong(etag.substring(etag.lastIndexOf('-') + 1, etag.length() - 1));
+
+		Videojuego alta = cliente.post().uri("/videojuegos").contentType(MediaType.APPLICATION_JSON)
+			.bodyValue("{\"nombre\":\"Suscripcion\",\"compania\":\"Netty\",\"anno\":2021,\"nota\":75}")
+			.exchange()
+			.expectStatus().isCreated()
+			.expectBody(Videojuego.class).returnResult().getResponseBody();
+
+		FluxExchangeResult<ServerSentEvent<CambioVideojuego>> suscripcion = cliente.get()
+			.uri("/videojuegos/changes?since=" + version).accept(MediaType.TEXT_EVENT_STREAM).exchange()
+			.expectStatus().isOk()
+			.returnResult(new ParameterizedTypeReference<ServerSentEvent<CambioVideojuego>>() {});
+		ServerSentEvent<CambioVideojuego> evento = suscripcion.getResponseBody().blockFirst(Duration.ofSeconds(10));
+		assertEquals(Long.toString(version + 1), evento.id());
+		assertEquals(CambioVideojuego.ALTA, evento.event());
+		assertEquals(alta.getId(), evento.data().getId());
+		assertEquals("Suscripcion", evento.data().getVideojuego().getNombre());
+
+		cliente.get().uri("/videojuegos/changes?since=-1").accept(MediaType.TEXT_EVENT_STREAM).exchange()
+			.expectStatus().isEqualTo(HttpStatus.GONE);
+	}
+
+	@Test
+	void formatoSmile() throws Exception {
+		ObjectMapper smile = Jackson2ObjectMapperBuilder.smile().build();
+		MediaType tipoSmile = ControladorVideojuego.APPLICATION_SMILE;
+
+		byte[] cuerpo = cliente.get().uri("/videojuegos/3").accept(tipoSmile).exchange()
+			.expectStatus().isOk()
+			.expectHeader().contentTypeCompatibleWith(tipoSmile)
+			.expectBody().returnResult().getResponseBody();
+		assertEquals("World of Warcraft", smile.readValue(cuerpo, Videojuego.class).getNombre());
+
+		cuerpo = cliente.get().uri("/videojuegos?nombre=warcraft").accept(tipoSmile).exchange()
+			.expectStatus().isOk()
+			.expectBody().returnResult().getResponseBody();
+		assertEquals(2, smile.readValue(cuerpo, Videojuego[].class).length);
+
+		ByteArrayOutputStream lote = new ByteArrayOutputStream();
+		try(SequenceWriter escritor = smile.writer().writeValues(lote)) {
+			escritor.write(new Videojuego(0, "Smile reactivo 1", "Netty", 2021, 60));
+			escritor.write(new Videojuego(0, "Smile reactivo 2", "Netty", 2021, 61));
+		}
+		cuerpo = cliente.post().uri("/videojuegos/batch").contentType(tipoSmile).accept(tipoSmile)
+			.bodyValue(lote.toByteArray())
+			.exchange()
+			.expectStatus().isOk()
+			.expectBody().returnResult().getResponseBody();
+		ResultadoLote[] resultados = smile.readValue(cuerpo, ResultadoLote[].class);
+		assertEquals(2, resultados.length);
+		assertEquals(ResultadoLote.CREADO, resultados[1].getEstado());
+	}
+}
@@ -0,0 +1,374 @@
+package es.serviciosrest;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPInputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+
+import serviciosrest.PspA3RestApplication;
+import serviciosrest.controlador.ControladorVideojuego;
+import serviciosrest.modelo.entidad.ResultadoLote;
+import serviciosrest.modelo.entidad.Videojuego;
+
+@SpringBootTest(classes = PspA3RestApplication.class, properties = { "videojuegos.persistencia.habilitada=false",
+		"server.compression.min-response-size=256B" })
+@AutoConfigureMockMvc
+class ControladorVideojuegoTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	void listarPorPaginasConCursor() throws Exception {
+		mockMvc.perform(get("/videojuegos").param("limit", "4"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(4)))
+			.andExpect(jsonPath("$[0].id").value(0))
+			.andExpect(header().string(ControladorVideojuego.CABECERA_CURSOR, "3"));
+
+		mockMvc.perform(get("/videojuegos").param("limit", "4").param("cursor", "3"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(2)))
+			.andExpect(jsonPath("$[0].id").value(4))
+			.andExpect(header().doesNotExist(ControladorVideojuego.CABECERA_CURSOR));
+
+		mockMvc.perform(get("/videojuegos").param("limit", "0"))
+			.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void listarEnStreamingNdjson() throws Exception {
+		MvcResult resultado = mockMvc.perform(get("/videojuegos")
+				.param("nombre", "warcraft")
+				.accept(MediaType.APPLICATION_NDJSON))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+		mockMvc.perform(asyncDispatch(resultado))
+			.andExpect(status().isOk())
+			.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+			.andExpect(content().string(
+				"{\"id\":1,\"nombre\":\"Hearthstone: Heroes of Warcraft\",\"compania\":\"Blizzard Entertainment\",\"anno\":2014,\"nota\":88}\n"
+				+ "{\"id\":3,\"nombre\":\"World of Warcraft\",\"compania\":\"Blizzard Entertainment\",\"anno\":2004,\"nota\":93}"));
+	}
+
+	@Test
+	void listarFiltrandoYOrdenando() throws Exception {
+		mockMvc.perform(get("/videojuegos")
+				.param("annoMin", "2000").param("sort", "-nota").param("limit", "2"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(2)))
+			.andExpect(jsonPath("$[0].id").value(0))
+			.andExpect(jsonPath("$[1].id").value(3))
+			.andExpect(header().doesNotExist(ControladorVideojuego.CABECERA_CURSOR));
+
+		mockMvc.perform(get("/videojuegos").param("compania", "nintendo"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(1)))
+			.andExpect(jsonPath("$[0].id").value(0));
+
+		mockMvc.perform(get("/videojuegos").param("sort", "precio"))
+			.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/videojuegos").param("sort", "nota").param("cursor", "1"))
+			.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void mejoresYEstadisticas() throws Exception {
+		mockMvc.perform(get("/videojuegos/top").param("k", "2"))
+			.andExpect(status().isOk())
+			.andExpect(header().exists(HttpHeaders.ETAG))
+			.andExpect(jsonPath("$", hasSize(2)))
+			.andExpect(jsonPath("$[0].id").value(0))
+			.andExpect(jsonPath("$[1].id").value(4));
+		mockMvc.perform(get("/videojuegos/top").param("compania", "blizzard entertainment"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(2)))
+			.andExpect(jsonPath("$[0].nombre").value("World of Warcraft"));
+
+		mockMvc.perform(get("/videojuegos/stats").param("groupBy", "compania"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(5)))
+			.andExpect(jsonPath("$[0].grupo").value("Blizzard Entertainment"))
+			.andExpect(jsonPath("$[0].cantidad").value(2))
+			.andExpect(jsonPath("$[0].notaMedia").value(90.5))
+			.andExpect(jsonPath("$[0].notaMinima").value(88))
+			.andExpect(jsonPath("$[0].notaMaxima").value(93));
+		mockMvc.perform(get("/videojuegos/stats").param("groupBy", "anno"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$[0].grupo").value("1995"));
+
+		mockMvc.perform(get("/videojuegos/top").param("k", "0"))
+			.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/videojuegos/stats").param("groupBy", "precio"))
+			.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/videojuegos/stats"))
+			.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void autocompletar() throws Exception {
+		mockMvc.perform(get("/videojuegos/autocomplete").param("q", "Comand & Conq"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(1)))
+			.andExpect(jsonPath("$[0].id").value(4));
+		mockMvc.perform(get("/videojuegos/autocomplete").param("q", "w").param("limit", "1"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(1)));
+		mockMvc.perform(get("/videojuegos/autocomplete").param("q", "w").param("limit", "101"))
+			.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/videojuegos/autocomplete"))
+			.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	@DirtiesContext//Cambia el catalogo que usan el resto de pruebas
+	void operacionesPorLotes() throws Exception {
+		//NDJSON, con un nombre repetido
+		mockMvc.perform(post("/videojuegos/batch")
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.content("{\"nombre\":\"Lote 1\",\"compania\":\"A\",\"anno\":2001,\"nota\":70}\n"
+						+ "{\"nombre\":\"World of Warcraft\",\"compania\":\"B\",\"anno\":2002,\"nota\":71}\n"
+						+ "{\"nombre\":\"Lote 2\",\"compania\":\"A\",\"anno\":2003,\"nota\":72}\n"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(3)))
+			.andExpect(jsonPath("$[0].estado").value(ResultadoLote.CREADO))
+			.andExpect(jsonPath("$[0].codigo").value(201))
+			.andExpect(jsonPath("$[1].estado").value(ResultadoLote.CONFLICTO))
+			.andExpect(jsonPath("$[1].id").doesNotExist())
+			.andExpect(jsonPath("$[2].estado").value(ResultadoLote.CREADO));
+
+		//Array JSON, con un ID que no existe
+		mockMvc.perform(put("/videojuegos/batch")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"id\":5,\"nombre\":\"Pokemon LeafGreen\",\"compania\":\"Game Freak\",\"anno\":2004,\"nota\":80},"
+						+ "{\"id\":100000,\"nombre\":\"Nadie\",\"compania\":\"C\",\"anno\":2000,\"nota\":1}]"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$[0].estado").value(ResultadoLote.MODIFICADO))
+			.andExpect(jsonPath("$[1].estado").value(ResultadoLote.NO_ENCONTRADO))
+			.andExpect(jsonPath("$[1].codigo").value(404));
+		mockMvc.perform(get("/videojuegos/5"))
+			.andExpect(jsonPath("$.nombre").value("Pokemon LeafGreen"));
+
+		mockMvc.perform(delete("/videojuegos/batch")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("[100000]"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$[0].id").value(100000))
+			.andExpect(jsonPath("$[0].estado").value(ResultadoLote.NO_ENCONTRADO));
+
+		mockMvc.perform(post("/videojuegos/batch")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"nombre\":"))
+			.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	@DirtiesContext
+	void etagsYPeticionesCondicionales() throws Exception {
+		String etag = mockMvc.perform(get("/videojuegos/2"))
+			.andExpect(status().isOk())
+			.andExpect(header().exists(HttpHeaders.ETAG))
+			.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		mockMvc.perform(get("/videojuegos/2").header(HttpHeaders.IF_NONE_MATCH, etag))
+			.andExpect(status().isNotModified())
+			.andExpect(content().string(""));
+
+		String etagLista = mockMvc.perform(get("/videojuegos"))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		mockMvc.perform(get("/videojuegos").header(HttpHeaders.IF_NONE_MATCH, etagLista))
+			.andExpect(status().isNotModified());
+
+		//Modificacion condicional: la primera vale, la segunda llega tarde
+		String nuevo = "{\"nombre\":\"Final Fantasy VIII Remastered\",\"compania\":\"Square Enix\",\"anno\":2019,\"nota\":84}";
+		String etagNueva = escribir(put("/videojuegos/2").header(HttpHeaders.IF_MATCH, etag)
+				.contentType(MediaType.APPLICATION_JSON).content(nuevo))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		escribir(put("/videojuegos/2").header(HttpHeaders.IF_MATCH, etag)
+				.contentType(MediaType.APPLICATION_JSON).content(nuevo))
+			.andExpect(status().isPreconditionFailed());
+		escribir(delete("/videojuegos/2").header(HttpHeaders.IF_MATCH, etag))
+			.andExpect(status().isPreconditionFailed());
+
+		//Las ETag antiguas ya no coinciden
+		mockMvc.perform(get("/videojuegos/2").header(HttpHeaders.IF_NONE_MATCH, etag))
+			.andExpect(status().isOk())
+			.andExpect(header().string(HttpHeaders.ETAG, etagNueva));
+		mockMvc.perform(get("/videojuegos").header(HttpHeaders.IF_NONE_MATCH, etagLista))
+			.andExpect(status().isOk());
+
+		escribir(delete("/videojuegos/2").header(HttpHeaders.IF_MATCH, etagNueva))
+			.andExpect(status().isOk());
+	}
+
+	@Test
+	@DirtiesContext
+	void suscripcionACambios() throws Exception {
+		//La version del catalogo del listado, de su ETag "<instancia>-<version>"
+		String etag = mockMvc.perform(get("/videojuegos"))
+			.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		long version = Long.parseLong(etag.substring(etag.lastIndexOf('-') + 1, etag.length() - 1));
+
+		MvcResult suscripcion = mockMvc.perform(get("/videojuegos/changes").param("since", Long.toString(version))
+				.accept(MediaType.TEXT_EVENT_STREAM))
+			.andExpect(request().asyncStarted())
+			.andExpect(status().isOk())
+			.andReturn();
+		escribir(delete("/videojuegos/2"))
+			.andExpect(status().isOk());
+		escribir(put("/videojuegos/3").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"nombre\":\"World of Warcraft\",\"compania\":\"Blizzard Entertainment\",\"anno\":2004,\"nota\":95}"))
+			.andExpect(status().isOk());
+		String eventos = esperarEventos(suscripcion, 2);
+		assertTrue(eventos.startsWith("id:" + (version + 1) + "\nevent:baja\ndata:{\"secuencia\":" + (version + 1)
+				+ ",\"tipo\":\"baja\",\"id\":2,\"videojuego\":null}\n\n"), eventos);
+		assertTrue(eventos.contains("id:" + (version + 2) + "\nevent:modificacion\n"), eventos);
+		assertTrue(eventos.contains("\"nota\":95"), eventos);
+
+		//Al reconectar manda Last-Event-ID, que tiene preferencia sobre since
+		MvcResult reconexion = mockMvc.perform(get("/videojuegos/changes").param("since", Long.toString(version))
+				.header("Last-Event-ID", Long.toString(version + 1))
+				.accept(MediaType.TEXT_EVENT_STREAM))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+		assertTrue(esperarEventos(reconexion, 1).startsWith("id:" + (version + 2) + "\nevent:modificacion\n"));
+
+		//Secuencias que no estan en el historial
+		mockMvc.perform(get("/videojuegos/changes").param("since", "-1").accept(MediaType.TEXT_EVENT_STREAM))
+			.andExpect(status().isGone());
+		mockMvc.perform(get("/videojuegos/changes").param("since", Long.toString(version + 100))
+				.accept(MediaType.TEXT_EVENT_STREAM))
+			.andExpect(status().isGone());
+	}
+
+	//Las altas, bajas y modificaciones individuales responden de forma
+	//asincrona: esperamos a su resultado
+	private ResultActions escribir(RequestBuilder peticion) throws Exception {
+		MvcResult resultado = mockMvc.perform(peticion)
+			.andExpect(request().asyncStarted())
+			.andReturn();
+		return mockMvc.perform(asyncDispatch(resultado));
+	}
+
+	//Los eventos se envian desde otro hilo: esperamos a que lleguen
+	private static String esperarEventos(MvcResult suscripcion, int eventos) throws Exception {
+		long limite = System.nanoTime() + 10_000_000_000L;
+		String contenido = suscripcion.getResponse().getContentAsString();
+		while(contenido.split("\n\n", -1).length <= eventos && System.nanoTime() < limite) {
+			Thread.sleep(20);
+			contenido = suscripcion.getResponse().getContentAsString();
+		}
+		return contenido;
+	}
+
+	@Test
+	@DirtiesContext
+	void formatoSmile() throws Exception {
+		ObjectMapper smile = Jackson2ObjectMapperBuilder.smile().build();
+		MediaType tipoSmile = ControladorVideojuego.APPLICATION_SMILE;
+
+		//Sin Accept seguimos devolviendo JSON
+		mockMvc.perform(get("/videojuegos/3"))
+			.andExpect(status().isOk())
+			.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+
+		byte[] cuerpo = mockMvc.perform(get("/videojuegos/3").accept(tipoSmile))
+			.andExpect(status().isOk())
+			.andExpect(content().contentTypeCompatibleWith(tipoSmile))
+			.andExpect(header().exists(HttpHeaders.ETAG))
+			.andReturn().getResponse().getContentAsByteArray();
+		assertEquals("World of Warcraft", smile.readValue(cuerpo, Videojuego.class).getNombre());
+
+		cuerpo = mockMvc.perform(get("/videojuegos").param("nombre", "warcraft").accept(tipoSmile))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getContentAsByteArray();
+		assertEquals(2, smile.readValue(cuerpo, Videojuego[].class).length);
+
+		//Alta en Smile
+		Videojuego nuevo = new Videojuego(0, "StarCraft", "Blizzard Entertainment", 1998, 93);
+		cuerpo = escribir(post("/videojuegos").contentType(tipoSmile).accept(tipoSmile)
+				.content(smile.writeValueAsBytes(nuevo)))
+			.andExpect(status().isCreated())
+			.andReturn().getResponse().getContentAsByteArray();
+		int id = smile.readValue(cuerpo, Videojuego.class).getId();
+
+		//Modificacion en Smile
+		nuevo.setNota(95);
+		escribir(put("/videojuegos/" + id).contentType(tipoSmile).content(smile.writeValueAsBytes(nuevo)))
+			.andExpect(status().isOk());
+		mockMvc.perform(get("/videojuegos/" + id))
+			.andExpect(jsonPath("$.nota").value(95));
+
+		//Lote en Smile: una secuencia de valores, con la respuesta tambien en Smile
+		ByteArrayOutputStream lote = new ByteArrayOutputStream();
+		try(SequenceWriter escritor = smile.writer().writeValues(lote)) {
+			escritor.write(new Videojuego(0, "StarCraft II", "Blizzard Entertainment", 2010, 93));
+			escritor.write(new Videojuego(0, "StarCraft", "Blizzard Entertainment", 1998, 93));
+		}
+		cuerpo = mockMvc.perform(post("/videojuegos/batch").contentType(tipoSmile).accept(tipoSmile)
+				.content(lote.toByteArray()))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getContentAsByteArray();
+		ResultadoLote[] resultados = smile.readValue(cuerpo, ResultadoLote[].class);
+		assertEquals(ResultadoLote.CREADO, resultados[0].getEstado());
+		assertEquals(ResultadoLote.CONFLICTO, resultados[1].getEstado());
+	}
+
+	@Test
+	void listadoCompletoComprimido() throws Exception {
+		MvcResult sinComprimir = mockMvc.perform(get("/videojuegos"))
+			.andExpect(status().isOk())
+			.andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+			.andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+			//Debil: la version comprimida lleva la misma ETag con otros bytes
+			.andExpect(header().string(HttpHeaders.ETAG, startsWith("W/")))
+			.andReturn();
+		byte[] json = sinComprimir.getResponse().getContentAsByteArray();
+
+		MvcResult comprimido = mockMvc.perform(get("/videojuegos").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br"))
+			.andExpect(status().isOk())
+			.andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+			.andExpect(header().string(HttpHeaders.ETAG, sinComprimir.getResponse().getHeader(HttpHeaders.ETAG)))
+			.andReturn();
+		byte[] gzip = comprimido.getResponse().getContentAsByteArray();
+		assertArrayEquals(json, new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes());
+
+		mockMvc.perform(get("/videojuegos").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, *"))
+			.andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+		//Las consultas no se guardan comprimidas
+		mockMvc.perform(get("/videojuegos").param("compania", "blizzard").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+			.andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+	}
+}
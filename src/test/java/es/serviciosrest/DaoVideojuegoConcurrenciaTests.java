@@ -0,0 +1,228 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+
+/**
+ * Prueba de estres del DAO: varios hilos dan de alta, modifican, borran y 
+ * listan videojuegos a la vez y al final comprobamos que los indices siguen
+ * siendo coherentes (IDs unicos y nombres unicos).
+ */
+class DaoVideojuegoConcurrenciaTests {
+
+	private static final int HILOS = 8;
+	private static final int NOMBRES = 2_000;
+
+	@Test
+	void altasConcurrentesConNombreRepetido() throws Exception {
+		DaoVideojuego dao = new DaoVideojuego();
+		int iniciales = dao.list().size();
+		Set<Integer> ids = ConcurrentHashMap.newKeySet();
+		AtomicInteger altas = new AtomicInteger();
+
+		//Todos los hilos intentan dar de alta los mismos nombres
+		ejecutar(hilo -> {
+			for(int i = 0; i < NOMBRES; i++) {
+				Videojuego v = dao.add(new Videojuego(0, "Juego " + i, "Compania", 2000, 50));
+				if(v != null) {
+					altas.incrementAndGet();
+					assertTrue(ids.add(v.getId()), "ID repetido: " + v.getId());
+				}
+			}
+		});
+
+		//Solo puede haber un alta por nombre
+		assertEquals(NOMBRES, altas.get());
+		assertEquals(iniciales + NOMBRES, dao.list().size());
+		comprobarNombresUnicos(dao);
+	}
+
+	@Test
+	void operacionesMezcladasMantienenLosIndicesCoherentes() throws Exception {
+		DaoVideojuego dao = new DaoVideojuego();
+		for(int i = 0; i < NOMBRES; i++) {
+			assertNotNull(dao.add(new Videojuego(0, "Juego " + i, "Compania", 2000, 50)));
+		}
+		int maxId = NOMBRES + 10;
+
+		ejecutar(hilo -> {
+			ThreadLocalRandom r = ThreadLocalRandom.current();
+			for(int i = 0; i < 20_000; i++) {
+				int id = r.nextInt(maxId);
+				String nombre = "Juego " + r.nextInt(NOMBRES * 2);
+				switch(r.nextInt(5)) {
+				case 0:
+					dao.add(new Videojuego(0, nombre, "Compania", 2001, 60));
+					break;
+				case 1:
+					dao.delete(id);
+					break;
+				case 2:
+					dao.getById(id);
+					break;
+				case 3:
+					//Recorrer la lista no puede lanzar ConcurrentModificationException
+					for(Videojuego v : dao.list()) {
+						assertNotNull(v.getNombre());
+					}
+					break;
+				default:
+					dao.update(new Videojuego(id, nombre, "Compania", 2002, 70));
+				}
+			}
+		});
+
+		comprobarNombresUnicos(dao);
+		//Los nombres de los videojuegos borrados tienen que haber quedado libres
+		List<Videojuego> actuales = new ArrayList<>(dao.list());
+		for(Videojuego v : actuales) {
+			assertNull(dao.add(new Videojuego(0, v.getNombre(), "Otra", 1990, 1)));
+			assertTrue(dao.delete(v.getId()));
+		}
+		assertEquals(0, dao.list().size());
+		for(Videojuego v : actuales) {
+			assertNotNull(dao.add(new Videojuego(0, v.getNombre(), "Otra", 1990, 1)));
+		}
+	}
+
+	@Test
+	void escritorUnicoAplicaLasEscriturasEnOrden() throws Exception {
+		DaoVideojuego dao = new DaoVideojuego();
+		//Capacidad pequeña para que los productores den la vuelta al anillo y esperen
+		dao.iniciarEscritorUnico(16);
+		int[] ids = new int[HILOS];
+		try {
+			assertTrue(dao.isEscritorUnico());
+			for(int h = 0; h < HILOS; h++) {
+				ids[h] = dao.add(new Videojuego(0, "Propio " + h, "Compania", 2000, 0)).getId();
+			}
+			Set<Integer> altas = ConcurrentHashMap.newKeySet();
+
+			ejecutar(hilo -> {
+				//Sin esperar entre una y otra: cada modificacion espera la version que
+				//deja la anterior, asi que solo valen todas si se aplican en orden
+				List<CompletableFuture<Integer>> modificaciones = new ArrayList<>();
+				for(int i = 0; i < 2_000; i++) {
+					Videojuego v = new Videojuego(ids[hilo], "Propio " + hilo + " v" + (i + 2), "Compania", 2000, i % 101);
+					modificaciones.add(dao.updateAsync(v, i + 1));
+				}
+				//Todos los hilos intentan dar de alta los mismos nombres
+				List<CompletableFuture<Videojuego>> intentos = new ArrayList<>();
+				for(int i = 0; i < NOMBRES; i++) {
+					intentos.add(dao.addAsync(new Videojuego(0, "Juego " + i, "Compania", 2000, 50)));
+				}
+				for(CompletableFuture<Integer> f : modificaciones) {
+					assertEquals(0, f.get(1, TimeUnit.MINUTES));
+				}
+				for(CompletableFuture<Videojuego> f : intentos) {
+					Videojuego v = f.get(1, TimeUnit.MINUTES);
+					if(v != null) {
+						assertTrue(altas.add(v.getId()), "ID repetido: " + v.getId());
+					}
+				}
+			});
+
+			assertEquals(NOMBRES, altas.size());
+			for(int h = 0; h < HILOS; h++) {
+				Videojuego v = dao.getById(ids[h]);
+				assertEquals("Propio " + h + " v2001", v.getNombre());
+				assertEquals(2_001, v.getVersion());
+			}
+			comprobarNombresUnicos(dao);
+		}finally {
+			dao.pararEscritorUnico();
+		}
+		//Sin el escritor unico todo sigue igual
+		assertFalse(dao.isEscritorUnico());
+		assertNull(dao.add(new Videojuego(0, "Juego 0", "Compania", 2000, 50)));
+		assertEquals(0, dao.update(new Videojuego(ids[0], "Propio 0", "Compania", 2000, 0), 2_001));
+	}
+
+	@Test
+	void pararElEscritorUnicoConEscriturasEnCursoLasAplicaTodas() throws Exception {
+		DaoVideojuego dao = new DaoVideojuego();
+		int iniciales = dao.list().size();
+		dao.iniciarEscritorUnico(16);
+		AtomicInteger enviadas = new AtomicInteger();
+
+		//Un hilo para el escritor mientras los demas siguen encolando: las que
+		//llegan tarde se aplican en su hilo, y ningun futuro se queda colgado
+		ejecutar(hilo -> {
+			if(hilo == 0) {
+				while(enviadas.get() < NOMBRES) {
+					Thread.onSpinWait();
+				}
+				dao.pararEscritorUnico();
+				return;
+			}
+			List<CompletableFuture<Videojuego>> altas = new ArrayList<>();
+			for(int i = 0; i < NOMBRES; i++) {
+				altas.add(dao.addAsync(new Videojuego(0, "Juego " + hilo + "-" + i, "Compania", 2000, 50)));
+				enviadas.incrementAndGet();
+			}
+			for(CompletableFuture<Videojuego> f : altas) {
+				assertNotNull(f.get(1, TimeUnit.MINUTES));
+			}
+		});
+
+		assertFalse(dao.isEscritorUnico());
+		assertEquals(iniciales + (HILOS - 1) * NOMBRES, dao.list().size());
+		comprobarNombresUnicos(dao);
+	}
+
+	private static void comprobarNombresUnicos(DaoVideojuego dao) {
+		Set<String> nombres = new HashSet<>();
+		Set<Integer> ids = new HashSet<>();
+		for(Videojuego v : dao.list()) {
+			assertTrue(nombres.add(v.getNombre()), "Nombre repetido: " + v.getNombre());
+			assertTrue(ids.add(v.getId()), "ID repetido: " + v.getId());
+			assertEquals(v, dao.getById(v.getId()));
+		}
+	}
+
+	private interface Tarea {
+		void ejecutar(int hilo) throws Exception;
+	}
+
+	private static void ejecutar(Tarea tarea) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(HILOS);
+		CountDownLatch salida = new CountDownLatch(1);
+		List<Future<?>> resultados = new ArrayList<>();
+		for(int h = 0; h < HILOS; h++) {
+			int hilo = h;
+			resultados.add(pool.submit(() -> {
+				salida.await();
+				tarea.ejecutar(hilo);
+				return null;
+			}));
+		}
+		salida.countDown();
+		for(Future<?> f : resultados) {
+			f.get();//Propaga cualquier fallo de los hilos
+		}
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+	}
+}
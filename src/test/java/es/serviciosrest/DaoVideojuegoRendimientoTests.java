@@ -0,0 +1,105 @@
+package es.serviciosrest;
+
+import java.util.HashSet;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+
+/**
+ * Comparativa antes/despues de getById, update y delete con catalogos de
+ * 10k, 1M y 10M videojuegos. "Antes" reproduce el recorrido completo del
+ * HashSet original; "despues" usa el {@link DaoVideojuego} indexado por ID.
+ * 
+ * Es lenta y necesita mucha memoria, por eso solo se ejecuta bajo demanda:
+ * {@code mvn test -Dtest=DaoVideojuegoRendimientoTests -Dbenchmark=true -DargLine=-Xmx8g}<br>
+ * Los tamaños se pueden cambiar con {@code -Dbenchmark.tamanos=10000,1000000}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class DaoVideojuegoRendimientoTests {
+
+	private static final String TAMANOS = "10000,1000000,10000000";
+
+	@Test
+	void comparativaPorTamanoDeCatalogo() {
+		System.out.printf("%12s %10s %16s %16s%n", "videojuegos", "operacion", "antes (ns/op)", "despues (ns/op)");
+		for(String tamano : System.getProperty("benchmark.tamanos", TAMANOS).split(",")) {
+			medir(Integer.parseInt(tamano.trim()));
+			System.gc();
+		}
+	}
+
+	private static void medir(int tamano) {
+		//Antes: un HashSet recorrido entero en cada operacion, como hacia el DAO original
+		HashSet<Videojuego> conjunto = new HashSet<>();
+		for(int i = 0; i < tamano; i++) {
+			conjunto.add(new Videojuego(i, "Juego " + i, "Compania " + (i % 100), 2000 + i % 20, i % 100));
+		}
+		//Con millones de elementos el recorrido tarda milisegundos, asi que hacemos menos operaciones
+		int opsAntes = Math.max(10, 2_000_000 / tamano);
+		long getAntes = tiempo(opsAntes, tamano, id -> buscar(conjunto, id));
+		long updAntes = tiempo(opsAntes, tamano, id -> {
+			Videojuego v = buscar(conjunto, id);
+			conjunto.remove(v);
+			conjunto.add(new Videojuego(id, v.getNombre(), "Otra", v.getAnno(), v.getNota()));
+		});
+		long delAntes = tiempo(opsAntes, tamano, id -> {
+			Videojuego v = buscar(conjunto, id);
+			if(v != null) {
+				conjunto.remove(v);
+			}
+		});
+		conjunto.clear();
+
+		//Despues: el DAO indexado por ID
+		DaoVideojuego dao = new DaoVideojuego();
+		for(int i = 0; i < tamano; i++) {
+			dao.add(new Videojuego(0, "Juego " + i, "Compania " + (i % 100), 2000 + i % 20, i % 100));
+		}
+		int opsDespues = 1_000_000;
+		long getDespues = tiempo(opsDespues, tamano, dao::getById);
+		long updDespues = tiempo(opsDespues, tamano, id -> {
+			Videojuego v = dao.getById(id);
+			if(v != null) {
+				dao.update(new Videojuego(id, v.getNombre(), "Otra", v.getAnno(), v.getNota()));
+			}
+		});
+		long delDespues = tiempo(opsDespues, tamano, dao::delete);
+
+		System.out.printf("%12d %10s %16d %16d%n", tamano, "getById", getAntes, getDespues);
+		System.out.printf("%12d %10s %16d %16d%n", tamano, "update", updAntes, updDespues);
+		System.out.printf("%12d %10s %16d %16d%n", tamano, "delete", delAntes, delDespues);
+	}
+
+	private static Videojuego buscar(HashSet<Videojuego> conjunto, int id) {
+		for(Videojuego v : conjunto) {
+			if(v.getId() == id) {
+				return v;
+			}
+		}
+		return null;
+	}
+
+	private interface Operacion {
+		void ejecutar(int id);
+	}
+
+	/**
+	 * @return la media en nanosegundos por operacion
+	 */
+	private static long tiempo(int ops, int tamano, Operacion operacion) {
+		SplittableRandom r = new SplittableRandom(42);
+		//Calentamiento para que el JIT compile el camino medido
+		for(int i = 0; i < Math.min(ops, 1_000); i++) {
+			operacion.ejecutar(r.nextInt(tamano));
+		}
+		long inicio = System.nanoTime();
+		for(int i = 0; i < ops; i++) {
+			operacion.ejecutar(r.nextInt(tamano));
+		}
+		return (System.nanoTime() - inicio) / ops;
+	}
+}
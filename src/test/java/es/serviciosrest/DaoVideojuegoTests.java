@@ -0,0 +1,218 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import serviciosrest.modelo.entidad.EstadisticasGrupo;
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.ConsultaVideojuegos;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+import serviciosrest.modelo.persistencia.FotoCatalogo;
+
+class DaoVideojuegoTests {
+
+	private static Set<Integer> ids(List<Videojuego> lista) {
+		return lista.stream().map(Videojuego::getId).collect(Collectors.toSet());
+	}
+
+	@Test
+	void listByNombreBuscaSubcadenasSinDistinguirMayusculas() {
+		DaoVideojuego dao = new DaoVideojuego();
+		assertEquals(Set.of(1, 3), ids(dao.listByNombre("WARCRAFT")));
+		assertEquals(Set.of(0), ids(dao.listByNombre("zelda: twi")));
+		assertEquals(Set.of(5), ids(dao.listByNombre("ok")));//Mas corta que un trigrama
+		assertEquals(6, dao.listByNombre("").size());
+		assertTrue(dao.listByNombre("craftwar").isEmpty());//Todos sus trigramas existen pero no la subcadena
+	}
+
+	@Test
+	void listByNombreSeMantieneAlModificarYBorrar() {
+		DaoVideojuego dao = new DaoVideojuego();
+		assertEquals(0, dao.update(new Videojuego(3, "StarCraft", "Blizzard Entertainment", 1998, 93)));
+		assertEquals(Set.of(1), ids(dao.listByNombre("warcraft")));
+		assertEquals(Set.of(3), ids(dao.listByNombre("starc")));
+
+		assertTrue(dao.delete(1));
+		assertTrue(dao.listByNombre("warcraft").isEmpty());
+
+		Videojuego v = dao.add(new Videojuego(0, "Warcraft III", "Blizzard Entertainment", 2002, 92));
+		assertEquals(Set.of(v.getId()), ids(dao.listByNombre("warcraft")));
+	}
+
+	private static List<Integer> idsOrdenados(List<Videojuego> lista) {
+		return lista.stream().map(Videojuego::getId).collect(Collectors.toList());
+	}
+
+	@Test
+	void consultaFiltraPorCompaniaYRangos() {
+		DaoVideojuego dao = new DaoVideojuego();
+		ConsultaVideojuegos consulta = new ConsultaVideojuegos();
+		consulta.setCompania("blizzard entertainment");
+		assertEquals(List.of(1, 3), idsOrdenados(dao.list(consulta)));
+
+		consulta = new ConsultaVideojuegos();
+		consulta.setAnnoMin(2004);
+		consulta.setAnnoMax(2009);
+		consulta.setNotaMin(90);
+		assertEquals(List.of(0, 2, 3), idsOrdenados(dao.list(consulta)));
+
+		//Los indices se mantienen al modificar y borrar
+		assertEquals(0, dao.update(new Videojuego(3, "World of Warcraft", "Activision", 2004, 93)));
+		assertTrue(dao.delete(2));
+		assertEquals(List.of(0, 3), idsOrdenados(dao.list(consulta)));
+		consulta.setCompania("Activision");
+		assertEquals(List.of(3), idsOrdenados(dao.list(consulta)));
+	}
+
+	@Test
+	void consultaOrdenaYLimita() {
+		DaoVideojuego dao = new DaoVideojuego();
+		ConsultaVideojuegos consulta = new ConsultaVideojuegos();
+		consulta.setOrden("-nota");
+		consulta.setLimite(3);
+		assertEquals(List.of(0, 4, 3), idsOrdenados(dao.list(consulta)));
+
+		consulta = new ConsultaVideojuegos();
+		consulta.setOrden("anno");
+		consulta.setCompania("Blizzard Entertainment");
+		assertEquals(List.of(3, 1), idsOrdenados(dao.list(consulta)));
+
+		consulta = new ConsultaVideojuegos();
+		consulta.setOrden("-id");
+		consulta.setCursor(4);
+		consulta.setLimite(2);
+		assertEquals(List.of(3, 2), idsOrdenados(dao.list(consulta)));
+
+		ConsultaVideojuegos invalida = new ConsultaVideojuegos();
+		invalida.setOrden("nota");
+		invalida.setCursor(2);
+		assertThrows(IllegalArgumentException.class, () -> dao.list(invalida));
+		assertThrows(IllegalArgumentException.class, () -> invalida.setOrden("precio"));
+	}
+
+	@Test
+	void versionesDelCatalogoYDeCadaVideojuego() {
+		DaoVideojuego dao = new DaoVideojuego();
+		long version = dao.getVersion();
+		assertEquals(1, dao.getById(4).getVersion());
+
+		Videojuego v = new Videojuego(4, "Command & Conquer: Red Alert", "Westwood Studios", 1996, 90);
+		assertEquals(3, dao.update(v, 2));//Version equivocada: no se modifica
+		assertEquals("Command & Conquer", dao.getById(4).getNombre());
+		assertEquals(version, dao.getVersion());
+
+		assertEquals(0, dao.update(v, 1));
+		assertEquals(2, dao.getById(4).getVersion());
+		assertEquals(version + 1, dao.getVersion());
+
+		assertEquals(3, dao.delete(4, 1));
+		assertEquals(0, dao.delete(4, 2));
+		assertEquals(1, dao.delete(4, DaoVideojuego.CUALQUIER_VERSION));
+		assertEquals(version + 2, dao.getVersion());
+	}
+
+	@Test
+	void laFotoDelCatalogoNoCambiaConLasEscrituras() {
+		DaoVideojuego dao = new DaoVideojuego();
+		FotoCatalogo foto = dao.foto();
+		Iterator<Videojuego> recorrido = dao.iterator(null);
+		recorrido.next();
+		assertEquals(dao.getVersion(), foto.getVersion());
+
+		dao.update(new Videojuego(3, "StarCraft", "Blizzard Entertainment", 1998, 93));
+		dao.delete(4);
+		Videojuego nuevo = dao.add(new Videojuego(0, "Warcraft III", "Blizzard Entertainment", 2002, 92));
+
+		//La foto y el recorrido que ya habia empezado siguen viendo lo de antes
+		assertEquals(List.of(0, 1, 2, 3, 4, 5), foto.stream().map(Videojuego::getId).collect(Collectors.toList()));
+		assertEquals("World of Warcraft", foto.get(3).getNombre());
+		assertNull(foto.get(nuevo.getId()));
+		List<Integer> resto = new ArrayList<>();
+		recorrido.forEachRemaining(v -> resto.add(v.getId()));
+		assertEquals(List.of(1, 2, 3, 4, 5), resto);
+
+		//Y la actual tiene los tres cambios
+		assertEquals(foto.getVersion() + 3, dao.getVersion());
+		assertEquals(List.of(0, 1, 2, 3, 5, nuevo.getId()),
+				dao.list().stream().map(Videojuego::getId).collect(Collectors.toList()));
+		assertEquals("StarCraft", dao.foto().get(3).getNombre());
+	}
+
+	@Test
+	void mejoresYEstadisticasSeMantienenConCadaCambio() {
+		DaoVideojuego dao = new DaoVideojuego();
+		assertEquals(List.of(0, 4, 3), idsOrdenados(dao.top(3, null)));
+		assertEquals(List.of(3, 1), idsOrdenados(dao.top(5, "BLIZZARD entertainment")));
+		assertTrue(dao.top(5, "Nadie").isEmpty());
+
+		List<EstadisticasGrupo> porCompania = dao.estadisticasPorCompania();
+		assertEquals(List.of("Blizzard Entertainment", "Game Freak", "Nintendo", "SquareSoft", "Westwood Studios"),
+				porCompania.stream().map(EstadisticasGrupo::getGrupo).collect(Collectors.toList()));
+		EstadisticasGrupo blizzard = porCompania.get(0);
+		assertEquals(2, blizzard.getCantidad());
+		assertEquals(90.5, blizzard.getNotaMedia(), 1e-9);
+		assertEquals(88, blizzard.getNotaMinima());
+		assertEquals(93, blizzard.getNotaMaxima());
+
+		//Sube la nota de uno, se borra el mejor y llega otro: nada se recalcula
+		dao.update(new Videojuego(1, "Hearthstone: Heroes of Warcraft", "Blizzard Entertainment", 2014, 99));
+		assertTrue(dao.delete(3));
+		dao.add(new Videojuego(0, "Diablo II", "Blizzard Entertainment", 2000, 91));
+		blizzard = dao.estadisticasPorCompania().get(0);
+		assertEquals(2, blizzard.getCantidad());
+		assertEquals(95, blizzard.getNotaMedia(), 1e-9);
+		assertEquals(91, blizzard.getNotaMinima());
+		assertEquals(99, blizzard.getNotaMaxima());
+		assertEquals(List.of(1), idsOrdenados(dao.top(1, "Blizzard Entertainment")));
+		assertEquals(List.of(1, 0), idsOrdenados(dao.top(2, null)));
+
+		//Un cambio de compañia pasa el videojuego de un grupo a otro
+		dao.update(new Videojuego(5, "Pokemon FireRed Version", "Nintendo", 2004, 81));
+		assertEquals(4, dao.estadisticasPorCompania().size());
+		List<EstadisticasGrupo> porAnno = dao.estadisticasPorAnno();
+		assertEquals(List.of("1995", "2000", "2004", "2006", "2009", "2014"),
+				porAnno.stream().map(EstadisticasGrupo::getGrupo).collect(Collectors.toList()));
+		assertEquals(1, porAnno.get(2).getCantidad());//Ya no esta World of Warcraft
+	}
+
+	@Test
+	void autocompletarToleraPalabrasAMediasFaltasYAcentos() {
+		DaoVideojuego dao = new DaoVideojuego();
+		Videojuego pokemonRojo = dao.add(new Videojuego(0, "Pokémon Rojo", "Game Freak", 1996, 85));
+		//A medias: primero el que empieza por la palabra, despues el mas corto
+		assertEquals(List.of(3, 1), idsOrdenados(dao.autocompletar("warc", 10)));
+		assertEquals(List.of(pokemonRojo.getId(), 5), idsOrdenados(dao.autocompletar("pokem", 10)));
+		//Faltas de ortografia y acentos
+		assertEquals(List.of(pokemonRojo.getId()), idsOrdenados(dao.autocompletar("Pokmon roj", 10)));
+		assertEquals(List.of(0), idsOrdenados(dao.autocompletar("legnd of zeld", 10)));
+		assertEquals(List.of(2), idsOrdenados(dao.autocompletar("FINAL FANTASI", 10)));
+		//Una palabra completa (con espacio detras) no vale como prefijo
+		assertTrue(dao.autocompletar("fire ", 10).isEmpty());
+		assertEquals(List.of(5), idsOrdenados(dao.autocompletar("fire", 10)));
+		//Demasiado distinto, vacio y limite
+		assertTrue(dao.autocompletar("zzzzzz", 10).isEmpty());
+		assertTrue(dao.autocompletar(" ", 10).isEmpty());
+		assertEquals(1, dao.autocompletar("warc", 1).size());
+
+		//Se mantiene al cambiar el nombre y al borrar
+		dao.update(new Videojuego(pokemonRojo.getId(), "Pokémon Azul", "Game Freak", 1996, 85));
+		assertTrue(dao.autocompletar("pokemon roj", 10).isEmpty());
+		assertEquals(List.of(pokemonRojo.getId()), idsOrdenados(dao.autocompletar("pokemon azu", 10)));
+		assertTrue(dao.delete(pokemonRojo.getId()));
+		assertEquals(List.of(5), idsOrdenados(dao.autocompletar("pokemon", 10)));
+		//Un ID antiguo que pasa a tener una palabra de otros mas nuevos
+		dao.update(new Videojuego(0, "Pokemon Zelda", "Nintendo", 1986, 84));
+		assertEquals(List.of(0, 5), idsOrdenados(dao.autocompletar("pokemon", 10)));
+	}
+}
+
@@ -0,0 +1,95 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+
+import serviciosrest.controlador.HistorialCambios;
+import serviciosrest.modelo.entidad.CambioVideojuego;
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+
+class HistorialCambiosTests {
+
+	private final SimpleMeterRegistry metricas = new SimpleMeterRegistry();
+
+	@Test
+	void guardaLosCambiosEnOrdenConSuSecuencia() {
+		DaoVideojuego dao = new DaoVideojuego();
+		HistorialCambios historial = new HistorialCambios(dao, metricas, 16);
+		long inicio = historial.getSecuencia();
+		HistorialCambios.Lector lector = historial.lector(inicio);
+		assertNull(lector.siguiente());
+
+		Videojuego nuevo = dao.add(new Videojuego(0, "Hades", "Supergiant Games", 2020, 93));
+		assertEquals(0, dao.update(new Videojuego(nuevo.getId(), "Hades", "Supergiant Games", 2020, 94)));
+		assertEquals(true, dao.delete(1));
+
+		CambioVideojuego alta = lector.siguiente();
+		assertEquals(inicio + 1, alta.getSecuencia());
+		assertEquals(CambioVideojuego.ALTA, alta.getTipo());
+		assertEquals(nuevo.getId(), alta.getId());
+		CambioVideojuego modificacion = lector.siguiente();
+		assertEquals(inicio + 2, modificacion.getSecuencia());
+		assertEquals(CambioVideojuego.MODIFICACION, modificacion.getTipo());
+		assertEquals(94, modificacion.getVideojuego().getNota());
+		CambioVideojuego baja = lector.siguiente();
+		assertEquals(inicio + 3, baja.getSecuencia());
+		assertEquals(CambioVideojuego.BAJA, baja.getTipo());
+		assertEquals(1, baja.getId());
+		assertNull(baja.getVideojuego());
+		assertNull(lector.siguiente());
+
+		//Se puede reanudar desde cualquier secuencia que siga en el historial
+		assertEquals(inicio + 3, historial.lector(inicio + 2).siguiente().getSecuencia());
+		assertNull(historial.lector(inicio + 3).siguiente());
+	}
+
+	@Test
+	void rechazaSecuenciasFueraDelHistorial() {
+		DaoVideojuego dao = new DaoVideojuego();
+		dao.delete(1);
+		HistorialCambios historial = new HistorialCambios(dao, metricas, 4);
+		long inicio = historial.getSecuencia();
+		//Anterior a que empezase el historial y posterior a la actual
+		assertNull(historial.lector(inicio - 1));
+		assertNull(historial.lector(inicio + 1));
+
+		for(int i = 0; i < 6; i++) {
+			dao.add(new Videojuego(0, "Juego " + i, "Compania", 2000, 50));
+		}
+		//Solo quedan los 4 ultimos cambios
+		assertNull(historial.lector(inicio + 1));
+		assertNotNull(historial.lector(inicio + 2));
+		assertEquals(inicio + 3, historial.lector(inicio + 2).siguiente().getSecuencia());
+	}
+
+	@Test
+	void unLectorQueSeQuedaAtrasTieneQueResincronizar() {
+		DaoVideojuego dao = new DaoVideojuego();
+		HistorialCambios historial = new HistorialCambios(dao, metricas, 4);
+		AtomicInteger avisos = new AtomicInteger();
+		Runnable aviso = avisos::incrementAndGet;
+		historial.suscribir(aviso);
+		HistorialCambios.Lector lector = historial.lector(historial.getSecuencia());
+
+		for(int i = 0; i < 5; i++) {
+			dao.add(new Videojuego(0, "Juego " + i, "Compania", 2000, 50));
+		}
+		assertEquals(5, avisos.get());
+		CambioVideojuego cambio = lector.siguiente();
+		assertEquals(CambioVideojuego.RESINCRONIZAR, cambio.getTipo());
+		assertEquals(dao.getVersion(), cambio.getSecuencia());
+		assertNull(lector.siguiente());
+
+		historial.cancelar(aviso);
+		dao.delete(1);
+		assertEquals(5, avisos.get());
+	}
+}
@@ -0,0 +1,98 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import serviciosrest.PspA3RestApplication;
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+
+/**
+ * Peticiones por segundo de GET /videojuegos con varios clientes a la vez.
+ * Sirve para ver lo que cuesta el log de cada peticion en el listado, y lo
+ * que ocupa y cuesta el listado sin comprimir, comprimido de antemano y
+ * comprimido por Tomcat en cada peticion.
+ *
+ * Solo se ejecuta bajo demanda:
+ * {@code mvn test -Dtest=ListadoRendimientoTests -Dbenchmark=true}<br>
+ * El tamaño del catalogo se cambia con {@code -Dbenchmark.listado=N}, los
+ * clientes con {@code -Dbenchmark.hilos=N} y la duracion en segundos con
+ * {@code -Dbenchmark.segundos=N}.
+ */
+@SpringBootTest(classes = PspA3RestApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = { "videojuegos.persistencia.habilitada=false", "videojuegos.admision.habilitada=false" })
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ListadoRendimientoTests {
+
+	private static final int TAMANO = Integer.getInteger("benchmark.listado", 1_000);
+	private static final int HILOS = Integer.getInteger("benchmark.hilos", 4);
+	private static final int SEGUNDOS = Integer.getInteger("benchmark.segundos", 10);
+
+	@LocalServerPort
+	private int puerto;
+
+	@Autowired
+	private DaoVideojuego dao;
+
+	@Test
+	void peticionesPorSegundoDelListado() throws Exception {
+		for(int i = dao.list().size(); i < TAMANO; i++) {
+			dao.add(new Videojuego(0, "Videojuego " + i, "Compania " + (i % 100), 1980 + i % 45, i % 101));
+		}
+		HttpClient cliente = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+		URI listado = URI.create("http://localhost:" + puerto + "/videojuegos");
+		//El listado completo sin comprimir, el completo comprimido (de la cache)
+		//y una consulta que devuelve todo el catalogo comprimida por Tomcat
+		medirListado(cliente, "sin comprimir", HttpRequest.newBuilder(listado).build(), false);
+		medirListado(cliente, "gzip precomprimido",
+				HttpRequest.newBuilder(listado).header("Accept-Encoding", "gzip").build(), true);
+		medirListado(cliente, "gzip de Tomcat", HttpRequest.newBuilder(URI.create(listado + "?annoMin=0"))
+				.header("Accept-Encoding", "gzip").build(), true);
+	}
+
+	private void medirListado(HttpClient cliente, String descripcion, HttpRequest peticion, boolean gzip)
+			throws Exception {
+		HttpResponse<byte[]> muestra = cliente.send(peticion, HttpResponse.BodyHandlers.ofByteArray());
+		assertEquals(gzip ? "gzip" : "", muestra.headers().firstValue("Content-Encoding").orElse(""));
+		//Calentamiento
+		medir(cliente, peticion, 3);
+		long peticiones = medir(cliente, peticion, SEGUNDOS);
+		System.out.printf("GET /videojuegos con %d videojuegos y %d clientes, %s: %d bytes, %.0f peticiones/s%n",
+				TAMANO, HILOS, descripcion, muestra.body().length, (double) peticiones / SEGUNDOS);
+	}
+
+	private static long medir(HttpClient cliente, HttpRequest peticion, int segundos) throws Exception {
+		long fin = System.nanoTime() + segundos * 1_000_000_000L;
+		AtomicLong total = new AtomicLong();
+		CountDownLatch terminados = new CountDownLatch(HILOS);
+		for(int h = 0; h < HILOS; h++) {
+			new Thread(() -> {
+				try {
+					while(System.nanoTime() < fin) {
+						HttpResponse<byte[]> r = cliente.send(peticion, HttpResponse.BodyHandlers.ofByteArray());
+						assertEquals(200, r.statusCode());
+						total.incrementAndGet();
+					}
+				}catch(Exception e) {
+					throw new IllegalStateException(e);
+				}finally {
+					terminados.countDown();
+				}
+			}).start();
+		}
+		terminados.await();
+		return total.get();
+	}
+}
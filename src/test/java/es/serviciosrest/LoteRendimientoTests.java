@@ -0,0 +1,114 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import serviciosrest.PspA3RestApplication;
+
+/**
+ * Prueba de carga de las operaciones por lotes: da de alta, modifica y borra
+ * N videojuegos con una peticion HTTP por videojuego y con una sola peticion
+ * NDJSON a {@code /videojuegos/batch}, y compara el rendimiento.
+ *
+ * Solo se ejecuta bajo demanda:
+ * {@code mvn test -Dtest=LoteRendimientoTests -Dbenchmark=true}<br>
+ * El numero de videojuegos se puede cambiar con {@code -Dbenchmark.lote=N}.
+ */
+@SpringBootTest(classes = PspA3RestApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = { "videojuegos.persistencia.habilitada=false", "videojuegos.admision.habilitada=false" })
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class LoteRendimientoTests {
+
+	private static final int N = Integer.getInteger("benchmark.lote", 20_000);
+
+	@LocalServerPort
+	private int puerto;
+
+	private final HttpClient cliente = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+	@Test
+	void lotesFrenteAPeticionesIndividuales() throws Exception {
+		//Calentamiento de ambos caminos
+		individuales("calentamiento-", Math.min(N, 2_000));
+		lote("calentamiento-lote-", Math.min(N, 2_000));
+
+		double individual = individuales("individual-", N);
+		double porLotes = lote("lote-", N);
+		System.out.printf("%d altas+modificaciones+bajas: individuales %.0f op/s, por lotes %.0f op/s (x%.1f)%n",
+				N, individual, porLotes, porLotes / individual);
+		assertTrue(porLotes >= 10 * individual, "Los lotes deberian ser al menos 10 veces mas rapidos");
+	}
+
+	//Devuelve las operaciones por segundo
+	private double individuales(String prefijo, int n) throws Exception {
+		long inicio = System.nanoTime();
+		int[] ids = new int[n];
+		for(int i = 0; i < n; i++) {
+			HttpResponse<String> r = enviar("POST", "/videojuegos", "application/json", videojuego(prefijo, i, -1));
+			assertEquals(201, r.statusCode());
+			String cuerpo = r.body();
+			ids[i] = Integer.parseInt(cuerpo.substring(cuerpo.indexOf(':') + 1, cuerpo.indexOf(',')));
+		}
+		for(int i = 0; i < n; i++) {
+			assertEquals(200, enviar("PUT", "/videojuegos/" + ids[i], "application/json",
+					videojuego(prefijo + "m-", i, -1)).statusCode());
+		}
+		for(int i = 0; i < n; i++) {
+			assertEquals(200, enviar("DELETE", "/videojuegos/" + ids[i], null, null).statusCode());
+		}
+		return 3.0 * n / ((System.nanoTime() - inicio) / 1e9);
+	}
+
+	private double lote(String prefijo, int n) throws Exception {
+		long inicio = System.nanoTime();
+		StringBuilder altas = new StringBuilder();
+		for(int i = 0; i < n; i++) {
+			altas.append(videojuego(prefijo, i, -1)).append('\n');
+		}
+		HttpResponse<String> r = enviar("POST", "/videojuegos/batch", "application/x-ndjson", altas.toString());
+		assertEquals(200, r.statusCode());
+		int[] ids = new int[n];
+		int desde = 0;
+		for(int i = 0; i < n; i++) {
+			desde = r.body().indexOf("\"id\":", desde) + 5;
+			ids[i] = Integer.parseInt(r.body().substring(desde, r.body().indexOf(',', desde)));
+		}
+		StringBuilder modificaciones = new StringBuilder();
+		StringBuilder bajas = new StringBuilder();
+		for(int i = 0; i < n; i++) {
+			modificaciones.append(videojuego(prefijo + "m-", i, ids[i])).append('\n');
+			bajas.append(ids[i]).append('\n');
+		}
+		assertEquals(200, enviar("PUT", "/videojuegos/batch", "application/x-ndjson", modificaciones.toString())
+				.statusCode());
+		assertEquals(200, enviar("DELETE", "/videojuegos/batch", "application/x-ndjson", bajas.toString())
+				.statusCode());
+		return 3.0 * n / ((System.nanoTime() - inicio) / 1e9);
+	}
+
+	private static String videojuego(String prefijo, int i, int id) {
+		return (id >= 0 ? "{\"id\":" + id + "," : "{") + "\"nombre\":\"" + prefijo + i
+				+ "\",\"compania\":\"Compania " + (i % 100) + "\",\"anno\":" + (1980 + i % 45) + ",\"nota\":"
+				+ (i % 101) + "}";
+	}
+
+	private HttpResponse<String> enviar(String metodo, String ruta, String tipo, String cuerpo) throws Exception {
+		HttpRequest.Builder peticion = HttpRequest.newBuilder(URI.create("http://localhost:" + puerto + ruta));
+		if(tipo != null) {
+			peticion.header("Content-Type", tipo);
+		}
+		peticion.method(metodo, cuerpo == null ? HttpRequest.BodyPublishers.noBody()
+				: HttpRequest.BodyPublishers.ofString(cuerpo));
+		return cliente.send(peticion.build(), HttpResponse.BodyHandlers.ofString());
+	}
+}
@@ -0,0 +1,91 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.MapaPersistente;
+
+class MapaPersistenteTests {
+
+	private static Videojuego videojuego(int id) {
+		return new Videojuego(id, "Videojuego " + id, "Compania", 2000, id & 63);
+	}
+
+	private static List<Integer> ids(Iterator<Videojuego> it) {
+		List<Integer> ids = new ArrayList<>();
+		it.forEachRemaining(v -> ids.add(v.getId()));
+		return ids;
+	}
+
+	@Test
+	void seComportaComoUnTreeMapYLasVersionesViejasNoCambian() {
+		Random aleatorio = new Random(21);
+		TreeMap<Integer, Videojuego> esperado = new TreeMap<>();
+		MapaPersistente mapa = MapaPersistente.VACIO;
+		for(int i = 0; i < 20_000; i++) {
+			//IDs juntos (como los del contador) y alguno muy lejos, tambien negativos
+			int id = aleatorio.nextInt(10) == 0 ? aleatorio.nextInt() : aleatorio.nextInt(3000);
+			MapaPersistente anterior = mapa;
+			List<Integer> antes = i % 1000 == 0 ? ids(anterior.iterator()) : null;
+			if(aleatorio.nextInt(3) == 0) {
+				esperado.remove(id);
+				mapa = mapa.sin(id);
+			}else {
+				Videojuego v = videojuego(id);
+				esperado.put(id, v);
+				mapa = mapa.con(id, v);
+			}
+			assertEquals(esperado.size(), mapa.size());
+			assertSame(esperado.get(id), mapa.get(id));
+			if(antes != null) {
+				assertEquals(antes, ids(anterior.iterator()));
+			}
+		}
+		assertEquals(new ArrayList<>(esperado.keySet()), ids(mapa.iterator()));
+		for(int i = 0; i < 200; i++) {
+			int desde = aleatorio.nextInt(10) == 0 ? aleatorio.nextInt() : aleatorio.nextInt(3100) - 50;
+			assertEquals(new ArrayList<>(esperado.tailMap(desde, true).keySet()), ids(mapa.iterator(desde)),
+					"Desde " + desde);
+		}
+		for(Map.Entry<Integer, Videojuego> entrada : esperado.entrySet()) {
+			assertSame(entrada.getValue(), mapa.get(entrada.getKey()));
+		}
+	}
+
+	@Test
+	void seConstruyeDeUnaVez() {
+		List<Videojuego> videojuegos = new ArrayList<>();
+		for(int id = 99_999; id >= 0; id -= 3) {
+			videojuegos.add(videojuego(id));
+		}
+		videojuegos.add(videojuego(Integer.MIN_VALUE));
+		videojuegos.add(videojuego(Integer.MAX_VALUE));
+		MapaPersistente mapa = MapaPersistente.de(videojuegos);
+		assertEquals(videojuegos.size(), mapa.size());
+		List<Integer> ids = ids(mapa.iterator());
+		assertEquals(Integer.MIN_VALUE, ids.get(0));
+		assertEquals(0, ids.get(1));
+		assertEquals(3, ids.get(2));
+		assertEquals(Integer.MAX_VALUE, ids.get(ids.size() - 1));
+		assertNull(mapa.get(1));
+		assertEquals(99_999, mapa.get(99_999).getId());
+		assertEquals(List.of(Integer.MAX_VALUE), ids(mapa.iterator(100_000)));
+		assertFalse(MapaPersistente.de(List.of()).iterator().hasNext());
+
+		videojuegos.add(videojuego(6));
+		assertThrows(IllegalArgumentException.class, () -> MapaPersistente.de(videojuegos));
+	}
+}
@@ -0,0 +1,42 @@
+package es.serviciosrest;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import serviciosrest.PspA3RestApplication;
+
+@SpringBootTest(classes = PspA3RestApplication.class, properties = "videojuegos.persistencia.habilitada=false")
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+class MetricasTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	void exponeMetricasEnFormatoPrometheus() throws Exception {
+		mockMvc.perform(get("/videojuegos/3")).andExpect(status().isOk());
+		mockMvc.perform(get("/videojuegos/1000")).andExpect(status().isNotFound());
+
+		mockMvc.perform(get("/actuator/prometheus"))
+			.andExpect(status().isOk())
+			.andExpect(content().string(containsString(
+				"http_server_requests_seconds_bucket{application=\"PSP_A3_REST\",exception=\"None\",method=\"GET\",outcome=\"CLIENT_ERROR\",status=\"404\",uri=\"/videojuegos/{id}\"")))
+			.andExpect(content().string(containsString("status=\"200\",uri=\"/videojuegos/{id}\"")))
+			.andExpect(content().string(containsString(
+				"videojuegos_dao_seconds_count{application=\"PSP_A3_REST\",operacion=\"add\",} 6.0")))
+			.andExpect(content().string(containsString("videojuegos_dao_seconds_bucket{application=\"PSP_A3_REST\",operacion=\"update\"")))
+			.andExpect(content().string(containsString("videojuegos_catalogo{application=\"PSP_A3_REST\",} 6.0")))
+			.andExpect(content().string(containsString(
+				"videojuegos_indice{application=\"PSP_A3_REST\",indice=\"notas\",} 6.0")));
+	}
+}
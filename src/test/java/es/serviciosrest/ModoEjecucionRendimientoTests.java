@@ -0,0 +1,189 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ConnectionObserver;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import serviciosrest.PspA3RestApplication;
+
+/**
+ * Prueba de carga de los dos modos de ejecucion de la capa REST (servlet
+ * sobre Tomcat y reactivo sobre Netty) con muchos clientes concurrentes.
+ * Cada cliente abre su propia conexion y hace varias peticiones GET
+ * /videojuegos/{id} sobre ella, con una pausa entre peticiones como haria un
+ * usuario, asi que las conexiones pasan casi todo el tiempo abiertas y
+ * esperando. Para cada modo se muestra el maximo de
+ * conexiones abiertas a la vez, las peticiones correctas y fallidas y la
+ * latencia p50/p99.
+ *
+ * El servidor se arranca en otra JVM para que sus conexiones no cuenten
+ * contra el limite de descriptores de fichero de la de las pruebas. Aun asi,
+ * como cliente y servidor estan en la misma maquina, cada conexion gasta dos
+ * descriptores en ella: si el sistema tiene un limite global, los ultimos
+ * clientes no llegaran a conectar en ninguno de los dos modos.
+ *
+ * Solo se ejecuta bajo demanda:
+ * {@code mvn test -Dtest=ModoEjecucionRendimientoTests -Dbenchmark=true}<br>
+ * Los clientes se cambian con {@code -Dbenchmark.clientes=N} y las
+ * peticiones de cada cliente con {@code -Dbenchmark.peticiones=N} y la pausa
+ * entre ellas en milisegundos con {@code -Dbenchmark.pausa=N}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ModoEjecucionRendimientoTests {
+
+	private static final int CLIENTES = Integer.getInteger("benchmark.clientes", 10_000);
+	private static final int PETICIONES = Integer.getInteger("benchmark.peticiones", 5);
+	private static final Duration RAMPA = Duration.ofSeconds(Long.getLong("benchmark.rampa", 30));
+	private static final Duration PAUSA = Duration.ofMillis(Long.getLong("benchmark.pausa", 10_000));
+
+	@Test
+	void servletFrenteAReactivo() throws Exception {
+		Resultado servlet = medir("servlet");
+		Resultado reactivo = medir("reactive");
+		System.out.println(servlet);
+		System.out.println(reactivo);
+		assertTrue(reactivo.correctas >= servlet.correctas,
+				"El modo reactivo deberia atender al menos a tantos clientes como el servlet");
+		assertTrue(reactivo.p99 <= servlet.p99, "El modo reactivo deberia tener mejor p99 que el servlet");
+	}
+
+	private Resultado medir(String modo) throws Exception {
+		int puerto;
+		try(ServerSocket libre = new ServerSocket(0)) {
+			puerto = libre.getLocalPort();
+		}
+		Process servidor = new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java", "-Xmx1g", "-cp", System.getProperty("java.class.path"),
+				PspA3RestApplication.class.getName(), "--server.port=" + puerto,
+				"--spring.main.web-application-type=" + modo, "--videojuegos.persistencia.habilitada=false",
+				"--videojuegos.admision.habilitada=false",
+				"--logging.level.serviciosrest=WARN")
+				.redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+		try {
+			esperarArranque(puerto);
+			//Calentamiento con pocos clientes
+			cargar(modo, puerto, 100, 50, Duration.ZERO, Duration.ZERO);
+			return cargar(modo, puerto, CLIENTES, PETICIONES, RAMPA, PAUSA);
+		}finally {
+			servidor.destroy();
+			servidor.waitFor();
+		}
+	}
+
+	private static void esperarArranque(int puerto) throws Exception {
+		java.net.http.HttpClient cliente = java.net.http.HttpClient.newHttpClient();
+		java.net.http.HttpRequest peticion = java.net.http.HttpRequest
+				.newBuilder(URI.create("http://localhost:" + puerto + "/videojuegos/0")).build();
+		long limite = System.nanoTime() + Duration.ofSeconds(60).toNanos();
+		while(true) {
+			try {
+				if(cliente.send(peticion, java.net.http.HttpResponse.BodyHandlers.discarding())
+						.statusCode() == 200) {
+					return;
+				}
+			}catch(java.io.IOException e) {
+				//Todavia no escucha
+			}
+			if(System.nanoTime() > limite) {
+				throw new IllegalStateException("El servidor no ha arrancado");
+			}
+			Thread.sleep(200);
+		}
+	}
+
+	//Cada cliente tiene su propia conexion (un pool de una conexion) y hace
+	//sus peticiones una detras de otra, esperando la pausa entre ellas. Los
+	//clientes van arrancando repartidos a lo largo de la rampa
+	private static Resultado cargar(String modo, int puerto, int clientes, int peticiones, Duration rampa,
+			Duration pausa) {
+		AtomicInteger abiertas = new AtomicInteger();
+		AtomicInteger maximo = new AtomicInteger();
+		ConnectionProvider[] conexiones = new ConnectionProvider[clientes];
+		long[] latencias = new long[clientes * peticiones];
+		long inicio = System.nanoTime();
+		try {
+			Flux.range(0, clientes).flatMap(c -> {
+				conexiones[c] = ConnectionProvider.builder("cliente-" + c).maxConnections(1)
+						.pendingAcquireTimeout(Duration.ofSeconds(60)).build();
+				HttpClient cliente = HttpClient.create(conexiones[c]).baseUrl("http://localhost:" + puerto)
+						.responseTimeout(Duration.ofSeconds(30))
+						.observe((conexion, estado) -> {
+							if(estado == ConnectionObserver.State.CONNECTED) {
+								maximo.accumulateAndGet(abiertas.incrementAndGet(), Math::max);
+								conexion.channel().closeFuture().addListener(f -> abiertas.decrementAndGet());
+							}
+						});
+				Duration arranque = rampa.multipliedBy(c).dividedBy(clientes);
+				return Flux.range(0, peticiones).concatMap(i -> Mono.delay(i == 0 ? arranque : pausa)
+						.then(Mono.defer(() -> {
+							long t = System.nanoTime();
+							return cliente.get().uri("/videojuegos/" + (c % 6))
+									.responseSingle((r, cuerpo) -> cuerpo.asByteArray().thenReturn(r.status().code()))
+									.map(codigo -> codigo == 200 ? System.nanoTime() - t : -1L)
+									.onErrorReturn(-1L)
+									.doOnNext(l -> latencias[c * peticiones + i] = l);
+						})));
+			}, clientes).blockLast();
+		}finally {
+			for(ConnectionProvider conexion : conexiones) {
+				if(conexion != null) {
+					conexion.dispose();
+				}
+			}
+		}
+		double segundos = (System.nanoTime() - inicio) / 1e9;
+		long[] correctas = Arrays.stream(latencias).filter(l -> l > 0).sorted().toArray();
+		return new Resultado(modo, clientes, maximo.get(), correctas.length, latencias.length - correctas.length,
+				correctas.length / segundos, percentil(correctas, 0.50), percentil(correctas, 0.99));
+	}
+
+	private static double percentil(long[] ordenadas, double p) {
+		if(ordenadas.length == 0) {
+			return Double.NaN;
+		}
+		return ordenadas[(int) Math.min(ordenadas.length - 1, Math.ceil(p * ordenadas.length) - 1)] / 1e6;
+	}
+
+	private static class Resultado {
+		final String modo;
+		final int clientes;
+		final int conexiones;
+		final int correctas;
+		final int fallidas;
+		final double porSegundo;
+		final double p50;
+		final double p99;
+
+		Resultado(String modo, int clientes, int conexiones, int correctas, int fallidas, double porSegundo,
+				double p50, double p99) {
+			this.modo = modo;
+			this.clientes = clientes;
+			this.conexiones = conexiones;
+			this.correctas = correctas;
+			this.fallidas = fallidas;
+			this.porSegundo = porSegundo;
+			this.p50 = p50;
+			this.p99 = p99;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-8s %d clientes: %d conexiones a la vez, %d correctas, %d fallidas, "
+					+ "%.0f peticiones/s, p50 %.1f ms, p99 %.1f ms", modo, clientes, conexiones, correctas,
+					fallidas, porSegundo, p50, p99);
+		}
+	}
+}
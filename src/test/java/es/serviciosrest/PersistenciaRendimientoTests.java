@@ -0,0 +1,110 @@
+package es.serviciosrest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+import serviciosrest.modelo.persistencia.PersistenciaVideojuegos;
+
+/**
+ * Latencia de escritura con cada politica de fsync y tiempo de recuperacion
+ * con 1M de registros (solo del registro de escritura y desde instantanea).
+ * 
+ * Solo se ejecuta bajo demanda:
+ * {@code mvn test -Dtest=PersistenciaRendimientoTests -Dbenchmark=true -DargLine=-Xmx3g}<br>
+ * El numero de registros se puede cambiar con {@code -Dbenchmark.registros=N}
+ * y el de hilos con {@code -Dbenchmark.hilos=N}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class PersistenciaRendimientoTests {
+
+	private static final int REGISTROS = Integer.getInteger("benchmark.registros", 1_000_000);
+	private static final int HILOS = Integer.getInteger("benchmark.hilos", 16);
+
+	@TempDir
+	Path temporal;
+
+	@Test
+	void latenciaDeEscrituraPorPolitica() throws Exception {
+		System.out.printf("%10s %10s %12s %10s %10s %10s%n", "politica", "registros", "escr/s", "p50 us", "p99 us",
+				"p999 us");
+		for(String politica : new String[] { "intervalo", "lotes", "siempre" }) {
+			//Con fsync por escritura 1M tardaria demasiado en un disco normal
+			int registros = politica.equals("siempre") ? Math.min(REGISTROS, 20_000) : REGISTROS;
+			DaoVideojuego dao = new DaoVideojuego();
+			PersistenciaVideojuegos p = new PersistenciaVideojuegos(dao, temporal.resolve(politica).toString(),
+					politica, Duration.ofMillis(50), Duration.ZERO);
+			p.iniciar();
+			long[] latencias = new long[registros];
+			long inicio = System.nanoTime();
+			escribir(dao, registros, latencias);
+			double segundos = (System.nanoTime() - inicio) / 1e9;
+			p.cerrar();
+			Arrays.sort(latencias);
+			System.out.printf("%10s %10d %12.0f %10d %10d %10d%n", politica, registros, registros / segundos,
+					latencias[registros / 2] / 1000, latencias[(int) (registros * 0.99)] / 1000,
+					latencias[(int) (registros * 0.999)] / 1000);
+		}
+	}
+
+	@Test
+	void tiempoDeRecuperacion() throws Exception {
+		Path directorio = temporal.resolve("recuperacion");
+		DaoVideojuego dao = new DaoVideojuego();
+		PersistenciaVideojuegos p = new PersistenciaVideojuegos(dao, directorio.toString(), "intervalo",
+				Duration.ofMillis(50), Duration.ZERO);
+		p.iniciar();
+		escribir(dao, REGISTROS, new long[REGISTROS]);
+		Thread.sleep(200);//Dejamos que el ultimo intervalo llegue a disco
+		//Soltamos el catalogo para medir la recuperacion sin el en memoria
+		dao = null;
+		p = null;
+		System.gc();
+
+		//Todo esta en el registro de escritura: hay que aplicar 1M de registros
+		long inicio = System.nanoTime();
+		DaoVideojuego recuperado = new DaoVideojuego();
+		PersistenciaVideojuegos p2 = new PersistenciaVideojuegos(recuperado, directorio.toString(), "intervalo",
+				Duration.ofMillis(50), Duration.ZERO);
+		p2.iniciar();
+		System.out.printf("Recuperacion de %d registros desde el registro de escritura: %d ms (%d videojuegos)%n",
+				REGISTROS, (System.nanoTime() - inicio) / 1_000_000, recuperado.list().size());
+		//El arranque deja una instantanea con todo
+		p2.cerrar();
+		recuperado = null;
+		p2 = null;
+		System.gc();
+
+		inicio = System.nanoTime();
+		DaoVideojuego desdeInstantanea = new DaoVideojuego();
+		new PersistenciaVideojuegos(desdeInstantanea, directorio.toString(), "intervalo", Duration.ofMillis(50),
+				Duration.ZERO).iniciar();
+		System.out.printf("Recuperacion de %d videojuegos desde instantanea: %d ms%n", desdeInstantanea.list().size(),
+				(System.nanoTime() - inicio) / 1_000_000);
+	}
+
+	private static void escribir(DaoVideojuego dao, int registros, long[] latencias) throws InterruptedException {
+		AtomicInteger siguiente = new AtomicInteger();
+		CountDownLatch fin = new CountDownLatch(HILOS);
+		for(int h = 0; h < HILOS; h++) {
+			new Thread(() -> {
+				int i;
+				while((i = siguiente.getAndIncrement()) < registros) {
+					long t = System.nanoTime();
+					dao.add(new Videojuego(0, "Juego " + i, "Compania " + (i % 100), 1990 + i % 30, i % 100));
+					latencias[i] = System.nanoTime() - t;
+				}
+				fin.countDown();
+			}).start();
+		}
+		fin.await();
+	}
+}
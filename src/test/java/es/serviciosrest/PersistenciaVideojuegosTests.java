@@ -0,0 +1,212 @@
+package es.serviciosrest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import serviciosrest.PspA3RestApplication;
+import serviciosrest.modelo.entidad.Videojuego;
+import serviciosrest.modelo.persistencia.DaoVideojuego;
+import serviciosrest.modelo.persistencia.PersistenciaVideojuegos;
+import serviciosrest.modelo.persistencia.PoliticaSincronizacion;
+import serviciosrest.modelo.persistencia.RegistroEscritura;
+import serviciosrest.modelo.persistencia.ReservaNombres;
+
+class PersistenciaVideojuegosTests {
+
+	@TempDir
+	Path directorio;
+
+	private DaoVideojuego arrancar(String politica) throws Exception {
+		DaoVideojuego dao = new DaoVideojuego();
+		new PersistenciaVideojuegos(dao, directorio.toString(), politica, Duration.ofMillis(10), Duration.ZERO)
+				.iniciar();
+		return dao;
+	}
+
+	@Test
+	void recuperaLosCambiosTrasUnaCaida() throws Exception {
+		DaoVideojuego dao = arrancar("lotes");
+		Videojuego nuevo = dao.add(new Videojuego(0, "Half-Life", "Valve", 1998, 96));
+		assertEquals(0, dao.update(new Videojuego(2, "Final Fantasy VII", "SquareSoft", 1997, 92)));
+		assertTrue(dao.delete(4));
+		//No cerramos nada: simulamos que el proceso muere aqui
+
+		DaoVideojuego recuperado = arrancar("lotes");
+		assertEquals(6, recuperado.list().size());
+		assertEquals("Half-Life", recuperado.getById(nuevo.getId()).getNombre());
+		assertEquals("Final Fantasy VII", recuperado.getById(2).getNombre());
+		assertNull(recuperado.getById(4));
+		//El contador de IDs continua donde se quedo
+		assertEquals(nuevo.getId() + 1, recuperado.add(new Videojuego(0, "Portal", "Valve", 2007, 90)).getId());
+	}
+
+	@Test
+	void recuperaDesdeInstantaneaYRegistro() throws Exception {
+		DaoVideojuego dao = new DaoVideojuego();
+		PersistenciaVideojuegos persistencia = new PersistenciaVideojuegos(dao, directorio.toString(), "siempre",
+				Duration.ofMillis(10), Duration.ZERO);
+		persistencia.iniciar();
+		for(int i = 0; i < 100; i++) {
+			assertNotNull(dao.add(new Videojuego(0, "Juego " + i, "Compania", 2000, i)));
+		}
+		persistencia.instantanea();
+		for(int i = 0; i < 50; i++) {
+			assertTrue(dao.delete(6 + i));
+		}
+
+		DaoVideojuego recuperado = arrancar("siempre");
+		assertEquals(56, recuperado.list().size());
+		assertNull(recuperado.getById(6));
+		assertEquals("Juego 99", recuperado.getById(105).getNombre());
+	}
+
+	@Test
+	void ignoraUnRegistroAMedioEscribir() throws Exception {
+		DaoVideojuego dao = arrancar("siempre");
+		dao.add(new Videojuego(0, "Doom", "id Software", 1993, 95));
+		List<Path> segmentos;
+		try(Stream<Path> ficheros = Files.list(directorio)) {
+			segmentos = ficheros.filter(p -> p.getFileName().toString().startsWith("wal-")).sorted()
+					.collect(Collectors.toList());
+		}
+		//Basura al final, como si se hubiera cortado la luz a mitad de un registro
+		Files.write(segmentos.get(segmentos.size() - 1), new byte[] { 0, 0, 0, 40, 1, 2, 3 },
+				StandardOpenOption.APPEND);
+
+		DaoVideojuego recuperado = arrancar("siempre");
+		assertEquals(7, recuperado.list().size());
+		Videojuego quake = recuperado.add(new Videojuego(0, "Quake", "id Software", 1996, 94));
+
+		DaoVideojuego otraVez = arrancar("siempre");
+		assertEquals("Quake", otraVez.getById(quake.getId()).getNombre());
+		assertEquals(8, otraVez.list().size());
+	}
+
+	@Test
+	void unaEscrituraQueNoSePuedeRegistrarNoDejaRastro() throws Exception {
+		DaoVideojuego dao = new DaoVideojuego();
+		PersistenciaVideojuegos persistencia = new PersistenciaVideojuegos(dao, directorio.toString(), "siempre",
+				Duration.ofMillis(10), Duration.ZERO);
+		persistencia.iniciar();
+		Videojuego original = dao.getById(3);
+		//writeUTF no admite mas de 64KB: el registro de escritura falla en mitad del alta
+		String largo = "Juego " + "a".repeat(70_000);
+		assertThrows(UncheckedIOException.class, () -> dao.add(new Videojuego(0, largo, "Nueva", 2020, 50)));
+		assertThrows(UncheckedIOException.class, () -> dao.update(new Videojuego(3, largo, "Nueva", 2020, 50)));
+
+		//Ni el almacen ni los indices han cambiado
+		assertEquals(6, dao.list().size());
+		assertSame(original, dao.getById(3));
+		assertTrue(dao.listByNombre(largo).isEmpty());
+		assertEquals(List.of(original), dao.listByNombre(original.getNombre()));
+		assertTrue(dao.top(10, "Nueva").isEmpty());
+		assertTrue(dao.top(10, original.getCompania()).contains(original));
+		assertNull(dao.add(new Videojuego(0, original.getNombre(), "Otra", 2000, 1)));
+
+		//Y el nombre no se ha quedado reservado
+		persistencia.cerrar();
+		assertNotNull(dao.add(new Videojuego(0, largo, "Nueva", 2020, 50)));
+	}
+
+	@Test
+	void rotarEsperaALasEscriturasDelSegmentoCerrado() throws Exception {
+		try(RegistroEscritura registro = new RegistroEscritura(directorio, PoliticaSincronizacion.INTERVALO, 10, 0)) {
+			//El tipo 1 es guardar un videojuego
+			RegistroEscritura.Escritura escritura = registro.registrar((byte) 1, 1,
+					new Videojuego(1, "Doom", "id Software", 1993, 95));
+			CompletableFuture<Long> corte = CompletableFuture.supplyAsync(() -> {
+				try {
+					return registro.rotar();
+				}catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			//Mientras la escritura no se aplica, la rotacion espera (sin gastar procesador)
+			Thread.sleep(200);
+			assertFalse(corte.isDone());
+			escritura.confirmar();
+			assertEquals(2, corte.get(10, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	void unLoteQueFallaAMediasConfirmaLoYaEscrito() throws Exception {
+		DaoVideojuego dao = new DaoVideojuego();
+		PersistenciaVideojuegos persistencia = new PersistenciaVideojuegos(dao, directorio.toString(), "intervalo",
+				Duration.ofMillis(10), Duration.ZERO);
+		persistencia.iniciar();
+		//Una reserva de nombres que falla al liberar el segundo videojuego del lote
+		String fallido = dao.getById(2).getNombre();
+		dao.setReservaNombres(new ReservaNombres() {
+			@Override
+			public boolean reservar(String nombre, int id) {
+				return true;
+			}
+
+			@Override
+			public void liberar(String nombre, int id) {
+				if(nombre.equals(fallido)) {
+					throw new IllegalStateException("Nodo caido");
+				}
+			}
+		});
+		assertThrows(IllegalStateException.class, () -> dao.deleteAll(List.of(1, 2, 3)));
+		assertNull(dao.getById(1));
+		assertNull(dao.getById(2));
+		assertNotNull(dao.getById(3));
+
+		//Los borrados ya hechos estan confirmados: la instantanea no se queda esperandolos
+		CompletableFuture<Void> instantanea = CompletableFuture.runAsync(() -> {
+			try {
+				persistencia.instantanea();
+			}catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		instantanea.get(10, TimeUnit.SECONDS);
+		persistencia.cerrar();
+		assertEquals(4, arrancar("intervalo").list().size());
+	}
+
+	@Test
+	void elEscritorUnicoArrancaTrasRecuperarYParaAntesDeCerrarElRegistro() throws Exception {
+		int id;
+		try(ConfigurableApplicationContext contexto = arrancarConEscritorUnico()) {
+			DaoVideojuego dao = contexto.getBean(DaoVideojuego.class);
+			assertTrue(dao.isEscritorUnico());
+			id = dao.add(new Videojuego(0, "Escritor unico", "Nueva", 2024, 80)).getId();
+		}
+		//Al parar, el escritor se ha parado antes de cerrar el registro y el alta esta en disco
+		try(ConfigurableApplicationContext contexto = arrancarConEscritorUnico()) {
+			assertEquals("Escritor unico", contexto.getBean(DaoVideojuego.class).getById(id).getNombre());
+		}
+	}
+
+	private ConfigurableApplicationContext arrancarConEscritorUnico() {
+		return new SpringApplicationBuilder(PspA3RestApplication.class).run("--spring.main.web-application-type=none",
+				"--videojuegos.escritura=unico", "--videojuegos.persistencia.habilitada=true",
+				"--videojuegos.persistencia.directorio=" + directorio);
+	}
+}
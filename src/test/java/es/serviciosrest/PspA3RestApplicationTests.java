@@ -3,7 +3,9 @@ package es.serviciosrest;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+import serviciosrest.PspA3RestApplication;
+
+@SpringBootTest(classes = PspA3RestApplication.class, properties = "videojuegos.persistencia.habilitada=false")
 class PspA3RestApplicationTests {
 
 	@Test